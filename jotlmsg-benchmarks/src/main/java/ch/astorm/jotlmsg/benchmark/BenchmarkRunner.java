@@ -0,0 +1,23 @@
+package ch.astorm.jotlmsg.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.openjdk.jmh.Main;
+
+/**
+ * Entry point of the {@code benchmarks.jar}.
+ * <p>Delegates to the JMH command line and enables the GC profiler when no profiler
+ * is specified, so the allocation rate per operation ({@code gc.alloc.rate.norm}) is
+ * always reported. Any {@code -prof} option replaces the default.</p>
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if(!arguments.contains("-prof") && !arguments.contains("-h") && !arguments.contains("-l") && !arguments.contains("-lprof")) {
+            arguments.add("-prof");
+            arguments.add("gc");
+        }
+        Main.main(arguments.toArray(String[]::new));
+    }
+}
@@ -0,0 +1,80 @@
+package ch.astorm.jotlmsg.benchmark;
+
+import ch.astorm.jotlmsg.OutlookMessage;
+import ch.astorm.jotlmsg.OutlookMessageRecipient.Type;
+import ch.astorm.jotlmsg.io.CompoundFileWriter.Version;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the write time and the file size of the compound file versions, with
+ * messages built like the {@code many-attachments} test message.
+ * <p>The {@code fileSize} secondary result reports the size of the generated file.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompoundFileVersionBenchmark {
+
+    @Param({ "V3", "V4" })
+    public Version version;
+
+    @Param({ "40" })
+    public int attachmentCount;
+
+    @Param({ "32", "65536", "4194304" })
+    public int attachmentSize;
+
+    private OutlookMessage message;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class FileSize {
+        public long fileSize;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            fileSize = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        byte[] content = new byte[attachmentSize];
+        new Random(42).nextBytes(content);
+
+        message = new OutlookMessage();
+        for(int i=0 ; i<attachmentCount ; ++i) {
+            message.addAttachment("test"+i+".bin", "application/octet-stream", a -> new ByteArrayInputStream(content));
+        }
+        message.addRecipient(Type.TO, "john@doe.com");
+        message.setSubject("betreff");
+        message.setPlainTextBody("content");
+    }
+
+    @Benchmark
+    public long writeTo(FileSize fileSize) throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        message.writeTo(out, version);
+        fileSize.fileSize = out.getCount();
+        return out.getCount();
+    }
+}
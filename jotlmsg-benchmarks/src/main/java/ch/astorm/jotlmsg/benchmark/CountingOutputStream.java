@@ -0,0 +1,29 @@
+package ch.astorm.jotlmsg.benchmark;
+
+import java.io.OutputStream;
+
+/**
+ * {@code OutputStream} that discards the data and only counts the bytes written.
+ */
+public class CountingOutputStream extends OutputStream {
+    private long count;
+
+    @Override
+    public void write(int b) {
+        ++count;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        count += len;
+    }
+
+    /**
+     * Returns the number of bytes written.
+     * 
+     * @return The number of bytes.
+     */
+    public long getCount() {
+        return count;
+    }
+}
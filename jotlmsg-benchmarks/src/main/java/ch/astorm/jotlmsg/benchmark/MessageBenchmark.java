@@ -0,0 +1,100 @@
+package ch.astorm.jotlmsg.benchmark;
+
+import ch.astorm.jotlmsg.OutlookMessage;
+import ch.astorm.jotlmsg.OutlookMessageMimeConverter;
+import ch.astorm.jotlmsg.OutlookMessageRecipient.Type;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the write, the parsing and the MIME conversion of a message over a matrix
+ * of body sizes, recipient counts and attachment counts and sizes.
+ * <p>The GC profiler is enabled by default when the benchmarks are started with
+ * {@link BenchmarkRunner}. The matrix can be restricted with the {@code -p} option:</p>
+ * <pre>
+ * java -jar target/benchmarks.jar MessageBenchmark -p bodySize=65536 -p attachments=0,8
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageBenchmark {
+
+    @Param({ "1024", "65536", "1048576" })
+    public int bodySize;
+
+    @Param({ "1", "16", "256" })
+    public int recipients;
+
+    @Param({ "0", "1", "8" })
+    public int attachments;
+
+    @Param({ "4096", "1048576" })
+    public int attachmentSize;
+
+    private OutlookMessage message;
+    private File file;
+
+    @Setup
+    public void setup() throws IOException {
+        char[] body = new char[bodySize];
+        Arrays.fill(body, 'a');
+        for(int i=80 ; i<bodySize ; i+=80) { body[i] = '\n'; }
+
+        message = new OutlookMessage();
+        message.setSubject("Benchmark");
+        message.setFrom("sender@jotlmsg.com");
+        message.setPlainTextBody(new String(body));
+        for(int i=0 ; i<recipients ; ++i) { message.addRecipient(Type.values()[i%3], "user"+i+"@jotlmsg.com", "User "+i); }
+
+        byte[] content = new byte[attachmentSize];
+        for(int i=0 ; i<content.length ; ++i) { content[i] = (byte)i; }
+        for(int i=0 ; i<attachments ; ++i) { message.addAttachment("file"+i+".bin", "application/octet-stream", new ByteArrayInputStream(content)); }
+
+        file = File.createTempFile("jotlmsg-benchmark", ".msg");
+        message.writeTo(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    @Benchmark
+    public long writeTo() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        message.writeTo(out);
+        return out.getCount();
+    }
+
+    @Benchmark
+    public OutlookMessage parse() throws IOException {
+        return new OutlookMessage(file);
+    }
+
+    @Benchmark
+    public MimeMessage toMimeMessage() throws IOException, MessagingException {
+        return OutlookMessageMimeConverter.toMimeMessage(message);
+    }
+}
@@ -0,0 +1,81 @@
+package ch.astorm.jotlmsg.benchmark;
+
+import ch.astorm.jotlmsg.io.StoragePropertiesChunk;
+import static ch.astorm.jotlmsg.io.PropertiesChunk.FLAG_READABLE;
+import static ch.astorm.jotlmsg.io.PropertiesChunk.FLAG_WRITEABLE;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.poi.hsmf.datatypes.MAPIProperty;
+import org.apache.poi.hsmf.datatypes.PropertyValue;
+import org.apache.poi.hsmf.datatypes.PropertyValue.LongPropertyValue;
+import org.apache.poi.hsmf.datatypes.Types;
+import org.apache.poi.util.StringUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the serialization of the properties header of a recipient storage.
+ * <p>Run it with the GC profiler to get the allocation rate per operation
+ * ({@code gc.alloc.rate.norm}):</p>
+ * <pre>
+ * java -jar target/benchmarks.jar PropertyHeaderBenchmark -prof gc
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PropertyHeaderBenchmark {
+    private HeaderChunk chunk;
+    private CountingOutputStream out;
+
+    /**
+     * Gives access to the header serialization of the chunk.
+     */
+    private static class HeaderChunk extends StoragePropertiesChunk {
+        private List<PropertyValue> header(OutputStream out) throws IOException {
+            return writeHeaderData(out);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        chunk = new HeaderChunk();
+        chunk.setProperty(createLongPropertyValue(MAPIProperty.RECIPIENT_FLAGS, 0x53));
+        chunk.setProperty(createLongPropertyValue(MAPIProperty.OBJECT_TYPE, 6));
+        chunk.setProperty(createLongPropertyValue(MAPIProperty.DISPLAY_TYPE, 0));
+        chunk.setProperty(createLongPropertyValue(MAPIProperty.RECIPIENT_TYPE, 1));
+        chunk.setProperty(createLongPropertyValue(MAPIProperty.ROWID, 0));
+        chunk.setProperty(new PropertyValue(MAPIProperty.ADDRTYPE, FLAG_READABLE | FLAG_WRITEABLE, StringUtil.getToUnicodeLE("SMTP")));
+        chunk.setProperty(new PropertyValue(MAPIProperty.DISPLAY_NAME, FLAG_READABLE | FLAG_WRITEABLE, StringUtil.getToUnicodeLE("John Doe")));
+        chunk.setProperty(new PropertyValue(MAPIProperty.TRANSMITABLE_DISPLAY_NAME, FLAG_READABLE | FLAG_WRITEABLE, StringUtil.getToUnicodeLE("John Doe")));
+        chunk.setProperty(new PropertyValue(MAPIProperty.RECIPIENT_DISPLAY_NAME, FLAG_READABLE | FLAG_WRITEABLE, StringUtil.getToUnicodeLE("John Doe")));
+        chunk.setProperty(new PropertyValue(MAPIProperty.EMAIL_ADDRESS, FLAG_READABLE | FLAG_WRITEABLE, StringUtil.getToUnicodeLE("john@doe.com")));
+        chunk.setProperty(new PropertyValue(MAPIProperty.ENTRY_ID, FLAG_READABLE | FLAG_WRITEABLE, new byte[64], Types.BINARY));
+        chunk.setProperty(new PropertyValue(MAPIProperty.RECIPIENT_ENTRY_ID, FLAG_READABLE | FLAG_WRITEABLE, new byte[64], Types.BINARY));
+        out = new CountingOutputStream();
+    }
+
+    @Benchmark
+    public List<PropertyValue> writeHeaderData() throws IOException {
+        return chunk.header(out);
+    }
+
+    private static LongPropertyValue createLongPropertyValue(MAPIProperty property, int value) {
+        LongPropertyValue propertyValue = new LongPropertyValue(property, FLAG_READABLE | FLAG_WRITEABLE, new byte[4]);
+        propertyValue.setValue(value);
+        return propertyValue;
+    }
+}
@@ -0,0 +1,91 @@
+package ch.astorm.jotlmsg.benchmark;
+
+import ch.astorm.jotlmsg.OutlookMessage;
+import ch.astorm.jotlmsg.OutlookMessageRecipient.Type;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how the write and the parsing of a message scale with the number of
+ * recipients and attachments, up to the limit of 2048 of the specification.
+ * <p>The {@code elements} secondary result is the time per recipient or attachment,
+ * which must remain flat when the size grows. The heap use per element is the
+ * {@code gc.alloc.rate.norm} of the GC profiler divided by the size:</p>
+ * <pre>
+ * java -jar target/benchmarks.jar ScalingBenchmark -prof gc
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScalingBenchmark {
+
+    @Param({ "1", "16", "128", "512", "1024", "2048" })
+    public int size;
+
+    @Param({ "recipients", "attachments" })
+    public String elementType;
+
+    private OutlookMessage message;
+    private byte[] file;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Elements {
+        public long elements;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            elements = 0;
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        message = new OutlookMessage();
+        message.setSubject("Scaling");
+        message.setPlainTextBody("content");
+        for(int i=0 ; i<size ; ++i) {
+            if(elementType.equals("recipients")) { message.addRecipient(Type.values()[i%3], "user"+i+"@jotlmsg.com", "User "+i); }
+            else { message.addAttachment("file"+i+".txt", "text/plain", new ByteArrayInputStream(("attachment "+i).getBytes(StandardCharsets.UTF_8))); }
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        message.writeTo(baos);
+        file = baos.toByteArray();
+    }
+
+    @Benchmark
+    public long writeTo(Elements elements) throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        message.writeTo(out);
+        elements.elements += size;
+        return out.getCount();
+    }
+
+    @Benchmark
+    public OutlookMessage parse(Elements elements) throws IOException {
+        OutlookMessage parsed = new OutlookMessage(new ByteArrayInputStream(file));
+        elements.elements += size;
+        return parsed;
+    }
+}
@@ -0,0 +1,82 @@
+package ch.astorm.jotlmsg.benchmark;
+
+import ch.astorm.jotlmsg.OutlookMessage;
+import ch.astorm.jotlmsg.OutlookMessageMimeConverter;
+import ch.astorm.jotlmsg.OutlookMessageRecipient.Type;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the first write and parsing of a message in a new JVM, which is dominated by
+ * the class loading and the static initializations.
+ * <p>The {@code msgOnly} workload only uses the {@code jotlmsg-core} module, so the mail
+ * API is never loaded even though it is on the classpath. The {@code loadedClasses} secondary
+ * result is the number of classes loaded by the workload, to be compared with the
+ * {@code withMime} workload that also converts the message:</p>
+ * <pre>
+ * java -jar target/benchmarks.jar StartupBenchmark -prof gc
+ * </pre>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+@State(Scope.Thread)
+public class StartupBenchmark {
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class LoadedClasses {
+        private long before;
+        public long loadedClasses;
+
+        @Setup(Level.Iteration)
+        public void before() {
+            before = ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount();
+        }
+
+        @TearDown(Level.Iteration)
+        public void after() {
+            loadedClasses = ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount()-before;
+        }
+    }
+
+    @Benchmark
+    public OutlookMessage msgOnly(LoadedClasses classes) throws Exception {
+        return writeAndParse();
+    }
+
+    @Benchmark
+    public Object withMime(LoadedClasses classes) throws Exception {
+        return OutlookMessageMimeConverter.toMimeMessage(writeAndParse());
+    }
+
+    private static OutlookMessage writeAndParse() throws Exception {
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("Startup");
+        message.setPlainTextBody("content");
+        message.addRecipient(Type.TO, "to@jotlmsg.com");
+        message.addAttachment("file.txt", "text/plain", new ByteArrayInputStream("attachment".getBytes(StandardCharsets.UTF_8)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        message.writeTo(out);
+        return new OutlookMessage(new ByteArrayInputStream(out.toByteArray()));
+    }
+}
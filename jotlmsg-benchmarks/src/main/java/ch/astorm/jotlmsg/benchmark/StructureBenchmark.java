@@ -0,0 +1,76 @@
+package ch.astorm.jotlmsg.benchmark;
+
+import ch.astorm.jotlmsg.io.FlatEntryListStructure;
+import ch.astorm.jotlmsg.io.OneOffEntryIDStructure;
+import ch.astorm.jotlmsg.io.UncompressedRtfOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the binary structures written for the recipients (reply-to list and one-off
+ * entry identifiers) and the uncompressed RTF body.
+ * <p>The {@code recipients} parameter drives the size of the reply-to list and the
+ * {@code bodySize} parameter the size of the RTF body:</p>
+ * <pre>
+ * java -jar target/benchmarks.jar StructureBenchmark -p recipients=256
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class StructureBenchmark {
+
+    @Param({ "1", "16", "256" })
+    public int recipients;
+
+    @Param({ "1024", "65536", "1048576" })
+    public int bodySize;
+
+    private FlatEntryListStructure<OneOffEntryIDStructure> replyTo;
+    private byte[] rtf;
+
+    @Setup
+    public void setup() {
+        replyTo = new FlatEntryListStructure<>();
+        for(int i=0 ; i<recipients ; ++i) { replyTo.addFlatEntryStructure(new OneOffEntryIDStructure("User "+i, "user"+i+"@jotlmsg.com")); }
+
+        StringBuilder builder = new StringBuilder(bodySize);
+        builder.append("{\\rtf1\\ansi ");
+        while(builder.length()<bodySize-1) { builder.append("Lorem ipsum dolor sit amet\\par "); }
+        builder.setLength(bodySize-1);
+        builder.append('}');
+        rtf = builder.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    public byte[] flatEntryListToBytes() {
+        return replyTo.toBytes();
+    }
+
+    @Benchmark
+    public OneOffEntryIDStructure oneOffEntryID() {
+        return new OneOffEntryIDStructure("John Doe", "john.doe@jotlmsg.com");
+    }
+
+    @Benchmark
+    public long uncompressedRtf() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        try(UncompressedRtfOutputStream rtfOut = new UncompressedRtfOutputStream(out)) { rtfOut.write(rtf); }
+        return out.getCount();
+    }
+}
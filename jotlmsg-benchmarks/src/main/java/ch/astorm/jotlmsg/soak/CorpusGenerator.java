@@ -0,0 +1,237 @@
+package ch.astorm.jotlmsg.soak;
+
+import ch.astorm.jotlmsg.OutlookMessage;
+import ch.astorm.jotlmsg.OutlookMessageAttachment;
+import ch.astorm.jotlmsg.OutlookMessageAttachment.InputStreamCreator;
+import ch.astorm.jotlmsg.OutlookMessageRecipient.Type;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Deterministic generator of synthetic {@link OutlookMessage} corpora.
+ * <p>Each message is derived from the seed and its index only, so the same message can be
+ * generated again without keeping the corpus in memory. The attachments content is also
+ * generated on demand each time it is read.</p>
+ * <p>The sizes are drawn from a log-uniform distribution, which gives many small messages
+ * and a few large ones, and the counts from a uniform distribution.</p>
+ */
+public class CorpusGenerator {
+    private static final String[] WORDS = {
+        "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit", "sed", "do",
+        "eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore", "magna", "aliqua", "enim"
+    };
+
+    private final long seed;
+    private Range bodySize = new Range(64, 256*1024);
+    private double htmlRatio = 0.5;
+    private Range recipients = new Range(1, 32);
+    private Range replyTo = new Range(0, 2);
+    private Range inlineAttachments = new Range(0, 3);
+    private Range attachments = new Range(0, 4);
+    private Range attachmentSize = new Range(128, 4*1024*1024);
+
+    /**
+     * Inclusive range of values.
+     */
+    public static record Range(int min, int max) {
+        public Range {
+            if(min<0 || max<min) { throw new IllegalArgumentException("invalid range ["+min+", "+max+"]"); }
+        }
+
+        /**
+         * Parses a range in the form {@code min-max} or a single value.
+         *
+         * @param value The value to parse.
+         * @return The range.
+         */
+        public static Range parse(String value) {
+            int separator = value.indexOf('-');
+            if(separator<0) { int v = Integer.parseInt(value); return new Range(v, v); }
+            return new Range(Integer.parseInt(value.substring(0, separator)), Integer.parseInt(value.substring(separator+1)));
+        }
+
+        private int uniform(SplittableRandom random) {
+            return min==max ? min : random.nextInt(min, max+1);
+        }
+
+        private int logUniform(SplittableRandom random) {
+            if(min==max) { return min; }
+            double low = Math.log(Math.max(1, min));
+            double high = Math.log(max+1);
+            return Math.min(max, Math.max(min, (int)Math.exp(random.nextDouble(low, high))));
+        }
+    }
+
+    /**
+     * Creates a new generator.
+     *
+     * @param seed The seed of the corpus.
+     */
+    public CorpusGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Defines the size of the bodies, in characters.
+     */
+    public Range getBodySize() { return bodySize; }
+    public void setBodySize(Range bodySize) { this.bodySize = bodySize; }
+
+    /**
+     * Defines the ratio of messages with an HTML body, between 0 and 1.
+     * The other messages have a plain text body.
+     */
+    public double getHtmlRatio() { return htmlRatio; }
+    public void setHtmlRatio(double htmlRatio) {
+        if(htmlRatio<0 || htmlRatio>1) { throw new IllegalArgumentException("invalid ratio: "+htmlRatio); }
+        this.htmlRatio = htmlRatio;
+    }
+
+    /**
+     * Defines the number of recipients (To, Cc and Bcc) of the messages.
+     */
+    public Range getRecipients() { return recipients; }
+    public void setRecipients(Range recipients) { this.recipients = recipients; }
+
+    /**
+     * Defines the number of reply-to addresses of the messages.
+     */
+    public Range getReplyTo() { return replyTo; }
+    public void setReplyTo(Range replyTo) { this.replyTo = replyTo; }
+
+    /**
+     * Defines the number of inline attachments. Only the messages with an HTML
+     * body have inline attachments.
+     */
+    public Range getInlineAttachments() { return inlineAttachments; }
+    public void setInlineAttachments(Range inlineAttachments) { this.inlineAttachments = inlineAttachments; }
+
+    /**
+     * Defines the number of regular attachments.
+     */
+    public Range getAttachments() { return attachments; }
+    public void setAttachments(Range attachments) { this.attachments = attachments; }
+
+    /**
+     * Defines the size of the attachments, in bytes.
+     */
+    public Range getAttachmentSize() { return attachmentSize; }
+    public void setAttachmentSize(Range attachmentSize) { this.attachmentSize = attachmentSize; }
+
+    /**
+     * Returns the seed of the corpus.
+     *
+     * @return The seed.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the first messages of the corpus.
+     *
+     * @param count The number of messages.
+     * @return A stream of messages.
+     */
+    public Stream<OutlookMessage> messages(int count) {
+        return IntStream.range(0, count).mapToObj(this::generate);
+    }
+
+    /**
+     * Generates the message at the given index of the corpus.
+     *
+     * @param index The index of the message.
+     * @return A new message, always the same for a given seed and index.
+     */
+    public OutlookMessage generate(int index) {
+        SplittableRandom random = new SplittableRandom(seed*31+index);
+
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("Message "+index+" "+text(random, random.nextInt(1, 12)));
+        message.setFrom("sender"+random.nextInt(1000)+"@jotlmsg.com");
+        message.setSentDate(new Date(1_600_000_000_000L+random.nextLong(100_000_000_000L)));
+
+        int recipientCount = recipients.uniform(random);
+        for(int i=0 ; i<recipientCount ; ++i) {
+            Type type = i==0 ? Type.TO : Type.values()[random.nextInt(3)];
+            message.addRecipient(type, "user"+random.nextInt(100_000)+"@jotlmsg.com", random.nextBoolean() ? "User "+i : null);
+        }
+
+        int replyToCount = replyTo.uniform(random);
+        if(replyToCount>0) {
+            List<String> addresses = new ArrayList<>(replyToCount);
+            for(int i=0 ; i<replyToCount ; ++i) { addresses.add("reply"+random.nextInt(1000)+"@jotlmsg.com"); }
+            message.setReplyTo(addresses);
+        }
+
+        String body = text(random, bodySize.logUniform(random)/6+1);
+        if(random.nextDouble()<htmlRatio) {
+            StringBuilder html = new StringBuilder(body.length()+256);
+            html.append("<html><body><p>").append(body).append("</p>");
+            int inlineCount = inlineAttachments.uniform(random);
+            for(int i=0 ; i<inlineCount ; ++i) {
+                String contentId = "image"+i+"."+index+"@jotlmsg.com";
+                html.append("<img src=\"cid:").append(contentId).append("\"/>");
+                OutlookMessageAttachment attachment = message.addAttachment("image"+i+".png", "image/png", creator(random.nextLong(), attachmentSize.logUniform(random)));
+                attachment.setContentId(contentId);
+            }
+            message.setHtmlBody(html.append("</body></html>").toString());
+        } else {
+            message.setPlainTextBody(body);
+        }
+
+        int attachmentCount = attachments.uniform(random);
+        for(int i=0 ; i<attachmentCount ; ++i) {
+            message.addAttachment("file"+i+".bin", "application/octet-stream", creator(random.nextLong(), attachmentSize.logUniform(random)));
+        }
+
+        return message;
+    }
+
+    private static String text(SplittableRandom random, int words) {
+        StringBuilder builder = new StringBuilder(words*7);
+        for(int i=0 ; i<words ; ++i) {
+            if(i>0) { builder.append(i%15==0 ? '\n' : ' '); }
+            builder.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return builder.toString();
+    }
+
+    private static InputStreamCreator creator(long contentSeed, int size) {
+        return a -> new GeneratedInputStream(contentSeed, size);
+    }
+
+    /**
+     * Generates pseudo-random content without holding it in memory.
+     */
+    private static class GeneratedInputStream extends InputStream {
+        private final SplittableRandom random;
+        private int remaining;
+
+        private GeneratedInputStream(long seed, int size) {
+            this.random = new SplittableRandom(seed);
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() {
+            if(remaining<=0) { return -1; }
+            --remaining;
+            return random.nextInt(256);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if(remaining<=0) { return -1; }
+            int count = Math.min(len, remaining);
+            for(int i=0 ; i<count ; ++i) { b[off+i] = (byte)random.nextInt(256); }
+            remaining -= count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package ch.astorm.jotlmsg.soak;
+
+import ch.astorm.jotlmsg.OutlookMessage;
+import ch.astorm.jotlmsg.OutlookMessageMimeConverter;
+import ch.astorm.jotlmsg.soak.CorpusGenerator.Range;
+import jakarta.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Long-running harness that writes, parses and converts a synthetic corpus in a loop.
+ * <p>At each report interval, the throughput, the live heap and the number of open file
+ * descriptors are printed. The values of the first report are used as the baseline and the
+ * harness exits with the status 1 when the heap or the file descriptors grew above the
+ * allowed margins at the end of the run, or when a message could not be processed.</p>
+ * <pre>
+ * java -cp target/benchmarks.jar ch.astorm.jotlmsg.soak.SoakHarness -duration PT4H -corpus 5000
+ * </pre>
+ * <p>Options (with their default values):</p>
+ * <ul>
+ *   <li>{@code -duration PT10M} Duration of the run.</li>
+ *   <li>{@code -report PT1M} Interval between two reports.</li>
+ *   <li>{@code -seed 42} Seed of the corpus.</li>
+ *   <li>{@code -corpus 1000} Number of distinct messages, processed in a loop.</li>
+ *   <li>{@code -bodySize 64-262144} Body size in characters.</li>
+ *   <li>{@code -htmlRatio 0.5} Ratio of HTML bodies.</li>
+ *   <li>{@code -recipients 1-32}, {@code -replyTo 0-2}, {@code -inlineAttachments 0-3}, {@code -attachments 0-4} Counts.</li>
+ *   <li>{@code -attachmentSize 128-4194304} Attachment size in bytes.</li>
+ *   <li>{@code -maxHeapGrowth 67108864} Allowed growth of the live heap in bytes.</li>
+ *   <li>{@code -maxFileDescriptorGrowth 16} Allowed growth of the open file descriptors.</li>
+ * </ul>
+ */
+public class SoakHarness {
+    private final CorpusGenerator generator;
+    private final Path folder;
+
+    private long messages;
+    private long bytes;
+    private long failures;
+
+    /**
+     * Creates a new harness.
+     *
+     * @param generator The corpus generator.
+     * @param folder The folder where the messages are written.
+     */
+    public SoakHarness(CorpusGenerator generator, Path folder) {
+        if(generator==null) { throw new IllegalArgumentException("generator is not defined"); }
+        if(folder==null) { throw new IllegalArgumentException("folder is not defined"); }
+        this.generator = generator;
+        this.folder = folder;
+    }
+
+    /**
+     * Returns the number of messages processed.
+     */
+    public long getMessages() { return messages; }
+
+    /**
+     * Returns the number of bytes written.
+     */
+    public long getBytes() { return bytes; }
+
+    /**
+     * Returns the number of messages that could not be processed.
+     */
+    public long getFailures() { return failures; }
+
+    /**
+     * Writes the message at the given index of the corpus, parses it back and converts it
+     * to a {@code MimeMessage}.
+     *
+     * @param index The index of the message.
+     */
+    public void process(int index) {
+        Path file = folder.resolve("soak-"+index+".msg");
+        try {
+            OutlookMessage message = generator.generate(index);
+            message.writeTo(file.toFile());
+            bytes += Files.size(file);
+
+            try(OutlookMessage parsed = new OutlookMessage(file.toFile())) {
+                if(!message.getSubject().equals(parsed.getSubject()) || message.getAttachments().size()!=parsed.getAttachments().size()) {
+                    throw new IllegalStateException("parsed message differs from the original");
+                }
+
+                MimeMessage mime = OutlookMessageMimeConverter.toMimeMessage(parsed);
+                mime.writeTo(OutputStream.nullOutputStream());
+            }
+        } catch(Exception e) {
+            ++failures;
+            System.err.println("message "+index+" (seed "+generator.getSeed()+") failed: "+e);
+        } finally {
+            ++messages;
+            try { Files.deleteIfExists(file); }
+            catch(IOException ioe) { System.err.println("unable to delete "+file+": "+ioe); }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for(int i=0 ; i<args.length ; i+=2) {
+            if(!args[i].startsWith("-") || i+1>=args.length) { throw new IllegalArgumentException("invalid option: "+args[i]); }
+            options.put(args[i].substring(1), args[i+1]);
+        }
+
+        Duration duration = Duration.parse(options.getOrDefault("duration", "PT10M"));
+        Duration reportInterval = Duration.parse(options.getOrDefault("report", "PT1M"));
+        int corpusSize = Integer.parseInt(options.getOrDefault("corpus", "1000"));
+        if(corpusSize<=0) { throw new IllegalArgumentException("invalid corpus size: "+corpusSize); }
+        long maxHeapGrowth = Long.parseLong(options.getOrDefault("maxHeapGrowth", String.valueOf(64*1024*1024)));
+        long maxFileDescriptorGrowth = Long.parseLong(options.getOrDefault("maxFileDescriptorGrowth", "16"));
+
+        CorpusGenerator generator = new CorpusGenerator(Long.parseLong(options.getOrDefault("seed", "42")));
+        if(options.containsKey("bodySize")) { generator.setBodySize(Range.parse(options.get("bodySize"))); }
+        if(options.containsKey("htmlRatio")) { generator.setHtmlRatio(Double.parseDouble(options.get("htmlRatio"))); }
+        if(options.containsKey("recipients")) { generator.setRecipients(Range.parse(options.get("recipients"))); }
+        if(options.containsKey("replyTo")) { generator.setReplyTo(Range.parse(options.get("replyTo"))); }
+        if(options.containsKey("inlineAttachments")) { generator.setInlineAttachments(Range.parse(options.get("inlineAttachments"))); }
+        if(options.containsKey("attachments")) { generator.setAttachments(Range.parse(options.get("attachments"))); }
+        if(options.containsKey("attachmentSize")) { generator.setAttachmentSize(Range.parse(options.get("attachmentSize"))); }
+
+        Path folder = Files.createTempDirectory("soak");
+        SoakHarness harness = new SoakHarness(generator, folder);
+        System.out.println("soak run of "+duration+" over "+corpusSize+" messages (seed "+generator.getSeed()+") in "+folder);
+        System.out.println("elapsed(s)  messages  msg/s  MB/s  liveHeap(MB)  openFDs  tempFiles  failures");
+
+        long start = System.nanoTime();
+        long end = start+duration.toNanos();
+        long nextReport = start+reportInterval.toNanos();
+        long lastMessages = 0;
+        long lastBytes = 0;
+        long lastReport = start;
+        long baselineHeap = -1;
+        long baselineFileDescriptors = -1;
+        long heap = 0;
+        long fileDescriptors = 0;
+
+        int index = 0;
+        while(System.nanoTime()<end) {
+            harness.process(index);
+            index = (index+1)%corpusSize;
+
+            long now = System.nanoTime();
+            if(now>=nextReport || now>=end) {
+                heap = liveHeap();
+                fileDescriptors = openFileDescriptors();
+                double seconds = (now-lastReport)/1e9;
+                System.out.printf("%10.0f  %8d  %5.1f  %4.1f  %12.1f  %7d  %9d  %8d%n",
+                        (now-start)/1e9, harness.getMessages(),
+                        (harness.getMessages()-lastMessages)/seconds,
+                        (harness.getBytes()-lastBytes)/seconds/(1024*1024),
+                        heap/(1024.0*1024), fileDescriptors, temporaryFiles(), harness.getFailures());
+
+                if(baselineHeap<0) {
+                    baselineHeap = heap;
+                    baselineFileDescriptors = fileDescriptors;
+                }
+                lastMessages = harness.getMessages();
+                lastBytes = harness.getBytes();
+                lastReport = now;
+                nextReport = now+reportInterval.toNanos();
+            }
+        }
+        Files.deleteIfExists(folder);
+
+        boolean leaked = false;
+        if(heap-baselineHeap>maxHeapGrowth) {
+            System.err.println("live heap grew by "+(heap-baselineHeap)+" bytes (max "+maxHeapGrowth+")");
+            leaked = true;
+        }
+        if(baselineFileDescriptors>=0 && fileDescriptors-baselineFileDescriptors>maxFileDescriptorGrowth) {
+            System.err.println("open file descriptors grew by "+(fileDescriptors-baselineFileDescriptors)+" (max "+maxFileDescriptorGrowth+")");
+            leaked = true;
+        }
+        System.exit(leaked || harness.getFailures()>0 ? 1 : 0);
+    }
+
+    private static long liveHeap() {
+        MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        return memoryBean.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Returns the number of open file descriptors or -1 if it is not available
+     * on this platform.
+     */
+    private static long openFileDescriptors() {
+        OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+        if(osBean instanceof com.sun.management.UnixOperatingSystemMXBean) {
+            return ((com.sun.management.UnixOperatingSystemMXBean)osBean).getOpenFileDescriptorCount();
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of temporary files created by jotlmsg that still exist.
+     */
+    private static long temporaryFiles() throws IOException {
+        try(Stream<Path> files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(f -> f.getFileName().toString().startsWith("jotlmsg") && f.getFileName().toString().endsWith(".tmp")).count();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jconvmsg;
+
+import ch.astorm.jotlmsg.OutlookMessage;
+import ch.astorm.jotlmsg.OutlookMessageMimeConverter;
+import jakarta.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Command-line converter of {@code .msg} files to {@code .eml} files.
+ * <p>The input can be a single file or a directory. In the latter case, all the {@code .msg}
+ * files of the directory and its sub-directories are converted in parallel into the output
+ * directory, with the same relative paths.</p>
+ * <pre>
+ * java -jar jotlmsg-cli.jar [-threads N] [-overwrite] &lt;input&gt; [output]
+ * </pre>
+ * <p>The exit status is 0 if all the messages have been converted, 1 if some of them failed
+ * and 2 if the arguments are invalid.</p>
+ * 
+ * @author Cedric Tabin
+ */
+public class MailConverter {
+    private static final String MSG_EXTENSION = ".msg";
+    private static final String EML_EXTENSION = ".eml";
+    
+    private final int threads;
+    private final boolean overwrite;
+    private final AtomicInteger converted = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    
+    /**
+     * Creates a new {@code MailConverter}.
+     * 
+     * @param threads The number of messages converted in parallel.
+     * @param overwrite True to replace the existing output files, false to skip them.
+     */
+    public MailConverter(int threads, boolean overwrite) {
+        if(threads<=0) { throw new IllegalArgumentException("invalid number of threads: "+threads); }
+        this.threads = threads;
+        this.overwrite = overwrite;
+    }
+    
+    /**
+     * Returns the number of messages converted.
+     */
+    public int getConverted() { return converted.get(); }
+    
+    /**
+     * Returns the number of messages that could not be converted.
+     */
+    public int getFailed() { return failed.get(); }
+    
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean overwrite = false;
+        List<String> paths = new ArrayList<>(2);
+        for(int i=0 ; i<args.length ; ++i) {
+            if(args[i].equals("-threads") && i+1<args.length) { threads = Integer.parseInt(args[++i]); }
+            else if(args[i].equals("-overwrite")) { overwrite = true; }
+            else if(args[i].startsWith("-")) { usage("unknown option: "+args[i]); }
+            else { paths.add(args[i]); }
+        }
+        if(paths.isEmpty() || paths.size()>2) { usage(null); }
+        
+        Path input = Path.of(paths.get(0));
+        if(!Files.exists(input)) { usage("input not found: "+input); }
+        
+        long start = System.nanoTime();
+        MailConverter converter = new MailConverter(threads, overwrite);
+        if(Files.isDirectory(input)) {
+            Path output = paths.size()>1 ? Path.of(paths.get(1)) : input;
+            converter.convertDirectory(input, output);
+        } else {
+            Path output = paths.size()>1 ? Path.of(paths.get(1)) : toEml(input);
+            converter.convertFile(input, output);
+        }
+        
+        long millis = (System.nanoTime()-start)/1_000_000;
+        System.out.println("converted "+converter.getConverted()+" message(s) in "+millis+" ms ("+converter.getFailed()+" failed)");
+        System.exit(converter.getFailed()>0 ? 1 : 0);
+    }
+    
+    /**
+     * Converts all the {@code .msg} files of {@code inputDirectory} and its sub-directories
+     * into {@code outputDirectory}. The failures are reported on the standard error.
+     * 
+     * @param inputDirectory The directory to convert.
+     * @param outputDirectory The directory of the {@code .eml} files.
+     * @throws IOException If the input directory cannot be listed.
+     * @throws InterruptedException If the current thread is interrupted.
+     */
+    public void convertDirectory(Path inputDirectory, Path outputDirectory) throws IOException, InterruptedException {
+        List<Path> inputs;
+        try(Stream<Path> files = Files.walk(inputDirectory)) {
+            inputs = files.filter(f -> Files.isRegularFile(f) && f.getFileName().toString().toLowerCase().endsWith(MSG_EXTENSION)).toList();
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, inputs.size())));
+        try {
+            List<Future<?>> futures = new ArrayList<>(inputs.size());
+            for(Path input : inputs) {
+                Path output = toEml(outputDirectory.resolve(inputDirectory.relativize(input).toString()));
+                futures.add(executor.submit(() -> convertFile(input, output)));
+            }
+            for(Future<?> future : futures) {
+                try { future.get(); }
+                catch(ExecutionException ee) { throw new IllegalStateException(ee.getCause()); } //convertFile catches the conversion errors
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Converts the specified {@code .msg} file to a {@code .eml} file. The failure is
+     * reported on the standard error.
+     * 
+     * @param input The {@code .msg} file.
+     * @param output The {@code .eml} file to create.
+     * @return True if the message has been converted.
+     */
+    public boolean convertFile(Path input, Path output) {
+        if(!overwrite && Files.exists(output)) {
+            System.err.println("skipped "+input+": "+output+" already exists");
+            failed.incrementAndGet();
+            return false;
+        }
+        
+        try(OutlookMessage message = new OutlookMessage(input.toFile())) {
+            MimeMessage mimeMessage = OutlookMessageMimeConverter.toMimeMessage(message);
+            Path parent = output.toAbsolutePath().getParent();
+            if(parent!=null) { Files.createDirectories(parent); }
+            try(OutputStream out = Files.newOutputStream(output)) { mimeMessage.writeTo(out); }
+            converted.incrementAndGet();
+            return true;
+        } catch(Exception e) {
+            System.err.println("failed "+input+": "+e);
+            failed.incrementAndGet();
+            try { Files.deleteIfExists(output); }
+            catch(IOException ioe) { /* ignored, the failure is already reported */ }
+            return false;
+        }
+    }
+    
+    private static Path toEml(Path path) {
+        String name = path.getFileName().toString();
+        if(name.toLowerCase().endsWith(MSG_EXTENSION)) { name = name.substring(0, name.length()-MSG_EXTENSION.length()); }
+        return path.resolveSibling(name+EML_EXTENSION);
+    }
+    
+    private static void usage(String error) {
+        if(error!=null) { System.err.println(error); }
+        System.err.println("usage: MailConverter [-threads N] [-overwrite] <input.msg|input directory> [output.eml|output directory]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg;
+
+import ch.astorm.jotlmsg.io.ChannelReadGuard;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A {@code CompletableFuture} that runs a task and interrupts it when the future
+ * is cancelled or completed exceptionally from the outside (for instance by
+ * {@link CompletableFuture#orTimeout(long, java.util.concurrent.TimeUnit) orTimeout()}).
+ * <p>The interruption stops the pending attachment reads and the prefetched reads are
+ * cancelled. The runner is never interrupted while it reads a file channel, which would
+ * close it: the reads check the cancellation in between (see {@link ChannelReadGuard}).</p>
+ * 
+ * @author Cedric Tabin
+ * @param <T> The type of the result.
+ */
+final class AsyncTask<T> extends CompletableFuture<T> implements Runnable {
+    private static final ThreadFactory VIRTUAL_THREADS = Thread.ofVirtual().name("jotlmsg-async-", 0).factory();
+    
+    /**
+     * Executes each task on a new virtual thread.
+     */
+    static final Executor VIRTUAL_THREAD_EXECUTOR = task -> VIRTUAL_THREADS.newThread(task).start();
+    
+    private final Callable<T> task;
+    private ChannelReadGuard runner;
+    private boolean interrupted;
+    
+    private AsyncTask(Callable<T> task) {
+        this.task = task;
+        whenComplete((r,t) -> { if(t!=null) { interruptRunner(); } });
+    }
+    
+    /**
+     * Submits the specified {@code task} to the {@code executor}.
+     * 
+     * @param <T> The type of the result.
+     * @param task The task.
+     * @param executor The executor.
+     * @return A future that is completed with the result of the task.
+     */
+    static <T> CompletableFuture<T> submit(Callable<T> task, Executor executor) {
+        if(executor==null) { throw new IllegalArgumentException("executor is not defined"); }
+        
+        AsyncTask<T> future = new AsyncTask<>(task);
+        try { executor.execute(future); }
+        catch(RuntimeException e) { future.completeExceptionally(e); }
+        return future;
+    }
+    
+    @Override
+    public void run() {
+        synchronized(this) {
+            if(isDone()) { return; }
+            runner = ChannelReadGuard.register();
+        }
+        
+        T result = null;
+        Throwable failure = null;
+        try { result = task.call(); }
+        catch(Throwable t) { failure = t; }
+        finally {
+            //the runner is cleared before the completion, so that it is not interrupted by its own failure
+            synchronized(this) { 
+                runner.unregister();
+                runner = null;
+                if(interrupted) { Thread.interrupted(); } //the executor thread may be reused
+            }
+        }
+        
+        if(failure!=null) { completeExceptionally(failure); }
+        else { complete(result); }
+    }
+    
+    private synchronized void interruptRunner() {
+        if(runner!=null) {
+            interrupted = true;
+            runner.cancel();
+        }
+    }
+}
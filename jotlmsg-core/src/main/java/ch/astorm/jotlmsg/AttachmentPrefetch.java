@@ -0,0 +1,84 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package ch.astorm.jotlmsg;
+
+/**
+ * Defines how the attachments are prefetched when a message is written or converted.
+ * <p>By default, the attachments are read one after the other. When a prefetch is
+ * set on an {@link OutlookMessage}, the {@code InputStream} of several attachments
+ * are opened and read concurrently on virtual threads. This is useful when the
+ * {@link OutlookMessageAttachment.InputStreamCreator} instances read from slow sources.
+ * The order of the attachments in the generated message is not affected.</p>
+ * <p>The content read in advance is kept in memory up to the {@code memoryBudget},
+ * the remaining being written in temporary files. Attachments smaller than 4 KB are
+ * always kept in memory. The memory of an attachment is given back to the budget as
+ * soon as its content has been written or converted.</p>
+ * 
+ * @author Cedric Tabin
+ * @see OutlookMessage#setAttachmentPrefetch(ch.astorm.jotlmsg.AttachmentPrefetch)
+ */
+public class AttachmentPrefetch {
+    private final int parallelism;
+    private final long memoryBudget;
+    
+    /**
+     * Creates a new {@code AttachmentPrefetch}.
+     * 
+     * @param parallelism The maximum number of attachments read concurrently.
+     * @param memoryBudget The maximum number of bytes kept in memory for the attachments read in advance.
+     */
+    public AttachmentPrefetch(int parallelism, long memoryBudget) {
+        if(parallelism<1) { throw new IllegalArgumentException("invalid parallelism: "+parallelism); }
+        if(memoryBudget<0) { throw new IllegalArgumentException("invalid memory budget: "+memoryBudget); }
+        
+        this.parallelism = parallelism;
+        this.memoryBudget = memoryBudget;
+    }
+    
+    /**
+     * Returns the maximum number of attachments read concurrently.
+     * 
+     * @return The parallelism.
+     */
+    public int getParallelism() { return parallelism; }
+    
+    /**
+     * Returns the maximum number of bytes kept in memory for the attachments read in advance.
+     * 
+     * @return The memory budget.
+     */
+    public long getMemoryBudget() { return memoryBudget; }
+}
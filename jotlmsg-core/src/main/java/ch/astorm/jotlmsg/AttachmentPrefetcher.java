@@ -0,0 +1,215 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package ch.astorm.jotlmsg;
+
+import ch.astorm.jotlmsg.io.ChannelReadGuard;
+import ch.astorm.jotlmsg.io.CompoundFileWriter;
+import ch.astorm.jotlmsg.io.SpooledContent;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Reads the content of attachments concurrently on virtual threads, according to
+ * an {@link AttachmentPrefetch}.
+ * <p>All the attachments are submitted at creation in their order, but at most
+ * {@link AttachmentPrefetch#getParallelism()} are read at the same time. The
+ * contents are owned by this prefetcher and are deleted when it is closed.</p>
+ * 
+ * @author Cedric Tabin
+ */
+final class AttachmentPrefetcher implements Closeable {
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final List<Future<SpooledContent>> futures;
+    private final SpooledContent[] contents;
+    private final long[] charges;
+    private final List<ChannelReadGuard> guards = new ArrayList<>();
+    private final long memoryPerFetch;
+    private long remainingBudget;
+    private boolean closed;
+    
+    AttachmentPrefetcher(AttachmentPrefetch prefetch, List<OutlookMessageAttachment> attachments) {
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("jotlmsg-prefetch-", 0).factory());
+        this.permits = new Semaphore(prefetch.getParallelism(), true);
+        this.futures = new ArrayList<>(attachments.size());
+        this.contents = new SpooledContent[attachments.size()];
+        this.charges = new long[attachments.size()];
+        this.memoryPerFetch = prefetch.getMemoryBudget()/prefetch.getParallelism();
+        this.remainingBudget = prefetch.getMemoryBudget();
+        
+        for(int i=0 ; i<attachments.size() ; ++i) {
+            int index = i;
+            OutlookMessageAttachment attachment = attachments.get(i);
+            futures.add(executor.submit(() -> fetch(index, attachment)));
+        }
+    }
+    
+    /**
+     * Returns the content of the attachment at the given {@code index}, waiting
+     * for it to be read if necessary.
+     * 
+     * @param index The index of the attachment.
+     * @return The content, which remains owned by this prefetcher.
+     * @throws IOException If an I/O error occurred while reading the attachment.
+     */
+    SpooledContent get(int index) throws IOException {
+        try {
+            return futures.get(index).get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while reading attachment "+index);
+        } catch(CancellationException e) {
+            throw new InterruptedIOException("cancelled while reading attachment "+index);
+        } catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException) { throw (IOException)cause; }
+            if(cause instanceof RuntimeException) { throw (RuntimeException)cause; }
+            if(cause instanceof Error) { throw (Error)cause; }
+            throw new IOException(cause);
+        }
+    }
+    
+    /**
+     * Deletes the content of the attachment at the given {@code index} and gives
+     * back its memory to the budget.
+     * 
+     * @param index The index of the attachment.
+     * @throws IOException If an I/O error occurs.
+     */
+    void release(int index) throws IOException {
+        SpooledContent content;
+        synchronized(this) {
+            content = contents[index];
+            contents[index] = null;
+            remainingBudget += charges[index];
+            charges[index] = 0;
+        }
+        if(content!=null) { content.close(); }
+    }
+    
+    /**
+     * Cancels the pending reads and deletes all the contents.
+     * 
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        List<SpooledContent> toClose = new ArrayList<>(contents.length);
+        synchronized(this) {
+            closed = true;
+            for(int i=0 ; i<contents.length ; ++i) {
+                if(contents[i]!=null) { toClose.add(contents[i]); }
+                contents[i] = null;
+            }
+        }
+        
+        //the running reads are not interrupted while they read a file channel, which may be shared
+        for(Future<SpooledContent> future : futures) { future.cancel(false); }
+        executor.shutdown();
+        List<ChannelReadGuard> running;
+        synchronized(this) { running = new ArrayList<>(guards); }
+        for(ChannelReadGuard guard : running) { guard.cancel(); }
+        
+        IOException exception = null;
+        for(SpooledContent content : toClose) {
+            try { content.close(); }
+            catch(IOException e) { if(exception==null) { exception = e; } }
+        }
+        if(exception!=null) { throw exception; }
+    }
+    
+    private SpooledContent fetch(int index, OutlookMessageAttachment attachment) throws IOException, InterruptedException {
+        ChannelReadGuard guard = ChannelReadGuard.register();
+        synchronized(this) {
+            if(closed) { 
+                guard.unregister();
+                throw new InterruptedIOException("prefetch closed"); 
+            }
+            guards.add(guard);
+        }
+        try { return fetchGuarded(index, attachment); }
+        finally {
+            synchronized(this) { guards.remove(guard); }
+            guard.unregister();
+        }
+    }
+    
+    private SpooledContent fetchGuarded(int index, OutlookMessageAttachment attachment) throws IOException, InterruptedException {
+        permits.acquire();
+        try {
+            long reserved = attachment.copiesContent() ? reserveBudget() : 0;
+            SpooledContent content;
+            try { content = attachment.spool((int)Math.max(reserved, CompoundFileWriter.MINI_STREAM_CUTOFF)); }
+            catch(IOException | RuntimeException e) {
+                releaseBudget(reserved);
+                throw e;
+            }
+            
+            long charge = Math.min(reserved, content.getMemorySize());
+            synchronized(this) {
+                remainingBudget += reserved-charge;
+                if(!closed) {
+                    contents[index] = content;
+                    charges[index] = charge;
+                    return content;
+                }
+            }
+            content.close();
+            throw new InterruptedIOException("prefetch closed");
+        } finally {
+            permits.release();
+        }
+    }
+    
+    private synchronized long reserveBudget() {
+        long reserved = Math.min(Math.min(remainingBudget, memoryPerFetch), Integer.MAX_VALUE-8);
+        remainingBudget -= reserved;
+        return reserved;
+    }
+    
+    private synchronized void releaseBudget(long size) {
+        remainingBudget += size;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of the reading of an attachment content by {@link OutlookMessage#writeTo(java.io.OutputStream) writeTo()}
+ * or by the MIME conversion. When the attachments are prefetched,
+ * the duration is the time spent waiting for the content.
+ * 
+ * @author Cedric Tabin
+ */
+@Name("ch.astorm.jotlmsg.AttachmentRead")
+@Label("Attachment Read")
+@Category("jotlmsg")
+@Description("Reading of the content of an attachment")
+@StackTrace(false)
+final class AttachmentReadEvent extends jdk.jfr.Event {
+    @Label("Name")
+    String name;
+    
+    @Label("MIME Type")
+    String mimeType;
+    
+    @Label("Index")
+    int index;
+    
+    @Label("Size")
+    @DataAmount
+    long size;
+    
+    @Label("Prefetched")
+    boolean prefetched;
+}
@@ -0,0 +1,285 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg;
+
+import ch.astorm.jotlmsg.OutlookMessageAttachment.InputStreamCreator;
+import ch.astorm.jotlmsg.OutlookMessageAttachment.MemoryInputStreamCreator;
+import ch.astorm.jotlmsg.io.SpooledContent;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Holds attachment contents shared by many messages.
+ * <p>The contents are deduplicated by their SHA-256 hash: adding the same content twice
+ * returns the same {@link Entry}, whose content is stored only once. Each {@link Entry}
+ * is an {@link InputStreamCreator} that can be used by any number of attachments and
+ * messages, including messages written concurrently.</p>
+ * <pre>
+ * Entry logo = store.put(new FileInputStream("logo.png"));
+ * message.addAttachment("logo.png", "image/png", logo);
+ * </pre>
+ * <p>The entries are reference-counted: each call to {@link #put(java.io.InputStream) put()}
+ * must be balanced by a call to {@link Entry#release()} once the messages using the entry
+ * have been written. The content is discarded when the last reference is released. The
+ * contents bigger than the memory threshold are held in temporary files.</p>
+ * <p>This class is thread-safe.</p>
+ * 
+ * @author Cedric Tabin
+ */
+public class AttachmentStore implements Closeable {
+    private static final HexFormat HEX = HexFormat.of();
+    
+    private final int memoryThreshold;
+    private final Map<String, Entry> entries = new HashMap<>(64);
+    private boolean closed;
+    
+    /**
+     * Creates a new {@code AttachmentStore} that keeps the contents in memory up to the
+     * {@link MemoryInputStreamCreator#getDefaultMemoryThreshold() default threshold}.
+     */
+    public AttachmentStore() {
+        this(MemoryInputStreamCreator.getDefaultMemoryThreshold());
+    }
+    
+    /**
+     * Creates a new {@code AttachmentStore}.
+     * 
+     * @param memoryThreshold The maximum number of bytes of a content kept in memory.
+     */
+    public AttachmentStore(int memoryThreshold) {
+        if(memoryThreshold<0) { throw new IllegalArgumentException("invalid memory threshold: "+memoryThreshold); }
+        this.memoryThreshold = memoryThreshold;
+    }
+    
+    /**
+     * Represents a content of the store.
+     * <p>The content is immutable, hence the {@code InputStream} can be created concurrently
+     * by many threads. When a message is written, the content is used directly without
+     * being copied.</p>
+     */
+    public static final class Entry implements InputStreamCreator {
+        private final AttachmentStore store;
+        private final String hash;
+        private final SpooledContent content;
+        private int references;
+        
+        private Entry(AttachmentStore store, String hash, SpooledContent content) {
+            this.store = store;
+            this.hash = hash;
+            this.content = content;
+            this.references = 1;
+        }
+        
+        /**
+         * Returns the SHA-256 hash of the content, as a lowercase hexadecimal string.
+         * 
+         * @return The hash.
+         */
+        public String getHash() {
+            return hash;
+        }
+        
+        /**
+         * Returns the length of the content.
+         * 
+         * @return The length, in bytes.
+         */
+        public long getLength() {
+            return content.getLength();
+        }
+        
+        /**
+         * Returns the number of references to this entry. Once zero, the content is discarded.
+         * 
+         * @return The number of references.
+         */
+        public int getReferenceCount() {
+            synchronized(store) { return references; }
+        }
+        
+        /**
+         * Releases a reference to this entry. When the last reference is released, the
+         * entry is removed from the store and its content is discarded: the messages
+         * that use it cannot be written anymore.
+         * 
+         * @throws IOException If the temporary file of the content cannot be deleted.
+         */
+        public void release() throws IOException {
+            synchronized(store) {
+                if(references==0) { throw new IllegalStateException("entry already released"); }
+                if(--references>0) { return; }
+                store.entries.remove(hash);
+            }
+            content.close();
+        }
+        
+        @Override
+        public InputStream newInputStream(OutlookMessageAttachment omt) throws IOException {
+            return getContent().newInputStream();
+        }
+        
+        /**
+         * Returns the content of this entry. The returned {@code SpooledContent} is owned
+         * by the store and must not be closed.
+         * 
+         * @return The content.
+         * @throws IOException If the entry has been released.
+         */
+        SpooledContent getContent() throws IOException {
+            if(getReferenceCount()==0) { throw new IOException("entry "+hash+" has been released"); }
+            return content;
+        }
+    }
+    
+    /**
+     * Returns the maximum number of bytes of a content kept in memory.
+     * 
+     * @return The memory threshold.
+     */
+    public int getMemoryThreshold() {
+        return memoryThreshold;
+    }
+    
+    /**
+     * Adds the specified {@code content} to the store.
+     * 
+     * @param content The content.
+     * @return The new entry or the existing one, if the store already holds the same content.
+     * @throws IOException If an I/O error occurs.
+     * @see #put(java.io.InputStream)
+     */
+    public Entry put(byte[] content) throws IOException {
+        if(content==null) { throw new IllegalArgumentException("content is not defined"); }
+        return put(new ByteArrayInputStream(content));
+    }
+    
+    /**
+     * Reads fully the specified {@code input} and adds its content to the store. The
+     * {@code input} is closed by this method.
+     * <p>If the store already holds the same content, the existing entry is returned
+     * and its reference count is incremented. Otherwise, a new entry is created.</p>
+     * 
+     * @param input The input to read.
+     * @return The new entry or the existing one.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Entry put(InputStream input) throws IOException {
+        if(input==null) { throw new IllegalArgumentException("input is not defined"); }
+        
+        MessageDigest digest = newDigest();
+        SpooledContent content;
+        try(DigestInputStream dis = new DigestInputStream(input, digest)) { content = SpooledContent.spool(dis, memoryThreshold); }
+        String hash = HEX.formatHex(digest.digest());
+        
+        Entry entry;
+        synchronized(this) {
+            if(closed) { 
+                content.close();
+                throw new IllegalStateException("store is closed");
+            }
+            
+            entry = entries.get(hash);
+            if(entry==null) { 
+                entry = new Entry(this, hash, content);
+                entries.put(hash, entry);
+                return entry;
+            }
+            ++entry.references;
+        }
+        
+        content.close(); //the content is already in the store
+        return entry;
+    }
+    
+    /**
+     * Returns the entry with the specified SHA-256 {@code hash}. The reference count of
+     * the entry is not modified.
+     * 
+     * @param hash The hash, as a hexadecimal string.
+     * @return The entry or null if the store does not hold such a content.
+     */
+    public synchronized Entry get(String hash) {
+        return hash!=null ? entries.get(hash.toLowerCase(Locale.ROOT)) : null;
+    }
+    
+    /**
+     * Returns the number of distinct contents held by the store.
+     * 
+     * @return The number of entries.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    /**
+     * Discards all the contents, whatever their reference count. The store cannot be
+     * used anymore once closed.
+     * 
+     * @throws IOException If a temporary file cannot be deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        List<Entry> toClose;
+        synchronized(this) {
+            closed = true;
+            toClose = new ArrayList<>(entries.values());
+            for(Entry entry : toClose) { entry.references = 0; }
+            entries.clear();
+        }
+        
+        IOException exception = null;
+        for(Entry entry : toClose) {
+            try { entry.content.close(); }
+            catch(IOException e) { if(exception==null) { exception = e; } }
+        }
+        if(exception!=null) { throw exception; }
+    }
+    
+    private static MessageDigest newDigest() {
+        try { return MessageDigest.getInstance("SHA-256"); }
+        catch(NoSuchAlgorithmException nsae) { throw new IllegalStateException(nsae); } //cannot happen, SHA-256 is always available
+    }
+}
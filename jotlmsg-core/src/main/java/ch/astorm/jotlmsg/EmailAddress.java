@@ -0,0 +1,328 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg;
+
+/**
+ * Represents a mailbox as defined by the RFC 5322 (section 3.4), for instance
+ * {@code john.doe@jotlmsg.com} or {@code "Doe, John" <john.doe@jotlmsg.com>}.
+ * <p>The parser handles the display names (quoted or not), the angle brackets, the quoted
+ * local parts, the domain literals and the comments. The non-ASCII characters are accepted
+ * as defined by the RFC 6532. The validation is done in a single pass over the value and
+ * no object is created until the address is known to be valid.</p>
+ * 
+ * @author Cedric Tabin
+ */
+public final class EmailAddress {
+    private static final boolean[] ATEXT = new boolean[128];
+    static {
+        for(char c='a' ; c<='z' ; ++c) { ATEXT[c] = true; }
+        for(char c='A' ; c<='Z' ; ++c) { ATEXT[c] = true; }
+        for(char c='0' ; c<='9' ; ++c) { ATEXT[c] = true; }
+        for(char c : "!#$%&'*+-/=?^_`{|}~".toCharArray()) { ATEXT[c] = true; }
+    }
+    
+    private static final int INVALID_LOCAL_PART = -1;
+    private static final int MISSING_AT = -2;
+    private static final int INVALID_DOMAIN = -3;
+    private static final int UNBALANCED = -4;
+    
+    private final String address;
+    private final String name;
+    
+    private EmailAddress(String address, String name) {
+        this.address = address;
+        this.name = name;
+    }
+    
+    /**
+     * Returns the address, for instance {@code john.doe@jotlmsg.com}.
+     * 
+     * @return The address, never null.
+     */
+    public String getAddress() {
+        return address;
+    }
+    
+    /**
+     * Returns the display name, without its quotes nor comments.
+     * 
+     * @return The display name or null if there is none.
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Parses a single mailbox.
+     * 
+     * @param value The value to parse.
+     * @return The parsed address.
+     * @throws IllegalArgumentException If {@code value} is not a valid mailbox.
+     */
+    public static EmailAddress parse(String value) {
+        if(value==null) { throw new IllegalArgumentException("value is not defined"); }
+        
+        int[] bounds = new int[4];
+        String error = validate(value, bounds);
+        if(error!=null) { throw new IllegalArgumentException(error+": "+value); }
+        return create(value, bounds);
+    }
+    
+    /**
+     * Returns true if {@code value} is a valid mailbox.
+     * <p>This method does not create any object, hence it can be used on
+     * large address lists.</p>
+     * 
+     * @param value The value to check.
+     * @return True if {@code value} can be {@link #parse(String) parsed}.
+     */
+    public static boolean isValid(String value) {
+        return value!=null && validate(value, null)==null;
+    }
+    
+    /**
+     * Validates the specified {@code value} and fills the {@code bounds} with the start and
+     * end of the display name and the start and end of the address.
+     * 
+     * @param value The value to validate.
+     * @param bounds The bounds to fill (with a length of 4) or null.
+     * @return The error or null if {@code value} is valid.
+     */
+    static String validate(String value, int[] bounds) {
+        int length = value.length();
+        
+        int angle = -1;
+        boolean quoted = false;
+        int depth = 0;
+        for(int i=0 ; i<length && angle<0 ; ++i) {
+            char c = value.charAt(i);
+            if(quoted) {
+                if(c=='\\') { ++i; }
+                else if(c=='"') { quoted = false; }
+            } else if(depth>0) {
+                if(c=='\\') { ++i; }
+                else if(c=='(') { ++depth; }
+                else if(c==')') { --depth; }
+            } else if(c=='"') { quoted = true; }
+            else if(c=='(') { ++depth; }
+            else if(c=='<') { angle = i; }
+        }
+        if(angle<0 && (quoted || depth>0)) { return "unbalanced quotes or comments"; }
+        
+        int nameStart = 0;
+        int nameEnd = 0;
+        int start;
+        if(angle>=0) {
+            nameStart = skipWhitespaces(value, 0, angle);
+            nameEnd = angle;
+            while(nameEnd>nameStart && Character.isWhitespace(value.charAt(nameEnd-1))) { --nameEnd; }
+            start = skipComments(value, angle+1, length);
+        } else {
+            start = skipComments(value, 0, length);
+        }
+        if(start<0) { return "unbalanced comments"; }
+        if(start>=length) { return "empty address"; }
+        
+        int end = addressEnd(value, start, length);
+        if(end<0) { return error(end); }
+        
+        int next = skipComments(value, end, length);
+        if(angle>=0) {
+            if(next<0 || next>=length || value.charAt(next)!='>') { return "missing closing angle bracket"; }
+            next = skipComments(value, next+1, length);
+        }
+        if(next<0) { return "unbalanced comments"; }
+        if(next<length) { return "unexpected text after the address"; }
+        
+        if(bounds!=null) {
+            bounds[0] = nameStart;
+            bounds[1] = nameEnd;
+            bounds[2] = start;
+            bounds[3] = end;
+        }
+        return null;
+    }
+    
+    /**
+     * Creates the address from a value that has been {@link #validate(String, int[]) validated}.
+     */
+    static EmailAddress create(String value, int[] bounds) {
+        String address = bounds[2]==0 && bounds[3]==value.length() ? value : value.substring(bounds[2], bounds[3]);
+        return new EmailAddress(address, bounds[0]<bounds[1] ? toName(value, bounds[0], bounds[1]) : null);
+    }
+    
+    private static String error(int code) {
+        switch(code) {
+            case INVALID_LOCAL_PART: return "invalid local part";
+            case MISSING_AT: return "missing @";
+            case INVALID_DOMAIN: return "invalid domain";
+            case UNBALANCED: return "unbalanced quotes or brackets";
+            default: throw new IllegalArgumentException("unsupported code: "+code);
+        }
+    }
+    
+    /**
+     * Returns the end of the address starting at {@code start} or a negative error code.
+     */
+    private static int addressEnd(String value, int start, int limit) {
+        int i = start<limit && value.charAt(start)=='"' ? quotedEnd(value, start, limit) : dotAtomEnd(value, start, limit);
+        if(i<0) { return i==UNBALANCED ? UNBALANCED : INVALID_LOCAL_PART; }
+        if(i>=limit || value.charAt(i)!='@') { return MISSING_AT; }
+        ++i;
+        
+        if(i<limit && value.charAt(i)=='[') {
+            for(int j=i+1 ; j<limit ; ++j) {
+                char c = value.charAt(j);
+                if(c==']') { return j>i+1 ? j+1 : INVALID_DOMAIN; }
+                if(c=='[' || c=='\\' || c<=' ') { return INVALID_DOMAIN; }
+            }
+            return UNBALANCED;
+        }
+        
+        i = dotAtomEnd(value, i, limit);
+        return i<0 ? INVALID_DOMAIN : i;
+    }
+    
+    private static int dotAtomEnd(String value, int start, int limit) {
+        boolean dot = true; //at the start or after a dot
+        int i = start;
+        for( ; i<limit ; ++i) {
+            char c = value.charAt(i);
+            if(isAtext(c)) { dot = false; }
+            else if(c=='.') {
+                if(dot) { return INVALID_LOCAL_PART; }
+                dot = true;
+            } else {
+                break;
+            }
+        }
+        return i==start || dot ? INVALID_LOCAL_PART : i;
+    }
+    
+    private static int quotedEnd(String value, int start, int limit) {
+        for(int i=start+1 ; i<limit ; ++i) {
+            char c = value.charAt(i);
+            if(c=='\\') { ++i; }
+            else if(c=='"') { return i+1; }
+            else if(c=='\r' || c=='\n') { return INVALID_LOCAL_PART; }
+        }
+        return UNBALANCED;
+    }
+    
+    private static int skipWhitespaces(String value, int start, int limit) {
+        while(start<limit && Character.isWhitespace(value.charAt(start))) { ++start; }
+        return start;
+    }
+    
+    /**
+     * Skips the whitespaces and comments from {@code start}.
+     * 
+     * @return The index of the next character or -1 if a comment is not closed.
+     */
+    private static int skipComments(String value, int start, int limit) {
+        int i = skipWhitespaces(value, start, limit);
+        while(i<limit && value.charAt(i)=='(') {
+            int depth = 1;
+            for(++i ; i<limit && depth>0 ; ++i) {
+                char c = value.charAt(i);
+                if(c=='\\') { ++i; }
+                else if(c=='(') { ++depth; }
+                else if(c==')') { --depth; }
+            }
+            if(depth>0) { return -1; }
+            i = skipWhitespaces(value, i, limit);
+        }
+        return i;
+    }
+    
+    private static boolean isAtext(char c) {
+        return c<128 ? ATEXT[c] : !Character.isISOControl(c) && !Character.isWhitespace(c);
+    }
+    
+    /**
+     * Returns the display name between {@code start} and {@code end}, without the
+     * quotes and comments and with the whitespaces collapsed.
+     */
+    private static String toName(String value, int start, int end) {
+        boolean plain = true;
+        for(int i=start ; i<end && plain ; ++i) {
+            char c = value.charAt(i);
+            plain = c!='"' && c!='\\' && c!='(' && (c!=' ' || value.charAt(i-1)!=' ') && (c==' ' || !Character.isWhitespace(c));
+        }
+        if(plain) { return value.substring(start, end); }
+        
+        StringBuilder builder = new StringBuilder(end-start);
+        boolean quoted = false;
+        int depth = 0;
+        for(int i=start ; i<end ; ++i) {
+            char c = value.charAt(i);
+            if(depth>0) {
+                if(c=='\\') { ++i; }
+                else if(c=='(') { ++depth; }
+                else if(c==')') { --depth; }
+            } else if(c=='\\' && i+1<end) { builder.append(value.charAt(++i)); }
+            else if(c=='"') { quoted = !quoted; }
+            else if(c=='(' && !quoted) { ++depth; }
+            else if(Character.isWhitespace(c) && !quoted) {
+                if(builder.length()>0 && builder.charAt(builder.length()-1)!=' ') { builder.append(' '); }
+            } else {
+                builder.append(c);
+            }
+        }
+        
+        int length = builder.length();
+        if(length>0 && builder.charAt(length-1)==' ') { builder.setLength(length-1); }
+        return builder.length()>0 ? builder.toString() : null;
+    }
+    
+    @Override
+    public boolean equals(Object obj) {
+        if(this==obj) { return true; }
+        if(!(obj instanceof EmailAddress)) { return false; }
+        EmailAddress other = (EmailAddress)obj;
+        return address.equals(other.address) && (name==null ? other.name==null : name.equals(other.name));
+    }
+    
+    @Override
+    public int hashCode() {
+        return address.hashCode()*31+(name!=null ? name.hashCode() : 0);
+    }
+    
+    @Override
+    public String toString() {
+        if(name==null) { return address; }
+        return "\""+name.replace("\\", "\\\\").replace("\"", "\\\"")+"\" <"+address+">";
+    }
+}
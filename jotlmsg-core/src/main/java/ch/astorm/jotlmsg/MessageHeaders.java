@@ -0,0 +1,398 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg;
+
+import java.time.DateTimeException;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.ResolverStyle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Represents the internet headers of a message, as found in the {@code TRANSPORT_MESSAGE_HEADERS}
+ * property of a received message.
+ * <p>The header block is kept as is and is only split into fields the first time a field is
+ * accessed by name. The lookup is case-insensitive, the folded lines are unfolded and the
+ * repeated fields (such as {@code Received}) are kept in their original order.</p>
+ * <p>This class is immutable and can be shared between threads.</p>
+ * 
+ * @author Cedric Tabin
+ */
+public final class MessageHeaders {
+
+    /**
+     * Empty headers, used when a message has no internet header.
+     */
+    public static final MessageHeaders EMPTY = new MessageHeaders("");
+
+    /**
+     * Formatter of the {@code Date} header, based on {@link OutlookMessage#MIME_DATE_FORMAT}.
+     */
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern(OutlookMessage.MIME_DATE_FORMAT, Locale.ENGLISH);
+
+    /**
+     * Parser of the RFC 5322 dates, once the comments, day of week and obsolete zones have been removed.
+     */
+    private static final DateTimeFormatter DATE_PARSER = DateTimeFormatter.RFC_1123_DATE_TIME.withResolverStyle(ResolverStyle.STRICT);
+
+    private final String raw;
+    private volatile Fields fields;
+
+    /**
+     * Holds the parsed fields.
+     * 
+     * @param values The values by field name (case-insensitive).
+     * @param names The field names, in their order of first appearance.
+     */
+    private static record Fields(Map<String, List<String>> values, List<String> names) {}
+
+    /**
+     * Creates a new {@code MessageHeaders} over the specified header block.
+     * 
+     * @param raw The header block, with one field per line.
+     */
+    public MessageHeaders(String raw) {
+        if(raw==null) { throw new IllegalArgumentException("raw is not defined"); }
+        this.raw = raw;
+    }
+
+    /**
+     * Returns the header block, as it was read.
+     * 
+     * @return The header block.
+     */
+    public String getRaw() {
+        return raw;
+    }
+
+    /**
+     * Returns true if there is no field in this header block.
+     * 
+     * @return True if there is no field.
+     */
+    public boolean isEmpty() {
+        return getFields().names().isEmpty();
+    }
+
+    /**
+     * Returns the names of the fields, in their order of first appearance.
+     * 
+     * @return An unmodifiable list of names.
+     */
+    public List<String> getNames() {
+        return getFields().names();
+    }
+
+    /**
+     * Returns the unfolded value of the first field with the specified {@code name}.
+     * <p>If the headers have not been parsed yet, the block is scanned without
+     * building the other fields.</p>
+     * 
+     * @param name The name of the field (case-insensitive).
+     * @return The value or null if there is no such field.
+     */
+    public String get(String name) {
+        if(name==null) { throw new IllegalArgumentException("name is not defined"); }
+        
+        Fields current = fields;
+        if(current!=null) {
+            List<String> values = current.values().get(name);
+            return values!=null ? values.get(0) : null;
+        }
+        
+        int length = raw.length();
+        int pos = 0;
+        while(pos<length && !isLineBreak(raw.charAt(pos))) {
+            int end = fieldEnd(pos);
+            int colon = nameEnd(pos, end);
+            if(colon>=0 && colon-pos>=name.length() && raw.regionMatches(true, pos, name, 0, name.length()) && isBlank(pos+name.length(), colon)) {
+                return unfold(colon+1, end);
+            }
+            pos = nextLine(end);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the unfolded values of all the fields with the specified {@code name}.
+     * 
+     * @param name The name of the field (case-insensitive).
+     * @return An unmodifiable list of values, empty if there is no such field.
+     */
+    public List<String> getAll(String name) {
+        if(name==null) { throw new IllegalArgumentException("name is not defined"); }
+        List<String> values = getFields().values().get(name);
+        return values!=null ? values : Collections.emptyList();
+    }
+
+    /**
+     * Returns the parsed value of the {@code Date} field.
+     * 
+     * @return The date or null if the field is missing or invalid.
+     * @see #parseDate(String)
+     */
+    public Date getDate() {
+        return parseDate(get("Date"));
+    }
+
+    /**
+     * Returns the value of the {@code Message-ID} field.
+     * 
+     * @return The message identifier (with its angle brackets) or null.
+     */
+    public String getMessageId() {
+        String value = get("Message-ID");
+        return value!=null ? value.trim() : null;
+    }
+
+    /**
+     * Returns the message identifiers of the {@code In-Reply-To} field.
+     * 
+     * @return The message identifiers (with their angle brackets), empty if there is none.
+     */
+    public List<String> getInReplyTo() {
+        return parseMessageIds(get("In-Reply-To"));
+    }
+
+    /**
+     * Returns the message identifiers of the {@code References} field.
+     * 
+     * @return The message identifiers (with their angle brackets), empty if there is none.
+     */
+    public List<String> getReferences() {
+        return parseMessageIds(get("References"));
+    }
+
+    @Override
+    public String toString() {
+        return raw;
+    }
+
+    /**
+     * Parses a date as defined by the RFC 5322 (section 3.3), including the obsolete
+     * zone names and the comments (such as a trailing {@code (CET)}). The day of week
+     * is ignored, even if it does not match the date.
+     * <p>The parsing relies on a shared immutable formatter, hence this method
+     * is thread-safe.</p>
+     * 
+     * @param value The value to parse.
+     * @return The date or null if {@code value} is null or invalid.
+     */
+    public static Date parseDate(String value) {
+        if(value==null) { return null; }
+        
+        StringBuilder builder = new StringBuilder(value.length());
+        int depth = 0;
+        for(int i=0 ; i<value.length() ; ++i) {
+            char c = value.charAt(i);
+            if(c=='(') { ++depth; }
+            else if(c==')') { if(depth>0) { --depth; } }
+            else if(depth==0) {
+                if(Character.isWhitespace(c)) {
+                    if(builder.length()>0 && builder.charAt(builder.length()-1)!=' ') { builder.append(' '); }
+                } else {
+                    builder.append(c);
+                    if(c==',') { builder.append(' '); }
+                }
+            }
+        }
+        
+        //the day of week is informative only and many clients send a wrong one, so it is not checked
+        int dayEnd = builder.indexOf(",");
+        if(dayEnd>=0) { builder.delete(0, dayEnd+2); }
+        
+        int length = builder.length();
+        if(length>0 && builder.charAt(length-1)==' ') { builder.setLength(--length); }
+        int zoneStart = builder.lastIndexOf(" ")+1;
+        if(zoneStart>0) {
+            String zone = toOffset(builder.substring(zoneStart));
+            if(zone!=null) { builder.replace(zoneStart, length, zone); }
+        }
+        
+        try { return Date.from(DATE_PARSER.parse(builder, OffsetDateTime::from).toInstant()); }
+        catch(DateTimeException e) { return null; }
+    }
+
+    /**
+     * Formats a date for the {@code Date} field with the {@link OutlookMessage#MIME_DATE_FORMAT}
+     * pattern in the default time zone. The month and day names are always in English.
+     * 
+     * @param date The date.
+     * @return The formatted date.
+     */
+    public static String formatDate(Date date) {
+        if(date==null) { throw new IllegalArgumentException("date is not defined"); }
+        return DATE_FORMATTER.format(date.toInstant().atZone(ZoneId.systemDefault()));
+    }
+
+    /**
+     * Converts the obsolete zone names to their numeric offset.
+     * 
+     * @param zone The zone.
+     * @return The offset or null if {@code zone} is not an obsolete zone.
+     */
+    private static String toOffset(String zone) {
+        switch(zone.toUpperCase(Locale.ROOT)) {
+            case "UT": case "Z": return "+0000";
+            case "EDT": return "-0400";
+            case "EST": case "CDT": return "-0500";
+            case "CST": case "MDT": return "-0600";
+            case "MST": case "PDT": return "-0700";
+            case "PST": return "-0800";
+            default:
+                //military zones must be considered as -0000 (RFC 5322, section 4.3)
+                return zone.length()==1 && Character.isLetter(zone.charAt(0)) ? "+0000" : null;
+        }
+    }
+
+    private static List<String> parseMessageIds(String value) {
+        if(value==null) { return Collections.emptyList(); }
+        
+        List<String> ids = new ArrayList<>(4);
+        int pos = 0;
+        while(true) {
+            int start = value.indexOf('<', pos);
+            if(start<0) { break; }
+            int end = value.indexOf('>', start);
+            if(end<0) { break; }
+            ids.add(value.substring(start, end+1));
+            pos = end+1;
+        }
+        return Collections.unmodifiableList(ids);
+    }
+
+    private Fields getFields() {
+        Fields current = fields;
+        if(current==null) {
+            current = parse();
+            fields = current;
+        }
+        return current;
+    }
+
+    private Fields parse() {
+        Map<String, List<String>> values = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        List<String> names = new ArrayList<>(16);
+        
+        int length = raw.length();
+        int pos = 0;
+        while(pos<length && !isLineBreak(raw.charAt(pos))) {
+            int end = fieldEnd(pos);
+            int colon = nameEnd(pos, end);
+            if(colon>=0) {
+                String name = raw.substring(pos, colon).trim();
+                List<String> fieldValues = values.get(name);
+                if(fieldValues==null) {
+                    fieldValues = new ArrayList<>(1);
+                    values.put(name, fieldValues);
+                    names.add(name);
+                }
+                fieldValues.add(unfold(colon+1, end));
+            }
+            pos = nextLine(end);
+        }
+        
+        values.replaceAll((k, v) -> Collections.unmodifiableList(v));
+        return new Fields(Collections.unmodifiableMap(values), Collections.unmodifiableList(names));
+    }
+
+    /**
+     * Returns the end of the field starting at {@code pos}, including its folded lines
+     * but excluding the final line break.
+     */
+    private int fieldEnd(int pos) {
+        int length = raw.length();
+        while(true) {
+            int lineFeed = raw.indexOf('\n', pos);
+            if(lineFeed<0) { return length; }
+            if(lineFeed+1<length && (raw.charAt(lineFeed+1)==' ' || raw.charAt(lineFeed+1)=='\t')) {
+                pos = lineFeed+1;
+                continue;
+            }
+            return lineFeed>0 && raw.charAt(lineFeed-1)=='\r' ? lineFeed-1 : lineFeed;
+        }
+    }
+
+    /**
+     * Returns the index of the colon ending the field name or -1 if the line is not a field.
+     */
+    private int nameEnd(int pos, int end) {
+        for(int i=pos ; i<end ; ++i) {
+            char c = raw.charAt(i);
+            if(c==':') { return i>pos ? i : -1; }
+            if((c<' ' && c!='\t') || c>'~') { return -1; }
+        }
+        return -1;
+    }
+
+    private int nextLine(int end) {
+        if(end<raw.length() && raw.charAt(end)=='\r') { ++end; }
+        if(end<raw.length() && raw.charAt(end)=='\n') { ++end; }
+        return end;
+    }
+
+    private String unfold(int start, int end) {
+        while(start<end && (raw.charAt(start)==' ' || raw.charAt(start)=='\t')) { ++start; }
+        while(end>start && Character.isWhitespace(raw.charAt(end-1))) { --end; }
+        
+        int lineBreak = raw.indexOf('\n', start);
+        if(lineBreak<0 || lineBreak>=end) { return raw.substring(start, end); }
+        
+        StringBuilder builder = new StringBuilder(end-start);
+        for(int i=start ; i<end ; ++i) {
+            char c = raw.charAt(i);
+            if(!isLineBreak(c)) { builder.append(c); }
+        }
+        return builder.toString();
+    }
+
+    private boolean isBlank(int start, int end) {
+        for(int i=start ; i<end ; ++i) {
+            if(!Character.isWhitespace(raw.charAt(i))) { return false; }
+        }
+        return true;
+    }
+
+    private static boolean isLineBreak(char c) {
+        return c=='\r' || c=='\n';
+    }
+}
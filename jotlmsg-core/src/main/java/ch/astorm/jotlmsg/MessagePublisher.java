@@ -0,0 +1,209 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg;
+
+import ch.astorm.jotlmsg.io.ChannelReadGuard;
+import ch.astorm.jotlmsg.io.CompoundFileWriter.Version;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publishes the {@code .msg} file of an {@link OutlookMessage} as a sequence of
+ * {@code ByteBuffer} chunks.
+ * <p>Each subscription writes the message on its own virtual thread. The writer is
+ * suspended as long as the subscriber has not requested more chunks, hence at most
+ * one chunk is held in memory besides the attachments that are spooled (see
+ * {@link OutlookMessage#writeTo(java.io.OutputStream)}). Cancelling the subscription
+ * interrupts the writer, including the pending attachment reads.</p>
+ * 
+ * @author Cedric Tabin
+ */
+final class MessagePublisher implements Flow.Publisher<ByteBuffer> {
+    private final OutlookMessage message;
+    private final Version version;
+    private final int chunkSize;
+    
+    MessagePublisher(OutlookMessage message, Version version, int chunkSize) {
+        if(version==null) { throw new IllegalArgumentException("version is not defined"); }
+        if(chunkSize<=0 || chunkSize%version.getSectorSize()!=0) { throw new IllegalArgumentException("invalid chunk size: "+chunkSize); }
+        
+        this.message = message;
+        this.version = version;
+        this.chunkSize = chunkSize;
+    }
+    
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        if(subscriber==null) { throw new NullPointerException("subscriber is not defined"); } //rule 1.9 of the reactive streams
+        
+        ChunkSubscription subscription = new ChunkSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        Thread.ofVirtual().name("jotlmsg-publisher").start(subscription::produce);
+    }
+    
+    private final class ChunkSubscription extends OutputStream implements Flow.Subscription {
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final ReentrantLock lock = new ReentrantLock(); //no synchronized, the producer is a virtual thread
+        private final Condition demanded = lock.newCondition();
+        private long demand;
+        private boolean cancelled;
+        private Throwable failure;
+        private ChannelReadGuard producer;
+        private byte[] chunk;
+        private int count;
+        
+        private ChunkSubscription(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+        }
+        
+        @Override
+        public void request(long n) {
+            lock.lock();
+            try {
+                if(cancelled) { return; }
+                if(n<=0) {
+                    //rule 3.9, the error is signaled by the producer so that the signals remain serialized
+                    failure = new IllegalArgumentException("non-positive request: "+n);
+                    stop();
+                    return;
+                }
+                demand = demand+n<0 ? Long.MAX_VALUE : demand+n;
+                demanded.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        @Override
+        public void cancel() {
+            lock.lock();
+            try { stop(); }
+            finally { lock.unlock(); }
+        }
+        
+        private void stop() {
+            cancelled = true;
+            demanded.signal();
+            if(producer!=null) { producer.cancel(); } //not interrupted while it reads a file channel
+        }
+        
+        private void produce() {
+            lock.lock();
+            try {
+                if(cancelled) { 
+                    if(failure!=null) { subscriber.onError(failure); }
+                    return; 
+                }
+                producer = ChannelReadGuard.register();
+            } finally {
+                lock.unlock();
+            }
+            
+            Throwable error = null;
+            try {
+                message.writeTo(this, version);
+                if(count>0) { emit(); }
+            } catch(Throwable t) {
+                error = t;
+            }
+            
+            lock.lock();
+            try {
+                producer.unregister();
+                producer = null;
+                Thread.interrupted(); //clears the interruption of a cancellation
+                if(cancelled) { error = failure; }
+            } finally {
+                lock.unlock();
+            }
+            
+            if(error!=null) { subscriber.onError(error); }
+            else if(!isCancelled()) { subscriber.onComplete(); }
+        }
+        
+        private boolean isCancelled() {
+            lock.lock();
+            try { return cancelled; }
+            finally { lock.unlock(); }
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            if(chunk==null) { chunk = new byte[chunkSize]; }
+            chunk[count++] = (byte)b;
+            if(count==chunkSize) { emit(); }
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while(len>0) {
+                if(chunk==null) { chunk = new byte[chunkSize]; }
+                int copied = Math.min(len, chunkSize-count);
+                System.arraycopy(b, off, chunk, count, copied);
+                count += copied;
+                off += copied;
+                len -= copied;
+                if(count==chunkSize) { emit(); }
+            }
+        }
+        
+        /**
+         * Waits for the subscriber to request a chunk, then sends the current one. A new
+         * array is allocated for each chunk, since the subscriber may keep the buffer.
+         */
+        private void emit() throws IOException {
+            lock.lock();
+            try {
+                while(demand==0 && !cancelled) { demanded.await(); }
+                if(cancelled) { throw new InterruptedIOException("subscription cancelled"); }
+                --demand;
+            } catch(InterruptedException ie) {
+                throw new InterruptedIOException("subscription cancelled");
+            } finally {
+                lock.unlock();
+            }
+            
+            ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, count);
+            chunk = null;
+            count = 0;
+            subscriber.onNext(buffer);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg;
+
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.AddressException;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Forwards the deprecated MIME methods of the core classes to the {@code OutlookMessageMimeConverter}
+ * of the {@code jotlmsg-mime} module, which cannot be referenced directly.
+ * <p>This class is only loaded when one of those methods is invoked, hence the mail API is not
+ * needed by the core classes otherwise.</p>
+ * 
+ * @author Cedric Tabin
+ */
+final class MimeConverterBridge {
+    private static final String CONVERTER_CLASS = "ch.astorm.jotlmsg.OutlookMessageMimeConverter";
+    
+    private MimeConverterBridge() {}
+    
+    /**
+     * Invokes the static method {@code name} of the converter.
+     * 
+     * @param name The name of the method.
+     * @param parameterTypes The types of the parameters.
+     * @param args The arguments.
+     * @return The result of the method.
+     * @throws IOException If an I/O error occurs.
+     * @throws MessagingException If the conversion fails.
+     * @throws IllegalStateException If the {@code jotlmsg-mime} module is not available.
+     */
+    static Object invoke(String name, Class<?>[] parameterTypes, Object... args) throws IOException, MessagingException {
+        Method method;
+        try { method = Class.forName(CONVERTER_CLASS).getMethod(name, parameterTypes); }
+        catch(ClassNotFoundException | NoSuchMethodException e) { throw new IllegalStateException("the jotlmsg-mime module is not available", e); }
+        
+        try { return method.invoke(null, args); }
+        catch(IllegalAccessException iae) { throw new IllegalStateException(iae); }
+        catch(InvocationTargetException ite) {
+            Throwable cause = ite.getCause();
+            if(cause instanceof IOException) { throw (IOException)cause; }
+            if(cause instanceof MessagingException) { throw (MessagingException)cause; }
+            if(cause instanceof RuntimeException) { throw (RuntimeException)cause; }
+            if(cause instanceof Error) { throw (Error)cause; }
+            throw new IllegalStateException(cause);
+        }
+    }
+    
+    /**
+     * Invokes {@code OutlookMessageMimeConverter.getAddress(recipient)}.
+     * 
+     * @param recipient The recipient.
+     * @return The address or null.
+     * @throws AddressException If the email is not valid.
+     */
+    static Address getAddress(OutlookMessageRecipient recipient) throws AddressException {
+        try { return (Address)invoke("getAddress", new Class<?>[] { OutlookMessageRecipient.class }, recipient); }
+        catch(AddressException ae) { throw ae; }
+        catch(IOException | MessagingException e) { throw new IllegalStateException(e); } //not thrown by the method
+    }
+}
@@ -0,0 +1,1582 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg;
+
+import ch.astorm.jotlmsg.OutlookMessageAttachment.InputStreamCreator;
+import ch.astorm.jotlmsg.OutlookMessageAttachment.MemoryInputStreamCreator;
+import ch.astorm.jotlmsg.OutlookMessageRecipient.Type;
+import ch.astorm.jotlmsg.io.UncompressedRtfOutputStream;
+import ch.astorm.jotlmsg.io.CompoundFileReader;
+import ch.astorm.jotlmsg.io.CompoundFileWriter;
+import ch.astorm.jotlmsg.io.CompoundFileWriter.StreamSource;
+import ch.astorm.jotlmsg.io.CompoundFileWriter.Version;
+import ch.astorm.jotlmsg.io.EncodedStorage;
+import ch.astorm.jotlmsg.io.EncodingCache;
+import ch.astorm.jotlmsg.io.FlatEntryListStructure;
+import ch.astorm.jotlmsg.io.MessagePropertiesChunk;
+import ch.astorm.jotlmsg.io.MsgWriterContext;
+import ch.astorm.jotlmsg.io.OneOffEntryIDStructure;
+import ch.astorm.jotlmsg.io.PropertiesChunk;
+import static ch.astorm.jotlmsg.io.PropertiesChunk.FLAG_READABLE;
+import static ch.astorm.jotlmsg.io.PropertiesChunk.FLAG_WRITEABLE;
+import ch.astorm.jotlmsg.io.SpooledContent;
+import ch.astorm.jotlmsg.io.StoragePropertiesChunk;
+import ch.astorm.jotlmsg.io.StreamPropertyValue;
+import ch.astorm.jotlmsg.metrics.MessageMetrics;
+import ch.astorm.jotlmsg.metrics.MessageMetrics.Operation;
+import ch.astorm.jotlmsg.metrics.MessageMetrics.Phase;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import org.apache.poi.hsmf.MAPIMessage;
+import org.apache.poi.hsmf.datatypes.AttachmentChunks;
+import org.apache.poi.hsmf.datatypes.ByteChunk;
+import org.apache.poi.hsmf.datatypes.Chunk;
+import org.apache.poi.hsmf.datatypes.MAPIProperty;
+import org.apache.poi.hsmf.datatypes.NameIdChunks;
+import org.apache.poi.hsmf.datatypes.PropertyValue;
+import org.apache.poi.hsmf.datatypes.PropertyValue.BooleanPropertyValue;
+import org.apache.poi.hsmf.datatypes.PropertyValue.LongPropertyValue;
+import org.apache.poi.hsmf.datatypes.PropertyValue.TimePropertyValue;
+import org.apache.poi.hsmf.datatypes.RecipientChunks;
+import org.apache.poi.hsmf.datatypes.StringChunk;
+import org.apache.poi.hsmf.datatypes.Types;
+import org.apache.poi.hsmf.exceptions.ChunkNotFoundException;
+import org.apache.poi.util.CodePageUtil;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.util.StringUtil;
+
+/**
+ * Represents an Outlook message.
+ * <p>This class is meant to be a very simple and easy-to-use API to read and create
+ * {@code .msg} files for Microsoft Outlook. It is also compatible with the standard
+ * {@code jakarta.mail} package, by the usage of the {@code OutlookMessageMimeConverter} of
+ * the {@code jotlmsg-mime} module.</p>
+ * <p>This implementation is capable of generating {@code .msg} files that can be open by
+ * Microsoft Outlook, so it behaves like if the user has created a new email. However it's
+ * purpose is not to make a full-integration of Microsoft Outlook with all the features it
+ * has (such as calendars, appointments, tasks, ...). Those features may be covered in future
+ * developments.</p>
+ * <p>The Microsoft specification {@code MS-OXCMSG} can be found in the {@code ms-specifications}
+ * folder of jotlmsg, or can be downloaded <a href="https://msdn.microsoft.com/en-us/library/cc463900%28v=exchg.80%29.aspx">here</a>.
+ * The detailed list of properties {@code MS-OXPROPS} is also available in the {@code ms-specifications}
+ * folder or <a href="https://msdn.microsoft.com/en-us/library/cc433490%28v=exchg.80%29.aspx">here</a>.</p>
+ * <p>The big attachments read from an {@code InputStream} are kept in temporary files (see
+ * {@link MemoryInputStreamCreator}). The ones created by this message, when it is parsed or through
+ * {@link #addAttachment(java.lang.String, java.lang.String, java.io.InputStream)}, are deleted when
+ * the message is {@link #close() closed} or garbage collected.</p>
+ * 
+ * @author Cedric Tabin
+ */
+public class OutlookMessage implements Closeable {
+    private static final int RECIPIENT_FLAGS_DISPLAY_NAME_INCLUDED = 0x10;
+    private static final int TRANSMITTABLE_DISPLAY_NAME_SAME_AS_DISPLAY_NAME = 0x40;
+    private static final int RECIPIENT_FLAGS_TYPE_SMTP = 0x3;
+    private static final int PARALLEL_ENCODING_THRESHOLD = 32; //below, the parallel encoding costs more than it brings
+    private static final EncodingCache ENCODING_CACHE = EncodingCache.getDefault(); //the names and addresses are often the same between messages
+    private static final byte[] RTF_PLACEHOLDER_COMPRESSED = compressRtf("#empty"); //the RTF body never changes, hence it is encoded once
+    private static final long TRANSCODING_THRESHOLD = 256*1024; //size of the mini stream from which the file is rewritten before being parsed
+    private static final long TRANSCODING_MAX_RATIO = 16; //above, the copy of the file costs more than the walk of the mini stream chain
+    
+    private String subject;
+    private String plainTextBody;
+    private String htmlBody;
+    private String from;
+    private List<String> replyTo;
+    private Date sentDate;
+    private MessageHeaders headers = MessageHeaders.EMPTY;
+    private AttachmentPrefetch attachmentPrefetch;
+    private ForkJoinPool encodingPool;
+    
+    private final Map<Type, List<OutlookMessageRecipient>> recipients = new EnumMap<>(Type.class);
+    private final List<OutlookMessageAttachment> attachments = new ArrayList<>(8);
+    private final List<MemoryInputStreamCreator> ownedCreators = new ArrayList<>(0);
+
+    /**
+     * Number of synthetic messages used by {@link #warmUp()}.
+     */
+    public static final int DEFAULT_WARM_UP_ITERATIONS = 50;
+    
+    /**
+     * Default number of bytes of the {@link InputStreamCreator} attachments that can be kept
+     * in memory while a message is written (4 MB).
+     */
+    public static final int DEFAULT_WRITE_MEMORY_BUDGET = 4*1024*1024;
+    
+    private static volatile int writeMemoryBudget = DEFAULT_WRITE_MEMORY_BUDGET;
+    
+    /**
+     * Format of a MIME date that can be used as pattern in a {@link SimpleDateFormat}.
+     * The {@code Date} header is written with {@link MessageHeaders#formatDate(Date)}.
+     */
+    public static final String MIME_DATE_FORMAT = "EEE, d MMM yyyy HH:mm:ss Z (z)";
+
+    /**
+     * Creates a new empty message.
+     */
+    public OutlookMessage() {}
+    
+    /**
+     * Creates a new message with the data of the specified {@code mapiMessageInputStream}.
+     * 
+     * @param mapiMessageInputStream The source message data.
+     * @throws IOException If an I/O error occurs.
+     */
+    public OutlookMessage(InputStream mapiMessageInputStream) throws IOException {
+        parse(readMAPIMessage(mapiMessageInputStream));
+    }
+    
+    /**
+     * Creates a new message with the data of the specified {@code mapiMessageFile}.
+     * 
+     * @param mapiMessageFile The source message data.
+     * @throws IOException If an I/O error occurs.
+     */
+    public OutlookMessage(File mapiMessageFile) throws IOException {
+        parse(readMAPIMessage(mapiMessageFile));
+    }
+    
+    /**
+     * Creates a new message with the data of the specified {@code mapiMessage}.
+     * All the data will be copied from the source message and the latter can be then discarded.
+     * 
+     * @param mapiMessage The source message data.
+     * @throws UncheckedIOException If the content of an attachment cannot be stored.
+     */
+    public OutlookMessage(MAPIMessage mapiMessage) {
+        try { parse(new ParsedMessage(mapiMessage, 0, 0, beginEvent(new ParseEvent()))); }
+        catch(IOException ioe) { throw new UncheckedIOException(ioe); }
+    }
+    
+    private void parse(ParsedMessage parsed) throws IOException {
+        MessageMetrics metrics = MessageMetrics.current();
+        long start = nanoTime(metrics);
+        try { parseMAPIMessage(parsed.message()); }
+        catch(IOException ioe) {
+            //the message is not returned to the caller, so the temporary files are deleted right away
+            try { close(); }
+            catch(IOException e) { ioe.addSuppressed(e); }
+            throw ioe;
+        }
+        
+        ParseEvent event = parsed.event();
+        if(event.shouldCommit()) {
+            event.messageSize = parsed.size();
+            event.recipientCount = countRecipients();
+            event.attachmentCount = attachments.size();
+            event.commit();
+        }
+        if(metrics.isEnabled()) {
+            long end = System.nanoTime();
+            metrics.recordPhase(Phase.MESSAGE_EXTRACTION, end-start, 0);
+            metrics.recordMessage(Operation.PARSE, end-(parsed.startNanos()!=0 ? parsed.startNanos() : start), parsed.size(), countRecipients(), attachments.size());
+        }
+    }
+    
+    /**
+     * Holds a {@code MAPIMessage} read from a file, with the time at which the reading has started.
+     * 
+     * @param message The message.
+     * @param startNanos The start of the reading or zero if the metrics are disabled.
+     * @param size The size of the file or zero if unknown.
+     * @param event The Flight Recorder event, which began with the reading.
+     */
+    private static record ParsedMessage(MAPIMessage message, long startNanos, long size, ParseEvent event) {}
+    
+    private static ParsedMessage readMAPIMessage(InputStream mapiMessageInputStream) throws IOException {
+        ParseEvent event = beginEvent(new ParseEvent());
+        MessageMetrics metrics = MessageMetrics.current();
+        long start = nanoTime(metrics);
+        
+        byte[] data;
+        try(mapiMessageInputStream) { data = mapiMessageInputStream.readAllBytes(); } //closed, as done by the POIFSFileSystem
+        MAPIMessage message = new MAPIMessage(new ByteArrayInputStream(transcode(data)));
+        
+        if(metrics.isEnabled()) { metrics.recordPhase(Phase.MAPI_PARSING, System.nanoTime()-start, data.length); }
+        return new ParsedMessage(message, start, data.length, event);
+    }
+    
+    private static ParsedMessage readMAPIMessage(File mapiMessageFile) throws IOException {
+        ParseEvent event = beginEvent(new ParseEvent());
+        MessageMetrics metrics = MessageMetrics.current();
+        long start = nanoTime(metrics);
+        long size = mapiMessageFile.length();
+        
+        MAPIMessage message = readMAPIMessageFile(mapiMessageFile);
+        
+        if(metrics.isEnabled()) { metrics.recordPhase(Phase.MAPI_PARSING, System.nanoTime()-start, size); }
+        return new ParsedMessage(message, start, size, event);
+    }
+    
+    private static MAPIMessage readMAPIMessageFile(File mapiMessageFile) throws IOException {
+        long miniStreamSize;
+        try(FileChannel channel = FileChannel.open(mapiMessageFile.toPath(), StandardOpenOption.READ)) {
+            miniStreamSize = CompoundFileReader.readMiniStreamSize(channel);
+        } catch(IOException ioe) {
+            miniStreamSize = 0; //let the MAPIMessage report the error
+        }
+        
+        if(!shouldTranscode(mapiMessageFile.length(), miniStreamSize)) { return new MAPIMessage(mapiMessageFile); }
+        return new MAPIMessage(new ByteArrayInputStream(transcode(Files.readAllBytes(mapiMessageFile.toPath()))));
+    }
+    
+    /**
+     * Rewrites the specified compound file with 4096-byte sectors if it has a big mini stream.
+     * POI locates each block of the mini stream by following its chain of sectors from
+     * the start, hence parsing a message with thousands of recipients or attachments is
+     * quadratic. The chain is 8 times shorter with 4096-byte sectors.
+     * If the file is invalid, it is returned as-is so that the {@link MAPIMessage} reports the error.
+     * <p>The new file is written in an array of its exact size and the content of the streams
+     * is read from {@code data}, hence both are held in memory at the same time.</p>
+     */
+    private static byte[] transcode(byte[] data) {
+        try {
+            CompoundFileReader reader = new CompoundFileReader(data);
+            if(reader.getVersion()!=Version.V3 || !shouldTranscode(data.length, reader.getMiniStreamSize())) { return data; }
+            
+            CompoundFileWriter writer = new CompoundFileWriter(Version.V4);
+            reader.copyTo(writer);
+            return writer.toByteArray();
+        } catch(IOException ioe) {
+            return data;
+        }
+    }
+    
+    /**
+     * Returns true if a file with the specified mini stream is worth being rewritten. The cost
+     * of the parsing grows with the square of the mini stream, but a file mostly made of big
+     * attachments would be copied for a small gain.
+     */
+    private static boolean shouldTranscode(long fileSize, long miniStreamSize) {
+        return miniStreamSize>=TRANSCODING_THRESHOLD && fileSize<=miniStreamSize*TRANSCODING_MAX_RATIO;
+    }
+    
+    /**
+     * Defines the subject of the message.
+     * This value may be null.
+     */
+    public String getSubject() { return subject; }
+    public void setSubject(String subject) { this.subject = subject; }
+
+    /**
+     * Defines the plain text body of the message. This value may be null.
+     * <p>If both a plain text and an html body are set, then the html body will be
+     * displayed by Outlook.</p>
+     */
+    public String getPlainTextBody() { return plainTextBody; }
+    public void setPlainTextBody(String plainTextBody) { this.plainTextBody = plainTextBody; }
+
+    /**
+     * Defines the HTML body of the message. This value may be null.
+     * <p>If both a plain text and an html body are set, then the html body will be
+     * displayed by Outlook.</p>
+     */
+    public String getHtmlBody() { return htmlBody; }
+    public void setHtmlBody(String htmlBody) { this.htmlBody = htmlBody; }
+
+    /**
+     * Defines the {@code From} email address from which a message has been sent.
+     * This value may be null.
+     */
+    public String getFrom() { return from; }
+    public void setFrom(String from) { this.from = from; }
+
+    /**
+     * Defines the addresses use when the user hits the 'reply' button.
+     * Currently, this value is only used to create a {@code MimeMessage} but isn't
+     * used for {@code .msg} generation.
+     * This value may be null.
+     */
+    public List<String> getReplyTo() { return replyTo; }
+    public void setReplyTo(List<String> replyTo) { this.replyTo = replyTo; }
+
+    /**
+     * Defines the sent date of the message. If this value is not defined, then it
+     * means the message is considered as unsent.
+     * <p>However, it is possible that this value is set when reading a message that
+     * was created by Outlook and may then contains its creation date.</p>
+     */
+    public Date getSentDate() { return sentDate; }
+    public void setSentDate(Date d) { this.sentDate = d; }
+
+    /**
+     * Returns the internet headers of the message (such as {@code Message-ID}, {@code References}
+     * or {@code Received}), as they were read from a received message.
+     * <p>The headers are not written by {@link #writeTo(java.io.OutputStream) writeTo()}, which
+     * only generates the {@code Date} header from the {@link #getSentDate() sent date}.</p>
+     * 
+     * @return The headers, empty for a message that has not been read from a received message.
+     */
+    public MessageHeaders getHeaders() { return headers; }
+
+    /**
+     * Defines how the attachments are read by {@link #writeTo(java.io.OutputStream) writeTo()}
+     * and the MIME conversion. If this value is null (the default), the
+     * attachments are read one after the other. Otherwise, several attachments are read
+     * concurrently on virtual threads.
+     * 
+     * @see AttachmentPrefetch
+     */
+    public AttachmentPrefetch getAttachmentPrefetch() { return attachmentPrefetch; }
+    public void setAttachmentPrefetch(AttachmentPrefetch attachmentPrefetch) { this.attachmentPrefetch = attachmentPrefetch; }
+
+    /**
+     * Defines the pool used by {@link #writeTo(java.io.OutputStream) writeTo()} to encode the
+     * recipient and attachment storages in parallel. If this value is null (the default), the
+     * storages are encoded one after the other. The generated file is the same in both cases.
+     * <p>This is only worth for messages with many recipients or attachments: the storages
+     * are encoded in parallel only if there are at least 32 of them.</p>
+     * 
+     * @see ForkJoinPool#commonPool()
+     */
+    public ForkJoinPool getEncodingPool() { return encodingPool; }
+    public void setEncodingPool(ForkJoinPool encodingPool) { this.encodingPool = encodingPool; }
+
+    /**
+     * Returns all the recipients of the specified type. If there is none, then an
+     * empty list will be returned.
+     * 
+     * @param type The recipients type.
+     * @return An immutable list with all the recipients of the given type.
+     */
+    public List<OutlookMessageRecipient> getRecipients(Type type) {
+        return Collections.unmodifiableList(recipients.getOrDefault(type, new ArrayList<>(0)));
+    }
+    
+    /**
+     * Returns all the recipients of this message. If there is no recipient, an empty
+     * list will be returned.
+     * 
+     * @return A new list with all the recipients.
+     */
+    public List<OutlookMessageRecipient> getAllRecipients() {
+        List<OutlookMessageRecipient> allRecipients = new ArrayList<>(16);
+        recipients.forEach((k,v) -> allRecipients.addAll(v));
+        return allRecipients;
+    }
+    
+    /**
+     * Returns the recipients of this message whose email is not a valid address.
+     * The recipients without email are ignored.
+     * 
+     * @return A new list with the invalid recipients.
+     * @see OutlookMessageRecipient#validate(java.util.Collection)
+     */
+    public List<OutlookMessageRecipient> getInvalidRecipients() {
+        return OutlookMessageRecipient.validate(getAllRecipients());
+    }
+    
+    /**
+     * Creates and add a new {@code OutlookMessageRecipient} to this message.
+     * 
+     * @param type The type.
+     * @param email The email.
+     * @return The created recipient.
+     */
+    public OutlookMessageRecipient addRecipient(Type type, String email) { return addRecipient(type, email, null); }
+    
+    /**
+     * Creates and add a new {@code OutlookMessageRecipient} to this message.
+     * 
+     * @param type The type.
+     * @param email The email.
+     * @param name The name or null.
+     * @return The created recipient.
+     */
+    public OutlookMessageRecipient addRecipient(Type type, String email, String name) {  
+        OutlookMessageRecipient recipient = new OutlookMessageRecipient(type, email, name);
+        addRecipient(recipient);
+        return recipient;
+    }
+    
+    /**
+     * Add the specified {@code recipient} to this message.
+     * 
+     * @param recipient The recipient to add.
+     */
+    public void addRecipient(OutlookMessageRecipient recipient) { 
+        if(recipient==null) { throw new IllegalArgumentException("recipient is not defined"); }
+        List<OutlookMessageRecipient> typeRecipients = recipients.get(recipient.getType());
+        if(typeRecipients==null) {
+            typeRecipients = new ArrayList<>(31);
+            recipients.put(recipient.getType(), typeRecipients);
+        }
+        typeRecipients.add(recipient);
+    }
+    
+    /**
+     * Removes the specified {@code recipient} from this message.
+     * 
+     * @param recipient The recipient to remove.
+     */
+    public void removeRecipient(OutlookMessageRecipient recipient) {
+        List<OutlookMessageRecipient> typeRecipients = recipients.get(recipient.getType());
+        if(typeRecipients!=null) { typeRecipients.remove(recipient); }
+    }
+    
+    /**
+     * Removes all the recipients of the given type.
+     * 
+     * @param type The type of recipients to remove.
+     */
+    public void removeAllRecipients(Type type) {
+        recipients.remove(type);
+    }
+    
+    /**
+     * Removes all the recipients.
+     */
+    public void removeAllRecipients() {
+        recipients.clear();
+    }
+    
+    /**
+     * Returns the attachments of this message. This list can be directly modified.
+     * 
+     * @return The attachments.
+     */
+    public List<OutlookMessageAttachment> getAttachments() {
+        return attachments;
+    }
+    
+    /**
+     * Add a new attachment to this message.
+     * <p>The data of the {@code InputStream} will be loaded into memory or in a temporary file if it is
+     * bigger than {@link MemoryInputStreamCreator#getDefaultMemoryThreshold()} (see {@link MemoryInputStreamCreator}).
+     * If you don't expect to invoke {@link #writeTo(java.io.OutputStream) writeTo()} or the MIME conversion multiple times,
+     * then consider using the {@link #addAttachment(java.lang.String, java.lang.String, ch.astorm.jotlmsg.OutlookMessageAttachment.InputStreamCreator) other}
+     * method, which uses a {@link InputStreamCreator}.</p>
+     * <p>The <a href="https://fr.wikipedia.org/wiki/Type_de_m%C3%A9dias">MIME</a> type must be set
+     * accordingly to the {@code input}.</p>
+     * 
+     * @param name The name.
+     * @param mimeType The MIME type.
+     * @param input The input data.
+     * @return The created attachment.
+     */
+    public OutlookMessageAttachment addAttachment(String name, String mimeType, InputStream input) {
+        OutlookMessageAttachment attachment = new OutlookMessageAttachment(name, mimeType, input);
+        if(input!=null) { ownedCreators.add((MemoryInputStreamCreator)attachment.getInputStreamCreator()); }
+        addAttachment(attachment);
+        return attachment;
+    }
+    
+    /**
+     * Add a new attachment to this message. The {@code InputStreamCreator} can be
+     * set to the attachment later.
+     * <p>To use this method with a single-usage {@code InputStream}:</p>
+     * <pre>message.addAttachment("myAttachment", "text/plain", a -&gt; myInputStream);</pre>
+     * <p>The <a href="https://fr.wikipedia.org/wiki/Type_de_m%C3%A9dias">MIME</a> type must be set
+     * accordingly to the {@code input}.</p>
+     *
+     * @param name The name.
+     * @param mimeType The MIME type.
+     * @param inputStreamCreator The {@code InputStream} creator or null.
+     * @return The created attachment.
+     */
+    public OutlookMessageAttachment addAttachment(String name, String mimeType, InputStreamCreator inputStreamCreator) {
+        OutlookMessageAttachment attachment = new OutlookMessageAttachment(name, mimeType, inputStreamCreator);
+        addAttachment(attachment);
+        return attachment;
+    }
+    
+    /**
+     * Add a new attachment to this message. 
+     * 
+     * @param attachment The attachment.
+     */
+    public void addAttachment(OutlookMessageAttachment attachment) {
+        if(attachment==null) { throw new IllegalArgumentException("attachment is not defined"); }
+        attachments.add(attachment);
+    }
+    
+    /**
+     * Removes the specified attachment from this message.
+     * 
+     * @param attachment The attachment to remove.
+     */
+    public void removeAttachment(OutlookMessageAttachment attachment) {
+        attachments.remove(attachment);
+    }
+    
+    /**
+     * Removes all the attachments from this message.
+     */
+    public void removeAllAttachments() {
+        attachments.clear();
+    }
+    
+    /**
+     * Creates a new {@code MimeMessage} from this {@code OutlookMessage}.
+     * A new {@link jakarta.mail.Session} will be created with an empty {@code Properties} instance.
+     * <p>This method needs the {@code jotlmsg-mime} module.</p>
+     *
+     * @return A new {@code MimeMessage} instance.
+     * @throws IllegalStateException If the {@code jotlmsg-mime} module is not available.
+     * @deprecated Use {@code OutlookMessageMimeConverter.toMimeMessage(message)} of the {@code jotlmsg-mime} module.
+     */
+    @Deprecated(since="3.0.0", forRemoval=true)
+    public MimeMessage toMimeMessage() throws IOException, MessagingException {
+        return (MimeMessage)MimeConverterBridge.invoke("toMimeMessage", new Class<?>[] { OutlookMessage.class }, this);
+    }
+    
+    /**
+     * Creates a new {@code MimeMessage} from this {@code OutlookMessage}.
+     * A new {@link jakarta.mail.Session} will be created with the specified {@code sessionProps}.
+     * <p>This method needs the {@code jotlmsg-mime} module.</p>
+     * 
+     * @param sessionProps The {@code Session} properties.
+     * @return A new {@code MimeMessage} instance.
+     * @throws IllegalStateException If the {@code jotlmsg-mime} module is not available.
+     * @deprecated Use {@code OutlookMessageMimeConverter.toMimeMessage(message, sessionProps)} of the {@code jotlmsg-mime} module.
+     */
+    @Deprecated(since="3.0.0", forRemoval=true)
+    public MimeMessage toMimeMessage(Properties sessionProps) throws IOException, MessagingException {
+        return (MimeMessage)MimeConverterBridge.invoke("toMimeMessage", new Class<?>[] { OutlookMessage.class, Properties.class }, this, sessionProps);
+    }
+    
+    /**
+     * Creates a new {@code MimeMessage} from this {@code OutlookMessage}.
+     * <p>This method needs the {@code jotlmsg-mime} module.</p>
+     * 
+     * @param session The {@code Session} to use for message creation.
+     * @return A new {@code MimeMessage} instance.
+     * @throws IllegalStateException If the {@code jotlmsg-mime} module is not available.
+     * @deprecated Use {@code OutlookMessageMimeConverter.toMimeMessage(message, session)} of the {@code jotlmsg-mime} module.
+     */
+    @Deprecated(since="3.0.0", forRemoval=true)
+    public MimeMessage toMimeMessage(Session session) throws IOException, MessagingException {
+        return (MimeMessage)MimeConverterBridge.invoke("toMimeMessage", new Class<?>[] { OutlookMessage.class, Session.class }, this, session);
+    }
+    
+    /**
+     * Extracts the mail from a mixed mail string, for instance "John Doe &lt;john.doe@hotmail.com&gt;".
+     * <p>This method returns the first string which looks like an email, eg there is an @
+     * with at least one char on each side. Spaces, commas, slashes and angle brackets are
+     * considered as separators.</p>
+     * <p>If there are multiple mails in {@code mixedMailStr}, only the first one will be returned.</p>
+     * <p>This method does not check at all if the returned mail is valid. Use {@link EmailAddress}
+     * to parse and validate an address.</p>
+     *
+     * @param mixedMailStr A string that contains (potentially) an email address.
+     * @return The first string looking like an email or null.
+     */
+    public static String extractEmail(String mixedMailStr) {
+        if(mixedMailStr==null) { return null; }
+        
+        int length = mixedMailStr.length();
+        int start = 0;
+        while(start<length) {
+            boolean found = false;
+            int end = start;
+            for( ; end<length ; ++end) {
+                char c = mixedMailStr.charAt(end);
+                if(isMailSeparator(c)) { break; }
+                if(c=='@' && end>start && end+1<length && !isMailSeparator(mixedMailStr.charAt(end+1))) { found = true; }
+            }
+            if(found) { return mixedMailStr.substring(start, end); }
+            start = end+1;
+        }
+        return null;
+    }
+    
+    private static boolean isMailSeparator(char c) {
+        return c=='<' || c=='>' || c==',' || c=='/' || c==' ' || c=='\t' || c=='\n' || c=='\r' || c=='\f' || c==0x0B;
+    }
+
+    /**
+     * Writes the content of this message to the specified {@code file}. The created
+     * file will be in format {@code .msg} that can be open by Microsoft Outlook.
+     * 
+     * @param file The {@code .msg} file to create.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeTo(File file) throws IOException {
+        writeTo(file, Version.V3);
+    }
+    
+    /**
+     * Writes the content of this message to the specified {@code file} with the given
+     * compound file {@code version}.
+     * 
+     * @param file The {@code .msg} file to create.
+     * @param version The version of the compound file.
+     * @throws IOException If an I/O error occurs.
+     * @see #writeTo(java.io.OutputStream, ch.astorm.jotlmsg.io.CompoundFileWriter.Version)
+     */
+    public void writeTo(File file, Version version) throws IOException {
+        try(FileOutputStream fos = new FileOutputStream(file)) {
+            writeTo(fos, version);
+        }
+    }
+    
+    /**
+     * Defines the maximum number of bytes of the {@link InputStreamCreator} attachments that are
+     * kept in memory while a message is written. Once this budget is consumed, the content of the
+     * next attachments is copied into temporary files, hence the memory used by
+     * {@link #writeTo(java.io.OutputStream) writeTo()} does not depend on the size of the attachments.
+     * <p>This value applies to all the messages. The contents of a {@link MemoryInputStreamCreator},
+     * a {@link ch.astorm.jotlmsg.OutlookMessageAttachment.SizedInputStreamCreator SizedInputStreamCreator}
+     * or an {@link AttachmentStore.Entry} are never copied and do not use this budget.</p>
+     */
+    public static int getWriteMemoryBudget() { return writeMemoryBudget; }
+    public static void setWriteMemoryBudget(int budget) {
+        if(budget<0) { throw new IllegalArgumentException("invalid memory budget: "+budget); }
+        writeMemoryBudget = budget;
+    }
+    
+    /**
+     * Writes the content of this message to the specified {@code outputStream}. The
+     * bytes written represent a {@code .msg} file that can be open by Microsoft Outlook.
+     * The {@code outputStream} will remain open.
+     * <p>The attachments are not loaded in memory: their content is streamed to the
+     * {@code outputStream}. Since the length of an attachment must be known before the
+     * file is written, the content of an {@link InputStreamCreator} is first read in memory,
+     * up to the {@link #getWriteMemoryBudget() write memory budget} shared by all the attachments
+     * of the message, and the remaining ones are copied into temporary files.
+     * The content of a {@link MemoryInputStreamCreator} is used directly, whether it is in memory
+     * or in a temporary file.</p>
+     * 
+     * @param outputStream The stream to write to.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        writeTo(outputStream, Version.V3);
+    }
+    
+    /**
+     * Writes the content of this message to the specified {@code outputStream} with
+     * the given compound file {@code version}.
+     * The {@code outputStream} will remain open.
+     * <p>The {@link Version#V3} format is the one used by Microsoft Outlook. The {@link Version#V4}
+     * format uses 4096-byte sectors, which produces much smaller allocation tables for messages
+     * with big attachments and allows attachments bigger than 2 GB.</p>
+     * 
+     * @param outputStream The stream to write to.
+     * @param version The version of the compound file.
+     * @throws IOException If an I/O error occurs.
+     * @see #writeTo(java.io.OutputStream)
+     */
+    public void writeTo(OutputStream outputStream, Version version) throws IOException {
+        writeTo(outputStream, version, new MsgWriterContext());
+    }
+    
+    /**
+     * Writes the content of this message to the specified {@code outputStream} with
+     * the given compound file {@code version}, by using the buffers of the {@code context}.
+     * The {@code outputStream} will remain open.
+     * <p>Reusing the same context for many messages avoids to allocate the internal buffers
+     * for each message. The {@code context} is reset before the message is written.</p>
+     * 
+     * @param outputStream The stream to write to.
+     * @param version The version of the compound file.
+     * @param context The context that holds the buffers.
+     * @return The number of bytes written.
+     * @throws IOException If an I/O error occurs.
+     * @see MsgWriterContext#forCurrentThread()
+     */
+    public long writeTo(OutputStream outputStream, Version version, MsgWriterContext context) throws IOException {
+        if(context==null) { throw new IllegalArgumentException("context is not defined"); }
+        context.reset();
+        
+        WriteEvent event = beginEvent(new WriteEvent());
+        MessageMetrics metrics = MessageMetrics.current();
+        long start = nanoTime(metrics);
+        
+        long size;
+        List<SpooledContent> spooledContents = new ArrayList<>();
+        try(AttachmentPrefetcher prefetcher = createPrefetcher(getAttachments())) { 
+            size = writeTo(outputStream, version, context, prefetcher, spooledContents, metrics); 
+        } finally {
+            for(SpooledContent spooledContent : spooledContents) { spooledContent.close(); }
+        }
+        
+        if(event.shouldCommit()) {
+            event.version = version.name();
+            event.messageSize = size;
+            event.recipientCount = countRecipients();
+            event.attachmentCount = attachments.size();
+            event.commit();
+        }
+        if(metrics.isEnabled()) { metrics.recordMessage(Operation.WRITE, System.nanoTime()-start, size, countRecipients(), attachments.size()); }
+        return size;
+    }
+    
+    /**
+     * Writes the content of this message to the specified {@code target} file on a new virtual thread.
+     * 
+     * @param target The {@code .msg} file to create.
+     * @return A future completed once the file is written.
+     * @see #writeToAsync(java.nio.file.Path, ch.astorm.jotlmsg.io.CompoundFileWriter.Version, java.util.concurrent.Executor)
+     */
+    public CompletableFuture<Void> writeToAsync(Path target) {
+        return writeToAsync(target, Version.V3, AsyncTask.VIRTUAL_THREAD_EXECUTOR);
+    }
+    
+    /**
+     * Writes the content of this message to the specified {@code target} file with the given
+     * {@code executor}. This message must not be modified until the returned future is completed.
+     * <p>Cancelling the returned future interrupts the writing, including the pending attachment
+     * reads. If the message cannot be written, the partial file is deleted.</p>
+     * 
+     * @param target The {@code .msg} file to create.
+     * @param version The version of the compound file.
+     * @param executor The executor that runs the writing.
+     * @return A future completed once the file is written.
+     * @see #writeTo(java.io.File, ch.astorm.jotlmsg.io.CompoundFileWriter.Version)
+     */
+    public CompletableFuture<Void> writeToAsync(Path target, Version version, Executor executor) {
+        if(target==null) { throw new IllegalArgumentException("target is not defined"); }
+        return AsyncTask.submit(() -> {
+            try { writeTo(target.toFile(), version); }
+            catch(IOException | RuntimeException e) {
+                try { Files.deleteIfExists(target); }
+                catch(IOException de) { e.addSuppressed(de); }
+                throw e;
+            }
+            return null;
+        }, executor);
+    }
+    
+    /**
+     * Writes the content of this message to the specified {@code outputStream} on a new virtual thread.
+     * The {@code outputStream} will remain open.
+     * 
+     * @param outputStream The stream to write to.
+     * @return A future completed once the message is written.
+     * @see #writeToAsync(java.io.OutputStream, ch.astorm.jotlmsg.io.CompoundFileWriter.Version, java.util.concurrent.Executor)
+     */
+    public CompletableFuture<Void> writeToAsync(OutputStream outputStream) {
+        return writeToAsync(outputStream, Version.V3, AsyncTask.VIRTUAL_THREAD_EXECUTOR);
+    }
+    
+    /**
+     * Writes the content of this message to the specified {@code outputStream} with the given
+     * {@code executor}. The {@code outputStream} will remain open. This message must not be
+     * modified until the returned future is completed.
+     * <p>Cancelling the returned future interrupts the writing, including the pending attachment
+     * reads. The content already written in the {@code outputStream} is left as-is.</p>
+     * 
+     * @param outputStream The stream to write to.
+     * @param version The version of the compound file.
+     * @param executor The executor that runs the writing.
+     * @return A future completed once the message is written.
+     * @see #writeTo(java.io.OutputStream, ch.astorm.jotlmsg.io.CompoundFileWriter.Version)
+     */
+    public CompletableFuture<Void> writeToAsync(OutputStream outputStream, Version version, Executor executor) {
+        if(outputStream==null) { throw new IllegalArgumentException("outputStream is not defined"); }
+        return AsyncTask.submit(() -> {
+            writeTo(outputStream, version);
+            return null;
+        }, executor);
+    }
+    
+    /**
+     * Returns a {@code Publisher} that produces the content of this message in chunks of
+     * 512 bytes (one {@link Version#V3} sector).
+     * 
+     * @return A new {@code Publisher}.
+     * @see #toPublisher(ch.astorm.jotlmsg.io.CompoundFileWriter.Version, int)
+     */
+    public Flow.Publisher<ByteBuffer> toPublisher() {
+        return toPublisher(Version.V3, Version.V3.getSectorSize());
+    }
+    
+    /**
+     * Returns a {@code Publisher} that produces the content of this message with the given
+     * compound file {@code version}, in chunks of {@code chunkSize} bytes.
+     * <p>Each subscriber receives the whole file, which is written on a virtual thread. The
+     * chunks are produced on demand: the writing is suspended until the subscriber requests
+     * more chunks, so that a slow subscriber does not require the file to be buffered. The
+     * attachments are read as for {@link #writeTo(java.io.OutputStream, ch.astorm.jotlmsg.io.CompoundFileWriter.Version) writeTo()}.
+     * Cancelling the subscription interrupts the writing.</p>
+     * <p>This message must not be modified while a subscription is active.</p>
+     * 
+     * @param version The version of the compound file.
+     * @param chunkSize The size of the chunks, a multiple of the sector size of the {@code version}.
+     *                  The last chunk may be smaller.
+     * @return A new {@code Publisher}.
+     */
+    public Flow.Publisher<ByteBuffer> toPublisher(Version version, int chunkSize) {
+        return new MessagePublisher(this, version, chunkSize);
+    }
+    
+    /**
+     * Warms up the writing and the parsing of messages with {@link #DEFAULT_WARM_UP_ITERATIONS} synthetic messages.
+     * 
+     * @return The time taken by the warm-up.
+     * @see #warmUp(int)
+     */
+    public static Duration warmUp() {
+        return warmUp(DEFAULT_WARM_UP_ITERATIONS);
+    }
+    
+    /**
+     * Warms up the writing and the parsing of messages, so that the classes of Apache POI are
+     * loaded and initialized and the hot methods are compiled before the first real message.
+     * <p>The synthetic messages have plain text and HTML bodies, all the types of recipients,
+     * reply-to addresses, a sent date and regular and inline attachments. They are written in
+     * memory with both compound file versions and parsed back, and the first one is also written
+     * to and parsed from a temporary file. Those messages are reported to the {@link MessageMetrics}
+     * and to Flight Recorder like any other message.</p>
+     * <p>The MIME conversion is warmed up by the {@code jotlmsg-mime} module.</p>
+     * 
+     * @param iterations The number of synthetic messages.
+     * @return The time taken by the warm-up.
+     */
+    public static Duration warmUp(int iterations) {
+        if(iterations<=0) { throw new IllegalArgumentException("invalid number of iterations: "+iterations); }
+        
+        long start = System.nanoTime();
+        try {
+            File file = File.createTempFile("jotlmsg", ".msg");
+            try {
+                try(OutlookMessage message = createWarmUpMessage(0)) { message.writeTo(file); }
+                try(OutlookMessage parsed = new OutlookMessage(file)) { parsed.getAttachments().get(0).getNewInputStream().close(); }
+            } finally {
+                Files.deleteIfExists(file.toPath());
+            }
+            
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for(int i=0 ; i<iterations ; ++i) {
+                out.reset();
+                try(OutlookMessage message = createWarmUpMessage(i)) { message.writeTo(out, i%2==0 ? Version.V3 : Version.V4); }
+                try(OutlookMessage parsed = new OutlookMessage(new ByteArrayInputStream(out.toByteArray()))) { parsed.getAttachments().get(0).getNewInputStream().close(); }
+            }
+        } catch(IOException ioe) {
+            throw new UncheckedIOException("warm-up failed", ioe);
+        }
+        return Duration.ofNanos(System.nanoTime()-start);
+    }
+    
+    /**
+     * Creates the synthetic message of the specified warm-up {@code iteration}.
+     */
+    static OutlookMessage createWarmUpMessage(int iteration) {
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("Warm-up "+iteration);
+        message.setFrom("Sender <sender@jotlmsg.com>");
+        message.setReplyTo(List.of("reply@jotlmsg.com"));
+        message.setSentDate(new Date());
+        message.setPlainTextBody("Warm-up message "+iteration);
+        message.setHtmlBody("<html><body><p>Warm-up message "+iteration+"</p><img src=\"cid:image@jotlmsg.com\"/></body></html>");
+        message.addRecipient(Type.TO, "to"+iteration+"@jotlmsg.com", "To "+iteration);
+        message.addRecipient(Type.CC, "cc@jotlmsg.com");
+        message.addRecipient(Type.BCC, "bcc@jotlmsg.com", "Bcc");
+        message.addAttachment("file.txt", "text/plain", new ByteArrayInputStream(("attachment "+iteration).getBytes(StandardCharsets.UTF_8)));
+        message.addAttachment("image.png", "image/png", new ByteArrayInputStream(new byte[8192])).setContentId("image@jotlmsg.com");
+        return message;
+    }
+    
+    private long writeTo(OutputStream outputStream, Version version, MsgWriterContext context, AttachmentPrefetcher prefetcher, List<SpooledContent> spooledContents, MessageMetrics metrics) throws IOException {
+        long encodingStart = nanoTime(metrics);
+        CompoundFileWriter fs = new CompoundFileWriter(version);
+        
+        List<OutlookMessageRecipient> recipients = getAllRecipients();
+        List<OutlookMessageAttachment> attachments = getAttachments();
+        String subject = getSubject();
+        
+        //creates the basic structure (page 17, point 2.2.3)
+        createNameIdStorage(fs);
+        
+        //creates the top-level structure of data
+        MessagePropertiesChunk topLevelChunk = createTopLevelChunk(recipients.size(), attachments.size());
+        for(PropertyValue value : createMessageProperties()) { topLevelChunk.setProperty(value); }
+        if(subject!=null) { topLevelChunk.setProperty(createSubjectPropertyValue(subject)); }
+        topLevelChunk.writeTo(fs.getRoot(), context);
+        
+        //creates the recipients
+        writeRecipients(fs, recipients, context, encodingPool);
+        long encodingNanos = metrics.isEnabled() ? System.nanoTime()-encodingStart : 0;
+        
+        //creates the attachments
+        if(attachments.size()>2048) { throw new RuntimeException("too many attachments (max=2048)"); } //limitation, see page 15, point 2.2.2
+        SpooledContent[] contents = new SpooledContent[attachments.size()];
+        long memoryBudget = writeMemoryBudget;
+        for(int i=0 ; i<contents.length ; ++i) {
+            checkInterrupted();
+            AttachmentReadEvent event = beginEvent(new AttachmentReadEvent());
+            long readStart = nanoTime(metrics);
+            if(prefetcher!=null) { contents[i] = prefetcher.get(i); }
+            else {
+                OutlookMessageAttachment attachment = attachments.get(i);
+                contents[i] = attachment.spool((int)Math.max(Math.min(memoryBudget, Integer.MAX_VALUE-8), CompoundFileWriter.MINI_STREAM_CUTOFF));
+                if(attachment.copiesContent()) { memoryBudget -= contents[i].getMemorySize(); }
+            }
+            if(prefetcher==null) { spooledContents.add(contents[i]); }
+            commitEvent(event, attachments.get(i), i, contents[i].getLength(), prefetcher!=null);
+            if(metrics.isEnabled()) { metrics.recordPhase(Phase.ATTACHMENT_READ, System.nanoTime()-readStart, contents[i].getLength()); }
+        }
+        
+        encodingStart = nanoTime(metrics);
+        writeStorages(fs, AttachmentChunks.PREFIX, contents.length, i -> createAttachmentChunk(attachments.get(i), i, contents[i].getLength(), 
+                prefetcher!=null ? releaseAfterWrite(prefetcher, i, contents[i].toStreamSource()) : contents[i].toStreamSource()), context, encodingPool);
+        if(metrics.isEnabled()) { metrics.recordPhase(Phase.PROPERTY_ENCODING, encodingNanos+System.nanoTime()-encodingStart, 0); }
+        
+        return fs.writeTo(outputStream, context);
+    }
+    
+    /**
+     * Creates the properties of the top-level storage, except the subject and the
+     * properties related to the recipients and the attachments count.
+     * 
+     * @return The properties.
+     * @throws IOException If an I/O error occurs.
+     */
+    List<PropertyValue> createMessageProperties() throws IOException {
+        List<String> replyToRecipents = getReplyTo();
+        String plainTextBody = getPlainTextBody();
+        String htmlBody = getHtmlBody();
+        String from = getFrom();
+        boolean hasAttachments = !getAttachments().isEmpty();
+        
+        //constants values can be found here: https://msdn.microsoft.com/en-us/library/ee219881(v=exchg.80).aspx
+        List<PropertyValue> properties = new ArrayList<>(16);
+        properties.add(createLongPropertyValue(MAPIProperty.STORE_SUPPORT_MASK, 0x00040000)); //all the strings will be in unicode
+        properties.add(new PropertyValue(MAPIProperty.MESSAGE_CLASS, FLAG_READABLE | FLAG_WRITEABLE, ENCODING_CACHE.toUnicodeLE("IPM.Note"))); //outlook message
+        properties.add(createBooleanPropertyValue(MAPIProperty.HASATTACH, hasAttachments));
+        if(sentDate==null) { properties.add(createLongPropertyValue(MAPIProperty.MESSAGE_FLAGS, 8)); } //mfUnsent - https://msdn.microsoft.com/en-us/library/ee160304(v=exchg.80).aspx
+        else {
+            properties.add(createLongPropertyValue(MAPIProperty.MESSAGE_FLAGS, 2)); //mfUnmodified
+            properties.add(createTimePropertyValue(MAPIProperty.CLIENT_SUBMIT_TIME, sentDate));
+            properties.add(new PropertyValue(MAPIProperty.TRANSPORT_MESSAGE_HEADERS, FLAG_READABLE | FLAG_WRITEABLE, StringUtil.getToUnicodeLE("Date: "+MessageHeaders.formatDate(sentDate))));
+        }
+        if(plainTextBody!=null) { properties.add(new PropertyValue(MAPIProperty.BODY, FLAG_READABLE | FLAG_WRITEABLE, StringUtil.getToUnicodeLE(plainTextBody))); }
+        if(htmlBody!=null) {
+            //an RTF body is necessary to show an HTML body in Outlook
+            properties.add(new PropertyValue(MAPIProperty.RTF_COMPRESSED, FLAG_READABLE | FLAG_WRITEABLE, RTF_PLACEHOLDER_COMPRESSED, Types.BINARY));
+            properties.add(createBooleanPropertyValue(MAPIProperty.RTF_IN_SYNC, false));
+            properties.add(new PropertyValue(MAPIProperty.BODY_HTML, FLAG_READABLE | FLAG_WRITEABLE, htmlBody.getBytes(StandardCharsets.UTF_8), Types.BINARY));
+            properties.add(createLongPropertyValue(MAPIProperty.INTERNET_CPID, CodePageUtil.CP_UTF8));
+        }
+        if(from!=null) {
+            byte[] fromBytes = ENCODING_CACHE.toUnicodeLE(from);
+            properties.add(new PropertyValue(MAPIProperty.SENDER_EMAIL_ADDRESS, FLAG_READABLE | FLAG_WRITEABLE, fromBytes)); 
+            properties.add(new PropertyValue(MAPIProperty.SENDER_NAME, FLAG_READABLE | FLAG_WRITEABLE, fromBytes)); 
+        }
+
+        //creates the reply recipients
+        if(replyToRecipents!=null) {
+            FlatEntryListStructure<OneOffEntryIDStructure> fels = new FlatEntryListStructure<>();
+	        String replyToRecipentNames = null;
+	        boolean first = true;
+	        for(String replyToRecipent : replyToRecipents) {
+	            if(first) {
+	                replyToRecipentNames = new String();
+	                first = false;
+	            } else {
+	                replyToRecipentNames += ";";
+	            }
+	            replyToRecipentNames += replyToRecipent; 
+	            fels.addFlatEntryStructure(new OneOffEntryIDStructure(replyToRecipent) );
+	        }
+	
+	        if(replyToRecipentNames!=null && fels.getCount()>0) {
+	            // Note: There must be responding REPLY_RECIPIENT_ENTRIES and REPLY_RECIPIENT_NAMES MAPIProperties.
+	            properties.add(new PropertyValue(MAPIProperty.REPLY_RECIPIENT_ENTRIES, FLAG_READABLE | FLAG_WRITEABLE, fels.toBytes())); 
+	            properties.add(new PropertyValue(MAPIProperty.REPLY_RECIPIENT_NAMES, FLAG_READABLE | FLAG_WRITEABLE, StringUtil.getToUnicodeLE(replyToRecipentNames))); 
+	        } 
+        }
+        
+        return properties;
+    }
+    
+    /**
+     * Creates the named properties storage (page 17, point 2.2.3).
+     * 
+     * @param fs The compound file.
+     */
+    static void createNameIdStorage(CompoundFileWriter fs) {
+        CompoundFileWriter.Storage nameid = fs.getRoot().createStorage(NameIdChunks.NAME);
+        nameid.createStream(PropertiesChunk.PREFIX+"00020102", new byte[0]); //GUID Stream
+        nameid.createStream(PropertiesChunk.PREFIX+"00030102", new byte[0]); //Entry Stream (mandatory, otherwise Outlook crashes)
+        nameid.createStream(PropertiesChunk.PREFIX+"00040102", new byte[0]); //String Stream
+    }
+    
+    /**
+     * Creates the top-level properties chunk for the given counts.
+     * 
+     * @param recipientCount The number of recipients.
+     * @param attachmentCount The number of attachments.
+     * @return The chunk.
+     */
+    static MessagePropertiesChunk createTopLevelChunk(int recipientCount, int attachmentCount) {
+        MessagePropertiesChunk topLevelChunk = new MessagePropertiesChunk();
+        topLevelChunk.setAttachmentCount(attachmentCount);
+        topLevelChunk.setRecipientCount(recipientCount);
+        topLevelChunk.setNextAttachmentId(attachmentCount); //actually indicates the next free id !
+        topLevelChunk.setNextRecipientId(recipientCount); //actually indicates the next free id !
+        return topLevelChunk;
+    }
+    
+    /**
+     * Creates the property that holds the {@code subject}.
+     * 
+     * @param subject The subject.
+     * @return The property.
+     */
+    static PropertyValue createSubjectPropertyValue(String subject) {
+        return new PropertyValue(MAPIProperty.SUBJECT, FLAG_READABLE | FLAG_WRITEABLE, StringUtil.getToUnicodeLE(subject));
+    }
+    
+    /**
+     * Writes the storages of the {@code recipients} in the compound file.
+     * 
+     * @param fs The compound file.
+     * @param recipients The recipients.
+     * @param context The context that holds the buffers.
+     * @param pool The pool used to encode the storages in parallel or null.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void writeRecipients(CompoundFileWriter fs, List<OutlookMessageRecipient> recipients, MsgWriterContext context, ForkJoinPool pool) throws IOException {
+        if(recipients.size()>2048) { throw new RuntimeException("too many recipients (max=2048)"); } //limitation, see page 15, point 2.2.1
+        writeStorages(fs, RecipientChunks.PREFIX, recipients.size(), i -> createRecipientChunk(recipients.get(i), i), context, pool);
+    }
+    
+    /**
+     * Creates the properties chunk of a {@code recipient}.
+     * 
+     * @param recipient The recipient.
+     * @param index The index of the recipient.
+     * @return The chunk.
+     */
+    static StoragePropertiesChunk createRecipientChunk(OutlookMessageRecipient recipient, int index) {
+        String name = recipient.getName();
+        String email = recipient.getEmail();
+        Type type = recipient.getType();
+        
+        int rt = type==Type.TO ? 1 :
+                 type==Type.CC ? 2 :
+                                 3 ;
+        
+        StoragePropertiesChunk recipStorage = new StoragePropertiesChunk();
+        recipStorage.setProperty(createLongPropertyValue(MAPIProperty.RECIPIENT_FLAGS, TRANSMITTABLE_DISPLAY_NAME_SAME_AS_DISPLAY_NAME | RECIPIENT_FLAGS_DISPLAY_NAME_INCLUDED | RECIPIENT_FLAGS_TYPE_SMTP));
+        recipStorage.setProperty(createLongPropertyValue(MAPIProperty.OBJECT_TYPE, 6)); //MAPI_MAILUSER
+        recipStorage.setProperty(createLongPropertyValue(MAPIProperty.DISPLAY_TYPE, 0)); //DT_MAILUSER
+        recipStorage.setProperty(createLongPropertyValue(MAPIProperty.RECIPIENT_TYPE, rt));
+        recipStorage.setProperty(new PropertyValue(MAPIProperty.ADDRTYPE, FLAG_READABLE | FLAG_WRITEABLE, ENCODING_CACHE.toUnicodeLE("SMTP")));
+        recipStorage.setProperty(createLongPropertyValue(MAPIProperty.ROWID, index));
+        if(name!=null) { 
+            byte[] nameBytes = ENCODING_CACHE.toUnicodeLE(name);
+            recipStorage.setProperty(new PropertyValue(MAPIProperty.DISPLAY_NAME, FLAG_READABLE | FLAG_WRITEABLE, nameBytes)); 
+            recipStorage.setProperty(new PropertyValue(MAPIProperty.TRANSMITABLE_DISPLAY_NAME, FLAG_READABLE | FLAG_WRITEABLE, nameBytes));
+            recipStorage.setProperty(new PropertyValue(MAPIProperty.RECIPIENT_DISPLAY_NAME, FLAG_READABLE | FLAG_WRITEABLE, nameBytes));
+        }
+        if(email!=null) { 
+            byte[] emailBytes = ENCODING_CACHE.toUnicodeLE(email);
+            recipStorage.setProperty(new PropertyValue(MAPIProperty.EMAIL_ADDRESS, FLAG_READABLE | FLAG_WRITEABLE, emailBytes)); 
+            if(name==null) {
+                recipStorage.setProperty(new PropertyValue(MAPIProperty.DISPLAY_NAME, FLAG_READABLE | FLAG_WRITEABLE, emailBytes)); 
+                recipStorage.setProperty(new PropertyValue(MAPIProperty.RECIPIENT_DISPLAY_NAME, FLAG_READABLE | FLAG_WRITEABLE, emailBytes)); 
+            }
+        }
+
+        byte[] entryID = ENCODING_CACHE.getOneOffEntryID(name != null ? name : "", email != null ? email : "");
+        recipStorage.setProperty(new PropertyValue(MAPIProperty.ENTRY_ID, FLAG_READABLE | FLAG_WRITEABLE, entryID));
+        recipStorage.setProperty(new PropertyValue(MAPIProperty.RECIPIENT_ENTRY_ID, FLAG_READABLE | FLAG_WRITEABLE, entryID, Types.BINARY));
+        
+        return recipStorage;
+    }
+    
+    /**
+     * Writes {@code count} storages in the compound file. The storages are named from
+     * the {@code prefix} and their index (page 15, point 2.2.1).
+     * <p>If a {@code pool} is given and there are enough storages, the chunks are created
+     * and encoded in parallel, then added to the compound file in their order. The result
+     * is the same as the sequential one.</p>
+     * 
+     * @param fs The compound file.
+     * @param prefix The prefix of the storages names.
+     * @param count The number of storages.
+     * @param chunks Creates the chunk of the storage at a given index.
+     * @param context The context that holds the buffers.
+     * @param pool The pool used to encode the storages in parallel or null.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void writeStorages(CompoundFileWriter fs, String prefix, int count, IntFunction<? extends PropertiesChunk> chunks, MsgWriterContext context, ForkJoinPool pool) throws IOException {
+        if(pool==null || count<PARALLEL_ENCODING_THRESHOLD) {
+            for(int i=0 ; i<count ; ++i) { chunks.apply(i).writeTo(fs.getRoot().createStorage(getStorageName(prefix, i)), context); }
+            return;
+        }
+        
+        EncodedStorage[] encoded;
+        try {
+            encoded = pool.submit(() -> IntStream.range(0, count).parallel()
+                                                 .mapToObj(i -> encode(chunks.apply(i)))
+                                                 .toArray(EncodedStorage[]::new)).get();
+        } catch(InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while encoding the storages");
+        } catch(ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if(cause instanceof UncheckedIOException) { throw ((UncheckedIOException)cause).getCause(); }
+            if(cause instanceof RuntimeException) { throw (RuntimeException)cause; }
+            if(cause instanceof Error) { throw (Error)cause; }
+            throw new IOException(cause);
+        }
+        
+        for(int i=0 ; i<count ; ++i) { encoded[i].writeTo(fs.getRoot().createStorage(getStorageName(prefix, i))); }
+    }
+    
+    private static EncodedStorage encode(PropertiesChunk chunk) {
+        try { return chunk.encode(); }
+        catch(IOException ioe) { throw new UncheckedIOException(ioe); }
+    }
+    
+    /**
+     * Returns a {@code StreamSource} that gives back the content of the attachment at the given
+     * {@code index} to the {@code prefetcher} once it has been written.
+     * 
+     * @param prefetcher The prefetcher that owns the content.
+     * @param index The index of the attachment.
+     * @param source The source of the content.
+     * @return A new {@code StreamSource}.
+     */
+    private static StreamSource releaseAfterWrite(AttachmentPrefetcher prefetcher, int index, StreamSource source) {
+        return out -> {
+            try { source.writeTo(out); }
+            finally { prefetcher.release(index); }
+        };
+    }
+    
+    /**
+     * Creates the properties chunk of an {@code attachment}.
+     * 
+     * @param attachment The attachment.
+     * @param index The index of the attachment.
+     * @param data The content of the attachment.
+     * @return The chunk.
+     */
+    static StoragePropertiesChunk createAttachmentChunk(OutlookMessageAttachment attachment, int index, SpooledContent data) {
+        return createAttachmentChunk(attachment, index, data.getLength(), data.toStreamSource());
+    }
+    
+    /**
+     * Creates the properties chunk of an {@code attachment}.
+     * 
+     * @param attachment The attachment.
+     * @param index The index of the attachment.
+     * @param length The length of the content.
+     * @param source The source of the content.
+     * @return The chunk.
+     */
+    static StoragePropertiesChunk createAttachmentChunk(OutlookMessageAttachment attachment, int index, long length, StreamSource source) {
+        String name = attachment.getName();
+        String mimeType = attachment.getMimeType();
+        String contentId = attachment.getContentId();
+        
+        StoragePropertiesChunk attachStorage = new StoragePropertiesChunk();
+        attachStorage.setProperty(createLongPropertyValue(MAPIProperty.OBJECT_TYPE, 7)); //MAPI_ATTACH
+        if(name!=null) { 
+            byte[] nameBytes = ENCODING_CACHE.toUnicodeLE(name);
+            attachStorage.setProperty(new PropertyValue(MAPIProperty.ATTACH_FILENAME, FLAG_READABLE | FLAG_WRITEABLE, nameBytes)); 
+            attachStorage.setProperty(new PropertyValue(MAPIProperty.ATTACH_LONG_FILENAME, FLAG_READABLE | FLAG_WRITEABLE, nameBytes)); 
+        }
+        if(mimeType!=null) { attachStorage.setProperty(new PropertyValue(MAPIProperty.ATTACH_MIME_TAG, FLAG_READABLE | FLAG_WRITEABLE, ENCODING_CACHE.toUnicodeLE(mimeType))); }
+        if(contentId!=null) {
+            attachStorage.setProperty(new PropertyValue(MAPIProperty.ATTACH_CONTENT_ID, FLAG_READABLE | FLAG_WRITEABLE, StringUtil.getToUnicodeLE(contentId), Types.UNICODE_STRING));
+            attachStorage.setProperty(createLongPropertyValue(MAPIProperty.ATTACH_FLAGS, 4));
+        }
+        attachStorage.setProperty(createLongPropertyValue(MAPIProperty.ATTACH_NUM, index));
+        attachStorage.setProperty(createLongPropertyValue(MAPIProperty.ATTACH_METHOD, 1)); //ATTACH_BY_VALUE
+        attachStorage.setProperty(new StreamPropertyValue(MAPIProperty.ATTACH_DATA, FLAG_READABLE | FLAG_WRITEABLE, length, source));
+        return attachStorage;
+    }
+    
+    /**
+     * Returns the name of the recipient or attachment storage at the given {@code index}.
+     * 
+     * @param prefix The prefix of the storage.
+     * @param index The index.
+     * @return The name of the storage (page 15, point 2.2.1).
+     */
+    static String getStorageName(String prefix, int index) {
+        String rid = ""+Integer.toHexString(index);
+        while(rid.length()<8) { rid = "0"+rid; }
+        return prefix+rid;
+    }
+    
+    /**
+     * Releases the content of the attachments read from an {@code InputStream} by this message,
+     * including their temporary files. Those are the attachments of a parsed message and the ones
+     * added through {@link #addAttachment(java.lang.String, java.lang.String, java.io.InputStream)}:
+     * they cannot be read anymore once the message is closed.
+     * <p>The {@link InputStreamCreator} instances given to this message, including the
+     * {@link MemoryInputStreamCreator} ones, are left untouched and must be closed by their owner.</p>
+     * 
+     * @throws IOException If an I/O error occurs.
+     * @see MemoryInputStreamCreator#close()
+     */
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        for(MemoryInputStreamCreator creator : ownedCreators) {
+            try { creator.close(); }
+            catch(IOException e) { if(exception==null) { exception = e; } }
+        }
+        ownedCreators.clear();
+        if(exception!=null) { throw exception; }
+    }
+    
+    AttachmentPrefetcher createPrefetcher(List<OutlookMessageAttachment> attachments) {
+        AttachmentPrefetch prefetch = getAttachmentPrefetch();
+        return prefetch!=null && !attachments.isEmpty() ? new AttachmentPrefetcher(prefetch, attachments) : null;
+    }
+
+    byte[] readAttachement(OutlookMessageAttachment attachment, AttachmentPrefetcher prefetcher, int index) throws IOException {
+        AttachmentReadEvent event = beginEvent(new AttachmentReadEvent());
+        MessageMetrics metrics = MessageMetrics.current();
+        long start = nanoTime(metrics);
+        
+        byte[] data;
+        if(prefetcher==null) { data = readAttachement(attachment); }
+        else {
+            data = prefetcher.get(index).toByteArray();
+            prefetcher.release(index);
+        }
+        
+        commitEvent(event, attachment, index, data.length, prefetcher!=null);
+        if(metrics.isEnabled()) { metrics.recordPhase(Phase.ATTACHMENT_READ, System.nanoTime()-start, data.length); }
+        return data;
+    }
+
+    private byte[] readAttachement(OutlookMessageAttachment attachment) throws IOException {
+        checkInterrupted();
+        try(InputStream is = attachment.getNewInputStream()) {
+            if(is==null) { throw new IllegalStateException("null inputstream for attachement "+attachment.getName()+" ("+attachment.getMimeType()+")"); }
+            return IOUtils.toByteArray(is);
+        }
+    }
+
+    int countRecipients() {
+        int count = 0;
+        for(List<OutlookMessageRecipient> typeRecipients : recipients.values()) { count += typeRecipients.size(); }
+        return count;
+    }
+    
+    /**
+     * Begins the specified Flight Recorder {@code event} if it is enabled.
+     */
+    static <T extends jdk.jfr.Event> T beginEvent(T event) {
+        if(event.isEnabled()) { event.begin(); }
+        return event;
+    }
+    
+    private static void commitEvent(AttachmentReadEvent event, OutlookMessageAttachment attachment, int index, long size, boolean prefetched) {
+        if(event.shouldCommit()) {
+            event.name = attachment.getName();
+            event.mimeType = attachment.getMimeType();
+            event.index = index;
+            event.size = size;
+            event.prefetched = prefetched;
+            event.commit();
+        }
+    }
+    
+    /**
+     * Returns the current time if the {@code metrics} are enabled, so that the clock
+     * is not read otherwise.
+     */
+    static long nanoTime(MessageMetrics metrics) {
+        return metrics.isEnabled() ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Stops the reading of the attachments if the current thread has been interrupted,
+     * for instance when an asynchronous writing is cancelled.
+     */
+    private static void checkInterrupted() throws InterruptedIOException {
+        if(Thread.currentThread().isInterrupted()) { throw new InterruptedIOException("interrupted while reading the attachments"); }
+    }
+
+    private static byte[] compressRtf(String rtf) {
+        ByteArrayOutputStream compressedRtf = new ByteArrayOutputStream();
+        try (UncompressedRtfOutputStream uncompressedRtfOutputStream = new UncompressedRtfOutputStream(compressedRtf)) {
+            uncompressedRtfOutputStream.write(rtf.getBytes(StandardCharsets.UTF_8));
+        } catch(IOException ioe) {
+            throw new UncheckedIOException(ioe); //cannot happen, everything is in memory
+        }
+        return compressedRtf.toByteArray();
+    }
+
+    private static BooleanPropertyValue createBooleanPropertyValue(MAPIProperty property, boolean value) {
+        final var propertyValue = new PropertyValue.BooleanPropertyValue(property, FLAG_READABLE | FLAG_WRITEABLE, new byte[2]);
+        propertyValue.setValue(value);
+        return propertyValue;
+    }
+
+    private static LongPropertyValue createLongPropertyValue(MAPIProperty property, int value) {
+        final var propertyValue = new PropertyValue.LongPropertyValue(property, FLAG_READABLE | FLAG_WRITEABLE, new byte[4]);
+        propertyValue.setValue(value);
+        return propertyValue;
+    }
+
+    private static TimePropertyValue createTimePropertyValue(MAPIProperty property, Date value) {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTime(value);
+        return createTimePropertyValue(property, calendar);
+    }
+
+    private static TimePropertyValue createTimePropertyValue(MAPIProperty property, Calendar value) {
+        final var propertyValue = new PropertyValue.TimePropertyValue(property, FLAG_READABLE | FLAG_WRITEABLE, new byte[8]);
+        propertyValue.setValue(value);
+        return propertyValue;
+    }
+
+    private void parseMAPIMessage(MAPIMessage mapiMessage) throws IOException {
+        silent(() -> parseHeaders(mapiMessage));
+        silent(() -> parseFrom(mapiMessage));
+        silent(() -> parseReplyTo(mapiMessage));
+        silent(() -> parseSubject(mapiMessage));
+        silent(() -> parseTextBody(mapiMessage));
+        silent(() -> parseHtmlBody(mapiMessage));
+        silent(() -> parseRecipients(mapiMessage));
+        silent(() -> parseAttachments(mapiMessage));
+    }
+    
+    /**
+     * Parses the From field from the {@code mapiMessage}.
+     * The parsing will continue, even if a chunk is not found.
+     * 
+     * @param mapiMessage The message to parse.
+     * @throws ChunkNotFoundException If some data is not find in the {@code mapiMessage}.
+     */
+    protected void parseFrom(MAPIMessage mapiMessage) throws ChunkNotFoundException {
+        this.from = mapiMessage.getDisplayFrom();
+        if(from!=null) { this.from = from.trim(); }
+        if(from!=null && from.isEmpty()) { this.from = null; }
+    }
+    
+    /**
+     * Parses the Reply-To field from the {@code mapiMessage}.
+     * The parsing will continue, even if a chunk is not found.
+     * Currently, this method does nothing.
+     * 
+     * @param mapiMessage The message to parse.
+     * @throws ChunkNotFoundException If some data is not found in the {@code mapiMessage}.
+     */
+    protected void parseReplyTo(MAPIMessage mapiMessage) throws ChunkNotFoundException {
+        // Note: There should be also a responding MAPIProperty.REPLY_RECIPIENT_NAMES entry.
+        byte[] replyToRecipentBytes = null;
+        List<Chunk> replyEntriesChunks = mapiMessage.getMainChunks().getAll().get(MAPIProperty.REPLY_RECIPIENT_ENTRIES);
+        if(replyEntriesChunks!=null && !replyEntriesChunks.isEmpty()) {
+            for(Chunk chunk : replyEntriesChunks) {
+                if(chunk instanceof ByteChunk) {
+                    ByteChunk bc = (ByteChunk)chunk;
+                    replyToRecipentBytes = bc.getValue();
+                }
+            }
+        }
+        if(replyToRecipentBytes!=null) {
+            FlatEntryListStructure<OneOffEntryIDStructure> fels = new FlatEntryListStructure<>(OneOffEntryIDStructure.class, replyToRecipentBytes);
+            List<String> replyToRecipents = new ArrayList<>();
+            for(OneOffEntryIDStructure ooes : fels) {
+                replyToRecipents.add(ooes.getEmailAddress());
+            }
+            setReplyTo(replyToRecipents);
+        }
+    }
+    
+    /**
+     * Parses the Subject field from the {@code mapiMessage}.
+     * The parsing will continue, even if a chunk is not found.
+     * 
+     * @param mapiMessage The message to parse.
+     * @throws ChunkNotFoundException If some data is not found in the {@code mapiMessage}.
+     */
+    protected void parseSubject(MAPIMessage mapiMessage) throws ChunkNotFoundException { 
+        this.subject = mapiMessage.getSubject();
+        if(subject!=null) { this.subject = subject.trim(); }
+        if(subject!=null && subject.isEmpty()) { this.subject = null; }
+    }
+    
+    /**
+     * Parses the text body from the {@code mapiMessage}.
+     * The parsing will continue, even if a chunk is not found.
+     * 
+     * @param mapiMessage The message to parse.
+     * @throws ChunkNotFoundException If some data is not found in the {@code mapiMessage}.
+     */
+    protected void parseTextBody(MAPIMessage mapiMessage) throws ChunkNotFoundException {
+        this.plainTextBody = mapiMessage.getTextBody();
+        if(plainTextBody!=null) { this.plainTextBody = plainTextBody.trim(); }
+        if(plainTextBody!=null && plainTextBody.isEmpty()) { this.plainTextBody = null; }
+    }
+
+    /**
+     * Parses the HTML body from the {@code mapiMessage}.
+     * The parsing will continue, even if a chunk is not found.
+     *
+     * @param mapiMessage The message to parse.
+     * @throws ChunkNotFoundException If some data is not found in the {@code mapiMessage}.
+     */
+    protected void parseHtmlBody(MAPIMessage mapiMessage) throws ChunkNotFoundException {
+        this.htmlBody = mapiMessage.getHtmlBody();
+        if(htmlBody!=null) { this.htmlBody = htmlBody.trim(); }
+        if(htmlBody!=null && htmlBody.isEmpty()) { this.htmlBody = null; }
+    }
+    
+    /**
+     * Parses the recipients from the {@code mapiMessage}.
+     * The parsing will continue, even if a chunk is not found.
+     * 
+     * @param mapiMessage The message to parse.
+     * @throws ChunkNotFoundException If some data is not found in the {@code mapiMessage}.
+     */
+    protected void parseRecipients(MAPIMessage mapiMessage) throws ChunkNotFoundException {
+        RecipientChunks[] recipientChunks = mapiMessage.getRecipientDetailsChunks();
+        for(RecipientChunks recipientChunk : recipientChunks) {
+            String name = recipientChunk.getRecipientName();
+            String email = recipientChunk.getRecipientEmailAddress();
+            
+            if(name!=null && email!=null && name.equals(email)) {
+                name = null;
+            }
+            
+            Type type = Type.TO;
+            List<PropertyValue> values = recipientChunk.getProperties().get(MAPIProperty.RECIPIENT_TYPE);
+            if(values!=null && !values.isEmpty()) { 
+                int value = (int)values.get(0).getValue();
+                if(value==1) { type = Type.TO; }
+                else if(value==2) { type = Type.CC; }
+                else if(value==3) { type = Type.BCC; }
+            }
+            
+            addRecipient(type, email, name);
+        }
+    }
+    
+    /**
+     * Parses the MIME headers of the {@code mapiMessage}. The header block is kept as is
+     * in {@link #getHeaders()} and only the {@code Date} header is read from it.
+     * 
+     * @param mapiMessage The message.
+     * @throws ChunkNotFoundException If some data is not found in the {@code mapiMessage}.
+     */
+    protected void parseHeaders(MAPIMessage mapiMessage) throws ChunkNotFoundException {
+        List<Chunk> headerChunks = mapiMessage.getMainChunks().getAll().get(MAPIProperty.TRANSPORT_MESSAGE_HEADERS);
+        if(headerChunks!=null) {
+            for(Chunk chunk : headerChunks) {
+                if(chunk instanceof StringChunk) {
+                    headers = new MessageHeaders(((StringChunk)chunk).getValue());
+                    sentDate = headers.getDate();
+                    break;
+                }
+            }
+        }
+
+        if(sentDate==null) {
+            Calendar msgDate = mapiMessage.getMessageDate();
+            this.sentDate = msgDate.getTime();
+        }
+    }
+
+    /**
+     * Parses the attachments from the {@code mapiMessage}.
+     * The parsing will continue, even if a chunk is not found.
+     * 
+     * @param mapiMessage The message to parse.
+     * @throws ChunkNotFoundException If some data is not found in the {@code mapiMessage}.
+     * @throws IOException If the content of an attachment cannot be stored.
+     */
+    protected void parseAttachments(MAPIMessage mapiMessage) throws ChunkNotFoundException, IOException {
+        AttachmentChunks[] attachmentChunks = mapiMessage.getAttachmentFiles();
+        for(AttachmentChunks attachmentChunk : attachmentChunks) {
+            StringChunk longFileName = attachmentChunk.getAttachLongFileName();
+            StringChunk fileName = attachmentChunk.getAttachFileName();
+            ByteChunk data = attachmentChunk.getAttachData();
+            StringChunk mimeType = attachmentChunk.getAttachMimeTag();
+            StringChunk contentId = attachmentChunk.getAttachContentId();
+
+            String name = longFileName!=null ? longFileName.getValue() :
+                          fileName!=null ?     fileName.getValue() :
+                                               attachmentChunk.getPOIFSName();
+            MemoryInputStreamCreator creator = data!=null ? new MemoryInputStreamCreator(new ByteArrayInputStream(data.getValue())) : null;
+            String mimeTypeVal = mimeType!=null ? mimeType.getValue() : null;
+            OutlookMessageAttachment attachment = addAttachment(name, mimeTypeVal, creator);
+            
+            //the content is stored right away, so that the big attachments do not remain in memory with the source message
+            if(creator!=null) {
+                ownedCreators.add(creator);
+                creator.getContent();
+            }
+            attachment.setContentId(contentId!=null ? contentId.getValue() : null);
+        }
+    }
+    
+    private boolean silent(SilentCallFailure call) throws IOException {
+        try { call.invoke(); }
+        catch(ChunkNotFoundException ignored) { return false; }
+        return true;
+    }
+
+    @FunctionalInterface
+    private static interface SilentCallFailure {
+        void invoke() throws ChunkNotFoundException, IOException;
+    }
+}
@@ -0,0 +1,379 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg;
+
+import ch.astorm.jotlmsg.io.SpooledContent;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * Represents a message attachment.
+ * 
+ * @author Cedric Tabin
+ */
+public class OutlookMessageAttachment {
+    private final String name;
+    private String mimeType;
+    private InputStreamCreator inputStreamCreator;
+    private String contentId;
+    
+    /**
+     * Represents an {@code InputStream} creator.
+     */
+    @FunctionalInterface
+    public static interface InputStreamCreator {
+        
+        /**
+         * Creates a new {@code InputStream} for the specified {@code OutlookMessageAttachment}.
+         * 
+         * @param omt The attachment.
+         * @return A new {@code InputStream}.
+         * @throws IOException If an I/O error occurs.
+         */
+        InputStream newInputStream(OutlookMessageAttachment omt) throws IOException;
+    }
+    
+    /**
+     * Wraps the creation of an {@code InputStream} from a given source {@code InputStream}.
+     * The content of the source {@code InputStream} will be stored in-memory, unless it is
+     * bigger than the memory threshold. In this case, it is written in a temporary file,
+     * which is deleted when this {@code MemoryInputStreamCreator} is closed (see {@link OutlookMessage#close()})
+     * or garbage collected.
+     */
+    public static class MemoryInputStreamCreator implements InputStreamCreator, Closeable {
+        
+        /**
+         * Default maximum number of bytes kept in memory (16 MB).
+         */
+        public static final int DEFAULT_MEMORY_THRESHOLD = 16*1024*1024;
+        
+        private static volatile int defaultMemoryThreshold = DEFAULT_MEMORY_THRESHOLD;
+        
+        private final int memoryThreshold;
+        private InputStream source;
+        private SpooledContent content;
+        private boolean closed;
+        
+        /**
+         * Creates a new {@code MemoryInputStreamCreator} with the specified {@code source}.
+         * The content is kept in memory up to the {@link #getDefaultMemoryThreshold() default threshold}.
+         * 
+         * @param source The source.
+         */
+        public MemoryInputStreamCreator(InputStream source) {
+            this(source, defaultMemoryThreshold);
+        }
+        
+        /**
+         * Creates a new {@code MemoryInputStreamCreator} with the specified {@code source}.
+         * 
+         * @param source The source.
+         * @param memoryThreshold The maximum number of bytes to keep in memory.
+         */
+        public MemoryInputStreamCreator(InputStream source, int memoryThreshold) {
+            if(source==null) { throw new IllegalArgumentException("source is not defined"); }
+            if(memoryThreshold<0) { throw new IllegalArgumentException("invalid memory threshold: "+memoryThreshold); }
+            this.source = source;
+            this.memoryThreshold = memoryThreshold;
+        }
+        
+        /**
+         * Defines the default maximum number of bytes kept in memory by the new
+         * {@code MemoryInputStreamCreator} instances. Bigger contents are written in a
+         * temporary file.
+         * <p>This value applies to the attachments created with an {@code InputStream} and
+         * to the attachments of the parsed messages. It can be set to {@link Integer#MAX_VALUE}
+         * to always keep the content in memory.</p>
+         */
+        public static int getDefaultMemoryThreshold() { return defaultMemoryThreshold; }
+        public static void setDefaultMemoryThreshold(int threshold) { 
+            if(threshold<0) { throw new IllegalArgumentException("invalid memory threshold: "+threshold); }
+            defaultMemoryThreshold = threshold; 
+        }
+        
+        /**
+         * Returns the maximum number of bytes kept in memory by this instance.
+         * 
+         * @return The memory threshold.
+         */
+        public int getMemoryThreshold() {
+            return memoryThreshold;
+        }
+        
+        /**
+         * Reads a new {@code InputStream} with the content of the source.
+         * The first time this method is called, the source {@code InputStream} will be fully
+         * read, closed and stored in-memory or in a temporary file. Then, a new {@code InputStream}
+         * on the stored content is returned.
+         * 
+         * @param omt The attachment.
+         * @return A new {@code InputStream}.
+         * @throws IOException If an I/O error occurs.
+         */
+        @Override
+        public InputStream newInputStream(OutlookMessageAttachment omt) throws IOException {
+            return getContent().newInputStream();
+        }
+        
+        /**
+         * Returns the stored content, reading the source if it has not been done yet.
+         * The returned {@code SpooledContent} is owned by this instance and must not be closed.
+         * 
+         * @return The content.
+         * @throws IOException If an I/O error occurs or if this instance is closed.
+         */
+        synchronized SpooledContent getContent() throws IOException {
+            if(closed) { throw new IOException("content has been released"); }
+            if(content==null) { 
+                try(InputStream is = source) { content = SpooledContent.spool(is, memoryThreshold); }
+                source = null;
+            }
+            return content;
+        }
+        
+        /**
+         * Releases the content. If it has been written in a temporary file, the latter is deleted.
+         * If the source has not been read yet, it is closed.
+         * Once closed, this {@code MemoryInputStreamCreator} cannot create new {@code InputStream}.
+         * 
+         * @throws IOException If an I/O error occurs.
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            if(closed) { return; }
+            closed = true;
+            
+            InputStream is = source;
+            SpooledContent sc = content;
+            source = null;
+            content = null;
+            
+            if(sc!=null) { sc.close(); }
+            if(is!=null) { is.close(); }
+        }
+    }
+    
+    /**
+     * Creates an {@code InputStream} from a source whose exact length is known, without
+     * copying it. Unlike the other {@code InputStreamCreator}, the content does not need
+     * to be read beforehand to know its length when the message is written, and the
+     * content of the files and channels is copied with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+     * when the message is written in a file.
+     */
+    public static final class SizedInputStreamCreator implements InputStreamCreator {
+        private final SpooledContent content;
+        
+        private SizedInputStreamCreator(SpooledContent content) {
+            this.content = content;
+        }
+        
+        /**
+         * Creates a new {@code SizedInputStreamCreator} with the content of {@code file}.
+         * The length of the file is read by this method: the file must not be modified
+         * afterwards.
+         * 
+         * @param file The file.
+         * @return A new {@code SizedInputStreamCreator}.
+         * @throws IOException If an I/O error occurs.
+         */
+        public static SizedInputStreamCreator of(Path file) throws IOException {
+            return new SizedInputStreamCreator(SpooledContent.of(file));
+        }
+        
+        /**
+         * Creates a new {@code SizedInputStreamCreator} with the remaining bytes of {@code buffer}.
+         * The buffer is not copied and its position is not modified.
+         * 
+         * @param buffer The buffer.
+         * @return A new {@code SizedInputStreamCreator}.
+         */
+        public static SizedInputStreamCreator of(ByteBuffer buffer) {
+            return new SizedInputStreamCreator(SpooledContent.of(buffer));
+        }
+        
+        /**
+         * Creates a new {@code SizedInputStreamCreator} with {@code length} bytes of {@code data}
+         * starting at {@code offset}. The array is not copied.
+         * 
+         * @param data The array.
+         * @param offset The offset of the content.
+         * @param length The length of the content.
+         * @return A new {@code SizedInputStreamCreator}.
+         */
+        public static SizedInputStreamCreator of(byte[] data, int offset, int length) {
+            return new SizedInputStreamCreator(SpooledContent.of(data, offset, length));
+        }
+        
+        /**
+         * Creates a new {@code SizedInputStreamCreator} with {@code length} bytes of {@code channel}
+         * starting at {@code position}. The position of the channel is never modified and
+         * the channel must remain open as long as the attachment is used.
+         * 
+         * @param channel The channel.
+         * @param position The position of the content.
+         * @param length The length of the content.
+         * @return A new {@code SizedInputStreamCreator}.
+         */
+        public static SizedInputStreamCreator of(FileChannel channel, long position, long length) {
+            return new SizedInputStreamCreator(SpooledContent.of(channel, position, length));
+        }
+        
+        /**
+         * Returns the length of the content.
+         * 
+         * @return The length, in bytes.
+         */
+        public long getLength() {
+            return content.getLength();
+        }
+        
+        @Override
+        public InputStream newInputStream(OutlookMessageAttachment omt) throws IOException {
+            return content.newInputStream();
+        }
+    }
+    
+    /**
+     * Creates a new {@code OutlookMessageAttachment} with the specified parameters.
+     * 
+     * @param name The attachment's name.
+     * @param mimeType The MIME type of the attachment.
+     * @param creator The {@code InputStreamCreator} or null.
+     */
+    public OutlookMessageAttachment(String name, String mimeType, InputStreamCreator creator) {
+        if(name==null || name.trim().isEmpty()) { throw new IllegalArgumentException("name is not defined"); }
+        
+        this.name = name;
+        this.mimeType = mimeType;
+        this.inputStreamCreator = creator;
+    }
+    
+    /**
+     * Creates a new {@code OutlookMessageAttachment} with the specified parameters.
+     * A new {@code MemoryInputStreamCreator} will be created with the specified {@code input}
+     * as source.
+     * 
+     * @param name The attachment's name.
+     * @param mimeType The MIME type of the attachment.
+     * @param input The input or null.
+     * @see MemoryInputStreamCreator
+     */
+    public OutlookMessageAttachment(String name, String mimeType, InputStream input) {
+        this(name, mimeType, input!=null ? new MemoryInputStreamCreator(input) : null);
+    }
+    
+    /**
+     * Returns the name of the attachment, as seen by the user.
+     * This value cannot be null nor empty.
+     * 
+     * @return The name of the attachment.
+     */
+    public final String getName() { 
+        return name; 
+    }
+
+    /**
+     * Defines the MIME type of the attachment.
+     */
+    public String getMimeType() { return mimeType; }
+    public void setMimeType(String mimeType) { this.mimeType = mimeType; }
+
+    /**
+     * Defines the Content-Id, by which this attachment is referenceable in an HTML body.
+     * Setting this to anything other than {@code null} will make this an inline attachment.
+     */
+    public String getContentId() { return contentId; }
+    public void setContentId(String contentId) { this.contentId = contentId; }
+    
+    /**
+     * Defines the {@code InputStreamCreator} that handles the attachment content.
+     * This value may be null.
+     */
+    public InputStreamCreator getInputStreamCreator() { return inputStreamCreator; }
+    public void setInputStreamCreator(InputStreamCreator is) { this.inputStreamCreator = is; }
+    
+    /**
+     * Returns a new {@code InputStream} to read the content of this attachment.
+     * 
+     * @return A new {@code InputStream}.
+     * @throws IOException If an I/O error occurs.
+     * @see InputStreamCreator#newInputStream(ch.astorm.jotlmsg.OutlookMessageAttachment)
+     */
+    public InputStream getNewInputStream() throws IOException {
+        if(inputStreamCreator==null) { throw new IllegalStateException("missing input stream creator"); }
+        return inputStreamCreator.newInputStream(this);
+    }
+    
+    /**
+     * Returns true if {@link #spool(int)} copies the content of this attachment, that is
+     * if the latter is neither a {@link MemoryInputStreamCreator}, a {@link SizedInputStreamCreator}
+     * nor an {@link AttachmentStore.Entry}.
+     * 
+     * @return True if the content is read from a new {@code InputStream}.
+     */
+    boolean copiesContent() {
+        return !(inputStreamCreator instanceof MemoryInputStreamCreator || inputStreamCreator instanceof SizedInputStreamCreator || inputStreamCreator instanceof AttachmentStore.Entry);
+    }
+    
+    /**
+     * Reads the content of this attachment into a new {@code SpooledContent}.
+     * The content of a {@link MemoryInputStreamCreator}, a {@link SizedInputStreamCreator}
+     * or an {@link AttachmentStore.Entry} is not copied.
+     * 
+     * @param memoryThreshold The maximum number of bytes to keep in memory.
+     * @return A new {@code SpooledContent}.
+     * @throws IOException If an I/O error occurs.
+     */
+    SpooledContent spool(int memoryThreshold) throws IOException {
+        if(inputStreamCreator instanceof MemoryInputStreamCreator) {
+            return ((MemoryInputStreamCreator)inputStreamCreator).getContent().share();
+        }
+        if(inputStreamCreator instanceof SizedInputStreamCreator) {
+            return ((SizedInputStreamCreator)inputStreamCreator).content;
+        }
+        if(inputStreamCreator instanceof AttachmentStore.Entry) {
+            return ((AttachmentStore.Entry)inputStreamCreator).getContent().share();
+        }
+        
+        try(InputStream is = getNewInputStream()) {
+            if(is==null) { throw new IllegalStateException("null inputstream for attachement "+name+" ("+mimeType+")"); }
+            return SpooledContent.spool(is, memoryThreshold);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package ch.astorm.jotlmsg;
+
+import ch.astorm.jotlmsg.io.CompoundFileWriter.Version;
+import ch.astorm.jotlmsg.io.MsgWriterContext;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Writes a large number of {@link OutlookMessage} to {@code .msg} files concurrently.
+ * <p>The messages are written by a fixed number of worker threads. The submitted
+ * messages wait in a bounded queue: when it is full, {@link #submit(ch.astorm.jotlmsg.OutlookMessage, java.nio.file.Path) submit()}
+ * blocks until a worker is available, so that the producer cannot get too far ahead
+ * of the writers.</p>
+ * <p>A message that cannot be written does not abort the batch: its partial file is
+ * deleted and the failure is reported in the {@link Result}.</p>
+ * <pre>
+ * try(OutlookMessageBatchWriter writer = new OutlookMessageBatchWriter(8, 64)) {
+ *     for(...) { writer.submit(message, target); }
+ *     Result result = writer.finish();
+ * }
+ * </pre>
+ * 
+ * @author Cedric Tabin
+ */
+public class OutlookMessageBatchWriter implements AutoCloseable {
+    private final Version version;
+    private final ThreadPoolExecutor executor;
+    private final Semaphore slots;
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final ConcurrentLinkedQueue<Failure> failures = new ConcurrentLinkedQueue<>();
+    private final long startTime = System.nanoTime();
+    private volatile long endTime;
+    
+    /**
+     * Represents a message to write with its target file.
+     * 
+     * @param message The message.
+     * @param target The target file.
+     */
+    public static record Item(OutlookMessage message, Path target) {
+        public Item {
+            if(message==null) { throw new IllegalArgumentException("message is not defined"); }
+            if(target==null) { throw new IllegalArgumentException("target is not defined"); }
+        }
+    }
+    
+    /**
+     * Represents an item that could not be written.
+     * 
+     * @param item The item.
+     * @param exception The exception that occurred.
+     */
+    public static record Failure(Item item, Exception exception) {}
+    
+    /**
+     * Represents the statistics of a batch.
+     */
+    public static class Result {
+        private final long succeeded;
+        private final long bytesWritten;
+        private final long elapsedNanos;
+        private final List<Failure> failures;
+        
+        private Result(long succeeded, long bytesWritten, long elapsedNanos, List<Failure> failures) {
+            this.succeeded = succeeded;
+            this.bytesWritten = bytesWritten;
+            this.elapsedNanos = elapsedNanos;
+            this.failures = Collections.unmodifiableList(failures);
+        }
+        
+        /**
+         * Returns the number of messages written successfully.
+         * 
+         * @return The number of messages.
+         */
+        public long getSucceeded() { return succeeded; }
+        
+        /**
+         * Returns the number of messages that could not be written.
+         * 
+         * @return The number of failures.
+         */
+        public long getFailed() { return failures.size(); }
+        
+        /**
+         * Returns the items that could not be written.
+         * 
+         * @return An immutable list of failures.
+         */
+        public List<Failure> getFailures() { return failures; }
+        
+        /**
+         * Returns the total number of bytes written by the successful messages.
+         * 
+         * @return The number of bytes.
+         */
+        public long getBytesWritten() { return bytesWritten; }
+        
+        /**
+         * Returns the time elapsed since the creation of the batch writer.
+         * 
+         * @return The elapsed time, in nanoseconds.
+         */
+        public long getElapsedNanos() { return elapsedNanos; }
+        
+        /**
+         * Returns the number of messages written per second.
+         * 
+         * @return The throughput in messages per second.
+         */
+        public double getMessagesPerSecond() { return elapsedNanos>0 ? succeeded*1e9/elapsedNanos : 0; }
+        
+        /**
+         * Returns the number of bytes written per second.
+         * 
+         * @return The throughput in bytes per second.
+         */
+        public double getBytesPerSecond() { return elapsedNanos>0 ? bytesWritten*1e9/elapsedNanos : 0; }
+    }
+    
+    /**
+     * Creates a new {@code OutlookMessageBatchWriter} that writes {@link Version#V3} files.
+     * 
+     * @param workers The number of worker threads.
+     * @param queueCapacity The maximum number of messages waiting for a worker.
+     */
+    public OutlookMessageBatchWriter(int workers, int queueCapacity) {
+        this(workers, queueCapacity, Version.V3);
+    }
+    
+    /**
+     * Creates a new {@code OutlookMessageBatchWriter}.
+     * 
+     * @param workers The number of worker threads.
+     * @param queueCapacity The maximum number of messages waiting for a worker.
+     * @param version The version of the compound files.
+     */
+    public OutlookMessageBatchWriter(int workers, int queueCapacity, Version version) {
+        if(workers<1) { throw new IllegalArgumentException("invalid number of workers: "+workers); }
+        if(queueCapacity<1) { throw new IllegalArgumentException("invalid queue capacity: "+queueCapacity); }
+        if(version==null) { throw new IllegalArgumentException("version is not defined"); }
+        
+        this.version = version;
+        this.slots = new Semaphore(queueCapacity);
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), new WorkerThreadFactory());
+    }
+    
+    /**
+     * Submits a message to be written in the specified {@code target} file.
+     * This method blocks while the queue is full.
+     * 
+     * @param message The message to write.
+     * @param target The file to create.
+     * @throws InterruptedException If the current thread is interrupted while waiting.
+     */
+    public void submit(OutlookMessage message, Path target) throws InterruptedException {
+        submit(new Item(message, target));
+    }
+    
+    /**
+     * Submits an item to be written. This method blocks while the queue is full.
+     * 
+     * @param item The item.
+     * @throws InterruptedException If the current thread is interrupted while waiting.
+     */
+    public void submit(Item item) throws InterruptedException {
+        if(item==null) { throw new IllegalArgumentException("item is not defined"); }
+        if(executor.isShutdown()) { throw new IllegalStateException("batch writer finished"); }
+        
+        slots.acquire();
+        try { executor.execute(() -> write(item)); }
+        catch(RejectedExecutionException e) {
+            slots.release();
+            throw new IllegalStateException("batch writer finished", e);
+        }
+    }
+    
+    /**
+     * Submits all the specified items and waits for them to be written.
+     * 
+     * @param items The items to write.
+     * @return The result of the batch.
+     * @throws InterruptedException If the current thread is interrupted while waiting.
+     */
+    public Result writeAll(Stream<Item> items) throws InterruptedException {
+        for(Item item : (Iterable<Item>)items::iterator) { submit(item); }
+        return finish();
+    }
+    
+    /**
+     * Returns the statistics of the messages written so far.
+     * 
+     * @return A snapshot of the current statistics.
+     */
+    public Result getStatistics() {
+        long end = endTime;
+        return new Result(succeeded.sum(), bytesWritten.sum(), (end!=0 ? end : System.nanoTime())-startTime, new ArrayList<>(failures));
+    }
+    
+    /**
+     * Waits for all the submitted messages to be written. No more message can
+     * be submitted after this method has been invoked.
+     * 
+     * @return The result of the batch.
+     * @throws InterruptedException If the current thread is interrupted while waiting.
+     */
+    public Result finish() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        synchronized(this) { if(endTime==0) { endTime = System.nanoTime(); } }
+        return getStatistics();
+    }
+    
+    /**
+     * Waits for all the submitted messages to be written. If the current thread is
+     * interrupted while waiting, this method returns immediately with the interrupt
+     * flag set and the remaining messages are still written by the workers.
+     */
+    @Override
+    public void close() {
+        try { finish(); }
+        catch(InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+    
+    private void write(Item item) {
+        //the item has left the queue
+        slots.release();
+        
+        try {
+            long size;
+            //a FileOutputStream allows the attachments in files to be transferred between the channels
+            try(OutputStream out = new FileOutputStream(item.target().toFile())) { size = item.message().writeTo(out, version, MsgWriterContext.forCurrentThread()); } //the workers are reused, so are their buffers
+            succeeded.increment();
+            bytesWritten.add(size);
+        } catch(Exception e) {
+            try { Files.deleteIfExists(item.target()); }
+            catch(IOException de) { e.addSuppressed(de); }
+            failures.add(new Failure(item, e));
+        }
+    }
+    
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+        
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "jotlmsg-batch-"+counter.incrementAndGet());
+            thread.setDaemon(true); //a writer that is not closed must not prevent the JVM from exiting
+            return thread;
+        }
+    }
+}
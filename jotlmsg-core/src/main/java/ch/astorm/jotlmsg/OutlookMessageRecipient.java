@@ -35,10 +35,10 @@
 package ch.astorm.jotlmsg;
 
 import jakarta.mail.Address;
-import jakarta.mail.Message;
-import jakarta.mail.Message.RecipientType;
 import jakarta.mail.internet.AddressException;
-import jakarta.mail.internet.InternetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * Represents a recipient.
@@ -54,33 +54,24 @@ public class OutlookMessageRecipient {
         /**
          * The main recipient.
          */
-        TO(RecipientType.TO),
+        TO,
         
         /**
          * The recipient that will receive a copy.
          */
-        CC(RecipientType.CC),
+        CC,
         
         /**
          * The recipient that will receive a carbon copy.
          */
-        BCC(RecipientType.BCC);
-        
-        private RecipientType rt;
-        private Type(RecipientType rt) { this.rt = rt; }
-        
-        /**
-         * Returns the corresponding {@code RecipientType} from the {@link Message}
-         * API.
-         * 
-         * @return The recipient type.
-         */
-        RecipientType getRecipientType() { return rt; }
+        BCC
     }
     
     private final Type type;
     private String name;
     private String email;
+    private EmailAddress address; //parsed lazily from the email
+    private String addressError;
 
     /**
      * Creates a new {@code OutlookMessageRecipient} with the given {@code type} and
@@ -127,17 +118,87 @@ public class OutlookMessageRecipient {
      * This value may be null.
      */
     public String getEmail() { return email; }
-    public void setEmail(String email) { this.email = email; }
-
+    public void setEmail(String email) {
+        this.email = email;
+        this.address = null;
+        this.addressError = null;
+    }
+    
+    /**
+     * Returns the parsed email of the recipient. The result is kept until the
+     * email is changed with {@link #setEmail(String)}.
+     * 
+     * @return The address or null if the email is null or empty.
+     * @throws IllegalArgumentException If the email is not a valid address.
+     * @see EmailAddress#parse(String)
+     */
+    public EmailAddress getParsedAddress() {
+        if(email==null || email.isEmpty()) { return null; }
+        if(address==null && addressError==null) { parseEmail(); }
+        if(addressError!=null) { throw new IllegalArgumentException(addressError+": "+email); }
+        return address;
+    }
+    
     /**
      * Returns a new {@code Address} from the email of this recipient. If the email
      * is not defined, this method returns null.
+     * <p>This method needs the {@code jotlmsg-mime} module.</p>
      * 
      * @return A new {@code InternetAddress}.
      * @throws AddressException If the email is not valid.
+     * @throws IllegalStateException If the {@code jotlmsg-mime} module is not available.
+     * @deprecated Use {@link #getParsedAddress()} or {@code OutlookMessageMimeConverter.getAddress(recipient)}
+     *             of the {@code jotlmsg-mime} module.
      */
+    @Deprecated(since="3.0.0", forRemoval=true)
     public Address getAddress() throws AddressException {
-        if(email==null || email.isEmpty()) { return null; }
-        return new InternetAddress(email);
+        return MimeConverterBridge.getAddress(this);
+    }
+    
+    /**
+     * Returns true if the email is a valid address. As with {@link #getParsedAddress()},
+     * the result is kept until the email is changed.
+     * 
+     * @return True if the email is defined and is a valid address.
+     */
+    public boolean isEmailValid() {
+        if(email==null || email.isEmpty()) { return false; }
+        if(address==null && addressError==null) { parseEmail(); }
+        return addressError==null;
+    }
+    
+    private void parseEmail() {
+        int[] bounds = new int[4];
+        String error = EmailAddress.validate(email, bounds);
+        if(error!=null) { addressError = error; }
+        else { address = EmailAddress.create(email, bounds); }
+    }
+    
+    /**
+     * Validates the emails of the specified {@code recipients} and returns the ones which are
+     * not valid. The recipients without email are ignored.
+     * <p>The parsed addresses are kept by each recipient, hence the subsequent calls
+     * to {@link #getParsedAddress()} do not parse the emails again.</p>
+     * 
+     * @param recipients The recipients to validate.
+     * @return The recipients with an invalid email, in their original order.
+     */
+    public static List<OutlookMessageRecipient> validate(Collection<? extends OutlookMessageRecipient> recipients) {
+        if(recipients==null) { throw new IllegalArgumentException("recipients is not defined"); }
+        
+        List<OutlookMessageRecipient> invalids = new ArrayList<>();
+        int[] bounds = new int[4];
+        for(OutlookMessageRecipient recipient : recipients) {
+            String recipientEmail = recipient.email;
+            if(recipientEmail==null || recipientEmail.isEmpty()) { continue; }
+            
+            if(recipient.address==null && recipient.addressError==null) {
+                String error = EmailAddress.validate(recipientEmail, bounds);
+                if(error!=null) { recipient.addressError = error; }
+                else { recipient.address = EmailAddress.create(recipientEmail, bounds); }
+            }
+            if(recipient.addressError!=null) { invalids.add(recipient); }
+        }
+        return invalids;
     }
 }
@@ -0,0 +1,232 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg;
+
+import ch.astorm.jotlmsg.io.CompoundFileWriter;
+import ch.astorm.jotlmsg.io.CompoundFileWriter.Version;
+import ch.astorm.jotlmsg.io.EncodedStorage;
+import ch.astorm.jotlmsg.io.MessagePropertiesChunk;
+import ch.astorm.jotlmsg.io.MsgWriterContext;
+import ch.astorm.jotlmsg.io.SpooledContent;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.poi.hsmf.datatypes.AttachmentChunks;
+import org.apache.poi.hsmf.datatypes.PropertyValue;
+
+/**
+ * Represents an {@link OutlookMessage} frozen into a template.
+ * <p>When many messages share the same sender, reply-to list, bodies and attachments
+ * and only differ by their subject and recipients, the invariant properties and the
+ * attachment storages can be encoded once in an {@code OutlookMessageTemplate}. Each
+ * call to {@link #writeTo(java.io.OutputStream, java.lang.String, java.util.List)} then
+ * only encodes the subject and the recipients.</p>
+ * <p>The template is a snapshot: modifying the {@link OutlookMessage} after the template
+ * has been created has no effect on it. The subject and the recipients of the source
+ * message are ignored. The generated files are identical to the ones generated by
+ * {@link OutlookMessage#writeTo(java.io.OutputStream, ch.astorm.jotlmsg.io.CompoundFileWriter.Version)}
+ * with the same subject and recipients.</p>
+ * <p>This class is thread-safe: many messages can be written concurrently from the same
+ * template. The content of the attachments bigger than {@link #MEMORY_THRESHOLD} is held
+ * in temporary files that are deleted when the template is closed.</p>
+ * 
+ * @author Cedric Tabin
+ */
+public class OutlookMessageTemplate implements Closeable {
+    private final Version version;
+    private final List<PropertyValue> messageProperties;
+    private final List<EncodedStorage> attachmentStorages;
+    private final List<SpooledContent> attachmentContents;
+    private volatile boolean closed;
+    
+    /**
+     * Maximum size of an attachment content kept in memory by the template.
+     */
+    public static final int MEMORY_THRESHOLD = 1024*1024;
+    
+    /**
+     * Creates a new template from the specified {@code message} that will generate
+     * {@link Version#V3} files.
+     * 
+     * @param message The message.
+     * @throws IOException If an I/O error occurs while reading the attachments.
+     */
+    public OutlookMessageTemplate(OutlookMessage message) throws IOException {
+        this(message, Version.V3);
+    }
+    
+    /**
+     * Creates a new template from the specified {@code message}.
+     * 
+     * @param message The message.
+     * @param version The version of the generated compound files.
+     * @throws IOException If an I/O error occurs while reading the attachments.
+     */
+    public OutlookMessageTemplate(OutlookMessage message, Version version) throws IOException {
+        if(message==null) { throw new IllegalArgumentException("message is not defined"); }
+        if(version==null) { throw new IllegalArgumentException("version is not defined"); }
+        
+        List<OutlookMessageAttachment> attachments = message.getAttachments();
+        if(attachments.size()>2048) { throw new RuntimeException("too many attachments (max=2048)"); } //limitation, see page 15, point 2.2.2
+        
+        this.version = version;
+        this.messageProperties = Collections.unmodifiableList(message.createMessageProperties());
+        this.attachmentStorages = new ArrayList<>(attachments.size());
+        this.attachmentContents = new ArrayList<>(attachments.size());
+        
+        try {
+            for(int i=0 ; i<attachments.size() ; ++i) {
+                SpooledContent data = attachments.get(i).spool(MEMORY_THRESHOLD);
+                attachmentContents.add(data);
+                attachmentStorages.add(OutlookMessage.createAttachmentChunk(attachments.get(i), i, data).encode());
+            }
+        } catch(IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Returns the version of the compound files generated by this template.
+     * 
+     * @return The version.
+     */
+    public Version getVersion() {
+        return version;
+    }
+    
+    /**
+     * Writes a message with the specified {@code subject} and {@code recipients} to the given {@code file}.
+     * If the file already exists, it will be overwritten.
+     * 
+     * @param file The file to write to.
+     * @param subject The subject or null.
+     * @param recipients The recipients, in the order they will be written.
+     * @throws IOException If an I/O error occurs.
+     * @throws IllegalStateException If the template is closed.
+     * @see #writeTo(java.io.OutputStream, java.lang.String, java.util.List)
+     */
+    public void writeTo(File file, String subject, List<OutlookMessageRecipient> recipients) throws IOException {
+        if(closed) { throw new IllegalStateException("template is closed"); }
+        try(FileOutputStream fos = new FileOutputStream(file)) {
+            writeTo(fos, subject, recipients);
+        }
+    }
+    
+    /**
+     * Writes a message with the specified {@code subject} and {@code recipients} to the given
+     * {@code outputStream}. The {@code outputStream} will remain open.
+     * 
+     * @param outputStream The stream to write to.
+     * @param subject The subject or null.
+     * @param recipients The recipients, in the order they will be written.
+     * @throws IOException If an I/O error occurs.
+     * @throws IllegalStateException If the template is closed.
+     */
+    public void writeTo(OutputStream outputStream, String subject, List<OutlookMessageRecipient> recipients) throws IOException {
+        writeTo(outputStream, subject, recipients, new MsgWriterContext());
+    }
+    
+    /**
+     * Writes a message with the specified {@code subject} and {@code recipients} to the given
+     * {@code outputStream}, by using the buffers of the {@code context}.
+     * The {@code outputStream} will remain open.
+     * 
+     * @param outputStream The stream to write to.
+     * @param subject The subject or null.
+     * @param recipients The recipients, in the order they will be written.
+     * @param context The context that holds the buffers. It is reset before the message is written.
+     * @throws IOException If an I/O error occurs.
+     * @throws IllegalStateException If the template is closed.
+     * @see MsgWriterContext#forCurrentThread()
+     */
+    public void writeTo(OutputStream outputStream, String subject, List<OutlookMessageRecipient> recipients, MsgWriterContext context) throws IOException {
+        if(closed) { throw new IllegalStateException("template is closed"); }
+        if(recipients==null) { throw new IllegalArgumentException("recipients is not defined"); }
+        if(context==null) { throw new IllegalArgumentException("context is not defined"); }
+        context.reset();
+        
+        CompoundFileWriter fs = new CompoundFileWriter(version);
+        OutlookMessage.createNameIdStorage(fs);
+        
+        MessagePropertiesChunk topLevelChunk = OutlookMessage.createTopLevelChunk(recipients.size(), attachmentStorages.size());
+        for(PropertyValue value : messageProperties) { topLevelChunk.setProperty(value); }
+        if(subject!=null) { topLevelChunk.setProperty(OutlookMessage.createSubjectPropertyValue(subject)); }
+        topLevelChunk.writeTo(fs.getRoot(), context);
+        
+        OutlookMessage.writeRecipients(fs, recipients, context, null);
+        
+        for(int i=0 ; i<attachmentStorages.size() ; ++i) {
+            CompoundFileWriter.Storage attach = fs.getRoot().createStorage(OutlookMessage.getStorageName(AttachmentChunks.PREFIX, i));
+            attachmentStorages.get(i).writeTo(attach);
+        }
+        
+        fs.writeTo(outputStream, context);
+    }
+    
+    /**
+     * Deletes the temporary files that hold the content of the attachments.
+     * The template cannot be used anymore once closed.
+     * 
+     * @throws IOException If a temporary file cannot be deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try { closeAll(attachmentContents); }
+        finally { attachmentContents.clear(); }
+    }
+    
+    /**
+     * Closes all the specified {@code resources}, even if some of them fail. The first
+     * failure is thrown once all the resources have been closed, with the next ones suppressed.
+     */
+    static void closeAll(List<? extends Closeable> resources) throws IOException {
+        IOException exception = null;
+        for(Closeable resource : resources) {
+            try { resource.close(); }
+            catch(IOException e) {
+                if(exception==null) { exception = e; }
+                else { exception.addSuppressed(e); }
+            }
+        }
+        if(exception!=null) { throw exception; }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg.io;
+
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cancels a thread without interrupting it while it reads a {@link FileChannel}.
+ * <p>An interrupted read closes the channel (see {@link java.nio.channels.ClosedByInterruptException}).
+ * A channel given by the caller (see {@link SpooledContent#of(FileChannel, long, long)}) may be shared
+ * by several messages, hence cancelling the writing of one message would break the others. The thread
+ * that registers a guard is interrupted by {@link #cancel()} only outside of the channel reads, which
+ * check the cancellation before each read.</p>
+ * 
+ * @author Cedric Tabin
+ */
+public final class ChannelReadGuard {
+    private static final ThreadLocal<ChannelReadGuard> CURRENT = new ThreadLocal<>();
+    
+    private final Thread thread;
+    private final ReentrantLock lock = new ReentrantLock(); //no synchronized, the guarded threads are mostly virtual
+    private boolean reading;
+    private boolean cancelled;
+    
+    private ChannelReadGuard(Thread thread) {
+        this.thread = thread;
+    }
+    
+    /**
+     * Registers a new guard for the current thread. It must be {@link #unregister() unregistered}
+     * by the same thread once the guarded task is over.
+     * 
+     * @return The guard.
+     */
+    public static ChannelReadGuard register() {
+        ChannelReadGuard guard = new ChannelReadGuard(Thread.currentThread());
+        CURRENT.set(guard);
+        return guard;
+    }
+    
+    /**
+     * Removes this guard from the current thread.
+     */
+    public void unregister() {
+        if(CURRENT.get()==this) { CURRENT.remove(); }
+    }
+    
+    /**
+     * Cancels the guarded thread. It is interrupted right away, unless it is reading a channel:
+     * in this case, it is interrupted once the read is over.
+     */
+    public void cancel() {
+        lock.lock();
+        try {
+            cancelled = true;
+            if(!reading) { thread.interrupt(); }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Returns true if {@link #cancel()} has been invoked.
+     * 
+     * @return True if the guarded thread is cancelled.
+     */
+    public boolean isCancelled() {
+        lock.lock();
+        try { return cancelled; }
+        finally { lock.unlock(); }
+    }
+    
+    /**
+     * Must be invoked by the current thread before it reads a channel, which must be followed
+     * by {@link #endRead()}. An interrupted thread does not read the channel, otherwise the
+     * latter would be closed.
+     * 
+     * @throws InterruptedIOException If the current thread has been interrupted or cancelled.
+     */
+    static void beginRead() throws InterruptedIOException {
+        if(Thread.currentThread().isInterrupted()) { throw new InterruptedIOException("interrupted before reading the channel"); }
+        
+        ChannelReadGuard guard = CURRENT.get();
+        if(guard==null) { return; }
+        guard.lock.lock();
+        try {
+            if(guard.cancelled) { throw new InterruptedIOException("cancelled before reading the channel"); }
+            guard.reading = true;
+        } finally {
+            guard.lock.unlock();
+        }
+    }
+    
+    /**
+     * Must be invoked by the current thread once it has read a channel. If the thread
+     * has been cancelled meanwhile, it is interrupted now.
+     */
+    static void endRead() {
+        ChannelReadGuard guard = CURRENT.get();
+        if(guard==null) { return; }
+        guard.lock.lock();
+        try {
+            guard.reading = false;
+            if(guard.cancelled) { guard.thread.interrupt(); }
+        } finally {
+            guard.lock.unlock();
+        }
+    }
+}
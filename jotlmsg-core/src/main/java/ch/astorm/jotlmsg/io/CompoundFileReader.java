@@ -0,0 +1,341 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+
+package ch.astorm.jotlmsg.io;
+
+import ch.astorm.jotlmsg.io.CompoundFileWriter.Storage;
+import ch.astorm.jotlmsg.io.CompoundFileWriter.Version;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+
+/**
+ * Reads a Compound File Binary (see {@code MS-CFB}) held in memory.
+ * <p>The FAT, the mini FAT and the directory are decoded once when the reader is created,
+ * so that each stream can be located in linear time. The content of the streams is never
+ * copied: {@link #copyTo(CompoundFileWriter)} simply hands slices of the underlying data
+ * to the {@link CompoundFileWriter}, which allows a file to be rewritten with another
+ * {@link Version} in a single pass.</p>
+ * 
+ * @author Cedric Tabin
+ */
+public class CompoundFileReader {
+    private static final long SIGNATURE = 0xE11AB1A1E011CFD0L;
+    private static final int HEADER_SIZE = 512;
+    private static final int HEADER_DIFAT_ENTRIES = 109;
+    private static final int MINI_SECTOR_SHIFT = 6;
+    private static final int MINI_SECTOR_SIZE = 1 << MINI_SECTOR_SHIFT;
+    private static final int DIRECTORY_ENTRY_SIZE = 128;
+    
+    private static final int MAXREGSECT = 0xFFFFFFFA;
+    private static final int ENDOFCHAIN = 0xFFFFFFFE;
+    private static final int NOSTREAM = 0xFFFFFFFF;
+    
+    private static final byte TYPE_STORAGE = 1;
+    private static final byte TYPE_STREAM = 2;
+    private static final byte TYPE_ROOT = 5;
+    
+    private final byte[] data;
+    private final Version version;
+    private final int sectorShift;
+    private final int sectorSize;
+    private final int miniStreamCutoff;
+    private final int[] fat;
+    private final int[] miniFat;
+    private final int[] miniStreamSectors;
+    private final DirectoryEntry[] entries;
+    
+    private static final class DirectoryEntry {
+        private final String name;
+        private final byte type;
+        private final int left;
+        private final int right;
+        private final int child;
+        private final int startSector;
+        private final long size;
+        
+        private DirectoryEntry(String name, byte type, int left, int right, int child, int startSector, long size) {
+            this.name = name;
+            this.type = type;
+            this.left = left;
+            this.right = right;
+            this.child = child;
+            this.startSector = startSector;
+            this.size = size;
+        }
+    }
+    
+    /**
+     * Creates a new {@code CompoundFileReader} for the specified {@code data}. The array
+     * is not copied and must not be modified as long as this reader is used.
+     * 
+     * @param data The content of the compound file.
+     * @throws IOException If {@code data} is not a valid compound file.
+     */
+    public CompoundFileReader(byte[] data) throws IOException {
+        if(data==null) { throw new IllegalArgumentException("data is not defined"); }
+        this.data = data;
+        
+        //page 16, point 2.2
+        ByteBuffer header = ByteBuffer.wrap(data, 0, Math.min(data.length, HEADER_SIZE)).slice().order(ByteOrder.LITTLE_ENDIAN);
+        if(header.remaining()<HEADER_SIZE || header.getLong(0)!=SIGNATURE) { throw new IOException("invalid compound file signature"); }
+        int majorVersion = header.getShort(0x1A);
+        this.version = majorVersion==3 ? Version.V3 : majorVersion==4 ? Version.V4 : null;
+        if(version==null) { throw new IOException("unsupported major version: "+majorVersion); }
+        this.sectorShift = header.getShort(0x1E);
+        this.sectorSize = 1 << sectorShift;
+        if(sectorSize!=version.getSectorSize()) { throw new IOException("invalid sector shift: "+sectorShift); }
+        if(header.getShort(0x20)!=MINI_SECTOR_SHIFT) { throw new IOException("invalid mini sector shift: "+header.getShort(0x20)); }
+        this.miniStreamCutoff = header.getInt(0x38);
+        
+        //page 19, point 2.5: the FAT sectors are listed by the header and the DIFAT chain
+        int fatSectorCount = header.getInt(0x2C);
+        int totalSectors = sectorCount(data.length);
+        if(fatSectorCount<0 || fatSectorCount>totalSectors) { throw new IOException("invalid FAT sector count: "+fatSectorCount); }
+        int entriesPerSector = sectorSize/4;
+        this.fat = new int[Math.min(fatSectorCount*entriesPerSector, totalSectors)];
+        int fatIndex = 0;
+        for(int i=0 ; i<HEADER_DIFAT_ENTRIES && fatIndex<fatSectorCount ; ++i) { readFatSector(header.getInt(0x4C+i*4), fatIndex++); }
+        int difatSector = header.getInt(0x44);
+        for(int visited=0 ; fatIndex<fatSectorCount ; ++visited) {
+            if(visited>=totalSectors) { throw new IOException("DIFAT chain loop"); }
+            ByteBuffer difat = sector(difatSector);
+            for(int i=0 ; i<entriesPerSector-1 && fatIndex<fatSectorCount ; ++i) { readFatSector(difat.getInt(i*4), fatIndex++); }
+            difatSector = difat.getInt((entriesPerSector-1)*4);
+        }
+        
+        //page 24, point 2.6: the directory sectors are only counted in version 4
+        int[] directorySectors = chain(header.getInt(0x30), -1);
+        this.entries = new DirectoryEntry[directorySectors.length*(sectorSize/DIRECTORY_ENTRY_SIZE)];
+        for(int i=0 ; i<entries.length ; ++i) {
+            ByteBuffer sector = sector(directorySectors[i/(sectorSize/DIRECTORY_ENTRY_SIZE)]);
+            entries[i] = readDirectoryEntry(sector, (i%(sectorSize/DIRECTORY_ENTRY_SIZE))*DIRECTORY_ENTRY_SIZE);
+        }
+        if(entries.length==0 || entries[0].type!=TYPE_ROOT) { throw new IOException("root entry not found"); }
+        
+        //page 21, point 2.4: the mini stream is held by the root entry
+        DirectoryEntry root = entries[0];
+        this.miniStreamSectors = chain(root.startSector, sectorCount(root.size));
+        this.miniFat = readTable(chain(header.getInt(0x3C), header.getInt(0x40)));
+    }
+    
+    /**
+     * Returns the size of the mini stream of the compound file held in {@code channel},
+     * by reading only its header and its root entry. The mini stream contains all the
+     * streams smaller than {@link CompoundFileWriter#MINI_STREAM_CUTOFF}.
+     * 
+     * @param channel The channel to read from.
+     * @return The size of the mini stream, in bytes.
+     * @throws IOException If an I/O error occurs or the file is not a valid compound file.
+     */
+    public static long readMiniStreamSize(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header, 0);
+        if(header.getLong(0)!=SIGNATURE) { throw new IOException("invalid compound file signature"); }
+        int sectorShift = header.getShort(0x1E);
+        if(sectorShift!=9 && sectorShift!=12) { throw new IOException("invalid sector shift: "+sectorShift); }
+        
+        //the root entry is always the first entry of the first directory sector
+        ByteBuffer root = ByteBuffer.allocate(DIRECTORY_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, root, ((header.getInt(0x30) & 0xFFFFFFFFL)+1) << sectorShift);
+        return sizeOf(root, 0, header.getShort(0x1A));
+    }
+    
+    /**
+     * Returns the version of the compound file.
+     * 
+     * @return The version.
+     */
+    public Version getVersion() {
+        return version;
+    }
+    
+    /**
+     * Returns the size of the mini stream. The mini stream contains all the streams
+     * smaller than {@link CompoundFileWriter#MINI_STREAM_CUTOFF}.
+     * 
+     * @return The size of the mini stream, in bytes.
+     */
+    public long getMiniStreamSize() {
+        return entries[0].size;
+    }
+    
+    /**
+     * Copies all the storages and streams of the compound file to the specified {@code writer}.
+     * The content of the streams is not copied: it will be read from the data of this reader
+     * when the {@code writer} is written.
+     * 
+     * @param writer The writer.
+     * @throws IOException If the structure of the compound file is invalid.
+     */
+    public void copyTo(CompoundFileWriter writer) throws IOException {
+        if(writer==null) { throw new IllegalArgumentException("writer is not defined"); }
+        copyChildren(entries[0], writer.getRoot(), new BitSet(entries.length));
+    }
+    
+    private void copyChildren(DirectoryEntry storage, Storage target, BitSet visited) throws IOException {
+        //page 27, point 2.6.4: the children form a red-black tree, the in-order traversal is used
+        Deque<DirectoryEntry> stack = new ArrayDeque<>();
+        int current = storage.child;
+        while(current!=NOSTREAM || !stack.isEmpty()) {
+            while(current!=NOSTREAM) {
+                if(current<0 || current>=entries.length || visited.get(current)) { throw new IOException("invalid directory entry: "+current); }
+                visited.set(current);
+                DirectoryEntry entry = entries[current];
+                stack.push(entry);
+                current = entry.left;
+            }
+            
+            DirectoryEntry entry = stack.pop();
+            try {
+                if(entry.type==TYPE_STORAGE) { copyChildren(entry, target.createStorage(entry.name), visited); }
+                else if(entry.type==TYPE_STREAM) { copyStream(entry, target); }
+            } catch(IllegalArgumentException iae) {
+                throw new IOException("invalid directory entry: "+entry.name, iae);
+            }
+            current = entry.right;
+        }
+    }
+    
+    private void copyStream(DirectoryEntry entry, Storage target) throws IOException {
+        long size = entry.size;
+        if(size<miniStreamCutoff) {
+            int[] miniSectors = chain(entry.startSector, (int)((size+MINI_SECTOR_SIZE-1) >>> MINI_SECTOR_SHIFT), miniFat);
+            for(int miniSector : miniSectors) { 
+                long offset = (long)miniSector << MINI_SECTOR_SHIFT;
+                if(offset>=entries[0].size) { throw new IOException("invalid mini sector: "+miniSector); }
+            }
+            target.createStream(entry.name, size, out -> {
+                long remaining = size;
+                for(int miniSector : miniSectors) {
+                    long offset = (long)miniSector << MINI_SECTOR_SHIFT;
+                    int sector = miniStreamSectors[(int)(offset >>> sectorShift)];
+                    int length = (int)Math.min(remaining, MINI_SECTOR_SIZE);
+                    out.write(data, offset(sector)+(int)(offset & (sectorSize-1)), length);
+                    remaining -= length;
+                }
+            });
+        } else {
+            int[] sectors = chain(entry.startSector, sectorCount(size));
+            if(offset(sectors[sectors.length-1])+(size-1) % sectorSize>=data.length) { throw new IOException("truncated stream: "+entry.name); }
+            target.createStream(entry.name, size, out -> {
+                long remaining = size;
+                for(int sector : sectors) {
+                    int length = (int)Math.min(remaining, sectorSize);
+                    out.write(data, offset(sector), length);
+                    remaining -= length;
+                }
+            });
+        }
+    }
+    
+    private void readFatSector(int sector, int fatIndex) throws IOException {
+        ByteBuffer buffer = sector(sector);
+        int start = fatIndex*(sectorSize/4);
+        int count = Math.min(sectorSize/4, fat.length-start);
+        for(int i=0 ; i<count ; ++i) { fat[start+i] = buffer.getInt(i*4); }
+    }
+    
+    private int[] readTable(int[] sectors) throws IOException {
+        int[] table = new int[sectors.length*(sectorSize/4)];
+        for(int i=0 ; i<sectors.length ; ++i) { sector(sectors[i]).asIntBuffer().get(table, i*(sectorSize/4), sectorSize/4); }
+        return table;
+    }
+    
+    private int[] chain(int start, int count) throws IOException {
+        return chain(start, count, fat);
+    }
+    
+    /**
+     * Follows the chain of sectors from {@code start} in {@code table}. If {@code count} is
+     * negative, the chain is followed until its end, otherwise exactly {@code count} sectors
+     * are expected.
+     */
+    private static int[] chain(int start, int count, int[] table) throws IOException {
+        if(count>table.length) { throw new IOException("sector chain too long: "+count); }
+        int[] sectors = new int[count<0 ? 16 : count];
+        int length = 0;
+        int sector = start;
+        while(count<0 ? sector!=ENDOFCHAIN : length<count) {
+            if(sector<0 || sector>=table.length || Integer.compareUnsigned(sector, MAXREGSECT)>0) { throw new IOException("invalid sector in chain: "+sector); }
+            if(length==table.length) { throw new IOException("sector chain loop"); }
+            if(length==sectors.length) { sectors = Arrays.copyOf(sectors, sectors.length*2); }
+            sectors[length++] = sector;
+            sector = table[sector];
+        }
+        return length==sectors.length ? sectors : Arrays.copyOf(sectors, length);
+    }
+    
+    private DirectoryEntry readDirectoryEntry(ByteBuffer sector, int offset) {
+        int nameLength = Math.max(0, Math.min(64, sector.getShort(offset+64))-2);
+        String name = new String(sector.array(), sector.arrayOffset()+offset, nameLength, StandardCharsets.UTF_16LE);
+        return new DirectoryEntry(name, sector.get(offset+66), sector.getInt(offset+68), sector.getInt(offset+72), sector.getInt(offset+76),
+                                  sector.getInt(offset+116), sizeOf(sector, offset, version==Version.V3 ? 3 : 4));
+    }
+    
+    private static long sizeOf(ByteBuffer buffer, int offset, int majorVersion) {
+        //page 29, point 2.6.3: the most significant 32 bits may be garbage in version 3
+        return majorVersion==3 ? buffer.getInt(offset+120) & 0xFFFFFFFFL : buffer.getLong(offset+120);
+    }
+    
+    private ByteBuffer sector(int sector) throws IOException {
+        if(sector<0 || offset(sector)+sectorSize>data.length) { throw new IOException("invalid sector: "+sector); }
+        return ByteBuffer.wrap(data, offset(sector), sectorSize).slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    private int offset(int sector) {
+        return (sector+1) << sectorShift;
+    }
+    
+    private int sectorCount(long size) throws IOException {
+        long count = (size+sectorSize-1) >>> sectorShift;
+        if(count<0 || count>Integer.MAX_VALUE) { throw new IOException("invalid size: "+size); }
+        return (int)count;
+    }
+    
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            int read = channel.read(buffer, position+buffer.position());
+            if(read<0) { throw new IOException("unexpected end of file"); }
+        }
+    }
+}
@@ -0,0 +1,830 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package ch.astorm.jotlmsg.io;
+
+import ch.astorm.jotlmsg.metrics.MessageMetrics;
+import ch.astorm.jotlmsg.metrics.MessageMetrics.Phase;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Writes a Compound File Binary (see {@code MS-CFB}) directly to an {@code OutputStream}.
+ * <p>Unlike {@link org.apache.poi.poifs.filesystem.POIFSFileSystem}, the content of the
+ * streams is not held in memory. Each stream declares its size when it is created, so
+ * that the whole layout (sectors, FAT, mini FAT and directory) can be computed before
+ * the first byte is written. The content of each stream is then pulled from its
+ * {@link StreamSource} in a single pass.</p>
+ * <p>The file is laid out as follows: header, regular streams, mini stream, mini FAT,
+ * directory, FAT and DIFAT.</p>
+ * 
+ * @author Cedric Tabin
+ */
+public class CompoundFileWriter {
+    
+    /**
+     * Streams strictly smaller than this size are stored in the mini stream. Defined by the MS specification.
+     */
+    public static final int MINI_STREAM_CUTOFF = 4096;
+    
+    private static final byte[] ZEROS = new byte[4096];
+    private static final byte[] SIGNATURE = { (byte)0xD0, (byte)0xCF, (byte)0x11, (byte)0xE0, (byte)0xA1, (byte)0xB1, (byte)0x1A, (byte)0xE1 };
+    private static final int HEADER_DIFAT_ENTRIES = 109;
+    private static final int MINI_SECTOR_SHIFT = 6;
+    private static final int MINI_SECTOR_SIZE = 1 << MINI_SECTOR_SHIFT;
+    private static final int DIRECTORY_ENTRY_SIZE = 128;
+    private static final int MAX_NAME_LENGTH = 31;
+    
+    private static final long MAXREGSECT = 0xFFFFFFFAL;
+    private static final int DIFSECT = 0xFFFFFFFC;
+    private static final int FATSECT = 0xFFFFFFFD;
+    private static final int ENDOFCHAIN = 0xFFFFFFFE;
+    private static final int FREESECT = 0xFFFFFFFF;
+    private static final int NOSTREAM = 0xFFFFFFFF;
+    
+    private static final byte TYPE_STORAGE = 1;
+    private static final byte TYPE_STREAM = 2;
+    private static final byte TYPE_ROOT = 5;
+    private static final byte COLOR_RED = 0;
+    private static final byte COLOR_BLACK = 1;
+    
+    private final Storage root = new Storage("Root Entry", TYPE_ROOT);
+    private final Version version;
+    private final int sectorShift;
+    private final int sectorSize;
+    
+    /**
+     * Represents the major version of the compound file.
+     */
+    public static enum Version {
+        /**
+         * Version 3, with 512-byte sectors. This is the default format, used by Microsoft Outlook.
+         * The size of a stream is limited to 2 GB.
+         */
+        V3(3, 9, Integer.MAX_VALUE),
+        
+        /**
+         * Version 4, with 4096-byte sectors. This format needs much less FAT and DIFAT sectors
+         * for big files and allows streams bigger than 2 GB.
+         * <p>The length of a property value is however stored on 32 bits in the {@code .msg}
+         * format, hence an attachment cannot exceed 4 GB (see {@link PropertiesChunk#MAX_VALUE_LENGTH}).</p>
+         */
+        V4(4, 12, Long.MAX_VALUE);
+        
+        private final int majorVersion;
+        private final int sectorShift;
+        private final long maxStreamSize;
+        private Version(int majorVersion, int sectorShift, long maxStreamSize) { 
+            this.majorVersion = majorVersion;
+            this.sectorShift = sectorShift;
+            this.maxStreamSize = maxStreamSize;
+        }
+        
+        /**
+         * Returns the size of the sectors.
+         * 
+         * @return The size of the sectors, in bytes.
+         */
+        public int getSectorSize() { return 1 << sectorShift; }
+    }
+    
+    /**
+     * Creates a new {@code CompoundFileWriter} that writes {@link Version#V3} files.
+     */
+    public CompoundFileWriter() {
+        this(Version.V3);
+    }
+    
+    /**
+     * Creates a new {@code CompoundFileWriter} that writes files with the specified {@code version}.
+     * 
+     * @param version The version.
+     */
+    public CompoundFileWriter(Version version) {
+        if(version==null) { throw new IllegalArgumentException("version is not defined"); }
+        this.version = version;
+        this.sectorShift = version.sectorShift;
+        this.sectorSize = version.getSectorSize();
+    }
+    
+    /**
+     * Provides the content of a stream.
+     */
+    @FunctionalInterface
+    public static interface StreamSource {
+        
+        /**
+         * Writes the content of the stream to the specified {@code out}. Exactly the
+         * declared size of the stream must be written.
+         * 
+         * @param out The {@code OutputStream} to write to. It must not be closed.
+         * @throws IOException If an I/O error occurs.
+         */
+        void writeTo(OutputStream out) throws IOException;
+        
+        /**
+         * Returns a {@code StreamSource} that writes the remaining bytes of {@code content}.
+         * The position of the buffer is not modified.
+         * 
+         * @param content The content.
+         * @return A new {@code StreamSource}.
+         */
+        static StreamSource of(ByteBuffer content) {
+            if(content==null) { throw new IllegalArgumentException("content is not defined"); }
+            ByteBuffer slice = content.slice();
+            return out -> {
+                if(out instanceof BlockOutputStream) { ((BlockOutputStream)out).write(slice.duplicate()); }
+                else if(slice.hasArray()) { out.write(slice.array(), slice.arrayOffset(), slice.remaining()); }
+                else { Channels.newChannel(out).write(slice.duplicate()); }
+            };
+        }
+        
+        /**
+         * Returns a {@code StreamSource} that writes {@code length} bytes of {@code channel}
+         * from {@code position}. When the compound file is written to a {@code FileOutputStream},
+         * the content is copied with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+         * and does not go through the heap. The position of the channel is not modified and
+         * the channel is not closed.
+         * 
+         * @param channel The channel.
+         * @param position The position of the content.
+         * @param length The length of the content.
+         * @return A new {@code StreamSource}.
+         */
+        static StreamSource of(FileChannel channel, long position, long length) {
+            if(channel==null) { throw new IllegalArgumentException("channel is not defined"); }
+            if(position<0 || length<0) { throw new IllegalArgumentException("invalid range: position="+position+", length="+length); }
+            return out -> transfer(channel, position, length, out);
+        }
+        
+        /**
+         * Returns a {@code StreamSource} that writes {@code length} bytes of {@code file}
+         * from {@code position}. The file is opened only while the stream is written.
+         * 
+         * @param file The file.
+         * @param position The position of the content.
+         * @param length The length of the content.
+         * @return A new {@code StreamSource}.
+         * @see #of(java.nio.channels.FileChannel, long, long)
+         */
+        static StreamSource of(Path file, long position, long length) {
+            if(file==null) { throw new IllegalArgumentException("file is not defined"); }
+            if(position<0 || length<0) { throw new IllegalArgumentException("invalid range: position="+position+", length="+length); }
+            return out -> {
+                try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) { transfer(channel, position, length, out); }
+            };
+        }
+    }
+    
+    private static void transfer(FileChannel channel, long position, long length, OutputStream out) throws IOException {
+        if(out instanceof BlockOutputStream) { 
+            ((BlockOutputStream)out).transferFrom(channel, position, length); 
+            return;
+        }
+        
+        byte[] buffer = new byte[(int)Math.min(length, 8192)];
+        for(long remaining = length ; remaining>0 ; ) {
+            int read;
+            ChannelReadGuard.beginRead();
+            try { read = channel.read(ByteBuffer.wrap(buffer, 0, (int)Math.min(remaining, buffer.length)), position+length-remaining); }
+            finally { ChannelReadGuard.endRead(); }
+            if(read<0) { throw new EOFException("unexpected end of channel: "+remaining+" bytes missing"); }
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+    
+    /**
+     * Represents an entry of the directory.
+     */
+    public static abstract class Entry {
+        private final String name;
+        final byte type;
+        int id;
+        int startSector = ENDOFCHAIN;
+        byte color = COLOR_BLACK;
+        Entry left;
+        Entry right;
+        
+        private Entry(String name, byte type) {
+            this.name = name;
+            this.type = type;
+        }
+        
+        /**
+         * Returns the name of this entry.
+         * 
+         * @return The name.
+         */
+        public String getName() { return name; }
+        
+        abstract long getSize();
+    }
+    
+    /**
+     * Represents a storage, which may contain other storages and streams.
+     */
+    public static final class Storage extends Entry {
+        private final List<Entry> children = new ArrayList<>();
+        private final Set<String> childrenNames = new HashSet<>();
+        private Entry child;
+        private long size;
+        
+        private Storage(String name, byte type) {
+            super(name, type);
+        }
+        
+        /**
+         * Creates a new storage in this storage.
+         * 
+         * @param name The name of the storage.
+         * @return The created storage.
+         */
+        public Storage createStorage(String name) {
+            return addChild(new Storage(name, TYPE_STORAGE));
+        }
+        
+        /**
+         * Creates a new stream in this storage with the specified {@code data}.
+         * 
+         * @param name The name of the stream.
+         * @param data The content of the stream.
+         */
+        public void createStream(String name, byte[] data) {
+            createStream(name, data.length, out -> out.write(data));
+        }
+        
+        /**
+         * Creates a new stream in this storage with {@code length} bytes of {@code data}
+         * starting at {@code offset}. The array is not copied.
+         * 
+         * @param name The name of the stream.
+         * @param data The array that holds the content of the stream.
+         * @param offset The offset of the content.
+         * @param length The length of the content.
+         */
+        public void createStream(String name, byte[] data, int offset, int length) {
+            if(offset<0 || length<0 || offset+length>data.length) { throw new IllegalArgumentException("invalid slice: offset="+offset+", length="+length); }
+            createStream(name, length, out -> out.write(data, offset, length));
+        }
+        
+        /**
+         * Creates a new stream in this storage. The {@code source} will be invoked
+         * once during {@link CompoundFileWriter#writeTo(java.io.OutputStream)} and must
+         * write exactly {@code size} bytes.
+         * 
+         * @param name The name of the stream.
+         * @param size The size of the stream.
+         * @param source The source of the content.
+         */
+        public void createStream(String name, long size, StreamSource source) {
+            if(size<0) { throw new IllegalArgumentException("invalid size: "+size); }
+            if(source==null) { throw new IllegalArgumentException("source is not defined"); }
+            addChild(new Stream(name, size, source));
+        }
+        
+        private <T extends Entry> T addChild(T entry) {
+            String name = entry.getName();
+            if(name==null || name.isEmpty()) { throw new IllegalArgumentException("name is not defined"); }
+            if(name.length()>MAX_NAME_LENGTH) { throw new IllegalArgumentException("name too long (max="+MAX_NAME_LENGTH+"): "+name); }
+            if(!childrenNames.add(name.toUpperCase(Locale.ROOT))) { throw new IllegalArgumentException("duplicate entry: "+name); }
+            children.add(entry);
+            return entry;
+        }
+        
+        @Override
+        long getSize() { return size; }
+    }
+    
+    private static final class Stream extends Entry {
+        private final long size;
+        private final StreamSource source;
+        
+        private Stream(String name, long size, StreamSource source) {
+            super(name, TYPE_STREAM);
+            this.size = size;
+            this.source = source;
+        }
+        
+        @Override
+        long getSize() { return size; }
+    }
+    
+    /**
+     * Returns the version of the files written.
+     * 
+     * @return The version.
+     */
+    public Version getVersion() {
+        return version;
+    }
+    
+    /**
+     * Returns the root storage.
+     * 
+     * @return The root storage.
+     */
+    public Storage getRoot() {
+        return root;
+    }
+    
+    /**
+     * Computes the size of the compound file, without writing anything.
+     * 
+     * @return The number of bytes that will be written.
+     * @throws IOException If the compound file is too large.
+     */
+    public long getFileSize() throws IOException {
+        return new Layout().getFileSize();
+    }
+    
+    /**
+     * Writes the compound file in a new array, which is allocated with the exact
+     * size of the file.
+     * 
+     * @return The content of the compound file.
+     * @throws IOException If an I/O error occurs or if the file does not fit in an array.
+     */
+    public byte[] toByteArray() throws IOException {
+        long size = getFileSize();
+        if(size>Integer.MAX_VALUE-8) { throw new IOException("compound file too large for an array ("+size+" bytes)"); }
+        
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[(int)size]);
+        writeTo(new OutputStream() {
+            @Override public void write(int b) { buffer.put((byte)b); }
+            @Override public void write(byte[] b, int off, int len) { buffer.put(b, off, len); }
+        });
+        return buffer.array();
+    }
+    
+    /**
+     * Writes the compound file to the specified {@code outputStream}. The content
+     * of each stream is pulled from its {@link StreamSource} in the order in which
+     * it appears in the file.
+     * The {@code outputStream} will remain open.
+     * 
+     * @param outputStream The stream to write to.
+     * @return The number of bytes written.
+     * @throws IOException If an I/O error occurs.
+     */
+    public long writeTo(OutputStream outputStream) throws IOException {
+        return writeTo(outputStream, new MsgWriterContext());
+    }
+    
+    /**
+     * Writes the compound file to the specified {@code outputStream} by using the
+     * buffers of the given {@code context}.
+     * The {@code outputStream} will remain open.
+     * 
+     * @param outputStream The stream to write to.
+     * @param context The context that holds the buffers.
+     * @return The number of bytes written.
+     * @throws IOException If an I/O error occurs.
+     * @see #writeTo(java.io.OutputStream)
+     */
+    public long writeTo(OutputStream outputStream, MsgWriterContext context) throws IOException {
+        if(context==null) { throw new IllegalArgumentException("context is not defined"); }
+        MessageMetrics metrics = MessageMetrics.current();
+        long layoutStart = metrics.isEnabled() ? System.nanoTime() : 0;
+        
+        Layout layout = new Layout();
+        long writeStart = metrics.isEnabled() ? System.nanoTime() : 0;
+        if(metrics.isEnabled()) { metrics.recordPhase(Phase.COMPOUND_FILE_LAYOUT, writeStart-layoutStart, 0); }
+        
+        BlockOutputStream out = new BlockOutputStream(outputStream, context.getOutputBuffer(sectorSize*16));
+        SectorWriter sw = new SectorWriter(out, context.getSectorBuffer(sectorSize));
+        
+        //header (page 15, point 2.2 of MS-CFB)
+        ByteBuffer header = sw.buffer;
+        header.put(SIGNATURE);
+        header.position(header.position()+16); //header CLSID
+        header.putShort((short)0x003E); //minor version
+        header.putShort((short)version.majorVersion);
+        header.putShort((short)0xFFFE); //byte order
+        header.putShort((short)sectorShift);
+        header.putShort((short)MINI_SECTOR_SHIFT);
+        header.position(header.position()+6); //reserved
+        header.putInt(version==Version.V3 ? 0 : (int)layout.directorySectors); //must be zero in version 3
+        header.putInt((int)layout.fatSectors);
+        header.putInt(layout.directoryStart);
+        header.putInt(0); //transaction signature
+        header.putInt(MINI_STREAM_CUTOFF);
+        header.putInt(layout.miniFatStart);
+        header.putInt((int)layout.miniFatSectors);
+        header.putInt(layout.difatStart);
+        header.putInt((int)layout.difatSectors);
+        for(int i=0 ; i<HEADER_DIFAT_ENTRIES ; ++i) { header.putInt(i<layout.fatSectors ? layout.fatStart+i : FREESECT); }
+        header.position(sectorSize); //the header is 512 bytes long but takes a whole sector in version 4
+        sw.flushIfFull();
+        
+        //regular streams
+        for(Stream stream : layout.regularStreams) {
+            writeStream(out, stream, sectorSize);
+        }
+        
+        //mini stream
+        for(Stream stream : layout.miniStreams) {
+            writeStream(out, stream, MINI_SECTOR_SIZE);
+        }
+        writePadding(out, layout.miniStreamSize, sectorSize);
+        
+        //mini FAT
+        for(Stream stream : layout.miniStreams) {
+            writeChain(sw, stream.startSector, sectorsFor(stream.size, MINI_SECTOR_SHIFT));
+        }
+        sw.fill(FREESECT);
+        
+        //directory
+        for(Entry entry : layout.entries) {
+            writeDirectoryEntry(sw.buffer, entry);
+            sw.flushIfFull();
+        }
+        while(sw.buffer.position()!=0) {
+            writeUnusedDirectoryEntry(sw.buffer);
+            sw.flushIfFull();
+        }
+        
+        //FAT
+        for(Stream stream : layout.regularStreams) {
+            writeChain(sw, stream.startSector, sectorsFor(stream.size, sectorShift));
+        }
+        if(layout.miniStreamSectors>0) { writeChain(sw, root.startSector, layout.miniStreamSectors); }
+        if(layout.miniFatSectors>0) { writeChain(sw, layout.miniFatStart, layout.miniFatSectors); }
+        writeChain(sw, layout.directoryStart, layout.directorySectors);
+        for(long i=0 ; i<layout.fatSectors ; ++i) { sw.putInt(FATSECT); }
+        for(long i=0 ; i<layout.difatSectors ; ++i) { sw.putInt(DIFSECT); }
+        sw.fill(FREESECT);
+        
+        //DIFAT, each sector being chained to the next one with its last entry
+        long fatIndex = HEADER_DIFAT_ENTRIES;
+        for(long i=0 ; i<layout.difatSectors ; ++i) {
+            for(int j=0 ; j<layout.entriesPerSector-1 ; ++j) {
+                sw.putInt(fatIndex<layout.fatSectors ? (int)(layout.fatStart+fatIndex) : FREESECT);
+                ++fatIndex;
+            }
+            sw.putInt(i<layout.difatSectors-1 ? (int)(layout.difatStart+i+1) : ENDOFCHAIN);
+        }
+        
+        out.flush();
+        
+        long size = layout.getFileSize();
+        if(metrics.isEnabled()) { metrics.recordPhase(Phase.COMPOUND_FILE_WRITE, System.nanoTime()-writeStart, size); }
+        return size;
+    }
+    
+    /**
+     * Computes the position of each stream and the size of the tables, before anything is written.
+     */
+    private final class Layout {
+        private final List<Entry> entries = new ArrayList<>(64);
+        private final List<Stream> regularStreams = new ArrayList<>();
+        private final List<Stream> miniStreams = new ArrayList<>();
+        private final int entriesPerSector = sectorSize/4;
+        private long sectorCount;
+        private long miniStreamSize;
+        private long miniStreamSectors;
+        private long miniFatSectors;
+        private int miniFatStart;
+        private long directorySectors;
+        private int directoryStart;
+        private long fatSectors;
+        private int fatStart;
+        private long difatSectors;
+        private int difatStart;
+        
+        private Layout() throws IOException {
+            collectEntries(root, entries);
+            
+            //regular streams
+            long miniSectorCount = 0;
+            for(Entry entry : entries) {
+                if(!(entry instanceof Stream)) { continue; }
+                Stream stream = (Stream)entry;
+                if(stream.size==0) { continue; }
+                if(stream.size>version.maxStreamSize) { throw new IOException("stream "+stream.getName()+" too large for version "+version.majorVersion+" ("+stream.size+" bytes)"); }
+                if(stream.size>=MINI_STREAM_CUTOFF) {
+                    stream.startSector = (int)sectorCount;
+                    sectorCount += sectorsFor(stream.size, sectorShift);
+                    regularStreams.add(stream);
+                } else {
+                    stream.startSector = (int)miniSectorCount;
+                    miniSectorCount += sectorsFor(stream.size, MINI_SECTOR_SHIFT);
+                    miniStreams.add(stream);
+                }
+            }
+            
+            //mini stream, owned by the root entry
+            miniStreamSize = miniSectorCount*MINI_SECTOR_SIZE;
+            miniStreamSectors = sectorsFor(miniStreamSize, sectorShift);
+            root.startSector = miniStreamSectors>0 ? (int)sectorCount : ENDOFCHAIN;
+            root.size = miniStreamSize;
+            sectorCount += miniStreamSectors;
+            
+            //mini FAT
+            miniFatSectors = sectorsFor(miniSectorCount*4, sectorShift);
+            miniFatStart = miniFatSectors>0 ? (int)sectorCount : ENDOFCHAIN;
+            sectorCount += miniFatSectors;
+            
+            //directory
+            directorySectors = sectorsFor((long)entries.size()*DIRECTORY_ENTRY_SIZE, sectorShift);
+            directoryStart = (int)sectorCount;
+            sectorCount += directorySectors;
+            
+            //FAT and DIFAT, which also need to reference themselves
+            while(true) {
+                long requiredFat = divideRoundUp(sectorCount+fatSectors+difatSectors, entriesPerSector);
+                long requiredDifat = requiredFat>HEADER_DIFAT_ENTRIES ? divideRoundUp(requiredFat-HEADER_DIFAT_ENTRIES, entriesPerSector-1) : 0;
+                if(requiredFat==fatSectors && requiredDifat==difatSectors) { break; }
+                fatSectors = requiredFat;
+                difatSectors = requiredDifat;
+            }
+            fatStart = (int)sectorCount;
+            sectorCount += fatSectors;
+            difatStart = difatSectors>0 ? (int)sectorCount : ENDOFCHAIN;
+            sectorCount += difatSectors;
+            if(sectorCount>MAXREGSECT) { throw new IOException("compound file too large ("+sectorCount+" sectors)"); }
+        }
+            
+        /**
+         * Returns the size of the file, including the header which takes a whole sector.
+         */
+        private long getFileSize() {
+            return (sectorCount+1)*sectorSize;
+        }
+    }
+    
+    private void collectEntries(Storage storage, List<Entry> entries) {
+        storage.id = entries.size();
+        entries.add(storage);
+        
+        Entry[] sorted = storage.children.toArray(new Entry[storage.children.size()]);
+        Arrays.sort(sorted, CompoundFileWriter::compareNames);
+        int fullDepth = 31-Integer.numberOfLeadingZeros(sorted.length+1);
+        storage.child = buildTree(sorted, 0, sorted.length, 0, fullDepth);
+        
+        for(Entry child : storage.children) {
+            if(child instanceof Storage) { collectEntries((Storage)child, entries); }
+            else {
+                child.id = entries.size();
+                entries.add(child);
+            }
+        }
+    }
+    
+    /**
+     * Builds a balanced red-black tree from the sorted entries. All the levels of
+     * the tree are full except the last one, whose nodes are colored in red.
+     */
+    private static Entry buildTree(Entry[] sorted, int from, int to, int depth, int fullDepth) {
+        if(from>=to) { return null; }
+        int mid = (from+to) >>> 1;
+        Entry node = sorted[mid];
+        node.color = depth>=fullDepth ? COLOR_RED : COLOR_BLACK;
+        node.left = buildTree(sorted, from, mid, depth+1, fullDepth);
+        node.right = buildTree(sorted, mid+1, to, depth+1, fullDepth);
+        return node;
+    }
+    
+    /**
+     * Compares the names of the entries as defined by the MS specification
+     * (page 29, point 2.6.4): shorter names first, then by upper-case characters.
+     */
+    private static int compareNames(Entry e1, Entry e2) {
+        String n1 = e1.getName();
+        String n2 = e2.getName();
+        if(n1.length()!=n2.length()) { return n1.length()-n2.length(); }
+        for(int i=0 ; i<n1.length() ; ++i) {
+            int c1 = Character.toUpperCase(n1.charAt(i));
+            int c2 = Character.toUpperCase(n2.charAt(i));
+            if(c1!=c2) { return c1-c2; }
+        }
+        return 0;
+    }
+    
+    private static long sectorsFor(long size, int shift) {
+        return (size+(1L<<shift)-1) >>> shift;
+    }
+    
+    private static long divideRoundUp(long count, long perSector) {
+        return (count+perSector-1)/perSector;
+    }
+    
+    private void writeStream(BlockOutputStream out, Stream stream, int blockSize) throws IOException {
+        long start = out.count;
+        stream.source.writeTo(out);
+        long written = out.count-start;
+        if(written!=stream.size) { throw new IOException("invalid size for stream "+stream.getName()+": expected "+stream.size+" bytes but got "+written); }
+        writePadding(out, stream.size, blockSize);
+    }
+    
+    private void writePadding(OutputStream out, long size, int blockSize) throws IOException {
+        int remainder = (int)(size%blockSize);
+        if(remainder>0) { out.write(ZEROS, 0, blockSize-remainder); }
+    }
+    
+    private void writeChain(SectorWriter sw, int start, long length) throws IOException {
+        for(long i=1 ; i<length ; ++i) { sw.putInt((int)(start+i)); }
+        sw.putInt(ENDOFCHAIN);
+    }
+    
+    private void writeDirectoryEntry(ByteBuffer buffer, Entry entry) {
+        //directory entry (page 28, point 2.6 of MS-CFB)
+        String name = entry.getName();
+        int start = buffer.position();
+        for(int i=0 ; i<name.length() ; ++i) { buffer.putChar(name.charAt(i)); }
+        buffer.position(start+64);
+        buffer.putShort((short)((name.length()+1)*2)); //includes the terminating null character
+        buffer.put(entry.type);
+        buffer.put(entry.color);
+        buffer.putInt(entry.left!=null ? entry.left.id : NOSTREAM);
+        buffer.putInt(entry.right!=null ? entry.right.id : NOSTREAM);
+        buffer.putInt(entry instanceof Storage && ((Storage)entry).child!=null ? ((Storage)entry).child.id : NOSTREAM);
+        buffer.position(start+116); //CLSID, state bits, creation and modification time
+        if(entry.type==TYPE_STORAGE) {
+            //a storage has no content, its starting sector and size must be zero (point 2.6.3 of MS-CFB)
+            buffer.putInt(0);
+            buffer.putLong(0);
+        } else {
+            buffer.putInt(entry.startSector);
+            buffer.putLong(entry.getSize());
+        }
+    }
+    
+    private void writeUnusedDirectoryEntry(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.position(start+68);
+        buffer.putInt(NOSTREAM);
+        buffer.putInt(NOSTREAM);
+        buffer.putInt(NOSTREAM);
+        buffer.position(start+DIRECTORY_ENTRY_SIZE);
+    }
+    
+    private static final class SectorWriter {
+        private final OutputStream out;
+        private final ByteBuffer buffer;
+        
+        private SectorWriter(OutputStream out, ByteBuffer buffer) {
+            this.out = out;
+            this.buffer = buffer;
+        }
+        
+        private void putInt(int value) throws IOException {
+            buffer.putInt(value);
+            flushIfFull();
+        }
+        
+        private void fill(int value) throws IOException {
+            while(buffer.position()!=0) { putInt(value); }
+        }
+        
+        private void flushIfFull() throws IOException {
+            if(buffer.hasRemaining()) { return; }
+            out.write(buffer.array());
+            buffer.clear();
+            Arrays.fill(buffer.array(), (byte)0);
+        }
+    }
+    
+    /**
+     * Buffers the output in a given array and counts the bytes written. The underlying
+     * stream is never closed, even if a {@link StreamSource} closes this stream.
+     */
+    private static final class BlockOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final byte[] buffer;
+        private int position;
+        private long count;
+        
+        private BlockOutputStream(OutputStream out, byte[] buffer) {
+            this.out = out;
+            this.buffer = buffer;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            if(position==buffer.length) { flushBuffer(); }
+            buffer[position++] = (byte)b;
+            ++count;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if(len>=buffer.length) {
+                flushBuffer();
+                out.write(b, off, len);
+            } else {
+                if(len>buffer.length-position) { flushBuffer(); }
+                System.arraycopy(b, off, buffer, position, len);
+                position += len;
+            }
+            count += len;
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            flushBuffer();
+            out.flush();
+        }
+        
+        @Override
+        public void close() throws IOException {
+            //the underlying stream remains open
+        }
+        
+        private void write(ByteBuffer content) throws IOException {
+            int length = content.remaining();
+            if(content.hasArray()) { 
+                write(content.array(), content.arrayOffset()+content.position(), length);
+                return;
+            }
+            
+            while(content.hasRemaining()) {
+                if(position==buffer.length) { flushBuffer(); }
+                int chunk = Math.min(content.remaining(), buffer.length-position);
+                content.get(buffer, position, chunk);
+                position += chunk;
+            }
+            count += length;
+        }
+        
+        /**
+         * Copies the content of the {@code channel}. If the underlying stream is a plain
+         * {@code FileOutputStream}, the bytes are transferred between the channels. Otherwise
+         * they are read directly in the buffer.
+         */
+        private void transferFrom(FileChannel channel, long offset, long length) throws IOException {
+            flushBuffer();
+            FileChannel target = out.getClass()==FileOutputStream.class ? ((FileOutputStream)out).getChannel() : null;
+            for(long remaining = length ; remaining>0 ; ) {
+                long read;
+                ChannelReadGuard.beginRead();
+                try {
+                    if(target!=null) { 
+                        read = channel.transferTo(offset+length-remaining, remaining, target);
+                        if(read==0) { read = -1; } //transferTo returns zero at the end of the channel
+                    } else {
+                        read = channel.read(ByteBuffer.wrap(buffer, 0, (int)Math.min(remaining, buffer.length)), offset+length-remaining);
+                    }
+                } finally {
+                    ChannelReadGuard.endRead();
+                }
+                if(target==null && read>0) { out.write(buffer, 0, (int)read); }
+                if(read<0) { throw new EOFException("unexpected end of channel: "+remaining+" bytes missing"); }
+                remaining -= read;
+                count += read;
+            }
+        }
+        
+        private void flushBuffer() throws IOException {
+            if(position>0) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+        }
+    }
+}
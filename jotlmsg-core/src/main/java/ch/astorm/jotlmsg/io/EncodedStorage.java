@@ -0,0 +1,106 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg.io;
+
+import ch.astorm.jotlmsg.io.CompoundFileWriter.StreamSource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Holds the streams of a storage whose properties have already been encoded.
+ * <p>An {@code EncodedStorage} can be written many times, in many {@link CompoundFileWriter},
+ * without encoding the properties again. It is immutable once created and can be shared
+ * between threads, as long as the underlying {@link StreamSource} instances can be.</p>
+ * 
+ * @author Cedric Tabin
+ * @see PropertiesChunk#encode()
+ */
+public class EncodedStorage {
+    private final List<EncodedStream> streams;
+    
+    EncodedStorage(List<EncodedStream> streams) {
+        this.streams = Collections.unmodifiableList(new ArrayList<>(streams));
+    }
+    
+    /**
+     * Returns the total length of the streams of this storage.
+     * 
+     * @return The length in bytes.
+     */
+    public long getLength() {
+        long length = 0;
+        for(EncodedStream stream : streams) { length += stream.length; }
+        return length;
+    }
+    
+    /**
+     * Creates the streams of this storage in the specified {@code storage}.
+     * 
+     * @param storage The storage.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeTo(CompoundFileWriter.Storage storage) throws IOException {
+        for(EncodedStream stream : streams) {
+            if(stream.data!=null) { storage.createStream(stream.name, stream.data); }
+            else { storage.createStream(stream.name, stream.length, stream.source); }
+        }
+    }
+    
+    /**
+     * Represents an encoded stream, either held in memory or backed by a {@link StreamSource}.
+     */
+    static final class EncodedStream {
+        private final String name;
+        private final byte[] data;
+        private final long length;
+        private final StreamSource source;
+        
+        EncodedStream(String name, byte[] data) {
+            this.name = name;
+            this.data = data;
+            this.length = data.length;
+            this.source = null;
+        }
+        
+        EncodedStream(String name, long length, StreamSource source) {
+            this.name = name;
+            this.data = null;
+            this.length = length;
+            this.source = source;
+        }
+    }
+}
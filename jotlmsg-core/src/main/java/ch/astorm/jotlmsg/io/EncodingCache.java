@@ -0,0 +1,182 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg.io;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import org.apache.poi.util.StringUtil;
+
+/**
+ * Bounded cache of the encoded values that are written many times, like the names and
+ * email addresses of the recipients.
+ * <p>The cache holds the UTF-16LE payloads of the strings and the {@link OneOffEntryIDStructure}
+ * entry IDs. It is split in segments, each one evicting its least recently used values
+ * once it is full. Only the strings up to {@link #MAX_STRING_LENGTH} characters are cached,
+ * so that bodies and other big values do not evict the useful entries.</p>
+ * <p>This class is thread-safe. The returned arrays are shared and must not be modified.</p>
+ * 
+ * @author Cedric Tabin
+ */
+public final class EncodingCache {
+    /**
+     * Default maximum number of entries of a cache.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+    
+    /**
+     * Maximum length of the strings that are cached.
+     */
+    public static final int MAX_STRING_LENGTH = 256;
+    
+    private static final EncodingCache DEFAULT = new EncodingCache(DEFAULT_CAPACITY);
+    
+    private final Segment[] segments;
+    private final int capacity;
+    
+    /**
+     * Creates a new cache that holds at most {@code capacity} entries.
+     * 
+     * @param capacity The maximum number of entries.
+     */
+    public EncodingCache(int capacity) {
+        if(capacity<=0) { throw new IllegalArgumentException("invalid capacity: "+capacity); }
+        
+        //each segment has its own lock, hence a bit less than LRU overall but without contention
+        int segmentCount = Math.min(16, Integer.highestOneBit(capacity));
+        this.segments = new Segment[segmentCount];
+        for(int i=0 ; i<segmentCount ; ++i) { segments[i] = new Segment(capacity/segmentCount); }
+        this.capacity = capacity;
+    }
+    
+    /**
+     * Returns the cache used when a {@code .msg} file is written.
+     * 
+     * @return The default cache.
+     */
+    public static EncodingCache getDefault() {
+        return DEFAULT;
+    }
+    
+    /**
+     * Returns the maximum number of entries of this cache.
+     * 
+     * @return The capacity.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    /**
+     * Returns the current number of entries of this cache.
+     * 
+     * @return The number of entries.
+     */
+    public int size() {
+        int size = 0;
+        for(Segment segment : segments) {
+            synchronized(segment) { size += segment.size(); }
+        }
+        return size;
+    }
+    
+    /**
+     * Removes all the entries of this cache.
+     */
+    public void clear() {
+        for(Segment segment : segments) {
+            synchronized(segment) { segment.clear(); }
+        }
+    }
+    
+    /**
+     * Returns the UTF-16LE bytes of the specified {@code value}, without terminating
+     * null character. This is the same as {@link StringUtil#getToUnicodeLE(java.lang.String)}.
+     * 
+     * @param value The value.
+     * @return The encoded value.
+     */
+    public byte[] toUnicodeLE(String value) {
+        if(value.length()>MAX_STRING_LENGTH) { return StringUtil.getToUnicodeLE(value); }
+        return get(value, StringUtil::getToUnicodeLE);
+    }
+    
+    /**
+     * Returns the entry ID of the {@link OneOffEntryIDStructure} with the given {@code displayName}
+     * and {@code emailAddress}.
+     * 
+     * @param displayName The display name.
+     * @param emailAddress The email address.
+     * @return The entry ID.
+     */
+    public byte[] getOneOffEntryID(String displayName, String emailAddress) {
+        if(displayName.length()+emailAddress.length()>MAX_STRING_LENGTH) { return new OneOffEntryIDStructure(displayName, emailAddress).getEntryID(); }
+        return get(new EntryIDKey(displayName, emailAddress), k -> new OneOffEntryIDStructure(k.displayName(), k.emailAddress()).getEntryID());
+    }
+    
+    private <K> byte[] get(K key, Function<K, byte[]> encoder) {
+        int hash = key.hashCode();
+        //the high bits select the segment: the low ones are used by the HashMap of the segment itself
+        Segment segment = segments[((hash * 0x9E3779B9) >>> 16) & (segments.length-1)];
+        synchronized(segment) {
+            byte[] value = segment.get(key);
+            if(value!=null) { return value; }
+        }
+        
+        //encodes outside of the lock, the first value stored wins
+        byte[] value = encoder.apply(key);
+        synchronized(segment) {
+            byte[] existing = segment.putIfAbsent(key, value);
+            return existing!=null ? existing : value;
+        }
+    }
+    
+    private static record EntryIDKey(String displayName, String emailAddress) {}
+    
+    private static final class Segment extends LinkedHashMap<Object, byte[]> {
+        private static final long serialVersionUID = 1L;
+        private final int maxSize;
+        
+        private Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = Math.max(1, maxSize);
+        }
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, byte[]> eldest) {
+            return size()>maxSize;
+        }
+    }
+}
@@ -70,7 +70,7 @@ public class MessagePropertiesChunk extends PropertiesChunk {
         //page 21, point 2.4.1.1
         
         // 8 bytes of reserved zeros
-        out.write(new byte[8]);
+        out.write(ZEROS);
 
         // Nexts and counts
         LittleEndian.putUInt(nextRecipientId, out);
@@ -79,7 +79,7 @@ public class MessagePropertiesChunk extends PropertiesChunk {
         LittleEndian.putUInt(attachmentCount, out);
 
         // 8 bytes of reserved zeros
-        out.write(new byte[8]);
+        out.write(ZEROS);
         
         return super.writeHeaderData(out);
     }
@@ -0,0 +1,136 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg.io;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Holds the scratch buffers used to write {@code .msg} files.
+ * <p>A {@code MsgWriterContext} can be reused for many writes, so that a server writing
+ * many small messages does not allocate those buffers again for each message. The buffers
+ * only grow: they keep the size of the biggest message written with this context.</p>
+ * <p>This class is not thread-safe and a context must not be used by two writes at the
+ * same time. It can either be pooled or bound to a thread with {@link #forCurrentThread()}.</p>
+ * 
+ * @author Cedric Tabin
+ */
+public final class MsgWriterContext {
+    private static final ThreadLocal<MsgWriterContext> THREAD_CONTEXT = ThreadLocal.withInitial(MsgWriterContext::new);
+    
+    private ScratchOutputStream headerBuffer;
+    private byte[] outputBuffer;
+    private ByteBuffer sectorBuffer;
+    
+    /**
+     * Returns the context bound to the current thread.
+     * <p>This is meant for platform threads that are reused, like the ones of a thread pool.
+     * A virtual thread is not reused, so its context will be created for each thread.</p>
+     * 
+     * @return The context of the current thread.
+     */
+    public static MsgWriterContext forCurrentThread() {
+        return THREAD_CONTEXT.get();
+    }
+    
+    /**
+     * Resets this context before a new write. The data written with the previous
+     * write is discarded, but the buffers are kept.
+     */
+    public void reset() {
+        if(headerBuffer!=null) { headerBuffer.reset(); }
+    }
+    
+    /**
+     * Returns the buffer that holds the header data of all the properties chunks
+     * of the message being written. Its content is kept until {@link #reset()}.
+     */
+    ScratchOutputStream getHeaderBuffer() {
+        if(headerBuffer==null) { headerBuffer = new ScratchOutputStream(); }
+        return headerBuffer;
+    }
+    
+    /**
+     * Returns a buffer of at least {@code size} bytes to buffer the output of the compound file.
+     */
+    byte[] getOutputBuffer(int size) {
+        if(outputBuffer==null || outputBuffer.length<size) { outputBuffer = new byte[size]; }
+        return outputBuffer;
+    }
+    
+    /**
+     * Returns a zeroed little-endian buffer of exactly {@code size} bytes.
+     */
+    ByteBuffer getSectorBuffer(int size) {
+        if(sectorBuffer==null || sectorBuffer.capacity()!=size) { sectorBuffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN); }
+        else {
+            sectorBuffer.clear();
+            Arrays.fill(sectorBuffer.array(), (byte)0);
+        }
+        return sectorBuffer;
+    }
+    
+    /**
+     * {@code ByteArrayOutputStream} that gives access to its internal array, so that slices
+     * of it can be used as stream content without being copied.
+     */
+    static final class ScratchOutputStream extends ByteArrayOutputStream {
+        private ByteBuffer entryBuffer;
+        
+        private ScratchOutputStream() {
+            super(4096);
+        }
+        
+        /**
+         * Returns a cleared little-endian buffer of at least {@code size} bytes to prepare
+         * the entries of a header before they are written in this stream.
+         */
+        ByteBuffer getEntryBuffer(int size) {
+            if(entryBuffer==null || entryBuffer.capacity()<size) { entryBuffer = ByteBuffer.allocate(Math.max(size, 1024)).order(ByteOrder.LITTLE_ENDIAN); }
+            else { entryBuffer.clear(); }
+            return entryBuffer;
+        }
+        
+        /**
+         * Returns the internal array. Since a new array is allocated when the buffer grows,
+         * the slices of a previously returned array remain valid.
+         */
+        byte[] array() {
+            return buf;
+        }
+    }
+}
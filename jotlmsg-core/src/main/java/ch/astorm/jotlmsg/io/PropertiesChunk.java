@@ -0,0 +1,314 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.poi.hsmf.datatypes.ChunkBasedPropertyValue;
+import org.apache.poi.hsmf.datatypes.MAPIProperty;
+import org.apache.poi.hsmf.datatypes.PropertyValue;
+import org.apache.poi.hsmf.datatypes.Types;
+import org.apache.poi.hsmf.datatypes.Types.MAPIType;
+import org.apache.poi.poifs.filesystem.DirectoryEntry;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+
+/**
+ * Handles the writing of {@link MAPIProperty} instances.
+ * This file is based on {@link org.apache.poi.hsmf.datatypes.PropertiesChunk}.
+ * <p>This class provides a basic implementation to write fixed-length and variable-length
+ * properties to a {@link POIFSFileSystem}, but it doesn't handle the other data
+ * such as list properties (since point 2.4.2.2) or GUID/Entry/String streams (point 2.2.3).
+ * Those would be needed to make a more advanced integration with Microsoft Outlook and take
+ * advantage of other features, like appointments, calendars, ...</p>
+ * 
+ * @author Cedric Tabin
+ */
+public class PropertiesChunk {
+    
+    /**
+     * Standard prefix of nodes. Defined by the MS specification.
+     */
+    public static final String PREFIX = "__substg1.0_";
+    
+    /**
+     * Flag to set for readable properties. Defined by the MS specification.
+     */
+    public static final int FLAG_READABLE = 2;
+
+    /**
+     * Flag to set for writable properties. Defined by the MS specification.
+     */
+    public static final int FLAG_WRITEABLE = 4;
+    
+    /**
+     * Zeros used for the padding and the reserved fields of the headers.
+     */
+    static final byte[] ZEROS = new byte[8];
+    
+    /**
+     * Maximum length of a variable-length property. The length is stored as an unsigned
+     * 32-bit integer in the header (page 25), so a value cannot exceed 4 GB.
+     */
+    public static final long MAX_VALUE_LENGTH = 0xFFFFFFFFL;
+    
+    //properties sorted by id, so that the header is always written in the same order
+    private int[] ids = new int[16];
+    private PropertyValue[] values = new PropertyValue[16];
+    private int size;
+    
+    private ByteBuffer entryBuffer;
+
+    /**
+     * Defines a property. Multi-valued properties are not yet supported.
+     */
+    public void setProperty(PropertyValue value) { 
+        int id = value.getProperty().id;
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if(index>=0) { 
+            values[index] = value; 
+            return;
+        }
+        
+        index = -index-1;
+        if(size==ids.length) {
+            ids = Arrays.copyOf(ids, size*2);
+            values = Arrays.copyOf(values, size*2);
+        }
+        System.arraycopy(ids, index, ids, index+1, size-index);
+        System.arraycopy(values, index, values, index+1, size-index);
+        ids[index] = id;
+        values[index] = value;
+        ++size;
+    }
+    public PropertyValue getProperty(MAPIProperty property) { 
+        int index = Arrays.binarySearch(ids, 0, size, property.id);
+        return index>=0 ? values[index] : null;
+    }
+    
+    /**
+     * Writes this chunk in the specified {@code DirectoryEntry}.
+     * 
+     * @param directory The directory.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeTo(DirectoryEntry directory) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        List<PropertyValue> values = writeHeaderData(baos);
+        baos.close();
+        
+        //write the header data with the properties declaration
+        directory.createDocument(org.apache.poi.hsmf.datatypes.PropertiesChunk.NAME, new ByteArrayInputStream(baos.toByteArray()));
+        
+        //write the property values
+        writeNodeData(directory, values);
+    }
+    
+    /**
+     * Writes this chunk in the specified {@code Storage}.
+     * 
+     * @param storage The storage.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeTo(CompoundFileWriter.Storage storage) throws IOException {
+        encode().writeTo(storage);
+    }
+    
+    /**
+     * Writes this chunk in the specified {@code Storage}. The header data is written
+     * in the buffer of the {@code context}, which must not be reset before the compound
+     * file has been written.
+     * 
+     * @param storage The storage.
+     * @param context The context that holds the buffers.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeTo(CompoundFileWriter.Storage storage, MsgWriterContext context) throws IOException {
+        MsgWriterContext.ScratchOutputStream buffer = context.getHeaderBuffer();
+        int offset = buffer.size();
+        List<PropertyValue> values = writeHeaderData(buffer);
+        
+        //write the header data with the properties declaration
+        storage.createStream(org.apache.poi.hsmf.datatypes.PropertiesChunk.NAME, buffer.array(), offset, buffer.size()-offset);
+        
+        //write the property values
+        for(PropertyValue value : values) {
+            String nodeName = getStreamName(value);
+            if(value instanceof StreamPropertyValue) {
+                StreamPropertyValue streamValue = (StreamPropertyValue)value;
+                storage.createStream(nodeName, streamValue.getLength(), streamValue.getSource());
+            } else {
+                storage.createStream(nodeName, value.getRawValue());
+            }
+        }
+    }
+    
+    /**
+     * Encodes this chunk. The returned {@code EncodedStorage} holds the header data and
+     * the variable-length values, so that they can be written many times without encoding
+     * the properties again.
+     * <p>The content of the {@link StreamPropertyValue} instances is not read by this method.</p>
+     * 
+     * @return The encoded chunk.
+     * @throws IOException If an I/O error occurs.
+     */
+    public EncodedStorage encode() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        List<PropertyValue> values = writeHeaderData(baos);
+        baos.close();
+        
+        //the header data with the properties declaration
+        List<EncodedStorage.EncodedStream> streams = new ArrayList<>(values.size()+1);
+        streams.add(new EncodedStorage.EncodedStream(org.apache.poi.hsmf.datatypes.PropertiesChunk.NAME, baos.toByteArray()));
+        
+        //the property values
+        for(PropertyValue value : values) {
+            String nodeName = getStreamName(value);
+            if(value instanceof StreamPropertyValue) {
+                StreamPropertyValue streamValue = (StreamPropertyValue)value;
+                streams.add(new EncodedStorage.EncodedStream(nodeName, streamValue.getLength(), streamValue.getSource()));
+            } else {
+                streams.add(new EncodedStorage.EncodedStream(nodeName, value.getRawValue()));
+            }
+        }
+        
+        return new EncodedStorage(streams);
+    }
+    
+    /**
+     * Write the nodes for variable-length data.
+     * Those properties are returned by {@link #writeHeaderData(java.io.OutputStream)}.
+     * 
+     * @param directory The directory.
+     * @param values The values.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected void writeNodeData(DirectoryEntry directory, List<PropertyValue> values) throws IOException {
+        for(PropertyValue value : values) {
+            byte[] bytes = getBytes(value);
+            String nodeName = getStreamName(value);
+            directory.createDocument(nodeName, new ByteArrayInputStream(bytes));
+        }
+    }
+    
+    /**
+     * Writes the header of the properties.
+     * 
+     * @param out The {@code OutputStream}.
+     * @return The variable-length properties that need to be written in another node.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected List<PropertyValue> writeHeaderData(OutputStream out) throws IOException {
+        //each entry is 16 bytes long: tag, flags and value (page 23, point 2.4.2)
+        ByteBuffer buffer = out instanceof MsgWriterContext.ScratchOutputStream ? 
+                                ((MsgWriterContext.ScratchOutputStream)out).getEntryBuffer(size*16) :
+                                getEntryBuffer(size*16);
+        
+        List<PropertyValue> variableLengthProperties = new ArrayList<>(size);
+        for(int i=0 ; i<size ; ++i) {
+            PropertyValue value = values[i];
+            if(value instanceof ChunkBasedPropertyValue) { throw new IOException("ChunkBasedPropertyValue not supported yet"); }
+            
+            //generic header
+            MAPIType type = PropertyTags.getTypeMapping(value.getActualType());
+            buffer.putInt(PropertyTags.getTag(value.getProperty(), type)); //tag is the property id and its type
+            buffer.putInt((int)value.getFlags()); //readable + writable
+
+            if(type.isFixedLength()) { writeFixedLengthValueHeader(buffer, value); } //page 11, point 2.1.2
+            else { //page 12, point 2.1.3
+                writeVariableLengthValueHeader(buffer, type, value); 
+                variableLengthProperties.add(value);
+            } 
+        }
+        
+        out.write(buffer.array(), 0, buffer.position());
+        return variableLengthProperties;
+    }
+    
+    private void writeFixedLengthValueHeader(ByteBuffer buffer, PropertyValue value) {
+        //fixed type header
+        //page 24, point 2.4.2.1.1
+        byte[] bytes = value.getRawValue(); //always return the bytes array
+        int length = bytes!=null ? bytes.length : 0;
+        if(bytes!=null) { 
+            //because little endian
+            buffer.put(bytes);
+        }
+        buffer.put(ZEROS, 0, 8-length);
+    }
+    
+    private void writeVariableLengthValueHeader(ByteBuffer buffer, MAPIType type, PropertyValue value) throws IOException {
+        //variable length header
+        //page 24, point 2.4.2.2
+        byte[] bytes = value.getRawValue(); //always return the bytes array
+        long length = value instanceof StreamPropertyValue ? ((StreamPropertyValue)value).getLength() :
+                      bytes!=null ?                          bytes.length :
+                                                             0;
+
+        //alter the length, as specified in page 25
+        if(type==Types.UNICODE_STRING) { length += 2; }
+        else if(type==Types.ASCII_STRING) { length += 1; }
+        if(length>MAX_VALUE_LENGTH) { throw new IOException("property "+value.getProperty().name+" too large ("+length+" bytes, max "+MAX_VALUE_LENGTH+")"); }
+
+        buffer.putInt((int)length);
+        
+        //specified in page 25
+        buffer.putInt(0);
+    }
+    
+    private ByteBuffer getEntryBuffer(int size) {
+        if(entryBuffer==null || entryBuffer.capacity()<size) { entryBuffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN); }
+        else { entryBuffer.clear(); }
+        return entryBuffer;
+    }
+    
+    private byte[] getBytes(PropertyValue value) throws IOException {
+        if(!(value instanceof StreamPropertyValue)) { return value.getRawValue(); }
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ((StreamPropertyValue)value).getSource().writeTo(baos);
+        return baos.toByteArray();
+    }
+    
+    private String getStreamName(PropertyValue value) {
+        return PropertyTags.getStreamName(PropertyTags.getTag(value.getProperty(), value.getActualType()));
+    }
+}
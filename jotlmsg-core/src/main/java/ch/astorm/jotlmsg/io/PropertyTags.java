@@ -0,0 +1,152 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg.io;
+
+import java.util.Collection;
+import java.util.Locale;
+import org.apache.poi.hsmf.datatypes.MAPIProperty;
+import org.apache.poi.hsmf.datatypes.Types;
+import org.apache.poi.hsmf.datatypes.Types.MAPIType;
+
+/**
+ * Computes the tags of the properties and caches the names of their value streams.
+ * <p>The names of all the known {@link MAPIProperty} are computed once. The names of
+ * the other tags are added on first use. The lookup itself does not allocate.</p>
+ * 
+ * @author Cedric Tabin
+ */
+final class PropertyTags {
+    private static volatile NameTable names;
+    static {
+        Collection<MAPIProperty> properties = MAPIProperty.getAll();
+        NameTable table = new NameTable(Integer.highestOneBit(properties.size()*4));
+        for(MAPIProperty property : properties) {
+            MAPIType type = property.usualType;
+            if(property.id<0 || property.id>0xFFFF || type==null || type.getId()<0) { continue; }
+            int tag = getTag(property, type);
+            table.put(tag, createStreamName(tag));
+        }
+        names = table;
+    }
+    
+    private PropertyTags() {}
+    
+    /**
+     * Returns the tag of a property, which is its id and its type (page 23, point 2.4.2).
+     * The ASCII strings are written as unicode strings.
+     */
+    static int getTag(MAPIProperty property, MAPIType type) {
+        return (property.id << 16) | getTypeMapping(type).getId();
+    }
+    
+    /**
+     * Returns the type in which a value of the given {@code type} is written.
+     */
+    static MAPIType getTypeMapping(MAPIType type) {
+        return type==Types.ASCII_STRING ? Types.UNICODE_STRING : type;
+    }
+    
+    /**
+     * Returns the name of the stream that holds the value of the property with the given {@code tag}.
+     */
+    static String getStreamName(int tag) {
+        String name = names.get(tag);
+        if(name!=null) { return name; }
+        
+        synchronized(PropertyTags.class) {
+            NameTable table = names;
+            name = table.get(tag);
+            if(name==null) {
+                name = createStreamName(tag);
+                names = table.with(tag, name);
+            }
+            return name;
+        }
+    }
+    
+    private static String createStreamName(int tag) {
+        return PropertiesChunk.PREFIX+String.format(Locale.ROOT, "%08X", tag);
+    }
+    
+    /**
+     * Open-addressing table that maps a tag to a name. A published table is never
+     * modified: adding an entry creates a new table, so that the readers never need
+     * to synchronize.
+     */
+    private static final class NameTable {
+        private final int[] tags;
+        private final String[] names;
+        private int size;
+        
+        private NameTable(int capacity) {
+            this.tags = new int[capacity];
+            this.names = new String[capacity];
+        }
+        
+        private String get(int tag) {
+            int mask = tags.length-1;
+            for(int i=hash(tag)&mask ; names[i]!=null ; i=(i+1)&mask) {
+                if(tags[i]==tag) { return names[i]; }
+            }
+            return null;
+        }
+        
+        private NameTable with(int tag, String name) {
+            int capacity = tags.length;
+            if((size+1)*2>capacity) { capacity *= 2; } //keeps the load factor under 0.5
+            
+            NameTable table = new NameTable(capacity);
+            for(int i=0 ; i<tags.length ; ++i) {
+                if(names[i]!=null) { table.put(tags[i], names[i]); }
+            }
+            table.put(tag, name);
+            return table;
+        }
+        
+        private void put(int tag, String name) {
+            int mask = tags.length-1;
+            int i = hash(tag)&mask;
+            while(names[i]!=null && tags[i]!=tag) { i = (i+1)&mask; }
+            if(names[i]==null) { ++size; }
+            tags[i] = tag;
+            names[i] = name;
+        }
+        
+        private static int hash(int tag) {
+            int h = tag*0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
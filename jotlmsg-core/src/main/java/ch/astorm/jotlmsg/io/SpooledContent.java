@@ -0,0 +1,376 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package ch.astorm.jotlmsg.io;
+
+import ch.astorm.jotlmsg.io.CompoundFileWriter.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Holds a content whose exact length is known.
+ * <p>The content of an {@code InputStream} is spooled: up to a given threshold, it is
+ * kept in memory, while bigger contents are written in a temporary file. This allows
+ * to know the exact length of the content without having it fully in memory. The
+ * temporary file is deleted when this {@code SpooledContent} is closed or, at the
+ * latest, when it is garbage collected.</p>
+ * <p>A {@code SpooledContent} can also wrap an existing array, {@code ByteBuffer},
+ * file or {@code FileChannel}, in which case nothing is copied and closing it does not
+ * affect the source. The content of files and channels is written with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * when possible (see {@link StreamSource#of(java.nio.channels.FileChannel, long, long)}).</p>
+ * 
+ * @author Cedric Tabin
+ */
+public class SpooledContent implements Closeable {
+    private static final Cleaner CLEANER = Cleaner.create(); //deletes the temporary files that have not been closed
+    
+    private final ByteBuffer memory;
+    private final Path file;
+    private final FileChannel channel;
+    private final long position;
+    private final long length;
+    private final Cleaner.Cleanable cleanable;
+    private final SpooledContent owner; //keeps the owner of a shared temporary file reachable
+    
+    private SpooledContent(ByteBuffer memory, Path file, FileChannel channel, long position, long length, boolean temporary) {
+        this(memory, file, channel, position, length, temporary, null);
+    }
+    
+    private SpooledContent(ByteBuffer memory, Path file, FileChannel channel, long position, long length, boolean temporary, SpooledContent owner) {
+        this.memory = memory;
+        this.file = file;
+        this.channel = channel;
+        this.position = position;
+        this.length = length;
+        this.cleanable = temporary ? CLEANER.register(this, new TemporaryFileDeleter(file)) : null;
+        this.owner = owner;
+    }
+    
+    /**
+     * Creates a new {@code SpooledContent} that holds the specified {@code content}
+     * in memory. The array is not copied.
+     * 
+     * @param content The content.
+     * @return A new {@code SpooledContent}.
+     */
+    public static SpooledContent of(byte[] content) {
+        if(content==null) { throw new IllegalArgumentException("content is not defined"); }
+        return of(content, 0, content.length);
+    }
+    
+    /**
+     * Creates a new {@code SpooledContent} that holds {@code length} bytes of {@code content}
+     * starting at {@code offset}. The array is not copied.
+     * 
+     * @param content The array that holds the content.
+     * @param offset The offset of the content.
+     * @param length The length of the content.
+     * @return A new {@code SpooledContent}.
+     */
+    public static SpooledContent of(byte[] content, int offset, int length) {
+        if(content==null) { throw new IllegalArgumentException("content is not defined"); }
+        if(offset<0 || length<0 || offset+length>content.length) { throw new IllegalArgumentException("invalid slice: offset="+offset+", length="+length); }
+        return new SpooledContent(ByteBuffer.wrap(content, offset, length).slice(), null, null, 0, length, false);
+    }
+    
+    /**
+     * Creates a new {@code SpooledContent} that holds the remaining bytes of {@code content}.
+     * The buffer is not copied and its position is not modified.
+     * 
+     * @param content The content.
+     * @return A new {@code SpooledContent}.
+     */
+    public static SpooledContent of(ByteBuffer content) {
+        if(content==null) { throw new IllegalArgumentException("content is not defined"); }
+        return new SpooledContent(content.slice(), null, null, 0, content.remaining(), false);
+    }
+    
+    /**
+     * Creates a new {@code SpooledContent} with the content of the specified {@code file}.
+     * The length is read from the file system: the file must not be modified as long as
+     * this {@code SpooledContent} is used. The file is not deleted when this
+     * {@code SpooledContent} is closed.
+     * 
+     * @param file The file.
+     * @return A new {@code SpooledContent}.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static SpooledContent of(Path file) throws IOException {
+        if(file==null) { throw new IllegalArgumentException("file is not defined"); }
+        return new SpooledContent(null, file, null, 0, Files.size(file), false);
+    }
+    
+    /**
+     * Creates a new {@code SpooledContent} with {@code length} bytes of {@code channel}
+     * starting at {@code position}. The position of the channel is not modified and
+     * the channel is not closed when this {@code SpooledContent} is closed.
+     * 
+     * @param channel The channel.
+     * @param position The position of the content.
+     * @param length The length of the content.
+     * @return A new {@code SpooledContent}.
+     */
+    public static SpooledContent of(FileChannel channel, long position, long length) {
+        if(channel==null) { throw new IllegalArgumentException("channel is not defined"); }
+        if(position<0 || length<0) { throw new IllegalArgumentException("invalid range: position="+position+", length="+length); }
+        return new SpooledContent(null, null, channel, position, length, false);
+    }
+    
+    /**
+     * Reads fully the specified {@code input}. If the content is bigger than
+     * {@code memoryThreshold}, then it will be written in a temporary file.
+     * The {@code input} is not closed by this method.
+     * 
+     * @param input The input to read.
+     * @param memoryThreshold The maximum number of bytes to keep in memory.
+     * @return A new {@code SpooledContent}.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static SpooledContent spool(InputStream input, int memoryThreshold) throws IOException {
+        byte[] head = input.readNBytes(memoryThreshold);
+        if(head.length<memoryThreshold) { return of(head); }
+        
+        int next = input.read();
+        if(next<0) { return of(head); }
+        
+        Path file = Files.createTempFile("jotlmsg", ".tmp");
+        try(OutputStream out = Files.newOutputStream(file)) {
+            out.write(head);
+            out.write(next);
+            long length = head.length+1+input.transferTo(out);
+            return new SpooledContent(null, file, null, 0, length, true);
+        } catch(IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+    
+    /**
+     * Returns a {@code SpooledContent} that shares the content of this one without owning it.
+     * Closing the returned instance has no effect: the temporary file, if any, is deleted
+     * only when this {@code SpooledContent} is closed. The returned instance keeps this one
+     * reachable, so that the temporary file is not deleted while it is used.
+     * 
+     * @return A new {@code SpooledContent} or this instance if it does not own a temporary file.
+     */
+    public SpooledContent share() {
+        if(cleanable==null) { return this; }
+        return new SpooledContent(null, file, null, 0, length, false, this);
+    }
+    
+    /**
+     * Returns true if the content is held in a temporary file owned by this {@code SpooledContent}.
+     * 
+     * @return True if the content will be deleted when this instance is closed.
+     */
+    public boolean isTemporary() {
+        return cleanable!=null;
+    }
+    
+    /**
+     * Returns the length of the content.
+     * 
+     * @return The length.
+     */
+    public long getLength() {
+        return length;
+    }
+    
+    /**
+     * Returns true if the content is held in memory.
+     * 
+     * @return True if the content is neither in a file nor in a channel.
+     */
+    public boolean isInMemory() {
+        return memory!=null;
+    }
+    
+    /**
+     * Returns the number of bytes held in memory.
+     * 
+     * @return The length if the content is in memory, zero otherwise.
+     */
+    public long getMemorySize() {
+        return memory!=null ? length : 0;
+    }
+    
+    /**
+     * Returns the content as an array. If the content is held in memory by a whole
+     * array, the latter is returned directly and must not be modified.
+     * 
+     * @return The content.
+     * @throws IOException If an I/O error occurs.
+     */
+    public byte[] toByteArray() throws IOException {
+        if(memory!=null && memory.hasArray() && memory.arrayOffset()==0 && memory.array().length==length) { return memory.array(); }
+        if(length>Integer.MAX_VALUE-8) { throw new IOException("content too large: "+length+" bytes"); }
+        try(InputStream is = newInputStream()) { return is.readNBytes((int)length); }
+    }
+    
+    /**
+     * Returns a new {@code InputStream} to read the content.
+     * 
+     * @return A new {@code InputStream}.
+     * @throws IOException If an I/O error occurs.
+     */
+    public InputStream newInputStream() throws IOException {
+        if(memory!=null) { 
+            if(memory.hasArray()) { return new ByteArrayInputStream(memory.array(), memory.arrayOffset(), (int)length); }
+            return new BufferInputStream(memory.duplicate());
+        }
+        return channel!=null ? new ChannelInputStream(channel, position, length) : Files.newInputStream(file);
+    }
+    
+    /**
+     * Returns a {@code StreamSource} that writes the content.
+     * 
+     * @return A new {@code StreamSource}.
+     */
+    public StreamSource toStreamSource() {
+        if(memory!=null) { return StreamSource.of(memory); }
+        if(channel!=null) { return StreamSource.of(channel, position, length); }
+        return StreamSource.of(file, 0, length);
+    }
+    
+    /**
+     * Writes the content to the specified {@code out}, which remains open.
+     * 
+     * @param out The {@code OutputStream}.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        toStreamSource().writeTo(out);
+    }
+    
+    /**
+     * Deletes the temporary file, if any. A wrapped file or channel is left as-is.
+     * 
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        if(cleanable!=null) { cleanable.clean(); }
+    }
+    
+    /**
+     * Deletes a temporary file. This action must not reference the {@code SpooledContent},
+     * otherwise the latter would never become phantom reachable.
+     */
+    private static final class TemporaryFileDeleter implements Runnable {
+        private final Path file;
+        
+        private TemporaryFileDeleter(Path file) {
+            this.file = file;
+        }
+        
+        @Override
+        public void run() {
+            try { Files.deleteIfExists(file); }
+            catch(IOException ignored) { file.toFile().deleteOnExit(); } //the file may still be open on some platforms
+        }
+    }
+    
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+        
+        private BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+        
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if(len==0) { return 0; }
+            if(!buffer.hasRemaining()) { return -1; }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+        
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+    
+    /**
+     * Reads a range of a {@code FileChannel} with positional reads, so that the
+     * position of the channel is not modified.
+     */
+    private static final class ChannelInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+        
+        private ChannelInputStream(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.end = position+length;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1)<0 ? -1 : b[0] & 0xFF;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(len==0) { return 0; }
+            if(position>=end) { return -1; }
+            int read;
+            ChannelReadGuard.beginRead();
+            try { read = channel.read(ByteBuffer.wrap(b, off, (int)Math.min(len, end-position)), position); }
+            finally { ChannelReadGuard.endRead(); }
+            if(read<0) { throw new EOFException("unexpected end of channel: "+(end-position)+" bytes missing"); }
+            position += read;
+            return read;
+        }
+    }
+}
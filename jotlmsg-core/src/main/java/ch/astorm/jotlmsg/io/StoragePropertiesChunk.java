@@ -53,7 +53,7 @@ public class StoragePropertiesChunk extends PropertiesChunk {
         //page 23, point 2.4.1.3
 
         // 8 bytes of reserved zeros
-        out.write(new byte[8]);
+        out.write(ZEROS);
 
         return super.writeHeaderData(out);
     }
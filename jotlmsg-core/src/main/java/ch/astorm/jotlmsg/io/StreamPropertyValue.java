@@ -0,0 +1,87 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package ch.astorm.jotlmsg.io;
+
+import ch.astorm.jotlmsg.io.CompoundFileWriter.StreamSource;
+import org.apache.poi.hsmf.datatypes.MAPIProperty;
+import org.apache.poi.hsmf.datatypes.PropertyValue;
+import org.apache.poi.hsmf.datatypes.Types;
+
+/**
+ * Represents a binary property whose content is not held in memory but written
+ * from a {@link StreamSource} when the {@code .msg} file is generated.
+ * <p>Since the content is not available, {@link #getRawValue()} always returns null.</p>
+ * 
+ * @author Cedric Tabin
+ */
+public class StreamPropertyValue extends PropertyValue {
+    private final long length;
+    private final StreamSource source;
+    
+    /**
+     * Creates a new {@code StreamPropertyValue}.
+     * 
+     * @param property The property.
+     * @param flags The flags.
+     * @param length The exact length of the content.
+     * @param source The source of the content.
+     */
+    public StreamPropertyValue(MAPIProperty property, long flags, long length, StreamSource source) {
+        super(property, flags, null, Types.BINARY);
+        if(length<0) { throw new IllegalArgumentException("invalid length: "+length); }
+        if(source==null) { throw new IllegalArgumentException("source is not defined"); }
+        this.length = length;
+        this.source = source;
+    }
+    
+    /**
+     * Returns the length of the content.
+     * 
+     * @return The length.
+     */
+    public long getLength() { 
+        return length; 
+    }
+    
+    /**
+     * Returns the source of the content.
+     * 
+     * @return The source.
+     */
+    public StreamSource getSource() { 
+        return source; 
+    }
+}
@@ -1,13 +1,11 @@
 package ch.astorm.jotlmsg.io;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
 import org.apache.poi.hmef.CompressedRTF;
-import org.apache.poi.util.IOUtils;
 import org.apache.poi.util.LittleEndian;
 
 /**
@@ -52,7 +50,6 @@ public class UncompressedRtfOutputStream extends FilterOutputStream {
     }
 
     private void writeData() throws IOException {
-        final ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(dataBuffer.toByteArray());
-        IOUtils.copy(byteArrayInputStream, out);
+        dataBuffer.writeTo(out);
     }
 }
@@ -0,0 +1,266 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Default implementation of {@link MessageMetrics}, which exposes the measures as
+ * an MXBean.
+ * <p>The durations of each phase and operation are recorded in lock-free histograms.
+ * The number of recipients and attachments are counted per operation, so that a message
+ * written and then parsed is not counted twice. The slowest operations are kept, with the
+ * number of recipients and attachments of their message.</p>
+ * <pre>
+ * JmxMessageMetrics metrics = JmxMessageMetrics.install(); //visible in JConsole as ch.astorm.jotlmsg:type=MessageMetrics
+ * </pre>
+ * 
+ * @author Cedric Tabin
+ */
+public class JmxMessageMetrics implements MessageMetrics, MessageMetricsMXBean {
+    private static final Comparator<MessageSample> FASTEST_FIRST = Comparator.comparingLong(MessageSample::getNanos);
+    
+    /**
+     * Name under which the metrics are registered by {@link #register()}.
+     */
+    public static final String OBJECT_NAME = "ch.astorm.jotlmsg:type=MessageMetrics";
+    
+    private final LatencyHistogram[] phases;
+    private final LatencyHistogram[] operations;
+    private final MessageCounters[] counters;
+    private final int slowestCapacity;
+    private final PriorityQueue<MessageSample> slowest;
+    private volatile long slowestThreshold; //duration under which a message cannot be one of the slowest
+    
+    /**
+     * Creates a new {@code JmxMessageMetrics} that keeps the 10 slowest messages.
+     */
+    public JmxMessageMetrics() {
+        this(10);
+    }
+    
+    /**
+     * Creates a new {@code JmxMessageMetrics}.
+     * 
+     * @param slowestCapacity The number of slowest messages kept.
+     */
+    public JmxMessageMetrics(int slowestCapacity) {
+        if(slowestCapacity<0) { throw new IllegalArgumentException("invalid capacity: "+slowestCapacity); }
+        
+        this.slowestCapacity = slowestCapacity;
+        this.slowest = new PriorityQueue<>(slowestCapacity+1, FASTEST_FIRST);
+        this.phases = new LatencyHistogram[Phase.values().length];
+        for(Phase phase : Phase.values()) { phases[phase.ordinal()] = new LatencyHistogram(phase.name()); }
+        this.operations = new LatencyHistogram[Operation.values().length];
+        for(Operation operation : Operation.values()) { operations[operation.ordinal()] = new LatencyHistogram(operation.name()); }
+        this.counters = new MessageCounters[Operation.values().length];
+        for(Operation operation : Operation.values()) { counters[operation.ordinal()] = new MessageCounters(); }
+    }
+    
+    /**
+     * Creates a new {@code JmxMessageMetrics}, registers it in the platform {@code MBeanServer}
+     * and installs it globally.
+     * 
+     * @return The new metrics.
+     * @throws JMException If the metrics cannot be registered.
+     * @see MessageMetrics#install(ch.astorm.jotlmsg.metrics.MessageMetrics)
+     */
+    public static JmxMessageMetrics install() throws JMException {
+        JmxMessageMetrics metrics = new JmxMessageMetrics();
+        metrics.register();
+        MessageMetrics.install(metrics);
+        return metrics;
+    }
+    
+    /**
+     * Registers these metrics in the platform {@code MBeanServer} under {@link #OBJECT_NAME}.
+     * A previously registered instance is replaced.
+     * 
+     * @throws JMException If the metrics cannot be registered.
+     */
+    public void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if(server.isRegistered(name)) { server.unregisterMBean(name); }
+        server.registerMBean(this, name);
+    }
+    
+    /**
+     * Unregisters the metrics from the platform {@code MBeanServer}.
+     * 
+     * @throws JMException If the metrics cannot be unregistered.
+     */
+    public void unregister() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if(server.isRegistered(name)) { server.unregisterMBean(name); }
+    }
+    
+    @Override
+    public void recordPhase(Phase phase, long nanos, long bytes) {
+        phases[phase.ordinal()].record(nanos, bytes);
+    }
+    
+    @Override
+    public void recordMessage(Operation operation, long nanos, long bytes, int recipients, int attachments) {
+        operations[operation.ordinal()].record(nanos, bytes);
+        counters[operation.ordinal()].record(recipients, attachments);
+        
+        if(slowestCapacity==0 || nanos<=slowestThreshold) { return; }
+        MessageSample sample = new MessageSample(operation.name(), System.currentTimeMillis(), nanos, bytes, recipients, attachments);
+        synchronized(slowest) {
+            slowest.add(sample);
+            if(slowest.size()>slowestCapacity) { 
+                slowest.poll();
+                slowestThreshold = slowest.peek().getNanos();
+            }
+        }
+    }
+    
+    @Override
+    public List<LatencyStatistics> getPhases() {
+        return snapshot(phases);
+    }
+    
+    @Override
+    public List<LatencyStatistics> getOperations() {
+        return snapshot(operations);
+    }
+    
+    /**
+     * Returns the statistics of the specified {@code phase}.
+     * 
+     * @param phase The phase.
+     * @return A snapshot of the statistics.
+     */
+    public LatencyStatistics getStatistics(Phase phase) {
+        return phases[phase.ordinal()].snapshot();
+    }
+    
+    /**
+     * Returns the statistics of the specified {@code operation}.
+     * 
+     * @param operation The operation.
+     * @return A snapshot of the statistics.
+     */
+    public LatencyStatistics getStatistics(Operation operation) {
+        return operations[operation.ordinal()].snapshot();
+    }
+    
+    @Override
+    public double getAverageRecipients(Operation operation) {
+        MessageCounters counter = counters[operation.ordinal()];
+        long count = counter.messages.sum();
+        return count>0 ? (double)counter.recipients.sum()/count : 0;
+    }
+    
+    @Override
+    public int getMaxRecipients(Operation operation) {
+        return (int)counters[operation.ordinal()].maxRecipients.get();
+    }
+    
+    @Override
+    public double getAverageAttachments(Operation operation) {
+        MessageCounters counter = counters[operation.ordinal()];
+        long count = counter.messages.sum();
+        return count>0 ? (double)counter.attachments.sum()/count : 0;
+    }
+    
+    @Override
+    public int getMaxAttachments(Operation operation) {
+        return (int)counters[operation.ordinal()].maxAttachments.get();
+    }
+    
+    @Override
+    public List<MessageSample> getSlowestMessages() {
+        List<MessageSample> samples;
+        synchronized(slowest) { samples = new ArrayList<>(slowest); }
+        samples.sort(FASTEST_FIRST.reversed());
+        return samples;
+    }
+    
+    @Override
+    public void reset() {
+        for(LatencyHistogram histogram : phases) { histogram.reset(); }
+        for(LatencyHistogram histogram : operations) { histogram.reset(); }
+        for(MessageCounters counter : counters) { counter.reset(); }
+        synchronized(slowest) {
+            slowest.clear();
+            slowestThreshold = 0;
+        }
+    }
+    
+    private static List<LatencyStatistics> snapshot(LatencyHistogram[] histograms) {
+        List<LatencyStatistics> statistics = new ArrayList<>(histograms.length);
+        for(LatencyHistogram histogram : histograms) { statistics.add(histogram.snapshot()); }
+        return statistics;
+    }
+    
+    /**
+     * Number of recipients and attachments of the messages of an operation.
+     */
+    private static final class MessageCounters {
+        private final LongAdder messages = new LongAdder();
+        private final LongAdder recipients = new LongAdder();
+        private final LongAdder attachments = new LongAdder();
+        private final LongAccumulator maxRecipients = new LongAccumulator(Math::max, 0);
+        private final LongAccumulator maxAttachments = new LongAccumulator(Math::max, 0);
+        
+        void record(int recipients, int attachments) {
+            this.messages.increment();
+            this.recipients.add(recipients);
+            this.attachments.add(attachments);
+            this.maxRecipients.accumulate(recipients);
+            this.maxAttachments.accumulate(attachments);
+        }
+        
+        void reset() {
+            messages.reset();
+            recipients.reset();
+            attachments.reset();
+            maxRecipients.reset();
+            maxAttachments.reset();
+        }
+    }
+}
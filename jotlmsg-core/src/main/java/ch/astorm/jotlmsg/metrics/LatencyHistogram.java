@@ -0,0 +1,96 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations, with a bucket per power of two.
+ * The percentiles are hence approximated by the upper bound of their bucket.
+ * 
+ * @author Cedric Tabin
+ */
+final class LatencyHistogram {
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+    
+    void record(long nanos, long size) {
+        nanos = Math.max(nanos, 0);
+        buckets.incrementAndGet(63-Long.numberOfLeadingZeros(nanos|1));
+        count.increment();
+        totalNanos.add(nanos);
+        bytes.add(size);
+        maxNanos.accumulate(nanos);
+    }
+    
+    void reset() {
+        for(int i=0 ; i<buckets.length() ; ++i) { buckets.set(i, 0); }
+        count.reset();
+        totalNanos.reset();
+        bytes.reset();
+        maxNanos.reset();
+    }
+    
+    LatencyStatistics snapshot() {
+        long[] counts = new long[buckets.length()];
+        long total = 0;
+        for(int i=0 ; i<counts.length ; ++i) { 
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        long max = maxNanos.get();
+        return new LatencyStatistics(name, total, totalNanos.sum(), max, percentile(counts, total, 0.5, max), percentile(counts, total, 0.99, max), bytes.sum());
+    }
+    
+    private static long percentile(long[] counts, long total, double percentile, long max) {
+        long rank = (long)Math.ceil(total*percentile);
+        long cumulated = 0;
+        for(int i=0 ; i<counts.length ; ++i) {
+            cumulated += counts[i];
+            if(cumulated>=rank && cumulated>0) { return Math.min(i==63 ? Long.MAX_VALUE : (1L<<(i+1))-1, max); }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg.metrics;
+
+import javax.management.ConstructorParameters;
+
+/**
+ * Snapshot of the durations recorded for a phase or an operation.
+ * The percentiles are approximated by the next power of two, capped by the maximum.
+ * 
+ * @author Cedric Tabin
+ */
+public class LatencyStatistics {
+    private final String name;
+    private final long count;
+    private final long totalNanos;
+    private final long maxNanos;
+    private final long medianNanos;
+    private final long percentile99Nanos;
+    private final long bytes;
+    
+    /**
+     * Creates a new {@code LatencyStatistics}.
+     * 
+     * @param name The name of the phase or the operation.
+     * @param count The number of measures.
+     * @param totalNanos The sum of the durations.
+     * @param maxNanos The longest duration.
+     * @param medianNanos The approximated median duration.
+     * @param percentile99Nanos The approximated 99th percentile of the durations.
+     * @param bytes The sum of the bytes processed.
+     */
+    @ConstructorParameters({"name", "count", "totalNanos", "maxNanos", "medianNanos", "percentile99Nanos", "bytes"})
+    public LatencyStatistics(String name, long count, long totalNanos, long maxNanos, long medianNanos, long percentile99Nanos, long bytes) {
+        this.name = name;
+        this.count = count;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.medianNanos = medianNanos;
+        this.percentile99Nanos = percentile99Nanos;
+        this.bytes = bytes;
+    }
+    
+    /**
+     * Returns the name of the phase or the operation.
+     * 
+     * @return The name.
+     */
+    public String getName() { return name; }
+    
+    /**
+     * Returns the number of measures.
+     * 
+     * @return The count.
+     */
+    public long getCount() { return count; }
+    
+    /**
+     * Returns the sum of the durations.
+     * 
+     * @return The total, in nanoseconds.
+     */
+    public long getTotalNanos() { return totalNanos; }
+    
+    /**
+     * Returns the longest duration.
+     * 
+     * @return The maximum, in nanoseconds.
+     */
+    public long getMaxNanos() { return maxNanos; }
+    
+    /**
+     * Returns the approximated median duration.
+     * 
+     * @return The median, in nanoseconds.
+     */
+    public long getMedianNanos() { return medianNanos; }
+    
+    /**
+     * Returns the approximated 99th percentile of the durations.
+     * 
+     * @return The 99th percentile, in nanoseconds.
+     */
+    public long getPercentile99Nanos() { return percentile99Nanos; }
+    
+    /**
+     * Returns the sum of the bytes processed.
+     * 
+     * @return The number of bytes.
+     */
+    public long getBytes() { return bytes; }
+}
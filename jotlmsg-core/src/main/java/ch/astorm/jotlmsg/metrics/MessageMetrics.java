@@ -0,0 +1,163 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg.metrics;
+
+/**
+ * Receives the measures of the serialization and the parsing of the messages.
+ * <p>The measures are sent to the instance {@link #install(ch.astorm.jotlmsg.metrics.MessageMetrics) installed}
+ * globally. By default, the metrics are {@link #DISABLED} and the instrumented code
+ * does not even read the clock. {@link JmxMessageMetrics} is the default implementation,
+ * which exposes the measures through JMX.</p>
+ * <p>The implementations must be thread-safe: the measures are recorded by all the
+ * threads that write or parse messages.</p>
+ * 
+ * @author Cedric Tabin
+ */
+public interface MessageMetrics {
+    
+    /**
+     * Metrics that record nothing.
+     */
+    public static final MessageMetrics DISABLED = new MessageMetrics() {
+        @Override public boolean isEnabled() { return false; }
+        @Override public void recordPhase(Phase phase, long nanos, long bytes) {}
+        @Override public void recordMessage(Operation operation, long nanos, long bytes, int recipients, int attachments) {}
+    };
+    
+    /**
+     * Represents a step of an operation.
+     */
+    public static enum Phase {
+        /**
+         * Reading of the content of an attachment. The bytes are the length of the content.
+         */
+        ATTACHMENT_READ,
+        
+        /**
+         * Encoding of the properties of the message, its recipients and its attachments
+         * into the storages of the compound file.
+         */
+        PROPERTY_ENCODING,
+        
+        /**
+         * Allocation of the sectors of the compound file.
+         */
+        COMPOUND_FILE_LAYOUT,
+        
+        /**
+         * Writing of the compound file into the output. The bytes are the size of the file.
+         */
+        COMPOUND_FILE_WRITE,
+        
+        /**
+         * Reading of a {@code .msg} file into a {@code MAPIMessage}. The bytes are the size of the
+         * file, or zero if unknown.
+         */
+        MAPI_PARSING,
+        
+        /**
+         * Extraction of the data of a {@code MAPIMessage}.
+         */
+        MESSAGE_EXTRACTION
+    }
+    
+    /**
+     * Represents an operation on a whole message.
+     */
+    public static enum Operation {
+        /**
+         * Writing of a {@code .msg} file. The bytes are the size of the file.
+         */
+        WRITE,
+        
+        /**
+         * Parsing of a {@code .msg} file. The bytes are the size of the file, or zero if unknown.
+         */
+        PARSE,
+        
+        /**
+         * Conversion to a {@code MimeMessage}. The bytes are always zero.
+         */
+        MIME_CONVERSION
+    }
+    
+    /**
+     * Returns the metrics currently installed.
+     * 
+     * @return The metrics, never null.
+     */
+    public static MessageMetrics current() {
+        return Registry.current;
+    }
+    
+    /**
+     * Installs the specified {@code metrics} globally.
+     * 
+     * @param metrics The metrics or null to disable the metrics.
+     */
+    public static void install(MessageMetrics metrics) {
+        Registry.current = metrics!=null ? metrics : DISABLED;
+    }
+    
+    /**
+     * Returns true if the measures must be recorded. When false, the other methods
+     * of this instance are never invoked.
+     * 
+     * @return True by default.
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+    
+    /**
+     * Records the duration of a phase.
+     * 
+     * @param phase The phase.
+     * @param nanos The duration, in nanoseconds.
+     * @param bytes The number of bytes processed (see {@link Phase}).
+     */
+    void recordPhase(Phase phase, long nanos, long bytes);
+    
+    /**
+     * Records an operation on a whole message.
+     * 
+     * @param operation The operation.
+     * @param nanos The duration, in nanoseconds.
+     * @param bytes The number of bytes (see {@link Operation}).
+     * @param recipients The number of recipients of the message.
+     * @param attachments The number of attachments of the message.
+     */
+    void recordMessage(Operation operation, long nanos, long bytes, int recipients, int attachments);
+}
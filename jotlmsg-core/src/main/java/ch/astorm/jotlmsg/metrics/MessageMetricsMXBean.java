@@ -0,0 +1,103 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg.metrics;
+
+import java.util.List;
+
+/**
+ * Management interface of {@link JmxMessageMetrics}.
+ * 
+ * @author Cedric Tabin
+ */
+public interface MessageMetricsMXBean {
+    
+    /**
+     * Returns the statistics of each {@link MessageMetrics.Phase}.
+     * 
+     * @return The statistics, in the order of the phases.
+     */
+    List<LatencyStatistics> getPhases();
+    
+    /**
+     * Returns the statistics of each {@link MessageMetrics.Operation}.
+     * 
+     * @return The statistics, in the order of the operations.
+     */
+    List<LatencyStatistics> getOperations();
+    
+    /**
+     * Returns the average number of recipients per message of the specified {@code operation}.
+     * 
+     * @param operation The operation.
+     * @return The average or zero if no message has been recorded.
+     */
+    double getAverageRecipients(MessageMetrics.Operation operation);
+    
+    /**
+     * Returns the highest number of recipients of a message of the specified {@code operation}.
+     * 
+     * @param operation The operation.
+     * @return The maximum.
+     */
+    int getMaxRecipients(MessageMetrics.Operation operation);
+    
+    /**
+     * Returns the average number of attachments per message of the specified {@code operation}.
+     * 
+     * @param operation The operation.
+     * @return The average or zero if no message has been recorded.
+     */
+    double getAverageAttachments(MessageMetrics.Operation operation);
+    
+    /**
+     * Returns the highest number of attachments of a message of the specified {@code operation}.
+     * 
+     * @param operation The operation.
+     * @return The maximum.
+     */
+    int getMaxAttachments(MessageMetrics.Operation operation);
+    
+    /**
+     * Returns the slowest operations recorded.
+     * 
+     * @return The samples, the slowest first.
+     */
+    List<MessageSample> getSlowestMessages();
+    
+    /**
+     * Clears all the measures.
+     */
+    void reset();
+}
@@ -0,0 +1,114 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg.metrics;
+
+import javax.management.ConstructorParameters;
+
+/**
+ * Represents an operation recorded on a message.
+ * 
+ * @author Cedric Tabin
+ */
+public class MessageSample {
+    private final String operation;
+    private final long timestamp;
+    private final long nanos;
+    private final long bytes;
+    private final int recipients;
+    private final int attachments;
+    
+    /**
+     * Creates a new {@code MessageSample}.
+     * 
+     * @param operation The name of the operation.
+     * @param timestamp The time at which the operation has been recorded, in milliseconds since the epoch.
+     * @param nanos The duration of the operation.
+     * @param bytes The number of bytes.
+     * @param recipients The number of recipients.
+     * @param attachments The number of attachments.
+     */
+    @ConstructorParameters({"operation", "timestamp", "nanos", "bytes", "recipients", "attachments"})
+    public MessageSample(String operation, long timestamp, long nanos, long bytes, int recipients, int attachments) {
+        this.operation = operation;
+        this.timestamp = timestamp;
+        this.nanos = nanos;
+        this.bytes = bytes;
+        this.recipients = recipients;
+        this.attachments = attachments;
+    }
+    
+    /**
+     * Returns the name of the operation.
+     * 
+     * @return The operation.
+     * @see MessageMetrics.Operation
+     */
+    public String getOperation() { return operation; }
+    
+    /**
+     * Returns the time at which the operation has been recorded.
+     * 
+     * @return The timestamp, in milliseconds since the epoch.
+     */
+    public long getTimestamp() { return timestamp; }
+    
+    /**
+     * Returns the duration of the operation.
+     * 
+     * @return The duration, in nanoseconds.
+     */
+    public long getNanos() { return nanos; }
+    
+    /**
+     * Returns the number of bytes of the message.
+     * 
+     * @return The number of bytes, or zero if unknown.
+     */
+    public long getBytes() { return bytes; }
+    
+    /**
+     * Returns the number of recipients of the message.
+     * 
+     * @return The number of recipients.
+     */
+    public int getRecipients() { return recipients; }
+    
+    /**
+     * Returns the number of attachments of the message.
+     * 
+     * @return The number of attachments.
+     */
+    public int getAttachments() { return attachments; }
+}
@@ -0,0 +1,202 @@
+package ch.astorm.jotlmsg;
+
+import ch.astorm.jotlmsg.OutlookMessageAttachment.InputStreamCreator;
+import ch.astorm.jotlmsg.OutlookMessageRecipient.Type;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import org.junit.jupiter.api.function.Executable;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the bytes allocated by the current thread on the hot paths against the budgets
+ * of {@code allocation-budgets.properties}. The budgets of the MIME conversion are checked
+ * by the {@code jotlmsg-mime} module.
+ * <p>When an optimization lowers the allocations, the budgets should be lowered too. The
+ * measured values are printed when the {@code jotlmsg.allocation.print} system property
+ * is set.</p>
+ */
+public class AllocationBudgetTest {
+    static final String[] FIXTURES = {
+        "msoutlook/simple.msg",
+        "msoutlook/simple2.msg",
+        "msoutlook/attachment.msg",
+        "msoutlook/replyto.msg",
+        "msoutlook/sent.msg",
+        "generated/base-message.msg",
+        "generated/with-attachments-2.msg",
+        "generated/many-recipients.msg",
+        "generated/many-attachments.msg"
+    };
+
+    private static final int WARMUP_RUNS = 5;
+    private static final int MEASURED_RUNS = 5;
+
+    private static com.sun.management.ThreadMXBean threadBean;
+    private static Properties budgets;
+
+    @BeforeAll
+    public static void setup() throws IOException {
+        threadBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        budgets = new Properties();
+        try(InputStream is = AllocationBudgetTest.class.getResourceAsStream("allocation-budgets.properties")) { budgets.load(is); }
+    }
+
+    @Test
+    public void testParseBudget() throws Throwable {
+        List<Executable> checks = new ArrayList<>();
+        for(String fixture : FIXTURES) {
+            byte[] content = readFixture(fixture);
+            long allocated = measure(() -> new OutlookMessage(new ByteArrayInputStream(content)).close());
+            checks.add(() -> checkBudget("parse", fixture, allocated));
+        }
+        assertAll(checks);
+    }
+
+    @Test
+    public void testWriteBudget() throws Throwable {
+        List<Executable> checks = new ArrayList<>();
+        for(String fixture : FIXTURES) {
+            try(OutlookMessage message = new OutlookMessage(new ByteArrayInputStream(readFixture(fixture)))) {
+                long allocated = measure(() -> message.writeTo(OutputStream.nullOutputStream()));
+                checks.add(() -> checkBudget("write", fixture, allocated));
+            }
+        }
+        assertAll(checks);
+    }
+
+    @Test
+    public void testWritePeakHeap() throws Exception {
+        int attachmentSize = 4*1024*1024;
+        long single = measurePeakHeap(1, attachmentSize);
+        long multiple = measurePeakHeap(8, attachmentSize);
+
+        //the attachments are read one by one, hence the retained heap must not depend on their count
+        assertTrue(single<2L*attachmentSize, "peak heap with one attachment: "+single);
+        assertTrue(multiple<single+attachmentSize, "peak heap with 8 attachments: "+multiple+" (one attachment: "+single+")");
+    }
+
+    static long measure(Executable operation) throws Throwable {
+        for(int i=0 ; i<WARMUP_RUNS ; ++i) { operation.execute(); }
+
+        long min = Long.MAX_VALUE;
+        for(int i=0 ; i<MEASURED_RUNS ; ++i) {
+            long start = threadBean.getCurrentThreadAllocatedBytes();
+            operation.execute();
+            min = Math.min(min, threadBean.getCurrentThreadAllocatedBytes()-start);
+        }
+        return min;
+    }
+
+    static void checkBudget(String operation, String fixture, long allocated) {
+        String key = operation+"."+fixture;
+        if(System.getProperty("jotlmsg.allocation.print")!=null) { System.out.println(key+"="+allocated); }
+
+        String budget = budgets.getProperty(key);
+        assertNotNull(budget, "no budget for "+key);
+        assertTrue(allocated<=Long.parseLong(budget), key+" allocated "+allocated+" bytes (budget: "+budget+")");
+    }
+
+    /**
+     * Writes a message with the given attachments and returns the maximum growth of the live
+     * heap, sampled after each attachment has been read and while the output is written.
+     */
+    private long measurePeakHeap(int attachmentCount, int attachmentSize) throws IOException {
+        MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+        long[] peak = { 0 };
+        Runnable sampler = () -> {
+            System.gc();
+            peak[0] = Math.max(peak[0], memoryBean.getHeapMemoryUsage().getUsed());
+        };
+
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("Peak heap");
+        message.setPlainTextBody("body");
+        message.addRecipient(Type.TO, "to@jotlmsg.com");
+        for(int i=0 ; i<attachmentCount ; ++i) {
+            InputStreamCreator creator = a -> new GeneratedInputStream(attachmentSize, sampler);
+            message.addAttachment("file"+i+".bin", "application/octet-stream", creator);
+        }
+
+        System.gc();
+        long baseline = memoryBean.getHeapMemoryUsage().getUsed();
+        message.writeTo(new SamplingOutputStream(attachmentSize/2, sampler));
+        return Math.max(0, peak[0]-baseline);
+    }
+
+    static byte[] readFixture(String fixture) throws IOException {
+        try(InputStream is = AllocationBudgetTest.class.getResourceAsStream(fixture)) { return is.readAllBytes(); }
+    }
+
+    /**
+     * Generates content without holding it in memory and samples the heap once read.
+     */
+    private static class GeneratedInputStream extends FilterInputStream {
+        private final Runnable sampler;
+
+        private GeneratedInputStream(int size, Runnable sampler) {
+            super(new InputStream() {
+                private int remaining = size;
+
+                @Override
+                public int read() {
+                    return remaining-->0 ? remaining & 0xFF : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if(remaining<=0) { return -1; }
+                    int count = Math.min(len, remaining);
+                    for(int i=0 ; i<count ; ++i) { b[off+i] = (byte)(remaining-i); }
+                    remaining -= count;
+                    return count;
+                }
+            });
+            this.sampler = sampler;
+        }
+
+        @Override
+        public void close() throws IOException {
+            sampler.run();
+            super.close();
+        }
+    }
+
+    /**
+     * Discards the data and samples the heap at regular intervals.
+     */
+    private static class SamplingOutputStream extends OutputStream {
+        private final int interval;
+        private final Runnable sampler;
+        private long count;
+
+        private SamplingOutputStream(int interval, Runnable sampler) {
+            this.interval = interval;
+            this.sampler = sampler;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[] { (byte)b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if((count+len)/interval!=count/interval) { sampler.run(); }
+            count += len;
+        }
+    }
+}
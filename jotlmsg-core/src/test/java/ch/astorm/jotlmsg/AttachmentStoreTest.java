@@ -0,0 +1,81 @@
+package ch.astorm.jotlmsg;
+
+import ch.astorm.jotlmsg.AttachmentStore.Entry;
+import ch.astorm.jotlmsg.OutlookMessageBatchWriter.Result;
+import ch.astorm.jotlmsg.OutlookMessageRecipient.Type;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AttachmentStoreTest {
+    
+    @TempDir
+    Path folder;
+    
+    @Test
+    public void testDeduplication() throws Exception {
+        try(AttachmentStore store = new AttachmentStore()) {
+            Entry first = store.put("Hello, World!".getBytes(StandardCharsets.UTF_8));
+            Entry second = store.put(new ByteArrayInputStream("Hello, World!".getBytes(StandardCharsets.UTF_8)));
+            Entry other = store.put("Bye".getBytes(StandardCharsets.UTF_8));
+            
+            assertSame(first, second);
+            assertNotSame(first, other);
+            assertEquals(2, store.size());
+            assertEquals(2, first.getReferenceCount());
+            assertEquals("dffd6021bb2bd5b0af676290809ec3a53191dd81c7f70a4b28688a362182986f", first.getHash());
+            assertSame(first, store.get(first.getHash().toUpperCase()));
+            
+            first.release();
+            assertEquals(1, first.getReferenceCount());
+            assertEquals("Hello, World!", new String(first.newInputStream(null).readAllBytes(), StandardCharsets.UTF_8));
+            
+            first.release();
+            assertEquals(1, store.size());
+            assertNull(store.get(first.getHash()));
+            assertThrows(IOException.class, () -> first.newInputStream(null));
+            assertThrows(IllegalStateException.class, () -> first.release());
+        }
+    }
+    
+    @Test
+    public void testConcurrentMessages() throws Exception {
+        byte[] pdf = new byte[200000];
+        new Random(3).nextBytes(pdf);
+        byte[] logo = new byte[3000];
+        new Random(4).nextBytes(logo);
+        
+        try(AttachmentStore store = new AttachmentStore(50000);
+            OutlookMessageBatchWriter writer = new OutlookMessageBatchWriter(8, 16)) {
+            for(int i=0 ; i<100 ; ++i) {
+                OutlookMessage message = new OutlookMessage();
+                message.setSubject("Message "+i);
+                message.setPlainTextBody("Hello");
+                message.addRecipient(Type.TO, "user"+i+"@jotlmsg.com");
+                message.addAttachment("document.pdf", "application/pdf", store.put(pdf));
+                message.addAttachment("logo.png", "image/png", store.put(new ByteArrayInputStream(logo)));
+                writer.submit(message, folder.resolve("message"+i+".msg"));
+            }
+            
+            Result result = writer.finish();
+            assertEquals(100, result.getSucceeded());
+            assertEquals(2, store.size());
+            
+            for(int i=0 ; i<100 ; i+=10) {
+                OutlookMessage parsed = new OutlookMessage(folder.resolve("message"+i+".msg").toFile());
+                assertArrayEquals(pdf, parsed.getAttachments().get(0).getNewInputStream().readAllBytes());
+                assertArrayEquals(logo, parsed.getAttachments().get(1).getNewInputStream().readAllBytes());
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package ch.astorm.jotlmsg;
+
+import ch.astorm.jotlmsg.OutlookMessageRecipient.Type;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class EmailAddressTest {
+
+    @Test
+    public void testParse() {
+        assertAddress("john.doe@jotlmsg.com", null, "john.doe@jotlmsg.com");
+        assertAddress("john.doe@jotlmsg.com", null, "  john.doe@jotlmsg.com  ");
+        assertAddress("john.doe@jotlmsg.com", null, "<john.doe@jotlmsg.com>");
+        assertAddress("john.doe@jotlmsg.com", null, "john.doe@jotlmsg.com (John Doe)");
+        assertAddress("john.doe@jotlmsg.com", "John Doe", "John Doe <john.doe@jotlmsg.com>");
+        assertAddress("john.doe@jotlmsg.com", "John Doe", "John   Doe<john.doe@jotlmsg.com>");
+        assertAddress("john.doe@jotlmsg.com", "Doe, John", "\"Doe, John\" <john.doe@jotlmsg.com>");
+        assertAddress("john.doe@jotlmsg.com", "John \"JD\" Doe", "\"John \\\"JD\\\" Doe\" <john.doe@jotlmsg.com>");
+        assertAddress("john.doe@jotlmsg.com", "John Doe", "John (Work) Doe < john.doe@jotlmsg.com > (comment)");
+        assertAddress("john.doe@jotlmsg.com", "Cédric", "Cédric <john.doe@jotlmsg.com>");
+        assertAddress("\"john doe\"@jotlmsg.com", null, "\"john doe\"@jotlmsg.com");
+        assertAddress("\"john>doe\"@jotlmsg.com", "John", "John <\"john>doe\"@jotlmsg.com>");
+        assertAddress("john_doe+tag@jotlmsg.com", null, "john_doe+tag@jotlmsg.com");
+        assertAddress("john@[192.168.0.1]", null, "john@[192.168.0.1]");
+        assertAddress("john@localhost", null, "john@localhost");
+        assertAddress("jörg@müller.ch", null, "jörg@müller.ch");
+    }
+
+    @Test
+    public void testInvalid() {
+        assertInvalid("");
+        assertInvalid("   ");
+        assertInvalid("John");
+        assertInvalid("John Doe");
+        assertInvalid("@jotlmsg.com");
+        assertInvalid("john@");
+        assertInvalid("john@@jotlmsg.com");
+        assertInvalid("john doe@jotlmsg.com");
+        assertInvalid(".john@jotlmsg.com");
+        assertInvalid("john.@jotlmsg.com");
+        assertInvalid("john..doe@jotlmsg.com");
+        assertInvalid("john@jotlmsg..com");
+        assertInvalid("john@jotlmsg.com.");
+        assertInvalid("john@[]");
+        assertInvalid("john@[127.0.0.1");
+        assertInvalid("\"john@jotlmsg.com");
+        assertInvalid("John <john@jotlmsg.com");
+        assertInvalid("John <john@jotlmsg.com> Doe");
+        assertInvalid("john@jotlmsg.com, jane@jotlmsg.com");
+        assertInvalid("john@jotlmsg.com (comment");
+        
+        assertThrows(IllegalArgumentException.class, () -> EmailAddress.parse(null));
+        assertFalse(EmailAddress.isValid(null));
+    }
+
+    @Test
+    public void testToString() {
+        assertEquals("john@jotlmsg.com", EmailAddress.parse("john@jotlmsg.com").toString());
+        assertEquals("\"Doe, \\\"John\\\"\" <john@jotlmsg.com>", EmailAddress.parse("\"Doe, \\\"John\\\"\" <john@jotlmsg.com>").toString());
+        assertEquals(EmailAddress.parse("John <john@jotlmsg.com>"), EmailAddress.parse("\"John\"<john@jotlmsg.com>"));
+        assertEquals(EmailAddress.parse("John <john@jotlmsg.com>").hashCode(), EmailAddress.parse("\"John\"<john@jotlmsg.com>").hashCode());
+        assertFalse(EmailAddress.parse("John <john@jotlmsg.com>").equals(EmailAddress.parse("john@jotlmsg.com")));
+    }
+
+    @Test
+    public void testRecipientCache() {
+        OutlookMessageRecipient recipient = new OutlookMessageRecipient(Type.TO, "John <john@jotlmsg.com>");
+        EmailAddress address = recipient.getParsedAddress();
+        assertEquals("john@jotlmsg.com", address.getAddress());
+        assertEquals("John", address.getName());
+        assertSame(address, recipient.getParsedAddress());
+        assertTrue(recipient.isEmailValid());
+        
+        recipient.setEmail("john doe");
+        assertFalse(recipient.isEmailValid());
+        assertThrows(IllegalArgumentException.class, () -> recipient.getParsedAddress());
+        
+        recipient.setEmail("jane@jotlmsg.com");
+        assertNotSame(address, recipient.getParsedAddress());
+        assertEquals("jane@jotlmsg.com", recipient.getParsedAddress().getAddress());
+        
+        recipient.setEmail(null);
+        assertNull(recipient.getParsedAddress());
+        assertFalse(recipient.isEmailValid());
+        recipient.setEmail("");
+        assertNull(recipient.getParsedAddress());
+    }
+
+    @Test
+    public void testValidate() {
+        OutlookMessage message = new OutlookMessage();
+        for(int i=0 ; i<1000 ; ++i) { message.addRecipient(Type.TO, "user"+i+"@jotlmsg.com", "User "+i); }
+        OutlookMessageRecipient invalid1 = message.addRecipient(Type.CC, "not an address");
+        message.addRecipient(Type.CC, null, "No email");
+        OutlookMessageRecipient invalid2 = message.addRecipient(Type.BCC, "user@jotlmsg..com");
+        
+        List<OutlookMessageRecipient> invalids = message.getInvalidRecipients();
+        assertEquals(List.of(invalid1, invalid2), invalids);
+        
+        OutlookMessageRecipient first = message.getRecipients(Type.TO).get(0);
+        assertSame(first.getParsedAddress(), first.getParsedAddress());
+        assertEquals("user0@jotlmsg.com", first.getParsedAddress().getAddress());
+        
+        invalid1.setEmail("fixed@jotlmsg.com");
+        assertEquals(List.of(invalid2), OutlookMessageRecipient.validate(message.getAllRecipients()));
+        assertThrows(IllegalArgumentException.class, () -> OutlookMessageRecipient.validate(null));
+    }
+
+    private static void assertAddress(String expectedAddress, String expectedName, String value) {
+        assertTrue(EmailAddress.isValid(value), value);
+        EmailAddress address = EmailAddress.parse(value);
+        assertEquals(expectedAddress, address.getAddress(), value);
+        assertEquals(expectedName, address.getName(), value);
+    }
+
+    private static void assertInvalid(String value) {
+        assertFalse(EmailAddress.isValid(value), value);
+        assertThrows(IllegalArgumentException.class, () -> EmailAddress.parse(value), value);
+    }
+}
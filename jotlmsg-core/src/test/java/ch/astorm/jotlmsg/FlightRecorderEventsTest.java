@@ -0,0 +1,74 @@
+package ch.astorm.jotlmsg;
+
+import ch.astorm.jotlmsg.OutlookMessageRecipient.Type;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FlightRecorderEventsTest {
+    
+    @TempDir
+    Path folder;
+    
+    @Test
+    public void testEvents() throws Exception {
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("Recorded");
+        message.setPlainTextBody("Hello");
+        message.addRecipient(Type.TO, "to@jotlmsg.com");
+        message.addRecipient(Type.CC, "cc@jotlmsg.com");
+        message.addAttachment("file.txt", "text/plain", new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8)));
+        
+        Path dump = folder.resolve("recording.jfr");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(Recording recording = new Recording()) {
+            for(String name : List.of("Write", "Parse", "AttachmentRead")) { recording.enable("ch.astorm.jotlmsg."+name).withoutThreshold(); }
+            recording.start();
+            
+            message.writeTo(out);
+            new OutlookMessage(new ByteArrayInputStream(out.toByteArray()));
+            
+            recording.stop();
+            recording.dump(dump);
+        }
+        
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        assertFalse(Files.size(dump)==0);
+        
+        List<RecordedEvent> writes = filter(events, "Write");
+        assertEquals(1, writes.size());
+        assertEquals(out.size(), writes.get(0).getLong("messageSize"));
+        assertEquals(2, writes.get(0).getInt("recipientCount"));
+        assertEquals(1, writes.get(0).getInt("attachmentCount"));
+        assertEquals("V3", writes.get(0).getString("version"));
+        
+        List<RecordedEvent> parses = filter(events, "Parse");
+        assertEquals(1, parses.size());
+        assertEquals(out.size(), parses.get(0).getLong("messageSize"));
+        assertEquals(2, parses.get(0).getInt("recipientCount"));
+        assertEquals(1, parses.get(0).getInt("attachmentCount"));
+        
+        List<RecordedEvent> reads = filter(events, "AttachmentRead");
+        assertEquals(1, reads.size());
+        for(RecordedEvent read : reads) {
+            assertEquals("file.txt", read.getString("name"));
+            assertEquals(7, read.getLong("size"));
+            assertFalse(read.getBoolean("prefetched"));
+        }
+    }
+    
+    private static List<RecordedEvent> filter(List<RecordedEvent> events, String name) {
+        return events.stream().filter(e -> e.getEventType().getName().equals("ch.astorm.jotlmsg."+name)).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,118 @@
+package ch.astorm.jotlmsg;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.time.OffsetDateTime;
+import java.util.Date;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class MessageHeadersTest {
+    private static final String HEADERS =
+            "Received: from mx1.jotlmsg.com (mx1.jotlmsg.com [10.0.0.1])\r\n" +
+            "\tby mail.jotlmsg.com with ESMTPS id 12345;\r\n" +
+            "\tWed, 28 Feb 2018 10:15:30 +0100\r\n" +
+            "Received: from client.jotlmsg.com by mx1.jotlmsg.com; Wed, 28 Feb 2018 10:15:29 +0100\r\n" +
+            "Message-ID: <abc.123@jotlmsg.com>\r\n" +
+            "In-Reply-To: <parent@jotlmsg.com>\r\n" +
+            "References: <root@jotlmsg.com>\r\n" +
+            " <parent@jotlmsg.com>\r\n" +
+            "X-Mailer: jotlmsg\r\n" +
+            "X-Spam-Score: 0.1\r\n" +
+            "date: Wed, 28 Feb 2018 10:15:30 +0100 (CET)\r\n" +
+            "Subject: Test\r\n" +
+            "\r\n" +
+            "Body-Like: not a header\r\n";
+
+    @Test
+    public void testLookup() {
+        MessageHeaders headers = new MessageHeaders(HEADERS);
+        assertEquals("<abc.123@jotlmsg.com>", headers.get("message-id"));
+        assertEquals("jotlmsg", headers.get("X-MAILER"));
+        assertNull(headers.get("Body-Like"));
+        assertNull(headers.get("X-Mail"));
+        assertEquals("Hello", new MessageHeaders("Subject \t: Hello\r\n").get("subject"));
+        assertNull(new MessageHeaders("Subject x: Hello\r\n").get("subject"));
+        
+        List<String> received = headers.getAll("Received");
+        assertEquals(2, received.size());
+        assertEquals("from mx1.jotlmsg.com (mx1.jotlmsg.com [10.0.0.1])\tby mail.jotlmsg.com with ESMTPS id 12345;\tWed, 28 Feb 2018 10:15:30 +0100", received.get(0));
+        assertEquals("from client.jotlmsg.com by mx1.jotlmsg.com; Wed, 28 Feb 2018 10:15:29 +0100", received.get(1));
+        assertTrue(headers.getAll("Cc").isEmpty());
+        
+        assertEquals(List.of("Received", "Message-ID", "In-Reply-To", "References", "X-Mailer", "X-Spam-Score", "date", "Subject"), headers.getNames());
+        assertEquals("<abc.123@jotlmsg.com>", headers.get("Message-Id"));
+        assertNull(headers.get("Body-Like"));
+        
+        assertEquals("<abc.123@jotlmsg.com>", headers.getMessageId());
+        assertEquals(List.of("<parent@jotlmsg.com>"), headers.getInReplyTo());
+        assertEquals(List.of("<root@jotlmsg.com>", "<parent@jotlmsg.com>"), headers.getReferences());
+        assertEquals(Date.from(OffsetDateTime.parse("2018-02-28T10:15:30+01:00").toInstant()), headers.getDate());
+    }
+
+    @Test
+    public void testEmpty() {
+        assertTrue(MessageHeaders.EMPTY.isEmpty());
+        assertNull(MessageHeaders.EMPTY.get("Date"));
+        assertNull(MessageHeaders.EMPTY.getDate());
+        assertNull(MessageHeaders.EMPTY.getMessageId());
+        assertTrue(MessageHeaders.EMPTY.getReferences().isEmpty());
+        assertFalse(new MessageHeaders("Date: Wed, 28 Feb 2018 10:15:30 +0100").isEmpty());
+    }
+
+    @Test
+    public void testParseDate() {
+        Date expected = Date.from(OffsetDateTime.parse("2018-02-28T10:15:30+01:00").toInstant());
+        assertEquals(expected, MessageHeaders.parseDate("Wed, 28 Feb 2018 10:15:30 +0100"));
+        assertEquals(expected, MessageHeaders.parseDate("Wed, 28 Feb 2018 10:15:30 +0100 (CET)"));
+        assertEquals(expected, MessageHeaders.parseDate("28 Feb 2018 10:15:30 +0100"));
+        assertEquals(expected, MessageHeaders.parseDate("  wed,28  feb 2018 10:15:30\r\n +0100 (Central (European) Time) "));
+        assertEquals(expected, MessageHeaders.parseDate("Wed, 28 Feb 2018 09:15:30 GMT"));
+        assertEquals(expected, MessageHeaders.parseDate("Wed, 28 Feb 2018 09:15:30 UT"));
+        assertEquals(expected, MessageHeaders.parseDate("Wed, 28 Feb 2018 04:15:30 EST"));
+        assertEquals(expected, MessageHeaders.parseDate("Wed, 28 Feb 2018 01:15:30 PST"));
+        assertEquals(Date.from(OffsetDateTime.parse("2018-02-28T10:15:00+01:00").toInstant()), MessageHeaders.parseDate("Wed, 28 Feb 2018 10:15 +0100"));
+        assertEquals(Date.from(OffsetDateTime.parse("2026-10-16T10:00:00+02:00").toInstant()), MessageHeaders.parseDate("Thu, 16 Oct 2026 10:00:00 +0200")); //wrong day of week
+        assertEquals(expected, MessageHeaders.parseDate("Fri, 28 Feb 2018 10:15:30 +0100"));
+        
+        assertNull(MessageHeaders.parseDate(null));
+        assertNull(MessageHeaders.parseDate(""));
+        assertNull(MessageHeaders.parseDate("yesterday"));
+        assertNull(MessageHeaders.parseDate("Wed, 31 Feb 2018 10:15:30 +0100"));
+    }
+
+    @Test
+    public void testFormatDate() {
+        Date date = new Date(1500000000000L);
+        String formatted = MessageHeaders.formatDate(date);
+        assertTrue(formatted.matches("[A-Z][a-z]{2}, \\d{1,2} [A-Z][a-z]{2} 2017 \\d{2}:\\d{2}:\\d{2} [+-]\\d{4} \\(.+\\)"), formatted);
+        assertEquals(date, MessageHeaders.parseDate(formatted));
+    }
+
+    @Test
+    public void testMessageHeaders() throws Exception {
+        InputStream msg = MessageHeadersTest.class.getResourceAsStream("msoutlook/simple.msg");
+        OutlookMessage message = new OutlookMessage(msg);
+        assertNotNull(message.getHeaders());
+        
+        OutlookMessage created = new OutlookMessage();
+        assertSame(MessageHeaders.EMPTY, created.getHeaders());
+        
+        Date sentDate = new Date(1500000000000L);
+        created.setSentDate(sentDate);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        created.writeTo(output);
+        
+        OutlookMessage parsed = new OutlookMessage(new ByteArrayInputStream(output.toByteArray()));
+        assertEquals(sentDate, parsed.getSentDate());
+        assertEquals(sentDate, parsed.getHeaders().getDate());
+        assertEquals(List.of("Date"), parsed.getHeaders().getNames());
+    }
+}
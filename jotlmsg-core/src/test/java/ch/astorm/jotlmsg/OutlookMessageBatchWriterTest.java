@@ -0,0 +1,91 @@
+package ch.astorm.jotlmsg;
+
+import ch.astorm.jotlmsg.OutlookMessageBatchWriter.Item;
+import ch.astorm.jotlmsg.OutlookMessageBatchWriter.Result;
+import ch.astorm.jotlmsg.OutlookMessageRecipient.Type;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class OutlookMessageBatchWriterTest {
+    
+    @TempDir
+    Path folder;
+    
+    @Test
+    public void testWriteAll() throws Exception {
+        Result result;
+        try(OutlookMessageBatchWriter writer = new OutlookMessageBatchWriter(4, 2)) {
+            result = writer.writeAll(IntStream.range(0, 50).mapToObj(i -> new Item(createMessage(i), folder.resolve("message"+i+".msg"))));
+        }
+        
+        assertEquals(49, result.getSucceeded());
+        assertEquals(1, result.getFailed());
+        assertEquals(folder.resolve("message13.msg"), result.getFailures().get(0).item().target());
+        assertInstanceOf(IOException.class, result.getFailures().get(0).exception());
+        assertFalse(Files.exists(folder.resolve("message13.msg")));
+        assertTrue(result.getBytesWritten()>0);
+        assertTrue(result.getMessagesPerSecond()>0);
+        
+        long totalSize = 0;
+        for(int i=0 ; i<50 ; ++i) {
+            if(i==13) { continue; }
+            Path file = folder.resolve("message"+i+".msg");
+            totalSize += Files.size(file);
+            
+            OutlookMessage parsed = new OutlookMessage(file.toFile());
+            assertEquals("Message "+i, parsed.getSubject());
+            assertEquals("attachment "+i, new String(parsed.getAttachments().get(0).getNewInputStream().readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(totalSize, result.getBytesWritten());
+    }
+    
+    @Test
+    public void testCloseInterrupted() throws Exception {
+        boolean[] daemon = new boolean[1];
+        OutlookMessageBatchWriter writer = new OutlookMessageBatchWriter(1, 1);
+        OutlookMessage message = createMessage(0);
+        message.addAttachment("daemon.txt", "text/plain", a -> {
+            daemon[0] = Thread.currentThread().isDaemon();
+            return new ByteArrayInputStream(new byte[0]);
+        });
+        writer.submit(message, folder.resolve("message.msg"));
+        
+        Thread.currentThread().interrupt();
+        writer.close();
+        assertTrue(Thread.interrupted());
+        
+        assertEquals(1, writer.finish().getSucceeded());
+        assertTrue(daemon[0]);
+    }
+    
+    @Test
+    public void testSubmitAfterFinish() throws Exception {
+        OutlookMessageBatchWriter writer = new OutlookMessageBatchWriter(1, 1);
+        writer.submit(createMessage(0), folder.resolve("message.msg"));
+        assertEquals(1, writer.finish().getSucceeded());
+        assertThrows(IllegalStateException.class, () -> writer.submit(createMessage(1), folder.resolve("other.msg")));
+    }
+    
+    private OutlookMessage createMessage(int index) {
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("Message "+index);
+        message.setPlainTextBody("Hello,\n\nThis is message "+index+".\n\n.Bye.");
+        message.addRecipient(Type.TO, "cedric@jotlmsg.com", "Cédric");
+        message.addAttachment("attachment.txt", "text/plain", a -> {
+            if(index==13) { throw new IOException("unreadable attachment"); }
+            return new ByteArrayInputStream(("attachment "+index).getBytes(StandardCharsets.UTF_8));
+        });
+        return message;
+    }
+}
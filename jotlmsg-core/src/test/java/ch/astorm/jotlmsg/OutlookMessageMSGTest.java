@@ -0,0 +1,691 @@
+
+package ch.astorm.jotlmsg;
+
+import ch.astorm.jotlmsg.OutlookMessageAttachment.MemoryInputStreamCreator;
+import ch.astorm.jotlmsg.OutlookMessageAttachment.SizedInputStreamCreator;
+import ch.astorm.jotlmsg.OutlookMessageRecipient.Type;
+import ch.astorm.jotlmsg.io.CompoundFileWriter.Version;
+import ch.astorm.jotlmsg.io.MsgWriterContext;
+import ch.astorm.jotlmsg.io.SpooledContent;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.apache.poi.util.IOUtils;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class OutlookMessageMSGTest {
+    
+    @Test
+    public void testSimpleMessage() throws Exception {
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("This is a message");
+        message.setPlainTextBody("Hello,\n\nThis is a simple message.\n\n.Bye.\nFind some accents: àïâç&@+\"{}$");
+        message.addRecipient(OutlookMessageRecipient.Type.TO, "cedric@jotlmsg.com", "Cédric");
+        message.setReplyTo(List.of("reply1@jotlmsg.com", "reply2@jotlmsg.com"));
+        
+        testMessage(message);
+    }
+    
+    @Test
+    public void testBaseMessage() throws Exception {
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("This is the subject");
+        message.setPlainTextBody("Hello,\n\nThis is a simple message.\n\n.Bye.");
+
+        testMessage(message);
+        testBinary(message, "generated/base-message.msg");
+    }
+    
+    @Test
+    public void testMessageWithAttachment() throws Exception {
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("This is a message");
+        message.setFrom("sender@jotlmsg.com");
+        message.setPlainTextBody("Hello,\n\nThis is a simple message.\n\n.Bye.");
+        message.addRecipient(OutlookMessageRecipient.Type.TO, "cedric@jotlmsg.com", "Cédric");
+        message.addRecipient(OutlookMessageRecipient.Type.TO, "ctabin@jotlmsg.com");
+        message.addRecipient(OutlookMessageRecipient.Type.CC, "cc@jotlmsg.com", "Copy");
+        message.addAttachment("message.txt", "text/plain", new ByteArrayInputStream("Hello, World!".getBytes(StandardCharsets.UTF_8)));
+
+        testMessage(message);
+    }
+    
+    @Test
+    public void testMessageWithAttachment2() throws Exception {
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("This is a message");
+        message.setFrom("sender@jotlmsg.com");
+        message.setPlainTextBody("Hello,\n\nThis is a simple message.\n\n.Bye.");
+        message.addRecipient(OutlookMessageRecipient.Type.TO, "cedric@jotlmsg.com", "Cédric <djoy@me.com>");
+        message.addRecipient(OutlookMessageRecipient.Type.TO, "ctabin@jotlmsg.com");
+        message.addRecipient(OutlookMessageRecipient.Type.TO, "ctabin2@jotlmsg.com");
+        message.addRecipient(OutlookMessageRecipient.Type.CC, "cc@jotlmsg.com");
+        message.addRecipient(OutlookMessageRecipient.Type.CC, "cc2@jotlmsg.com", "John");
+        message.addRecipient(OutlookMessageRecipient.Type.CC, "cc3@jotlmsg.com");
+        message.addRecipient(OutlookMessageRecipient.Type.BCC, "bcc@jotlmsg.com");
+        message.addAttachment("message.txt", "text/plain", new ByteArrayInputStream("Hello, World!".getBytes(StandardCharsets.UTF_8)));
+        message.addAttachment("message2.txt", "text/plain", new ByteArrayInputStream("Another attachment with content".getBytes(StandardCharsets.UTF_8)));
+        message.addAttachment("message3.txt", "text/html", new ByteArrayInputStream("<html><body>Some html page</body></html>".getBytes(StandardCharsets.UTF_8)));
+
+        testMessage(message);
+        testBinary(message, "generated/with-attachments-2.msg");
+    }
+    
+    @Test
+    public void testMessageWithoutAttachment() throws Exception {
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("This is a message");
+        message.setFrom("sender@jotlmsg.com");
+        message.setPlainTextBody("Hello,\n\nThis is a simple message.\n\n.Bye.");
+        message.addRecipient(OutlookMessageRecipient.Type.TO, "cedric@jotlmsg.com", "Cédric");
+        message.addRecipient(OutlookMessageRecipient.Type.TO, "ctabin@jotlmsg.com");
+        message.addRecipient(OutlookMessageRecipient.Type.CC, "cc@jotlmsg.com", "Copy");
+
+        testMessage(message);
+        testBinary(message, "generated/without-attachment.msg");
+    }
+
+    @Test
+    public void testMessageSent() throws Exception {
+        SimpleDateFormat sdf = new SimpleDateFormat("dd.MM.yyyy");
+
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("This is a message");
+        message.setFrom("sender@jotlmsg.com");
+        message.setPlainTextBody("Hello,\n\nThis is a simple message that has been sent.\n\n.Bye.");
+        message.addRecipient(OutlookMessageRecipient.Type.TO, "cedric@jotlmsg.com", "Cédric");
+        message.setSentDate(sdf.parse("28.02.2018"));
+
+        testMessage(message);
+    }
+
+    @Test
+    public void testHtmlBody() throws Exception {
+        String htmlText = """
+                          <html>
+                            <body>
+                                <h1>Title</h1>
+                                <p>This is some <strong>bold</strong> and <i>italic</i> text.</p>
+                                <p>Here is some <span style=\"color:red\">red</span> text too.</p>
+                            </body>
+                          </html>
+                          """;
+        
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("This is a message");
+        message.setFrom("sender@jotlmsg.com");
+        message.setHtmlBody(htmlText.trim());
+        message.addRecipient(OutlookMessageRecipient.Type.TO, "cedric@jotlmsg.com", "Cédric");
+
+        testMessage(message);
+    }
+
+    @Test
+    public void testHtmlBodyWithInlineAttachment() throws Exception {
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("This is a message");
+        message.setFrom("sender@jotlmsg.com");
+        message.setPlainTextBody("Hello,\n\nThis is a simple message that has been sent.\n\n.Bye.");
+        message.setHtmlBody("<html><body>Sample body</body></html>");
+        message.addRecipient(OutlookMessageRecipient.Type.TO, "cedric@jotlmsg.com", "Cédric");
+
+        final OutlookMessageAttachment inlineAttachment = new OutlookMessageAttachment("picture.png", "image/png", new ByteArrayInputStream(new byte[0]));
+        inlineAttachment.setContentId("picture.png@" + UUID.randomUUID());
+        message.addAttachment(inlineAttachment);
+
+        testMessage(message);
+    }
+
+    @Test
+    public void testMessageWithLargeAttachment() throws Exception {
+        byte[] content = new byte[2*1024*1024+17];
+        new Random(1).nextBytes(content);
+        
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("This is a message");
+        message.setPlainTextBody("Hello,\n\nThis is a message with a large attachment.\n\n.Bye.");
+        message.addRecipient(OutlookMessageRecipient.Type.TO, "cedric@jotlmsg.com", "Cédric");
+        message.addAttachment("small.bin", "application/octet-stream", a -> new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+        message.addAttachment("large.bin", "application/octet-stream", a -> new ByteArrayInputStream(content));
+        message.addAttachment("memory.bin", "application/octet-stream", new ByteArrayInputStream(content));
+
+        testMessage(message);
+    }
+
+    @Test
+    public void testVersion4() throws Exception {
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("This is a message");
+        message.setFrom("sender@jotlmsg.com");
+        message.setPlainTextBody("Hello,\n\nThis is a simple message.\n\n.Bye.");
+        message.addRecipient(OutlookMessageRecipient.Type.TO, "cedric@jotlmsg.com", "Cédric");
+        message.addAttachment("message.txt", "text/plain", new ByteArrayInputStream("Hello, World!".getBytes(StandardCharsets.UTF_8)));
+        message.addAttachment("large.bin", "application/octet-stream", new ByteArrayInputStream(new byte[100000]));
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        message.writeTo(baos, Version.V4);
+        baos.close();
+        
+        OutlookMessage parsed = new OutlookMessage(new ByteArrayInputStream(baos.toByteArray()));
+        compareMessage(message, parsed);
+    }
+
+    @Test
+    public void testAttachmentPrefetch() throws Exception {
+        byte[] large = new byte[100000];
+        new Random(2).nextBytes(large);
+        
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("This is a message");
+        message.setPlainTextBody("Hello,\n\nThis is a message with slow attachments.\n\n.Bye.");
+        message.addRecipient(OutlookMessageRecipient.Type.TO, "cedric@jotlmsg.com", "Cédric");
+        IntStream.range(0,20).forEach(i -> message.addAttachment("test"+i+".txt", "text/plain", m -> {
+            //the first attachments are the slowest ones
+            try { Thread.sleep(20-i); }
+            catch(InterruptedException e) { throw new InterruptedIOException(); }
+            return new ByteArrayInputStream(i%5==0 ? large : ("this is content "+i).getBytes());
+        }));
+        message.addAttachment("memory.txt", "text/plain", new ByteArrayInputStream("in memory".getBytes()));
+        message.setAttachmentPrefetch(new AttachmentPrefetch(8, 150000));
+        
+        testMessage(message);
+    }
+
+    @Test
+    public void testWriterContext() throws Exception {
+        MsgWriterContext context = new MsgWriterContext();
+        for(int i=0 ; i<5 ; ++i) {
+            OutlookMessage message = new OutlookMessage();
+            message.setSubject("Message "+i);
+            message.setFrom("sender@jotlmsg.com");
+            message.setHtmlBody("<html><body>Message "+i+"</body></html>");
+            for(int r=0 ; r<=i*10 ; ++r) { message.addRecipient(Type.TO, "user"+r+"@jotlmsg.com"); }
+            message.addAttachment("message.txt", "text/plain", new ByteArrayInputStream(("Hello "+i).getBytes(StandardCharsets.UTF_8)));
+            
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            message.writeTo(expected, Version.V3);
+            
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            message.writeTo(actual, Version.V3, context);
+            
+            assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+            compareMessage(message, new OutlookMessage(new ByteArrayInputStream(actual.toByteArray())));
+        }
+    }
+
+    @Test
+    public void testEncodingPool() throws Exception {
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("Many recipients");
+        message.setPlainTextBody("Hello");
+        for(int i=0 ; i<2048 ; ++i) { message.addRecipient(Type.values()[i%3], "user"+i+"@jotlmsg.com", i%2==0 ? "User "+i : null); }
+        for(int i=0 ; i<40 ; ++i) { message.addAttachment("file"+i+".txt", "text/plain", new ByteArrayInputStream(("Attachment "+i).getBytes(StandardCharsets.UTF_8))); }
+        
+        ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+        message.writeTo(sequential);
+        
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            message.setEncodingPool(pool);
+            ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+            message.writeTo(parallel);
+            assertArrayEquals(sequential.toByteArray(), parallel.toByteArray());
+        } finally {
+            pool.shutdown();
+        }
+        
+        OutlookMessage parsed = new OutlookMessage(new ByteArrayInputStream(sequential.toByteArray()));
+        compareMessage(message, parsed);
+    }
+
+    @Test
+    public void testParseManyAttachmentsFile() throws Exception {
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("Many attachments");
+        message.setPlainTextBody("Hello");
+        message.addRecipient(Type.TO, "user@jotlmsg.com");
+        for(int i=0 ; i<2048 ; ++i) { message.addAttachment("file"+i+".txt", "text/plain", new ByteArrayInputStream(("Attachment "+i).getBytes(StandardCharsets.UTF_8))); }
+        
+        File file = File.createTempFile("jotlmsg", ".msg");
+        try {
+            message.writeTo(file);
+            OutlookMessage parsed = new OutlookMessage(file);
+            compareMessage(message, parsed);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSizedAttachments() throws Exception {
+        Random random = new Random(11);
+        byte[] fileContent = new byte[100000];
+        random.nextBytes(fileContent);
+        byte[] bufferContent = new byte[5000];
+        random.nextBytes(bufferContent);
+        
+        File source = File.createTempFile("jotlmsg", ".bin");
+        File target = File.createTempFile("jotlmsg", ".msg");
+        try(FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Files.write(source.toPath(), fileContent);
+            ByteBuffer direct = ByteBuffer.allocateDirect(bufferContent.length).put(bufferContent).flip();
+            
+            OutlookMessage message = new OutlookMessage();
+            message.setSubject("Sized attachments");
+            message.setPlainTextBody("Hello");
+            message.addAttachment("file.bin", "application/octet-stream", SizedInputStreamCreator.of(source.toPath()));
+            message.addAttachment("direct.bin", "application/octet-stream", SizedInputStreamCreator.of(direct));
+            message.addAttachment("slice.bin", "application/octet-stream", SizedInputStreamCreator.of(fileContent, 10, 1000));
+            message.addAttachment("channel.bin", "application/octet-stream", SizedInputStreamCreator.of(channel, 500, 50000));
+            
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            message.writeTo(expected);
+            message.writeTo(target);
+            assertArrayEquals(expected.toByteArray(), Files.readAllBytes(target.toPath()));
+            assertEquals(0, channel.position());
+            assertEquals(0, direct.position());
+            
+            OutlookMessage parsed = new OutlookMessage(target);
+            compareMessage(message, parsed);
+            assertArrayEquals(Arrays.copyOfRange(fileContent, 500, 50500), IOUtils.toByteArray(parsed.getAttachments().get(3).getNewInputStream()));
+        } finally {
+            source.delete();
+            target.delete();
+        }
+    }
+
+    @Test
+    public void testSpilledAttachment() throws Exception {
+        byte[] content = new byte[300000];
+        new Random(12).nextBytes(content);
+        
+        MemoryInputStreamCreator creator = new MemoryInputStreamCreator(new ByteArrayInputStream(content), 1024);
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("Spilled attachment");
+        message.setPlainTextBody("Hello");
+        message.addAttachment("large.bin", "application/octet-stream", creator);
+        message.addAttachment("small.txt", "text/plain", new MemoryInputStreamCreator(new ByteArrayInputStream("small".getBytes(StandardCharsets.UTF_8)), 1024));
+        
+        SpooledContent spooled = creator.getContent();
+        assertTrue(spooled.isTemporary());
+        testMessage(message);
+        
+        int threshold = MemoryInputStreamCreator.getDefaultMemoryThreshold();
+        File target = File.createTempFile("jotlmsg", ".msg");
+        try {
+            message.writeTo(target);
+            
+            MemoryInputStreamCreator.setDefaultMemoryThreshold(1024);
+            OutlookMessage parsed = new OutlookMessage(target);
+            compareMessage(message, parsed);
+            
+            MemoryInputStreamCreator parsedCreator = (MemoryInputStreamCreator)parsed.getAttachments().get(0).getInputStreamCreator();
+            assertTrue(parsedCreator.getContent().isTemporary());
+            assertFalse(((MemoryInputStreamCreator)parsed.getAttachments().get(1).getInputStreamCreator()).getContent().isTemporary());
+            parsed.close();
+            assertThrows(IOException.class, () -> parsed.getAttachments().get(0).getNewInputStream());
+        } finally {
+            MemoryInputStreamCreator.setDefaultMemoryThreshold(threshold);
+            target.delete();
+        }
+        
+        //the creator has been given to the message, hence it is not closed with it
+        message.close();
+        assertTrue(creator.getContent().isTemporary());
+        creator.close();
+        assertThrows(IOException.class, () -> creator.getContent());
+    }
+    
+    @Test
+    public void testCloseOwnedCreators() throws Exception {
+        MemoryInputStreamCreator given = new MemoryInputStreamCreator(new ByteArrayInputStream("given".getBytes(StandardCharsets.UTF_8)));
+        OutlookMessage message = new OutlookMessage();
+        message.addAttachment("given.txt", "text/plain", given);
+        OutlookMessageAttachment owned = message.addAttachment("owned.txt", "text/plain", new ByteArrayInputStream("owned".getBytes(StandardCharsets.UTF_8)));
+        
+        message.close();
+        assertArrayEquals("given".getBytes(StandardCharsets.UTF_8), IOUtils.toByteArray(message.getAttachments().get(0).getNewInputStream()));
+        assertThrows(IOException.class, () -> owned.getNewInputStream());
+        given.close();
+    }
+    
+    @Test
+    public void testCloseNullInputAttachment() throws Exception {
+        OutlookMessage message = new OutlookMessage();
+        OutlookMessageAttachment attachment = message.addAttachment("empty.txt", "text/plain", (InputStream)null);
+        assertNull(attachment.getInputStreamCreator());
+        message.close();
+        assertEquals(1, message.getAttachments().size());
+    }
+
+    @Test
+    public void testWriteMemoryBudget() throws Exception {
+        byte[] content = new byte[100000];
+        new Random(13).nextBytes(content);
+        
+        //the creator of the last attachment is called once the others have been read
+        long[] temporaryFiles = new long[1];
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("Write memory budget");
+        message.setPlainTextBody("Hello");
+        message.addAttachment("first.bin", "application/octet-stream", a -> new ByteArrayInputStream(content));
+        message.addAttachment("second.bin", "application/octet-stream", a -> new ByteArrayInputStream(content));
+        message.addAttachment("last.txt", "text/plain", a -> {
+            temporaryFiles[0] = countTemporaryFiles();
+            return new ByteArrayInputStream("last".getBytes(StandardCharsets.UTF_8));
+        });
+        
+        long before = countTemporaryFiles();
+        ByteArrayOutputStream inMemory = new ByteArrayOutputStream();
+        message.writeTo(inMemory);
+        assertEquals(before, temporaryFiles[0]);
+        
+        int budget = OutlookMessage.getWriteMemoryBudget();
+        try {
+            OutlookMessage.setWriteMemoryBudget(150000);
+            ByteArrayOutputStream spilled = new ByteArrayOutputStream();
+            message.writeTo(spilled);
+            assertEquals(before+1, temporaryFiles[0]);
+            assertArrayEquals(inMemory.toByteArray(), spilled.toByteArray());
+        } finally {
+            OutlookMessage.setWriteMemoryBudget(budget);
+        }
+        assertEquals(before, countTemporaryFiles());
+        assertThrows(IllegalArgumentException.class, () -> OutlookMessage.setWriteMemoryBudget(-1));
+    }
+    
+    private static long countTemporaryFiles() throws IOException {
+        try(Stream<Path> files = Files.list(new File(System.getProperty("java.io.tmpdir")).toPath())) {
+            return files.filter(f -> f.getFileName().toString().startsWith("jotlmsg") && f.getFileName().toString().endsWith(".tmp")).count();
+        }
+    }
+
+    @Test
+    public void testAsyncWriting() throws Exception {
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("Async");
+        message.setPlainTextBody("Hello");
+        message.addAttachment("message.txt", "text/plain", new ByteArrayInputStream("Hello, World!".getBytes(StandardCharsets.UTF_8)));
+        
+        File target = File.createTempFile("jotlmsg", ".msg");
+        try {
+            message.writeToAsync(target.toPath()).get();
+            compareMessage(message, new OutlookMessage(target));
+            
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            message.writeToAsync(baos).get();
+            assertArrayEquals(Files.readAllBytes(target.toPath()), baos.toByteArray());
+            
+            //the pending attachment read is interrupted and the partial file deleted
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch interrupted = new CountDownLatch(1);
+            message.addAttachment("slow.txt", "text/plain", a -> {
+                started.countDown();
+                try { Thread.sleep(60000); }
+                catch(InterruptedException ie) { 
+                    interrupted.countDown();
+                    throw new InterruptedIOException();
+                }
+                return new ByteArrayInputStream(new byte[0]);
+            });
+            
+            CompletableFuture<Void> future = message.writeToAsync(target.toPath());
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            assertTrue(future.cancel(true));
+            assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+            assertThrows(CancellationException.class, () -> future.join());
+            
+            ExecutionException ee = assertThrows(ExecutionException.class, () -> message.writeToAsync(target.toPath()).orTimeout(100, TimeUnit.MILLISECONDS).get());
+            assertInstanceOf(TimeoutException.class, ee.getCause());
+            for(int i=0 ; i<100 && target.exists() ; ++i) { Thread.sleep(50); }
+            assertFalse(target.exists());
+        } finally {
+            target.delete();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCancelSharedChannel() throws Exception {
+        byte[] content = new byte[200000];
+        new Random(14).nextBytes(content);
+        File source = File.createTempFile("jotlmsg", ".bin");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try(FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(content), 0);
+            
+            //the same logo is attached to both messages
+            OutlookMessage first = new OutlookMessage();
+            first.setSubject("First");
+            first.setPlainTextBody("Hello");
+            first.addAttachment("logo.bin", "application/octet-stream", SizedInputStreamCreator.of(channel, 0, content.length));
+            
+            OutlookMessage second = new OutlookMessage();
+            second.setSubject("Second");
+            second.setPlainTextBody("Hello");
+            second.addAttachment("logo.bin", "application/octet-stream", SizedInputStreamCreator.of(channel, 0, content.length));
+            
+            //the writing of the first message is cancelled just before the channel is read
+            CompletableFuture<Void>[] future = new CompletableFuture[1];
+            CountDownLatch submitted = new CountDownLatch(1);
+            OutputStream cancelling = new OutputStream() {
+                @Override public void write(int b) throws IOException { write(new byte[] { (byte)b }, 0, 1); }
+                @Override public void write(byte[] b, int off, int len) throws IOException {
+                    try { submitted.await(); }
+                    catch(InterruptedException ie) { throw new InterruptedIOException(); }
+                    future[0].cancel(true);
+                }
+            };
+            future[0] = first.writeToAsync(cancelling, Version.V3, executor);
+            submitted.countDown();
+            assertThrows(CancellationException.class, () -> future[0].join());
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            
+            assertTrue(channel.isOpen());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            second.writeTo(out);
+            OutlookMessage parsed = new OutlookMessage(new ByteArrayInputStream(out.toByteArray()));
+            assertArrayEquals(content, IOUtils.toByteArray(parsed.getAttachments().get(0).getNewInputStream()));
+        } finally {
+            executor.shutdownNow();
+            source.delete();
+        }
+    }
+
+    @Test
+    public void testPublisher() throws Exception {
+        byte[] content = new byte[100000];
+        new Random(13).nextBytes(content);
+        
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("Published");
+        message.setPlainTextBody("Hello");
+        message.addAttachment("large.bin", "application/octet-stream", new ByteArrayInputStream(content));
+        
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        message.writeTo(expected, Version.V4);
+        
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        CompletableFuture<Integer> done = new CompletableFuture<>();
+        message.toPublisher(Version.V4, 8192).subscribe(new Flow.Subscriber<ByteBuffer>() {
+            private Flow.Subscription subscription;
+            private int chunks;
+            
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+            
+            @Override
+            public void onNext(ByteBuffer item) {
+                assertTrue(item.remaining()<=8192);
+                received.write(item.array(), item.arrayOffset()+item.position(), item.remaining());
+                ++chunks;
+                subscription.request(1);
+            }
+            
+            @Override public void onError(Throwable throwable) { done.completeExceptionally(throwable); }
+            @Override public void onComplete() { done.complete(chunks); }
+        });
+        
+        assertEquals((expected.size()+8191)/8192, done.get(10, TimeUnit.SECONDS));
+        assertArrayEquals(expected.toByteArray(), received.toByteArray());
+        
+        //the writer waits for the demand, then stops once cancelled
+        CompletableFuture<Flow.Subscription> subscribed = new CompletableFuture<>();
+        CompletableFuture<Void> terminated = new CompletableFuture<>();
+        message.toPublisher().subscribe(new Flow.Subscriber<ByteBuffer>() {
+            @Override public void onSubscribe(Flow.Subscription subscription) { subscribed.complete(subscription); }
+            @Override public void onNext(ByteBuffer item) { terminated.completeExceptionally(new AssertionError("unexpected chunk")); }
+            @Override public void onError(Throwable throwable) { terminated.completeExceptionally(throwable); }
+            @Override public void onComplete() { terminated.complete(null); }
+        });
+        Thread.sleep(100);
+        subscribed.get().cancel();
+        Thread.sleep(100);
+        assertFalse(terminated.isDone());
+    }
+
+    private void testBinary(OutlookMessage message, String resPath) throws Exception {
+        try(InputStream is = OutlookMessageMSGTest.class.getResourceAsStream(resPath)) {
+            OutlookMessage source = new OutlookMessage(is);
+            compareMessage(source, message);
+        }
+    }
+    
+    private void testMessage(OutlookMessage source) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        source.writeTo(baos);
+        baos.close();
+        
+        OutlookMessage parsed_tmp = new OutlookMessage(new ByteArrayInputStream(baos.toByteArray()));
+        ByteArrayOutputStream baos2 = new ByteArrayOutputStream();
+        parsed_tmp.writeTo(baos2);
+        baos2.close();
+        
+        OutlookMessage parsed = new OutlookMessage(new ByteArrayInputStream(baos2.toByteArray()));
+        compareMessage(source, parsed);
+    }
+    
+    private void compareMessage(OutlookMessage source, OutlookMessage other) throws Exception {
+        assertEquals(source.getSubject(), other.getSubject());
+        assertEquals(source.getFrom(), other.getFrom());
+        assertEquals(source.getPlainTextBody(), other.getPlainTextBody());
+        assertEquals(source.getHtmlBody(), other.getHtmlBody());
+        assertEquals(source.getAllRecipients().size(), other.getAllRecipients().size());
+        assertEquals(source.getAttachments().size(), other.getAttachments().size());
+        assertEquals(source.getSentDate(), other.getSentDate());
+
+        if(source.getReplyTo()!=null && other.getReplyTo()!=null) {
+            assertEquals(source.getReplyTo().size(), other.getReplyTo().size());
+            List<String> srcReplyToRecipients = source.getReplyTo();
+            List<String> parsedReplyToRecipients = other.getReplyTo();
+            for(int i=0 ; i<srcReplyToRecipients.size() ; ++i) {
+                String srcReplyToRecipient = srcReplyToRecipients.get(i);
+                String parsedReplyToRecipient = parsedReplyToRecipients.get(i);
+                assertEquals(srcReplyToRecipient, parsedReplyToRecipient);
+            }
+        }
+        
+        List<OutlookMessageRecipient> srcRecipients = source.getAllRecipients();
+        List<OutlookMessageRecipient> parsedRecipients = other.getAllRecipients();
+        for(int i=0 ; i<srcRecipients.size() ; ++i) {
+            OutlookMessageRecipient srcRecipient = srcRecipients.get(i);
+            OutlookMessageRecipient parsedRecipient = parsedRecipients.get(i);
+            assertEquals(srcRecipient.getType(), parsedRecipient.getType());
+            assertEquals(srcRecipient.getName(), parsedRecipient.getName());
+            assertEquals(srcRecipient.getEmail(), parsedRecipient.getEmail());
+        }
+        
+        List<OutlookMessageAttachment> srcAttachments = source.getAttachments();
+        List<OutlookMessageAttachment> parsedAttachments = other.getAttachments();
+        for(int i=0 ; i<srcAttachments.size() ; ++i) {
+            OutlookMessageAttachment srcAttachment = srcAttachments.get(i);
+            OutlookMessageAttachment parsedAttachment = parsedAttachments.get(i);
+            assertEquals(srcAttachment.getName(), parsedAttachment.getName());
+            assertEquals(srcAttachment.getMimeType(), parsedAttachment.getMimeType());
+            assertEquals(srcAttachment.getContentId(), parsedAttachment.getContentId());
+            byte[] srcData = IOUtils.toByteArray(srcAttachment.getNewInputStream());
+            byte[] parData = IOUtils.toByteArray(parsedAttachment.getNewInputStream());
+            assertEquals(srcData.length, parData.length);
+            assertArrayEquals(srcData, parData);
+        }
+    }
+    
+    @Test
+    public void testaddManyRecipients() throws Exception {
+        OutlookMessage message = new OutlookMessage();
+        IntStream.range(0,40).forEach(i -> message.addRecipient(Type.TO, "user" + i + "@xyz.com"));
+
+        message.setSubject("betreff");
+        message.setPlainTextBody("content");
+
+        testBinary(message, "generated/many-recipients.msg");
+    }
+    
+    @Test
+    public void testaddManyAttachments() throws Exception {
+        int count = 40;
+
+        OutlookMessage message = new OutlookMessage();
+        IntStream.range(0,count).forEach(i -> message.addAttachment("test"+i+".txt", "text/plain", m -> new ByteArrayInputStream(("this is content "+i).getBytes())));
+
+        message.addRecipient(Type.TO, "john@doe.com");
+        message.setSubject("betreff");
+        message.setPlainTextBody("content");
+
+        
+        testBinary(message, "generated/many-attachments.msg");
+    }
+    
+    @Test
+    public void testManyReplyTos() throws Exception {
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("This is a message");
+        message.setPlainTextBody("Hello,\n\nThis is a simple message with replyto addresses.\n\n.Bye.");
+        message.addRecipient(OutlookMessageRecipient.Type.TO, "cedric@jotlmsg.com", "Cédric");
+
+        List<String> replytos = new ArrayList<String>();
+        IntStream.range(0,40).forEach(i -> replytos.add("reply"+i+"@jotlmsg.com"));
+        message.setReplyTo(replytos);
+        
+        testMessage(message);
+    }
+}
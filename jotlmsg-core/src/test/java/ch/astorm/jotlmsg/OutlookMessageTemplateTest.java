@@ -0,0 +1,130 @@
+package ch.astorm.jotlmsg;
+
+import ch.astorm.jotlmsg.OutlookMessageRecipient.Type;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+public class OutlookMessageTemplateTest {
+    
+    @Test
+    public void testSameOutput() throws Exception {
+        OutlookMessage message = createMessage();
+        message.setSubject("Welcome");
+        message.addRecipient(Type.TO, "cedric@jotlmsg.com", "Cédric");
+        message.addRecipient(Type.CC, "bill@jotlmsg.com");
+        
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        message.writeTo(expected);
+        
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try(OutlookMessageTemplate template = new OutlookMessageTemplate(createMessage())) {
+            template.writeTo(actual, "Welcome", message.getAllRecipients());
+        }
+        
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+    
+    @Test
+    public void testConcurrentWrites() throws Exception {
+        OutlookMessage message = createMessage();
+        message.setSubject("Ignored subject");
+        message.addRecipient(Type.TO, "ignored@jotlmsg.com");
+        
+        List<byte[]> results = new ArrayList<>();
+        try(OutlookMessageTemplate template = new OutlookMessageTemplate(message)) {
+            //the template is a snapshot of the message
+            message.setHtmlBody("<html><body>Modified</body></html>");
+            
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<byte[]>> futures = new ArrayList<>();
+                for(int i=0 ; i<20 ; ++i) {
+                    final int index = i;
+                    futures.add(executor.submit(() -> {
+                        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                        template.writeTo(baos, index%2==0 ? "Message "+index : null, Arrays.asList(new OutlookMessageRecipient(Type.TO, "user"+index+"@jotlmsg.com", "User "+index)));
+                        return baos.toByteArray();
+                    }));
+                }
+                for(Future<byte[]> future : futures) { results.add(future.get()); }
+            } finally {
+                executor.shutdown();
+            }
+        }
+        
+        for(int i=0 ; i<results.size() ; ++i) {
+            OutlookMessage parsed = new OutlookMessage(new ByteArrayInputStream(results.get(i)));
+            if(i%2==0) { assertEquals("Message "+i, parsed.getSubject()); }
+            else { assertNull(parsed.getSubject()); }
+            assertEquals(1, parsed.getAllRecipients().size());
+            assertEquals("user"+i+"@jotlmsg.com", parsed.getAllRecipients().get(0).getEmail());
+            assertEquals("User "+i, parsed.getAllRecipients().get(0).getName());
+            assertEquals("sender@jotlmsg.com", parsed.getFrom());
+            assertEquals(Arrays.asList("reply1@jotlmsg.com", "reply2@jotlmsg.com"), parsed.getReplyTo());
+            assertEquals("<html><body>Hello</body></html>", parsed.getHtmlBody());
+            assertEquals(2, parsed.getAttachments().size());
+            assertEquals("logo.png", parsed.getAttachments().get(0).getName());
+            assertEquals(5000, parsed.getAttachments().get(0).getNewInputStream().readAllBytes().length);
+            assertEquals("readme", new String(parsed.getAttachments().get(1).getNewInputStream().readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+    
+    @Test
+    public void testWriteAfterClose() throws Exception {
+        OutlookMessageTemplate template = new OutlookMessageTemplate(createMessage());
+        template.close();
+        template.close(); //idempotent
+        
+        List<OutlookMessageRecipient> recipients = Arrays.asList(new OutlookMessageRecipient(Type.TO, "cedric@jotlmsg.com"));
+        assertThrows(IllegalStateException.class, () -> template.writeTo(new ByteArrayOutputStream(), "Closed", recipients));
+        
+        File file = new File(System.getProperty("java.io.tmpdir"), "jotlmsg-closed-template.msg");
+        assertThrows(IllegalStateException.class, () -> template.writeTo(file, "Closed", recipients));
+        assertFalse(file.exists());
+    }
+    
+    @Test
+    public void testCloseAllAfterFailure() throws Exception {
+        List<String> closed = new ArrayList<>();
+        List<Closeable> resources = Arrays.asList(
+            () -> { closed.add("first"); throw new IOException("first"); },
+            () -> closed.add("second"),
+            () -> { closed.add("third"); throw new IOException("third"); });
+        
+        IOException exception = assertThrows(IOException.class, () -> OutlookMessageTemplate.closeAll(resources));
+        assertEquals(Arrays.asList("first", "second", "third"), closed);
+        assertEquals("first", exception.getMessage());
+        assertEquals(1, exception.getSuppressed().length);
+        assertEquals("third", exception.getSuppressed()[0].getMessage());
+    }
+    
+    private OutlookMessage createMessage() {
+        OutlookMessage message = new OutlookMessage();
+        message.setFrom("sender@jotlmsg.com");
+        message.setReplyTo(Arrays.asList("reply1@jotlmsg.com", "reply2@jotlmsg.com"));
+        message.setPlainTextBody("Hello");
+        message.setHtmlBody("<html><body>Hello</body></html>");
+        message.setSentDate(new Date(1500000000000L));
+        OutlookMessageAttachment logo = message.addAttachment("logo.png", "image/png", new ByteArrayInputStream(new byte[5000]));
+        logo.setContentId("logo");
+        message.addAttachment("readme.txt", "text/plain", new ByteArrayInputStream("readme".getBytes(StandardCharsets.UTF_8)));
+        return message;
+    }
+}
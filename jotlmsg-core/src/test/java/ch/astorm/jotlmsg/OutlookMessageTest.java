@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.util.Date;
 import java.util.List;
 import java.util.TimeZone;
@@ -13,6 +14,8 @@ import org.apache.commons.io.IOUtils;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 
 public class OutlookMessageTest {
@@ -156,4 +159,15 @@ public class OutlookMessageTest {
         assertEquals("john.doe@gmail.com", OutlookMessage.extractEmail("John <john.doe@gmail.com>,francis.max@blast.com"));
         assertEquals("john.doe@gmail.com", OutlookMessage.extractEmail("john.doe@gmail.com , Francis <francis.max@blast.com>"));
     }
+    
+    @Test
+    public void testWarmUp() {
+        Duration duration = OutlookMessage.warmUp(3);
+        assertTrue(duration.toNanos()>0);
+        assertThrows(IllegalArgumentException.class, () -> OutlookMessage.warmUp(0));
+        
+        OutlookMessage message = OutlookMessage.createWarmUpMessage(1);
+        assertEquals(3, message.getAllRecipients().size());
+        assertEquals(2, message.getAttachments().size());
+    }
 }
@@ -0,0 +1,127 @@
+package ch.astorm.jotlmsg.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Random;
+import org.apache.poi.poifs.filesystem.DirectoryEntry;
+import org.apache.poi.poifs.filesystem.DocumentEntry;
+import org.apache.poi.poifs.filesystem.DocumentInputStream;
+import org.apache.poi.poifs.filesystem.Entry;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.util.IOUtils;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class CompoundFileReaderTest {
+    
+    @Test
+    public void testRoundTrip() throws IOException {
+        int[] sizes = { 0, 1, 63, 64, 65, 4095, 4096, 4097, 100000 };
+        Random random = new Random(42);
+        
+        CompoundFileWriter writer = new CompoundFileWriter();
+        for(int s=0 ; s<20 ; ++s) {
+            CompoundFileWriter.Storage storage = writer.getRoot().createStorage("storage"+s);
+            storage.createStorage("empty");
+            for(int i=0 ; i<sizes.length ; ++i) {
+                byte[] content = new byte[sizes[i]];
+                random.nextBytes(content);
+                storage.createStream("stream"+i, content);
+            }
+        }
+        
+        byte[] data = write(writer);
+        CompoundFileReader reader = new CompoundFileReader(data);
+        assertEquals(CompoundFileWriter.Version.V3, reader.getVersion());
+        assertTrue(reader.getMiniStreamSize()>0);
+        assertTranscoded(data, CompoundFileWriter.Version.V4);
+        assertTranscoded(data, CompoundFileWriter.Version.V3);
+    }
+    
+    @Test
+    public void testOutlookFiles() throws IOException {
+        for(String name : new String[] { "msoutlook/attachment.msg", "msoutlook/replyto.msg", "generated/many-recipients.msg", "generated/many-attachments.msg" }) {
+            try(InputStream is = CompoundFileReaderTest.class.getResourceAsStream("/ch/astorm/jotlmsg/"+name)) {
+                assertTranscoded(is.readAllBytes(), CompoundFileWriter.Version.V4);
+            }
+        }
+    }
+    
+    @Test
+    public void testReadMiniStreamSize() throws IOException {
+        CompoundFileWriter writer = new CompoundFileWriter(CompoundFileWriter.Version.V4);
+        for(int i=0 ; i<100 ; ++i) { writer.getRoot().createStream("stream"+i, new byte[100]); }
+        byte[] data = write(writer);
+        
+        File file = File.createTempFile("jotlmsg", ".msg");
+        try {
+            Files.write(file.toPath(), data);
+            try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                assertEquals(new CompoundFileReader(data).getMiniStreamSize(), CompoundFileReader.readMiniStreamSize(channel));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+    
+    @Test
+    public void testInvalidData() throws IOException {
+        assertThrows(IOException.class, () -> new CompoundFileReader(new byte[10]));
+        assertThrows(IOException.class, () -> new CompoundFileReader(new byte[4096]));
+        
+        CompoundFileWriter writer = new CompoundFileWriter();
+        writer.getRoot().createStream("big", new byte[10000]);
+        byte[] data = write(writer);
+        byte[] truncated = new byte[data.length-1024];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        assertThrows(IOException.class, () -> new CompoundFileReader(truncated).copyTo(new CompoundFileWriter()));
+    }
+    
+    private void assertTranscoded(byte[] data, CompoundFileWriter.Version version) throws IOException {
+        CompoundFileWriter writer = new CompoundFileWriter(version);
+        new CompoundFileReader(data).copyTo(writer);
+        
+        try(POIFSFileSystem expected = new POIFSFileSystem(new ByteArrayInputStream(data));
+            POIFSFileSystem actual = new POIFSFileSystem(new ByteArrayInputStream(write(writer)))) {
+            assertEquals(version.getSectorSize(), actual.getBigBlockSize());
+            assertSameEntries(expected.getRoot(), actual.getRoot());
+        }
+    }
+    
+    private void assertSameEntries(DirectoryEntry expected, DirectoryEntry actual) throws IOException {
+        assertEquals(expected.getEntryNames(), actual.getEntryNames());
+        Iterator<Entry> entries = expected.getEntries();
+        while(entries.hasNext()) {
+            Entry entry = entries.next();
+            Entry other = actual.getEntry(entry.getName());
+            if(entry instanceof DirectoryEntry) { assertSameEntries((DirectoryEntry)entry, (DirectoryEntry)other); }
+            else { 
+                assertFalse(other instanceof DirectoryEntry);
+                assertArrayEquals(read((DocumentEntry)entry), read((DocumentEntry)other));
+            }
+        }
+    }
+    
+    private byte[] write(CompoundFileWriter writer) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        writer.writeTo(baos);
+        return baos.toByteArray();
+    }
+    
+    private byte[] read(DocumentEntry entry) throws IOException {
+        try(InputStream is = new DocumentInputStream(entry)) {
+            return IOUtils.toByteArray(is);
+        }
+    }
+}
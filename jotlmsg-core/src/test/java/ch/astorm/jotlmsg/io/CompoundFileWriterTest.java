@@ -0,0 +1,152 @@
+package ch.astorm.jotlmsg.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import org.apache.poi.poifs.filesystem.DirectoryEntry;
+import org.apache.poi.poifs.filesystem.DocumentEntry;
+import org.apache.poi.poifs.filesystem.DocumentInputStream;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.util.IOUtils;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+public class CompoundFileWriterTest {
+    
+    @Test
+    public void testStreamSizes() throws IOException {
+        int[] sizes = { 0, 1, 63, 64, 65, 4095, 4096, 4097, 100000 };
+        Random random = new Random(42);
+        byte[][] contents = new byte[sizes.length][];
+        
+        CompoundFileWriter writer = new CompoundFileWriter();
+        CompoundFileWriter.Storage storage = writer.getRoot().createStorage("storage");
+        for(int i=0 ; i<sizes.length ; ++i) {
+            contents[i] = new byte[sizes[i]];
+            random.nextBytes(contents[i]);
+            storage.createStream("stream"+i, contents[i]);
+        }
+        
+        try(POIFSFileSystem fs = write(writer)) {
+            DirectoryEntry dir = (DirectoryEntry)fs.getRoot().getEntry("storage");
+            for(int i=0 ; i<sizes.length ; ++i) {
+                assertArrayEquals(contents[i], read(dir, "stream"+i));
+            }
+        }
+    }
+    
+    @Test
+    public void testVersion4() throws IOException {
+        byte[] small = "small content".getBytes();
+        byte[] big = new byte[3*4096+5];
+        new Random(3).nextBytes(big);
+        
+        CompoundFileWriter writer = new CompoundFileWriter(CompoundFileWriter.Version.V4);
+        writer.getRoot().createStorage("storage").createStream("small", small);
+        writer.getRoot().createStream("big", big);
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        writer.writeTo(baos);
+        assertEquals(0, baos.size()%4096);
+        
+        try(POIFSFileSystem fs = new POIFSFileSystem(new ByteArrayInputStream(baos.toByteArray()))) {
+            assertEquals(4096, fs.getBigBlockSize());
+            assertArrayEquals(small, read((DirectoryEntry)fs.getRoot().getEntry("storage"), "small"));
+            assertArrayEquals(big, read(fs.getRoot(), "big"));
+        }
+    }
+    
+    @Test
+    public void testManyEntries() throws IOException {
+        //enough sectors to need DIFAT sectors after the 109 FAT sectors of the header
+        CompoundFileWriter writer = new CompoundFileWriter();
+        for(int i=0 ; i<2048 ; ++i) {
+            CompoundFileWriter.Storage storage = writer.getRoot().createStorage("storage"+i);
+            storage.createStream("small", ("content "+i).getBytes());
+        }
+        byte[] big = new byte[8*1024*1024];
+        new Random(7).nextBytes(big);
+        writer.getRoot().createStream("big", big.length, out -> out.write(big));
+        
+        try(POIFSFileSystem fs = write(writer)) {
+            assertEquals(2049, fs.getRoot().getEntryCount());
+            for(int i=0 ; i<2048 ; ++i) {
+                DirectoryEntry dir = (DirectoryEntry)fs.getRoot().getEntry("storage"+i);
+                assertArrayEquals(("content "+i).getBytes(), read(dir, "small"));
+            }
+            assertArrayEquals(big, read(fs.getRoot(), "big"));
+        }
+    }
+    
+    @Test
+    public void testToByteArray() throws IOException {
+        byte[] big = new byte[200*4096+17];
+        new Random(11).nextBytes(big);
+        
+        for(CompoundFileWriter.Version version : CompoundFileWriter.Version.values()) {
+            CompoundFileWriter writer = new CompoundFileWriter(version);
+            for(int i=0 ; i<300 ; ++i) { writer.getRoot().createStorage("storage"+i).createStream("small", ("content "+i).getBytes()); }
+            writer.getRoot().createStream("big", big);
+            
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            long written = writer.writeTo(baos);
+            assertEquals(written, writer.getFileSize());
+            assertEquals(baos.size(), written);
+            
+            //the array has exactly the size of the file
+            assertArrayEquals(baos.toByteArray(), writer.toByteArray());
+        }
+    }
+    
+    @Test
+    public void testStorageEntries() throws IOException {
+        CompoundFileWriter writer = new CompoundFileWriter();
+        writer.getRoot().createStorage("storage").createStream("stream", "content".getBytes());
+        writer.getRoot().createStorage("empty");
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        writer.writeTo(baos);
+        ByteBuffer file = ByteBuffer.wrap(baos.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        
+        //the directory holds 4 entries, hence a single sector
+        int directoryStart = (file.getInt(48)+1)*512;
+        int storages = 0;
+        for(int i=0 ; i<4 ; ++i) {
+            int entry = directoryStart+i*128;
+            if(file.get(entry+66)!=1) { continue; }
+            assertEquals(0, file.getInt(entry+116));
+            assertEquals(0, file.getLong(entry+120));
+            ++storages;
+        }
+        assertEquals(2, storages);
+    }
+    
+    @Test
+    public void testInvalidEntries() {
+        CompoundFileWriter writer = new CompoundFileWriter();
+        writer.getRoot().createStream("stream", new byte[1]);
+        assertThrows(IllegalArgumentException.class, () -> writer.getRoot().createStream("STREAM", new byte[1]));
+        assertThrows(IllegalArgumentException.class, () -> writer.getRoot().createStorage("a name that is too long for a CFB entry"));
+        
+        writer.getRoot().createStream("wrong", 10, out -> out.write(new byte[5]));
+        assertThrows(IOException.class, () -> writer.writeTo(new ByteArrayOutputStream()));
+    }
+    
+    private POIFSFileSystem write(CompoundFileWriter writer) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        writer.writeTo(baos);
+        return new POIFSFileSystem(new ByteArrayInputStream(baos.toByteArray()));
+    }
+    
+    private byte[] read(DirectoryEntry dir, String name) throws IOException {
+        try(InputStream is = new DocumentInputStream((DocumentEntry)dir.getEntry(name))) {
+            return IOUtils.toByteArray(is);
+        }
+    }
+}
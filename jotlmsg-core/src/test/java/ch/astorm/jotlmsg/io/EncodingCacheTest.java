@@ -0,0 +1,77 @@
+package ch.astorm.jotlmsg.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.poi.util.StringUtil;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class EncodingCacheTest {
+    
+    @Test
+    public void testEncoding() {
+        EncodingCache cache = new EncodingCache(16);
+        byte[] smtp = cache.toUnicodeLE("SMTP");
+        assertArrayEquals(StringUtil.getToUnicodeLE("SMTP"), smtp);
+        assertSame(smtp, cache.toUnicodeLE("SMTP"));
+        
+        byte[] entryID = cache.getOneOffEntryID("Cédric", "cedric@jotlmsg.com");
+        assertArrayEquals(new OneOffEntryIDStructure("Cédric", "cedric@jotlmsg.com").getEntryID(), entryID);
+        assertSame(entryID, cache.getOneOffEntryID("Cédric", "cedric@jotlmsg.com"));
+        assertEquals(2, cache.size());
+        
+        String big = "x".repeat(EncodingCache.MAX_STRING_LENGTH+1);
+        assertArrayEquals(StringUtil.getToUnicodeLE(big), cache.toUnicodeLE(big));
+        assertNotSame(cache.toUnicodeLE(big), cache.toUnicodeLE(big));
+        assertEquals(2, cache.size());
+        
+        assertThrows(IllegalArgumentException.class, () -> new EncodingCache(0));
+    }
+    
+    @Test
+    public void testEviction() {
+        EncodingCache cache = new EncodingCache(1);
+        byte[] first = cache.toUnicodeLE("first");
+        assertSame(first, cache.toUnicodeLE("first"));
+        
+        cache.toUnicodeLE("second");
+        assertEquals(1, cache.size());
+        assertNotSame(first, cache.toUnicodeLE("first"));
+        
+        EncodingCache bigger = new EncodingCache(256);
+        for(int i=0 ; i<10000 ; ++i) { bigger.toUnicodeLE("user"+i+"@jotlmsg.com"); }
+        assertTrue(bigger.size()<=256);
+        
+        bigger.clear();
+        assertEquals(0, bigger.size());
+    }
+    
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        EncodingCache cache = new EncodingCache(64);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for(int t=0 ; t<8 ; ++t) {
+                futures.add(executor.submit(() -> {
+                    for(int i=0 ; i<20000 ; ++i) {
+                        String value = "user"+(i%100)+"@jotlmsg.com";
+                        assertArrayEquals(StringUtil.getToUnicodeLE(value), cache.toUnicodeLE(value));
+                    }
+                }));
+            }
+            for(Future<?> future : futures) { future.get(); }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(cache.size()<=64);
+    }
+}
@@ -0,0 +1,39 @@
+package ch.astorm.jotlmsg.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import org.apache.poi.hsmf.datatypes.MAPIProperty;
+import org.apache.poi.hsmf.datatypes.PropertyValue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class PropertiesChunkTest {
+    
+    @Test
+    public void testMaxValueLength() throws IOException {
+        PropertiesChunk chunk = new PropertiesChunk();
+        chunk.setProperty(new StreamPropertyValue(MAPIProperty.ATTACH_DATA, PropertiesChunk.FLAG_READABLE, PropertiesChunk.MAX_VALUE_LENGTH, out -> { throw new AssertionError("content must not be written"); }));
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        List<PropertyValue> variableLength = chunk.writeHeaderData(baos);
+        assertEquals(1, variableLength.size());
+        
+        //the length is stored unsigned
+        ByteBuffer header = ByteBuffer.wrap(baos.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(PropertiesChunk.MAX_VALUE_LENGTH, Integer.toUnsignedLong(header.getInt(8)));
+    }
+    
+    @Test
+    public void testValueTooLarge() {
+        PropertiesChunk chunk = new PropertiesChunk();
+        chunk.setProperty(new StreamPropertyValue(MAPIProperty.ATTACH_DATA, PropertiesChunk.FLAG_READABLE, PropertiesChunk.MAX_VALUE_LENGTH+1, out -> { throw new AssertionError("content must not be written"); }));
+        
+        IOException ioe = assertThrows(IOException.class, () -> chunk.writeHeaderData(new ByteArrayOutputStream()));
+        assertTrue(ioe.getMessage().contains("too large"));
+    }
+}
@@ -0,0 +1,86 @@
+package ch.astorm.jotlmsg.metrics;
+
+import ch.astorm.jotlmsg.OutlookMessage;
+import ch.astorm.jotlmsg.OutlookMessageRecipient.Type;
+import ch.astorm.jotlmsg.metrics.MessageMetrics.Operation;
+import ch.astorm.jotlmsg.metrics.MessageMetrics.Phase;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class JmxMessageMetricsTest {
+    
+    @Test
+    public void testRecording() throws Exception {
+        JmxMessageMetrics metrics = JmxMessageMetrics.install();
+        try {
+            for(int i=0 ; i<5 ; ++i) {
+                OutlookMessage message = new OutlookMessage();
+                message.setSubject("Message "+i);
+                message.setPlainTextBody("Hello");
+                for(int r=0 ; r<=i ; ++r) { message.addRecipient(Type.TO, "user"+r+"@jotlmsg.com"); }
+                message.addAttachment("file.txt", "text/plain", new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8)));
+                
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                message.writeTo(out);
+                new OutlookMessage(new ByteArrayInputStream(out.toByteArray()));
+            }
+            
+            LatencyStatistics write = metrics.getStatistics(Operation.WRITE);
+            assertEquals(5, write.getCount());
+            assertTrue(write.getBytes()>0);
+            assertTrue(write.getTotalNanos()>0);
+            assertTrue(write.getMedianNanos()<=write.getPercentile99Nanos());
+            assertTrue(write.getPercentile99Nanos()<=write.getMaxNanos());
+            assertEquals(write.getBytes(), metrics.getStatistics(Phase.COMPOUND_FILE_WRITE).getBytes());
+            assertEquals(write.getBytes(), metrics.getStatistics(Operation.PARSE).getBytes());
+            assertEquals(5, metrics.getStatistics(Operation.PARSE).getCount());
+            assertEquals(5, metrics.getStatistics(Phase.MAPI_PARSING).getCount());
+            assertEquals(5, metrics.getStatistics(Phase.ATTACHMENT_READ).getCount());
+            assertEquals(35, metrics.getStatistics(Phase.ATTACHMENT_READ).getBytes());
+            
+            for(Operation operation : new Operation[] { Operation.WRITE, Operation.PARSE }) {
+                assertEquals(3, metrics.getAverageRecipients(operation), 1e-9);
+                assertEquals(5, metrics.getMaxRecipients(operation));
+                assertEquals(1, metrics.getAverageAttachments(operation), 1e-9);
+                assertEquals(1, metrics.getMaxAttachments(operation));
+            }
+            assertEquals(0, metrics.getAverageRecipients(Operation.MIME_CONVERSION), 1e-9);
+            assertEquals(0, metrics.getMaxAttachments(Operation.MIME_CONVERSION));
+            
+            List<MessageSample> slowest = metrics.getSlowestMessages();
+            assertEquals(10, slowest.size());
+            for(int i=1 ; i<slowest.size() ; ++i) { assertTrue(slowest.get(i-1).getNanos()>=slowest.get(i).getNanos()); }
+            
+            ObjectName name = new ObjectName(JmxMessageMetrics.OBJECT_NAME);
+            assertEquals(5, ManagementFactory.getPlatformMBeanServer().invoke(name, "getMaxRecipients", new Object[] { "WRITE" }, new String[] { String.class.getName() }));
+            CompositeData[] phases = (CompositeData[])ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Phases");
+            assertEquals(Phase.values().length, phases.length);
+            assertEquals("ATTACHMENT_READ", phases[0].get("name"));
+            
+            //the content of the messages is never exposed
+            CompositeData[] samples = (CompositeData[])ManagementFactory.getPlatformMBeanServer().getAttribute(name, "SlowestMessages");
+            assertEquals(10, samples.length);
+            assertFalse(samples[0].getCompositeType().containsKey("subject"));
+            
+            metrics.reset();
+            assertEquals(0, metrics.getStatistics(Operation.WRITE).getCount());
+            assertEquals(0, metrics.getMaxRecipients(Operation.WRITE));
+            assertEquals(0, metrics.getSlowestMessages().size());
+        } finally {
+            MessageMetrics.install(null);
+            metrics.unregister();
+        }
+        
+        assertSame(MessageMetrics.DISABLED, MessageMetrics.current());
+    }
+}
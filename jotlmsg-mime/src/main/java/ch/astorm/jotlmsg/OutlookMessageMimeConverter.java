@@ -0,0 +1,364 @@
+/*
+  jotlmsg API
+  Copyright (C) 2017 Cédric Tabin
+
+  This file is part of jotlmsg, a library to easily manipulate and generate
+  Outlook msg files.
+  The author can be contacted on http://www.astorm.ch/blog/index.php?contact
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions
+  are met:
+  1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+  2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in
+     the documentation and/or other materials provided with the
+     distribution.
+  3. The names of the authors may not be used to endorse or promote
+     products derived from this software without specific prior
+     written permission.
+ 
+  THIS SOFTWARE IS PROVIDED BY THE AUTHORS ``AS IS'' AND ANY EXPRESS
+  OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+  ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+  DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+  IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+  OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+  IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package ch.astorm.jotlmsg;
+
+import ch.astorm.jotlmsg.OutlookMessageRecipient.Type;
+import ch.astorm.jotlmsg.metrics.MessageMetrics;
+import ch.astorm.jotlmsg.metrics.MessageMetrics.Operation;
+import jakarta.activation.DataHandler;
+import jakarta.mail.Address;
+import jakarta.mail.Message.RecipientType;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeBodyPart;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeMultipart;
+import jakarta.mail.util.ByteArrayDataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Converts an {@link OutlookMessage} to a {@code MimeMessage} of the standard
+ * {@code jakarta.mail} package.
+ * <p>This class is part of the {@code jotlmsg-mime} module, so that the applications
+ * that only read and write {@code .msg} files do not depend on the mail API.</p>
+ * 
+ * @author Cedric Tabin
+ */
+public final class OutlookMessageMimeConverter {
+    
+    /**
+     * MIME type of the attachments that do not define one, for instance the attachments
+     * of some messages created by Outlook.
+     */
+    public static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+    
+    private OutlookMessageMimeConverter() {}
+    
+    /**
+     * Creates a new {@code MimeMessage} from the specified {@code message}.
+     * A new {@link Session} will be created with an empty {@code Properties} instance.
+     *
+     * @param message The message to convert.
+     * @return A new {@code MimeMessage} instance.
+     * @see #toMimeMessage(ch.astorm.jotlmsg.OutlookMessage, java.util.Properties)
+     */
+    public static MimeMessage toMimeMessage(OutlookMessage message) throws IOException, MessagingException {
+        return toMimeMessage(message, new Properties());
+    }
+    
+    /**
+     * Creates a new {@code MimeMessage} from the specified {@code message}.
+     * A new {@link Session} will be created with the specified {@code sessionProps}.
+     * 
+     * @param message The message to convert.
+     * @param sessionProps The {@code Session} properties.
+     * @return A new {@code MimeMessage} instance.
+     * @see #toMimeMessage(ch.astorm.jotlmsg.OutlookMessage, jakarta.mail.Session)
+     */
+    public static MimeMessage toMimeMessage(OutlookMessage message, Properties sessionProps) throws IOException, MessagingException {
+        Session session = Session.getInstance(sessionProps);
+        return toMimeMessage(message, session);
+    }
+    
+    /**
+     * Creates a new {@code MimeMessage} from the specified {@code message}.
+     * This method will generate a multipart/mixed {@code MimeMessage}, with the first
+     * part being the message body (named 'body').
+     * 
+     * @param message The message to convert.
+     * @param session The {@code Session} to use for message creation.
+     * @return A new {@code MimeMessage} instance.
+     */
+    public static MimeMessage toMimeMessage(OutlookMessage message, Session session) throws IOException, MessagingException {
+        if(message==null) { throw new IllegalArgumentException("message is not defined"); }
+        
+        final List<OutlookMessageAttachment> regularAttachments = message.getAttachments().stream()
+                .filter(att -> att.getContentId() == null)
+                .toList();
+
+        final List<OutlookMessageAttachment> inlineAttachments = message.getAttachments().stream()
+                .filter(att -> att.getContentId() != null)
+                .toList();
+        
+        //the inline attachments are read first, then the regular ones, as they are written in the message
+        List<OutlookMessageAttachment> orderedAttachments = new ArrayList<>(inlineAttachments.size()+regularAttachments.size());
+        orderedAttachments.addAll(inlineAttachments);
+        orderedAttachments.addAll(regularAttachments);
+        
+        MimeConversionEvent event = OutlookMessage.beginEvent(new MimeConversionEvent());
+        MessageMetrics metrics = MessageMetrics.current();
+        long start = OutlookMessage.nanoTime(metrics);
+        
+        MimeMessage mimeMessage;
+        try(AttachmentPrefetcher prefetcher = message.createPrefetcher(orderedAttachments)) {
+            mimeMessage = toMimeMessage(message, session, inlineAttachments, regularAttachments, prefetcher);
+        }
+        
+        if(event.shouldCommit()) {
+            event.recipientCount = message.countRecipients();
+            event.attachmentCount = orderedAttachments.size();
+            event.commit();
+        }
+        if(metrics.isEnabled()) { metrics.recordMessage(Operation.MIME_CONVERSION, System.nanoTime()-start, 0, message.countRecipients(), orderedAttachments.size()); }
+        return mimeMessage;
+    }
+    
+    /**
+     * Creates a new {@code MimeMessage} from the specified {@code message} on a new virtual thread.
+     * A new {@link Session} will be created with an empty {@code Properties} instance.
+     * 
+     * @param message The message to convert.
+     * @return A future completed with the new {@code MimeMessage}.
+     * @see #toMimeMessageAsync(ch.astorm.jotlmsg.OutlookMessage, jakarta.mail.Session, java.util.concurrent.Executor)
+     */
+    public static CompletableFuture<MimeMessage> toMimeMessageAsync(OutlookMessage message) {
+        return toMimeMessageAsync(message, Session.getInstance(new Properties()), AsyncTask.VIRTUAL_THREAD_EXECUTOR);
+    }
+    
+    /**
+     * Creates a new {@code MimeMessage} from the specified {@code message} with the specified
+     * {@code executor}. The message must not be modified until the returned future is completed.
+     * <p>Cancelling the returned future interrupts the conversion, including the pending
+     * attachment reads.</p>
+     * 
+     * @param message The message to convert.
+     * @param session The {@code Session} to use for message creation.
+     * @param executor The executor that runs the conversion.
+     * @return A future completed with the new {@code MimeMessage}.
+     * @see #toMimeMessage(ch.astorm.jotlmsg.OutlookMessage, jakarta.mail.Session)
+     */
+    public static CompletableFuture<MimeMessage> toMimeMessageAsync(OutlookMessage message, Session session, Executor executor) {
+        return AsyncTask.submit(() -> toMimeMessage(message, session), executor);
+    }
+    
+    /**
+     * Warms up the writing, the parsing and the MIME conversion of messages with
+     * {@link OutlookMessage#DEFAULT_WARM_UP_ITERATIONS} synthetic messages.
+     * 
+     * @return The time taken by the warm-up.
+     * @see #warmUp(int)
+     */
+    public static Duration warmUp() {
+        return warmUp(OutlookMessage.DEFAULT_WARM_UP_ITERATIONS);
+    }
+    
+    /**
+     * Warms up the writing and the parsing with {@link OutlookMessage#warmUp(int)}, then
+     * converts the same synthetic messages to {@code MimeMessage} instances and serializes
+     * them, so that the mail API is loaded and initialized as well.
+     * 
+     * @param iterations The number of synthetic messages.
+     * @return The time taken by the warm-up.
+     */
+    public static Duration warmUp(int iterations) {
+        long start = System.nanoTime();
+        OutlookMessage.warmUp(iterations);
+        try {
+            Session session = Session.getInstance(new Properties());
+            for(int i=0 ; i<iterations ; ++i) {
+                try(OutlookMessage message = OutlookMessage.createWarmUpMessage(i)) {
+                    toMimeMessage(message, session).writeTo(OutputStream.nullOutputStream());
+                }
+            }
+        } catch(IOException ioe) {
+            throw new UncheckedIOException("warm-up failed", ioe);
+        } catch(MessagingException me) {
+            throw new IllegalStateException("warm-up failed", me);
+        }
+        return Duration.ofNanos(System.nanoTime()-start);
+    }
+    
+    /**
+     * Returns a new {@code Address} from the email of the specified {@code recipient}. If
+     * the email is not defined, this method returns null.
+     * <p>The email is parsed by {@link OutlookMessageRecipient#getParsedAddress()}, which keeps the
+     * result, hence the address is not validated again by the {@code InternetAddress}.</p>
+     * 
+     * @param recipient The recipient.
+     * @return A new {@code InternetAddress}.
+     * @throws AddressException If the email is not valid.
+     */
+    public static Address getAddress(OutlookMessageRecipient recipient) throws AddressException {
+        String email = recipient.getEmail();
+        if(email==null || email.isEmpty()) { return null; }
+        
+        try { return toInternetAddress(recipient.getParsedAddress()); }
+        catch(IllegalArgumentException iae) { throw new AddressException(iae.getMessage(), email); }
+    }
+    
+    private static InternetAddress toInternetAddress(String email) throws AddressException {
+        try { return toInternetAddress(EmailAddress.parse(email)); }
+        catch(IllegalArgumentException iae) { throw new AddressException(iae.getMessage(), email); }
+    }
+    
+    private static InternetAddress toInternetAddress(EmailAddress address) {
+        try { return new InternetAddress(address.getAddress(), address.getName(), StandardCharsets.UTF_8.name()); }
+        catch(UnsupportedEncodingException uee) { throw new IllegalStateException(uee); } //UTF-8 is always supported
+    }
+    
+    /**
+     * Returns the corresponding {@code RecipientType} of the {@code jakarta.mail} API.
+     * 
+     * @param type The type of recipient.
+     * @return The recipient type.
+     */
+    public static RecipientType getRecipientType(Type type) {
+        switch(type) {
+            case TO: return RecipientType.TO;
+            case CC: return RecipientType.CC;
+            case BCC: return RecipientType.BCC;
+            default: throw new IllegalArgumentException("unsupported type: "+type);
+        }
+    }
+    
+    private static String getMimeType(OutlookMessageAttachment attachment) {
+        String mimeType = attachment.getMimeType();
+        return mimeType!=null && !mimeType.isBlank() ? mimeType : DEFAULT_MIME_TYPE;
+    }
+    
+    private static MimeMessage toMimeMessage(OutlookMessage outlookMessage, Session session, List<OutlookMessageAttachment> inlineAttachments, List<OutlookMessageAttachment> regularAttachments, AttachmentPrefetcher prefetcher) throws IOException, MessagingException {
+        MimeMessage message = new MimeMessage(session);
+        message.setSentDate(outlookMessage.getSentDate());
+        
+        String subject = outlookMessage.getSubject();
+        if(subject!=null) { message.setSubject(subject); }
+        
+        String from = OutlookMessage.extractEmail(outlookMessage.getFrom());
+        if(from!=null) { message.setFrom(toInternetAddress(from)); }
+        
+        List<String> replyTo = outlookMessage.getReplyTo();
+        if(replyTo!=null) {
+            List<Address> replyAddresses = new ArrayList<>(replyTo.size());
+            for(String replyToEmail : replyTo) {
+                String replyToEmailExtracted = OutlookMessage.extractEmail(replyToEmail);
+                if(replyToEmailExtracted!=null) { replyAddresses.add(toInternetAddress(replyToEmailExtracted)); }
+            }
+            message.setReplyTo(replyAddresses.toArray(new Address[replyAddresses.size()]));
+        }
+        
+        for(OutlookMessageRecipient recipient : outlookMessage.getAllRecipients()) {
+            Address address = getAddress(recipient);
+            if(address!=null) { message.addRecipient(getRecipientType(recipient.getType()), address); }
+        }
+
+        String plainText = outlookMessage.getPlainTextBody();
+        String html = outlookMessage.getHtmlBody();
+
+        if(plainText==null && html==null) { throw new MessagingException("missing body"); }
+
+        int attachmentIndex = 0;
+        final MimeMultipart multipart = new MimeMultipart();
+
+        final List<MimeBodyPart> bodies = new ArrayList<>();
+        if(plainText!=null) {
+            MimeBodyPart plainBody = new MimeBodyPart();
+            plainBody.setText(plainText, StandardCharsets.UTF_8.name(), "plain");
+            bodies.add(plainBody);
+        }
+        if(html!=null) {
+            MimeBodyPart htmlBody = new MimeBodyPart();
+            htmlBody.setText(html, StandardCharsets.UTF_8.name(), "html");
+            bodies.add(htmlBody);
+        }
+
+        final MimeBodyPart combinedBodiesPart;
+        if (bodies.size() > 1) {
+            final MimeMultipart alternativePart = new MimeMultipart("alternative");
+            for (MimeBodyPart body : bodies) {
+                alternativePart.addBodyPart(body);
+            }
+            combinedBodiesPart = new MimeBodyPart();
+            combinedBodiesPart.setContent(alternativePart);
+        } else {
+            combinedBodiesPart = bodies.get(0);
+        }
+
+        if (inlineAttachments.isEmpty()) {
+            multipart.addBodyPart(combinedBodiesPart);
+        } else {
+            final MimeMultipart relatedPart = new MimeMultipart("related");
+            relatedPart.addBodyPart(combinedBodiesPart);
+
+            for(OutlookMessageAttachment attachment : inlineAttachments) {
+                String name = attachment.getName();
+                String mimeType = getMimeType(attachment);
+                byte[] data = outlookMessage.readAttachement(attachment, prefetcher, attachmentIndex++);
+                String contentId = attachment.getContentId();
+
+                MimeBodyPart part = new MimeBodyPart();
+                part.setDataHandler(new DataHandler(new ByteArrayDataSource(data, mimeType)));
+                part.setContentID(contentId);
+                part.setHeader("Content-Disposition", "inline");
+                part.setFileName(name);
+                relatedPart.addBodyPart(part);
+            }
+
+            final MimeBodyPart relatedBodyPart = new MimeBodyPart();
+            relatedBodyPart.setContent(relatedPart);
+            multipart.addBodyPart(relatedBodyPart);
+        }
+
+        for(OutlookMessageAttachment attachment : regularAttachments) {
+            String name = attachment.getName();
+            String mimeType = getMimeType(attachment);
+            byte[] data = outlookMessage.readAttachement(attachment, prefetcher, attachmentIndex++);
+            String contentId = attachment.getContentId();
+
+            MimeBodyPart part = new MimeBodyPart();
+            part.setDataHandler(new DataHandler(new ByteArrayDataSource(data, mimeType)));
+            if (contentId != null) {
+                part.setContentID(contentId);
+                part.setHeader("Content-Disposition", "inline");
+            }
+            part.setFileName(name);
+            multipart.addBodyPart(part);
+        }
+        
+        message.setContent(multipart);
+        return message;
+    }
+}
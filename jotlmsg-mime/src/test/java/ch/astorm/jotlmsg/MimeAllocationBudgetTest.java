@@ -0,0 +1,38 @@
+package ch.astorm.jotlmsg;
+
+import static ch.astorm.jotlmsg.AllocationBudgetTest.FIXTURES;
+import static ch.astorm.jotlmsg.AllocationBudgetTest.checkBudget;
+import static ch.astorm.jotlmsg.AllocationBudgetTest.measure;
+import static ch.astorm.jotlmsg.AllocationBudgetTest.readFixture;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.function.Executable;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the bytes allocated by the MIME conversion against the {@code mime.*} budgets
+ * of the {@link AllocationBudgetTest}.
+ */
+public class MimeAllocationBudgetTest {
+
+    @BeforeAll
+    public static void setup() throws IOException {
+        AllocationBudgetTest.setup();
+    }
+
+    @Test
+    public void testMimeConversionBudget() throws Throwable {
+        List<Executable> checks = new ArrayList<>();
+        for(String fixture : FIXTURES) {
+            try(OutlookMessage message = new OutlookMessage(new ByteArrayInputStream(readFixture(fixture)))) {
+                long allocated = measure(() -> OutlookMessageMimeConverter.toMimeMessage(message));
+                checks.add(() -> checkBudget("mime", fixture, allocated));
+            }
+        }
+        assertAll(checks);
+    }
+}
@@ -2,10 +2,17 @@
 package ch.astorm.jotlmsg;
 
 import ch.astorm.jotlmsg.OutlookMessageRecipient.Type;
+import ch.astorm.jotlmsg.metrics.JmxMessageMetrics;
+import ch.astorm.jotlmsg.metrics.MessageMetrics;
+import ch.astorm.jotlmsg.metrics.MessageMetrics.Operation;
+import ch.astorm.jotlmsg.metrics.MessageMetrics.Phase;
 import jakarta.mail.BodyPart;
 import jakarta.mail.Message;
 import jakarta.mail.MessagingException;
 import jakarta.mail.Multipart;
+import jakarta.mail.Session;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
 import jakarta.mail.internet.MimeMessage;
 import jakarta.mail.internet.MimeMultipart;
 import java.io.ByteArrayInputStream;
@@ -14,8 +21,15 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.apache.commons.io.IOUtils;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
@@ -31,11 +45,11 @@ public class OutlookMessageMIMETest {
         OutlookMessage message = new OutlookMessage();
         message.addRecipient(Type.TO, "cedric@jotlmsg.com", "Cédric");
 
-        assertThrows(MessagingException.class, () -> message.toMimeMessage());
+        assertThrows(MessagingException.class, () -> OutlookMessageMimeConverter.toMimeMessage(message));
 
         message.setPlainTextBody("Hello, World!");
         
-        MimeMessage mimeMessage1 = message.toMimeMessage();
+        MimeMessage mimeMessage1 = OutlookMessageMimeConverter.toMimeMessage(message);
         
         try(ByteArrayOutputStream baos1 = new ByteArrayOutputStream()) {
             mimeMessage1.writeTo(baos1);
@@ -56,6 +70,84 @@ public class OutlookMessageMIMETest {
         assertEquals(message.getPlainTextBody(), body1);
     }
     
+    @Test
+    public void testAttachmentPrefetch() throws Exception {
+        OutlookMessage message = new OutlookMessage();
+        message.setPlainTextBody("Hello, World!");
+        message.setHtmlBody("<html><body>Hello, World!</body></html>");
+        for(int i=0 ; i<10 ; ++i) {
+            String content = "content "+i;
+            OutlookMessageAttachment attachment = message.addAttachment("file"+i+".txt", "text/plain", a -> new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+            if(i%3==0) { attachment.setContentId("file"+i+"@jotlmsg"); }
+        }
+        message.setAttachmentPrefetch(new AttachmentPrefetch(4, 1024));
+        
+        MimeMessage mimeMessage = OutlookMessageMimeConverter.toMimeMessage(message);
+        Multipart multipart = (Multipart)mimeMessage.getContent();
+        Multipart related = (Multipart)multipart.getBodyPart(0).getContent();
+        assertEquals(5, related.getCount());
+        assertEquals(7, multipart.getCount());
+        for(int i=1 ; i<related.getCount() ; ++i) {
+            BodyPart part = related.getBodyPart(i);
+            assertEquals("file"+((i-1)*3)+".txt", part.getFileName());
+            assertEquals("content "+((i-1)*3), IOUtils.toString(part.getInputStream(), StandardCharsets.UTF_8));
+        }
+        int index = 1;
+        for(int i=0 ; i<10 ; ++i) {
+            if(i%3==0) { continue; }
+            BodyPart part = multipart.getBodyPart(index++);
+            assertEquals("file"+i+".txt", part.getFileName());
+            assertEquals("content "+i, IOUtils.toString(part.getInputStream(), StandardCharsets.UTF_8));
+        }
+    }
+    
+    @Test
+    public void testAsyncConversion() throws Exception {
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("Async");
+        message.setPlainTextBody("Hello, World!");
+        message.addAttachment("file.txt", "text/plain", new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8)));
+        
+        MimeMessage mimeMessage = OutlookMessageMimeConverter.toMimeMessageAsync(message).get();
+        assertEquals("Async", mimeMessage.getSubject());
+        Multipart multipart = (Multipart)mimeMessage.getContent();
+        assertEquals("content", IOUtils.toString(multipart.getBodyPart(1).getInputStream(), StandardCharsets.UTF_8));
+        
+        message.setPlainTextBody(null);
+        ExecutionException ee = assertThrows(ExecutionException.class, () -> OutlookMessageMimeConverter.toMimeMessageAsync(message).get());
+        assertInstanceOf(MessagingException.class, ee.getCause());
+    }
+    
+    @Test
+    public void testEventsAndMetrics() throws Exception {
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("Recorded");
+        message.setPlainTextBody("Hello");
+        message.addRecipient(Type.TO, "to@jotlmsg.com");
+        message.addAttachment("file.txt", "text/plain", new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8)));
+        
+        Path dump = Files.createTempFile("recording", ".jfr");
+        JmxMessageMetrics metrics = JmxMessageMetrics.install();
+        try(Recording recording = new Recording()) {
+            recording.enable("ch.astorm.jotlmsg.MimeConversion").withoutThreshold();
+            recording.start();
+            OutlookMessageMimeConverter.toMimeMessage(message);
+            recording.stop();
+            recording.dump(dump);
+            
+            List<RecordedEvent> events = RecordingFile.readAllEvents(dump).stream().filter(e -> e.getEventType().getName().equals("ch.astorm.jotlmsg.MimeConversion")).toList();
+            assertEquals(1, events.size());
+            assertEquals(1, events.get(0).getInt("recipientCount"));
+            assertEquals(1, events.get(0).getInt("attachmentCount"));
+            assertEquals(1, metrics.getStatistics(Operation.MIME_CONVERSION).getCount());
+            assertEquals(7, metrics.getStatistics(Phase.ATTACHMENT_READ).getBytes());
+        } finally {
+            MessageMetrics.install(null);
+            metrics.unregister();
+            Files.delete(dump);
+        }
+    }
+    
     @Test
     public void testSimpleDoubleGeneration() throws Exception {
         OutlookMessage message = new OutlookMessage();
@@ -70,7 +162,7 @@ public class OutlookMessageMIMETest {
         
         // -----------------------------------------------------
         
-        MimeMessage mimeMessage1 = message.toMimeMessage();
+        MimeMessage mimeMessage1 = OutlookMessageMimeConverter.toMimeMessage(message);
         
         try(ByteArrayOutputStream baos1 = new ByteArrayOutputStream()) {
             mimeMessage1.writeTo(baos1);
@@ -97,7 +189,7 @@ public class OutlookMessageMIMETest {
         
         // -----------------------------------------------------
         
-        MimeMessage mimeMessage2 = message.toMimeMessage();
+        MimeMessage mimeMessage2 = OutlookMessageMimeConverter.toMimeMessage(message);
         try(ByteArrayOutputStream baos2 = new ByteArrayOutputStream()) {
             mimeMessage2.writeTo(baos2);
         }
@@ -136,7 +228,81 @@ public class OutlookMessageMIMETest {
         assertThrows(IllegalStateException.class, () -> message.writeTo(temporaryFile));
         temporaryFile.delete();
 
-        assertThrows(IllegalStateException.class, () -> message.toMimeMessage());
+        assertThrows(IllegalStateException.class, () -> OutlookMessageMimeConverter.toMimeMessage(message));
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        assertTrue(OutlookMessageMimeConverter.warmUp(3).toNanos()>0);
+    }
+    
+    @Test
+    public void testAttachmentWithoutMimeType() throws Exception {
+        OutlookMessage message = new OutlookMessage();
+        message.setPlainTextBody("Hello");
+        message.addAttachment("data.bin", null, new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+        
+        MimeMessage mimeMessage = OutlookMessageMimeConverter.toMimeMessage(message);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        mimeMessage.writeTo(out);
+        
+        Multipart multipart = (Multipart)mimeMessage.getContent();
+        assertTrue(multipart.getBodyPart(1).getContentType().startsWith(OutlookMessageMimeConverter.DEFAULT_MIME_TYPE));
+    }
+
+    @Test
+    public void testAddresses() throws Exception {
+        OutlookMessage message = new OutlookMessage();
+        message.setPlainTextBody("Hello");
+        message.setFrom("Sender <sender@jotlmsg.com>");
+        message.setReplyTo(List.of("reply1@jotlmsg.com", "Reply <reply2@jotlmsg.com>"));
+        message.addRecipient(Type.TO, "\"Doe, John\" <john@jotlmsg.com>");
+        message.addRecipient(Type.CC, "cc@jotlmsg.com", "Copy");
+        message.addRecipient(Type.BCC, null, "Nobody");
+        
+        MimeMessage mimeMessage = OutlookMessageMimeConverter.toMimeMessage(message);
+        assertEquals("sender@jotlmsg.com", mimeMessage.getFrom()[0].toString());
+        assertEquals("reply2@jotlmsg.com", mimeMessage.getReplyTo()[1].toString());
+        
+        InternetAddress to = (InternetAddress)mimeMessage.getRecipients(Message.RecipientType.TO)[0];
+        assertEquals("john@jotlmsg.com", to.getAddress());
+        assertEquals("Doe, John", to.getPersonal());
+        assertEquals("cc@jotlmsg.com", mimeMessage.getRecipients(Message.RecipientType.CC)[0].toString());
+        assertNull(mimeMessage.getRecipients(Message.RecipientType.BCC));
+        
+        message.addRecipient(Type.TO, "john doe@jotlmsg.com");
+        assertThrows(AddressException.class, () -> OutlookMessageMimeConverter.toMimeMessage(message));
+        message.getRecipients(Type.TO).get(1).setEmail("john.doe@jotlmsg.com");
+        assertEquals(2, OutlookMessageMimeConverter.toMimeMessage(message).getRecipients(Message.RecipientType.TO).length);
+        
+        message.setFrom("sender@jotlmsg..com");
+        assertThrows(AddressException.class, () -> OutlookMessageMimeConverter.toMimeMessage(message));
+    }
+
+    @Test
+    @SuppressWarnings("removal")
+    public void testDeprecatedMethods() throws Exception {
+        OutlookMessage message = new OutlookMessage();
+        message.setSubject("Deprecated");
+        message.setPlainTextBody("Hello");
+        message.setFrom("sender@jotlmsg.com");
+        OutlookMessageRecipient recipient = message.addRecipient(Type.TO, "\"Doe, John\" <john@jotlmsg.com>");
+        
+        MimeMessage mimeMessage = message.toMimeMessage();
+        assertEquals("Deprecated", mimeMessage.getSubject());
+        assertEquals("john@jotlmsg.com", ((InternetAddress)mimeMessage.getRecipients(Message.RecipientType.TO)[0]).getAddress());
+        assertEquals("Deprecated", message.toMimeMessage(new Properties()).getSubject());
+        assertEquals("Deprecated", message.toMimeMessage(Session.getInstance(new Properties())).getSubject());
+        
+        InternetAddress address = (InternetAddress)recipient.getAddress();
+        assertEquals("john@jotlmsg.com", address.getAddress());
+        assertEquals("Doe, John", address.getPersonal());
+        
+        recipient.setEmail("john doe@jotlmsg.com");
+        assertThrows(AddressException.class, () -> recipient.getAddress());
+        assertThrows(AddressException.class, () -> message.toMimeMessage());
+        recipient.setEmail(null);
+        assertNull(recipient.getAddress());
     }
 
     @Test
@@ -151,10 +317,10 @@ public class OutlookMessageMIMETest {
         CheckableInputStream cis = new CheckableInputStream();
         message.addAttachment("message.txt", "text/plain", a -> cis);
 
-        message.toMimeMessage();
+        OutlookMessageMimeConverter.toMimeMessage(message);
         assertTrue(cis.closed);
 
-        assertThrows(IllegalStateException.class, () -> message.toMimeMessage());
+        assertThrows(IllegalStateException.class, () -> OutlookMessageMimeConverter.toMimeMessage(message));
     }
 
     @Test
@@ -169,10 +335,10 @@ public class OutlookMessageMIMETest {
         CheckableInputStream cis = new CheckableInputStream();
         message.addAttachment("message.txt", "text/plain", cis);
 
-        message.toMimeMessage();
+        OutlookMessageMimeConverter.toMimeMessage(message);
         assertTrue(cis.closed);
 
-        message.toMimeMessage();
+        OutlookMessageMimeConverter.toMimeMessage(message);
     }
 
     @Test
@@ -185,7 +351,7 @@ public class OutlookMessageMIMETest {
         message.setHtmlBody("<html><body>Simple body</body></html>");
         message.addRecipient(Type.TO, "cedric@jotlmsg.com", "Cédric");
 
-        MimeMessage mimeMessage = message.toMimeMessage();
+        MimeMessage mimeMessage = OutlookMessageMimeConverter.toMimeMessage(message);
         assertTrue(mimeMessage.getDataHandler().getContentType().startsWith("multipart/mixed"));
         
         Object content = mimeMessage.getContent();
@@ -213,7 +379,7 @@ public class OutlookMessageMIMETest {
         inlineAttachment.setContentId(contentId);
         message.addAttachment(inlineAttachment);
 
-        MimeMessage mimeMessage = message.toMimeMessage();
+        MimeMessage mimeMessage = OutlookMessageMimeConverter.toMimeMessage(message);
 
         // Multipart hierarchy should be:
         // mixed(related(html, picture))
@@ -260,7 +426,7 @@ public class OutlookMessageMIMETest {
 
         // Multipart hierarchy should be:
         // mixed(related(alternative(plain, html), picture))
-        MimeMessage mimeMessage = message.toMimeMessage();
+        MimeMessage mimeMessage = OutlookMessageMimeConverter.toMimeMessage(message);
         assertTrue(mimeMessage.getDataHandler().getContentType().startsWith("multipart/mixed"));
         
         Object content = mimeMessage.getContent();
@@ -303,7 +469,7 @@ public class OutlookMessageMIMETest {
 
         // Multipart hierarchy should be:
         // mixed(related(alternative(plain, html), picture))
-        MimeMessage mimeMessage = message.toMimeMessage();
+        MimeMessage mimeMessage = OutlookMessageMimeConverter.toMimeMessage(message);
         assertTrue(mimeMessage.getDataHandler().getContentType().startsWith("multipart/mixed"));
         
         Object content = mimeMessage.getContent();